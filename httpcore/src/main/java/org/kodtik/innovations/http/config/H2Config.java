@@ -0,0 +1,213 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.config;
+
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * HTTP/2 protocol configuration. The values are announced to the opposite
+ * endpoint in the initial {@code SETTINGS} frame of a connection and bound
+ * the resources it may consume on the local side.
+ *
+ * @since 4.4.15
+ */
+@Contract(threading = ThreadingBehavior.IMMUTABLE)
+public class H2Config implements Cloneable {
+
+    public static final int DEFAULT_HEADER_TABLE_SIZE = 4096;
+    public static final int DEFAULT_INITIAL_WINDOW_SIZE = 65535;
+    public static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+    public static final int MAX_FRAME_SIZE_LIMIT = (1 << 24) - 1;
+    public static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+    public static final H2Config DEFAULT = new Builder().build();
+
+    private final int headerTableSize;
+    private final int maxConcurrentStreams;
+    private final int initialWindowSize;
+    private final int maxFrameSize;
+    private final int maxHeaderListSize;
+
+    H2Config(
+            final int headerTableSize,
+            final int maxConcurrentStreams,
+            final int initialWindowSize,
+            final int maxFrameSize,
+            final int maxHeaderListSize) {
+        super();
+        this.headerTableSize = headerTableSize;
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        this.initialWindowSize = initialWindowSize;
+        this.maxFrameSize = maxFrameSize;
+        this.maxHeaderListSize = maxHeaderListSize;
+    }
+
+    /**
+     * Determines the maximum size of the header compression table used
+     * to decode header blocks received from the opposite endpoint.
+     * <p>
+     * Default: {@code 4096}
+     * </p>
+     */
+    public int getHeaderTableSize() {
+        return headerTableSize;
+    }
+
+    /**
+     * Determines the maximum number of concurrent streams the opposite
+     * endpoint is permitted to open.
+     * <p>
+     * Default: {@code 100}
+     * </p>
+     */
+    public int getMaxConcurrentStreams() {
+        return maxConcurrentStreams;
+    }
+
+    /**
+     * Determines the initial flow control window of streams, that is,
+     * the amount of data the opposite endpoint may send on a stream before
+     * the local endpoint has consumed any of it.
+     * <p>
+     * Default: {@code 65535}
+     * </p>
+     */
+    public int getInitialWindowSize() {
+        return initialWindowSize;
+    }
+
+    /**
+     * Determines the largest frame payload the local endpoint is willing
+     * to receive.
+     * <p>
+     * Default: {@code 16384}
+     * </p>
+     */
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+     * Determines the maximum size of a decoded header list the local
+     * endpoint is willing to accept. The size of an encoded header block
+     * received over several frames is limited to the same value, or to
+     * 64 KiB if no limit is set.
+     * <p>
+     * Default: {@code 0} (no limit)
+     * </p>
+     */
+    public int getMaxHeaderListSize() {
+        return maxHeaderListSize;
+    }
+
+    @Override
+    protected H2Config clone() throws CloneNotSupportedException {
+        return (H2Config) super.clone();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("[headerTableSize=").append(this.headerTableSize)
+                .append(", maxConcurrentStreams=").append(this.maxConcurrentStreams)
+                .append(", initialWindowSize=").append(this.initialWindowSize)
+                .append(", maxFrameSize=").append(this.maxFrameSize)
+                .append(", maxHeaderListSize=").append(this.maxHeaderListSize)
+                .append("]");
+        return builder.toString();
+    }
+
+    public static H2Config.Builder custom() {
+        return new Builder();
+    }
+
+    public static H2Config.Builder copy(final H2Config config) {
+        Args.notNull(config, "HTTP/2 config");
+        return new Builder()
+            .setHeaderTableSize(config.getHeaderTableSize())
+            .setMaxConcurrentStreams(config.getMaxConcurrentStreams())
+            .setInitialWindowSize(config.getInitialWindowSize())
+            .setMaxFrameSize(config.getMaxFrameSize())
+            .setMaxHeaderListSize(config.getMaxHeaderListSize());
+    }
+
+    public static class Builder {
+
+        private int headerTableSize;
+        private int maxConcurrentStreams;
+        private int initialWindowSize;
+        private int maxFrameSize;
+        private int maxHeaderListSize;
+
+        Builder() {
+            this.headerTableSize = DEFAULT_HEADER_TABLE_SIZE;
+            this.maxConcurrentStreams = 100;
+            this.initialWindowSize = DEFAULT_INITIAL_WINDOW_SIZE;
+            this.maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+        }
+
+        public Builder setHeaderTableSize(final int headerTableSize) {
+            Args.notNegative(headerTableSize, "Header table size");
+            this.headerTableSize = headerTableSize;
+            return this;
+        }
+
+        public Builder setMaxConcurrentStreams(final int maxConcurrentStreams) {
+            Args.notNegative(maxConcurrentStreams, "Max concurrent streams");
+            this.maxConcurrentStreams = maxConcurrentStreams;
+            return this;
+        }
+
+        public Builder setInitialWindowSize(final int initialWindowSize) {
+            Args.positive(initialWindowSize, "Initial window size");
+            this.initialWindowSize = initialWindowSize;
+            return this;
+        }
+
+        public Builder setMaxFrameSize(final int maxFrameSize) {
+            Args.check(maxFrameSize >= DEFAULT_MAX_FRAME_SIZE && maxFrameSize <= MAX_FRAME_SIZE_LIMIT,
+                    "Max frame size must be in range [16384, 16777215]");
+            this.maxFrameSize = maxFrameSize;
+            return this;
+        }
+
+        public Builder setMaxHeaderListSize(final int maxHeaderListSize) {
+            Args.notNegative(maxHeaderListSize, "Max header list size");
+            this.maxHeaderListSize = maxHeaderListSize;
+            return this;
+        }
+
+        public H2Config build() {
+            return new H2Config(headerTableSize, maxConcurrentStreams, initialWindowSize,
+                    maxFrameSize, maxHeaderListSize);
+        }
+
+    }
+
+}
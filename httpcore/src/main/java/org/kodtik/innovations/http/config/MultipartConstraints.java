@@ -0,0 +1,128 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.config;
+
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * Multipart body constraints: part count, part size and part header size.
+ * A negative value disables the respective limit.
+ *
+ * @since 4.4.15
+ */
+public class MultipartConstraints implements Cloneable {
+
+    /**
+     * Constraints with no limit on the number and size of parts and part
+     * headers limited to 8 KiB.
+     */
+    public static final MultipartConstraints DEFAULT = new Builder().build();
+
+    private final int maxPartCount;
+    private final long maxPartSize;
+    private final int maxHeaderSize;
+
+    MultipartConstraints(final int maxPartCount, final long maxPartSize, final int maxHeaderSize) {
+        super();
+        this.maxPartCount = maxPartCount;
+        this.maxPartSize = maxPartSize;
+        this.maxHeaderSize = maxHeaderSize;
+    }
+
+    public int getMaxPartCount() {
+        return maxPartCount;
+    }
+
+    public long getMaxPartSize() {
+        return maxPartSize;
+    }
+
+    public int getMaxHeaderSize() {
+        return maxHeaderSize;
+    }
+
+    @Override
+    protected MultipartConstraints clone() throws CloneNotSupportedException {
+        return (MultipartConstraints) super.clone();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("[maxPartCount=").append(maxPartCount)
+                .append(", maxPartSize=").append(maxPartSize)
+                .append(", maxHeaderSize=").append(maxHeaderSize)
+                .append("]");
+        return builder.toString();
+    }
+
+    public static MultipartConstraints.Builder custom() {
+        return new Builder();
+    }
+
+    public static MultipartConstraints.Builder copy(final MultipartConstraints config) {
+        Args.notNull(config, "Multipart constraints");
+        return new Builder()
+            .setMaxPartCount(config.getMaxPartCount())
+            .setMaxPartSize(config.getMaxPartSize())
+            .setMaxHeaderSize(config.getMaxHeaderSize());
+    }
+
+    public static class Builder {
+
+        private int maxPartCount;
+        private long maxPartSize;
+        private int maxHeaderSize;
+
+        Builder() {
+            this.maxPartCount = -1;
+            this.maxPartSize = -1;
+            this.maxHeaderSize = 8 * 1024;
+        }
+
+        public Builder setMaxPartCount(final int maxPartCount) {
+            this.maxPartCount = maxPartCount;
+            return this;
+        }
+
+        public Builder setMaxPartSize(final long maxPartSize) {
+            this.maxPartSize = maxPartSize;
+            return this;
+        }
+
+        public Builder setMaxHeaderSize(final int maxHeaderSize) {
+            this.maxHeaderSize = maxHeaderSize;
+            return this;
+        }
+
+        public MultipartConstraints build() {
+            return new MultipartConstraints(maxPartCount, maxPartSize, maxHeaderSize);
+        }
+
+    }
+
+}
@@ -32,6 +32,9 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 import org.kodtik.innovations.http.util.Args;
 
@@ -105,19 +108,37 @@ public class FileEntity extends AbstractHttpEntity implements Cloneable {
     @Override
     public void writeTo(final OutputStream outStream) throws IOException {
         Args.notNull(outStream, "Output stream");
-        final InputStream inStream = new FileInputStream(this.file);
+        final FileInputStream inStream = new FileInputStream(this.file);
         try {
-            final byte[] tmp = new byte[OUTPUT_BUFFER_SIZE];
-            int l;
-            while ((l = inStream.read(tmp)) != -1) {
-                outStream.write(tmp, 0, l);
-            }
+            transfer(inStream.getChannel(), outStream);
             outStream.flush();
         } finally {
             inStream.close();
         }
     }
 
+    /**
+     * Transfers the content of the file channel to the output stream using
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)}. If the output
+     * stream is itself a {@link WritableByteChannel} backed by a socket channel
+     * the content is sent without being copied into the Java heap. Otherwise
+     * the channel implementation copies through a bounded intermediate buffer.
+     */
+    static void transfer(final FileChannel channel, final OutputStream outStream) throws IOException {
+        final WritableByteChannel target = outStream instanceof WritableByteChannel
+                ? (WritableByteChannel) outStream : Channels.newChannel(outStream);
+        final long size = channel.size();
+        long pos = 0;
+        while (pos < size) {
+            final long n = channel.transferTo(pos, size - pos, target);
+            if (n <= 0) {
+                // file truncated while being transferred
+                break;
+            }
+            pos += n;
+        }
+    }
+
     /**
      * Tells that this entity is not streaming.
      *
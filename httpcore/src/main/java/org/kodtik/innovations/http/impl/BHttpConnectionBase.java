@@ -35,6 +35,7 @@ import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
 import java.util.concurrent.atomic.AtomicReference;
@@ -61,6 +62,7 @@ import org.kodtik.innovations.http.impl.io.IdentityInputStream;
 import org.kodtik.innovations.http.impl.io.IdentityOutputStream;
 import org.kodtik.innovations.http.impl.io.SessionInputBufferImpl;
 import org.kodtik.innovations.http.impl.io.SessionOutputBufferImpl;
+import org.kodtik.innovations.http.impl.io.SocketChannelTransport;
 import org.kodtik.innovations.http.io.SessionInputBuffer;
 import org.kodtik.innovations.http.io.SessionOutputBuffer;
 import org.kodtik.innovations.http.protocol.HTTP;
@@ -83,6 +85,8 @@ public class BHttpConnectionBase implements HttpInetConnection {
     private final ContentLengthStrategy outgoingContentStrategy;
     private final AtomicReference<Socket> socketHolder;
 
+    private volatile SocketChannelTransport channelTransport;
+
     /**
      * Creates new instance of BHttpConnectionBase.
      *
@@ -133,16 +137,80 @@ public class BHttpConnectionBase implements HttpInetConnection {
             this.inBuffer.bind(getSocketInputStream(socket));
         }
         if (!this.outbuffer.isBound()) {
-            this.outbuffer.bind(getSocketOutputStream(socket));
+            final OutputStream outStream = getSocketOutputStream(socket);
+            this.outbuffer.bind(outStream, outStream instanceof GatheringByteChannel
+                    ? (GatheringByteChannel) outStream : getSocketChannel(socket));
+        }
+    }
+
+    /**
+     * Returns the channel transport of the given socket, creating it if the
+     * socket is connected and backed by a {@link java.nio.channels.SocketChannel}.
+     */
+    private SocketChannelTransport getChannelTransport(final Socket socket) throws IOException {
+        final SocketChannelTransport transport = this.channelTransport;
+        if (transport != null && transport.getSocket() == socket) {
+            return transport.isReleased() ? null : transport;
+        }
+        if (socket.getChannel() != null && socket.isConnected()) {
+            final SocketChannelTransport newTransport = new SocketChannelTransport(socket);
+            this.channelTransport = newTransport;
+            return newTransport;
         }
+        return null;
     }
 
+    /**
+     * Returns the socket input stream. If the socket is backed by a
+     * {@link java.nio.channels.SocketChannel} the channel is read from
+     * through a {@link SocketChannelTransport}.
+     */
     protected InputStream getSocketInputStream(final Socket socket) throws IOException {
-        return socket.getInputStream();
+        final SocketChannelTransport transport = getChannelTransport(socket);
+        return transport != null ? transport.getInputStream() : socket.getInputStream();
     }
 
+    /**
+     * Returns the socket output stream. If the socket is backed by a
+     * {@link java.nio.channels.SocketChannel} the channel is written to
+     * through a {@link SocketChannelTransport}.
+     */
     protected OutputStream getSocketOutputStream(final Socket socket) throws IOException {
-        return socket.getOutputStream();
+        final SocketChannelTransport transport = getChannelTransport(socket);
+        return transport != null ? transport.getOutputStream() : socket.getOutputStream();
+    }
+
+    /**
+     * Switches the socket channel back to blocking mode if the connection
+     * performs I/O through a {@link SocketChannelTransport}. This must be
+     * done before the socket's own streams can be used, for instance to
+     * layer TLS on top of the socket. The connection keeps working over
+     * the socket streams afterwards.
+     *
+     * @since 4.4.15
+     */
+    protected void releaseSocketChannel() throws IOException {
+        final SocketChannelTransport transport = this.channelTransport;
+        if (transport != null) {
+            transport.release();
+        }
+    }
+
+    /**
+     * Returns the channel the session output buffer may use for gathering
+     * writes of buffered data and large fragments, or {@code null} to have
+     * them coalesced and written to the socket output stream instead.
+     * <p>
+     * The channel bypasses the stream returned by
+     * {@link #getSocketOutputStream(Socket)}, so the default implementation
+     * returns {@code null}. Subclasses that do not decorate the socket output
+     * stream may return the blocking channel of the socket.
+     * </p>
+     *
+     * @since 4.4.15
+     */
+    protected GatheringByteChannel getSocketChannel(final Socket socket) throws IOException {
+        return null;
     }
 
     /**
@@ -157,6 +225,11 @@ public class BHttpConnectionBase implements HttpInetConnection {
      */
     protected void bind(final Socket socket) throws IOException {
         Args.notNull(socket, "Socket");
+        final SocketChannelTransport transport = this.channelTransport;
+        if (transport != null && transport.getSocket() != socket) {
+            this.channelTransport = null;
+            transport.release();
+        }
         this.socketHolder.set(socket);
         this.inBuffer.bind(null);
         this.outbuffer.bind(null);
@@ -187,7 +260,7 @@ public class BHttpConnectionBase implements HttpInetConnection {
             final long len,
             final SessionOutputBuffer outbuffer) {
         if (len == ContentLengthStrategy.CHUNKED) {
-            return new ChunkedOutputStream(2048, outbuffer);
+            return new ChunkedOutputStream(2048, 32 * 1024, outbuffer);
         } else if (len == ContentLengthStrategy.IDENTITY) {
             return new IdentityOutputStream(outbuffer);
         } else {
@@ -305,6 +378,17 @@ public class BHttpConnectionBase implements HttpInetConnection {
             } catch (final IOException ex) {
             } finally {
                 socket.close();
+                closeChannelTransport();
+            }
+        }
+    }
+
+    private void closeChannelTransport() {
+        final SocketChannelTransport transport = this.channelTransport;
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (final IOException ignore) {
             }
         }
     }
@@ -330,11 +414,21 @@ public class BHttpConnectionBase implements HttpInetConnection {
                 }
             } finally {
                 socket.close();
+                closeChannelTransport();
             }
         }
     }
 
     private int fillInputBuffer(final int timeout) throws IOException {
+        final SocketChannelTransport transport = this.channelTransport;
+        if (transport != null && !transport.isReleased()) {
+            transport.setReadTimeout(timeout);
+            try {
+                return this.inBuffer.fillBuffer();
+            } finally {
+                transport.setReadTimeout(-1);
+            }
+        }
         final Socket socket = this.socketHolder.get();
         final int oldtimeout = socket.getSoTimeout();
         try {
@@ -358,6 +452,13 @@ public class BHttpConnectionBase implements HttpInetConnection {
         if (!isOpen()) {
             return true;
         }
+        if (this.inBuffer.hasBufferedData()) {
+            return false;
+        }
+        final Socket socket = this.socketHolder.get();
+        if (socket == null || socket.isInputShutdown()) {
+            return true;
+        }
         try {
             final int bytesRead = fillInputBuffer(1);
             return bytesRead < 0;
@@ -0,0 +1,95 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.bootstrap;
+
+import java.lang.reflect.Method;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Access to TLS application layer protocol negotiation (ALPN), which is
+ * only available as of Java 9 and later Java 8 updates.
+ *
+ * @since 4.4.15
+ */
+final class AlpnSupport {
+
+    private static final Method SET_APPLICATION_PROTOCOLS = getMethod(
+            SSLParameters.class, "setApplicationProtocols", String[].class);
+    private static final Method GET_APPLICATION_PROTOCOL = getMethod(
+            SSLSocket.class, "getApplicationProtocol");
+
+    private AlpnSupport() {
+    }
+
+    private static Method getMethod(final Class<?> clazz, final String name, final Class<?>... parameterTypes) {
+        try {
+            return clazz.getMethod(name, parameterTypes);
+        } catch (final NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Sets the application protocols accepted by sockets of the given server
+     * socket in order of preference.
+     *
+     * @return {@code true} if ALPN is supported by the JRE.
+     */
+    static boolean setApplicationProtocols(final SSLServerSocket serverSocket, final String... protocols) {
+        if (SET_APPLICATION_PROTOCOLS == null || GET_APPLICATION_PROTOCOL == null) {
+            return false;
+        }
+        final SSLParameters sslParameters = serverSocket.getSSLParameters();
+        try {
+            SET_APPLICATION_PROTOCOLS.invoke(sslParameters, (Object) protocols);
+        } catch (final Exception ex) {
+            return false;
+        }
+        serverSocket.setSSLParameters(sslParameters);
+        return true;
+    }
+
+    /**
+     * Returns the application protocol selected during the handshake
+     * or {@code null} if none has been.
+     */
+    static String getApplicationProtocol(final SSLSocket socket) {
+        if (GET_APPLICATION_PROTOCOL == null) {
+            return null;
+        }
+        try {
+            final String protocol = (String) GET_APPLICATION_PROTOCOL.invoke(socket);
+            return protocol != null && !protocol.isEmpty() ? protocol : null;
+        } catch (final Exception ex) {
+            return null;
+        }
+    }
+
+}
@@ -40,7 +40,7 @@ import javax.net.ssl.SSLServerSocket;
 
 import org.kodtik.innovations.http.ExceptionLogger;
 import org.kodtik.innovations.http.HttpConnectionFactory;
-import org.kodtik.innovations.http.HttpServerConnection;
+import org.kodtik.innovations.http.config.H2Config;
 import org.kodtik.innovations.http.config.SocketConfig;
 import org.kodtik.innovations.http.impl.DefaultBHttpServerConnection;
 import org.kodtik.innovations.http.protocol.HttpService;
@@ -59,6 +59,7 @@ public class HttpServer {
     private final HttpService httpService;
     private final HttpConnectionFactory<? extends DefaultBHttpServerConnection> connectionFactory;
     private final SSLServerSetupHandler sslSetupHandler;
+    private final H2Config h2Config;
     private final ExceptionLogger exceptionLogger;
     private final ThreadPoolExecutor listenerExecutorService;
     private final ThreadGroup workerThreads;
@@ -76,6 +77,7 @@ public class HttpServer {
             final HttpService httpService,
             final HttpConnectionFactory<? extends DefaultBHttpServerConnection> connectionFactory,
             final SSLServerSetupHandler sslSetupHandler,
+            final H2Config h2Config,
             final ExceptionLogger exceptionLogger) {
         this.port = port;
         this.ifAddress = ifAddress;
@@ -84,6 +86,7 @@ public class HttpServer {
         this.httpService = httpService;
         this.connectionFactory = connectionFactory;
         this.sslSetupHandler = sslSetupHandler;
+        this.h2Config = h2Config;
         this.exceptionLogger = exceptionLogger;
         this.listenerExecutorService = new ThreadPoolExecutor(
                 1, 1, 0L, TimeUnit.MILLISECONDS,
@@ -115,6 +118,10 @@ public class HttpServer {
             if (this.socketConfig.getRcvBufSize() > 0) {
                 this.serverSocket.setReceiveBufferSize(this.socketConfig.getRcvBufSize());
             }
+            if (this.h2Config != null && this.serverSocket instanceof SSLServerSocket) {
+                // Offered before the setup handler gets to customize the protocols
+                AlpnSupport.setApplicationProtocols((SSLServerSocket) this.serverSocket, "h2", "http/1.1");
+            }
             if (this.sslSetupHandler != null && this.serverSocket instanceof SSLServerSocket) {
                 this.sslSetupHandler.initialize((SSLServerSocket) this.serverSocket);
             }
@@ -123,6 +130,7 @@ public class HttpServer {
                     this.serverSocket,
                     this.httpService,
                     this.connectionFactory,
+                    this.h2Config,
                     this.exceptionLogger,
                     this.workerExecutorService);
             this.listenerExecutorService.execute(this.requestListener);
@@ -160,9 +168,8 @@ public class HttpServer {
         }
         final Set<Worker> workers = this.workerExecutorService.getWorkers();
         for (final Worker worker: workers) {
-            final HttpServerConnection conn = worker.getConnection();
             try {
-                conn.shutdown();
+                worker.shutdown();
             } catch (final IOException ex) {
                 this.exceptionLogger.log(ex);
             }
@@ -0,0 +1,334 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.bootstrap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Connected socket whose input starts with bytes that have already been read
+ * from it, used to hand a connection over to HTTP/1.1 after having looked
+ * for the HTTP/2 connection preface. All operations are delegated to the
+ * original socket.
+ *
+ * @since 4.4.15
+ */
+class PushbackSocket extends Socket {
+
+    private final Socket socket;
+    private final InputStream inputStream;
+
+    PushbackSocket(final Socket socket, final byte[] b, final int len) throws IOException {
+        super();
+        this.socket = socket;
+        this.inputStream = new PrefixedInputStream(b, len, socket.getInputStream());
+    }
+
+    @Override
+    public void connect(final SocketAddress endpoint) throws IOException {
+        throw new SocketException("Socket already connected");
+    }
+
+    @Override
+    public void connect(final SocketAddress endpoint, final int timeout) throws IOException {
+        throw new SocketException("Socket already connected");
+    }
+
+    @Override
+    public void bind(final SocketAddress bindpoint) throws IOException {
+        throw new SocketException("Socket already bound");
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+        return this.socket.getInetAddress();
+    }
+
+    @Override
+    public InetAddress getLocalAddress() {
+        return this.socket.getLocalAddress();
+    }
+
+    @Override
+    public int getPort() {
+        return this.socket.getPort();
+    }
+
+    @Override
+    public int getLocalPort() {
+        return this.socket.getLocalPort();
+    }
+
+    @Override
+    public SocketAddress getRemoteSocketAddress() {
+        return this.socket.getRemoteSocketAddress();
+    }
+
+    @Override
+    public SocketAddress getLocalSocketAddress() {
+        return this.socket.getLocalSocketAddress();
+    }
+
+    @Override
+    public SocketChannel getChannel() {
+        // Channel I/O would bypass the pushed back bytes
+        return null;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        if (isClosed()) {
+            throw new SocketException("Socket is closed");
+        }
+        return this.inputStream;
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return this.socket.getOutputStream();
+    }
+
+    @Override
+    public void setTcpNoDelay(final boolean on) throws SocketException {
+        this.socket.setTcpNoDelay(on);
+    }
+
+    @Override
+    public boolean getTcpNoDelay() throws SocketException {
+        return this.socket.getTcpNoDelay();
+    }
+
+    @Override
+    public void setSoLinger(final boolean on, final int linger) throws SocketException {
+        this.socket.setSoLinger(on, linger);
+    }
+
+    @Override
+    public int getSoLinger() throws SocketException {
+        return this.socket.getSoLinger();
+    }
+
+    @Override
+    public void sendUrgentData(final int data) throws IOException {
+        this.socket.sendUrgentData(data);
+    }
+
+    @Override
+    public void setOOBInline(final boolean on) throws SocketException {
+        this.socket.setOOBInline(on);
+    }
+
+    @Override
+    public boolean getOOBInline() throws SocketException {
+        return this.socket.getOOBInline();
+    }
+
+    @Override
+    public void setSoTimeout(final int timeout) throws SocketException {
+        this.socket.setSoTimeout(timeout);
+    }
+
+    @Override
+    public int getSoTimeout() throws SocketException {
+        return this.socket.getSoTimeout();
+    }
+
+    @Override
+    public void setSendBufferSize(final int size) throws SocketException {
+        this.socket.setSendBufferSize(size);
+    }
+
+    @Override
+    public int getSendBufferSize() throws SocketException {
+        return this.socket.getSendBufferSize();
+    }
+
+    @Override
+    public void setReceiveBufferSize(final int size) throws SocketException {
+        this.socket.setReceiveBufferSize(size);
+    }
+
+    @Override
+    public int getReceiveBufferSize() throws SocketException {
+        return this.socket.getReceiveBufferSize();
+    }
+
+    @Override
+    public void setKeepAlive(final boolean on) throws SocketException {
+        this.socket.setKeepAlive(on);
+    }
+
+    @Override
+    public boolean getKeepAlive() throws SocketException {
+        return this.socket.getKeepAlive();
+    }
+
+    @Override
+    public void setTrafficClass(final int tc) throws SocketException {
+        this.socket.setTrafficClass(tc);
+    }
+
+    @Override
+    public int getTrafficClass() throws SocketException {
+        return this.socket.getTrafficClass();
+    }
+
+    @Override
+    public void setReuseAddress(final boolean on) throws SocketException {
+        this.socket.setReuseAddress(on);
+    }
+
+    @Override
+    public boolean getReuseAddress() throws SocketException {
+        return this.socket.getReuseAddress();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.socket.close();
+    }
+
+    @Override
+    public void shutdownInput() throws IOException {
+        this.socket.shutdownInput();
+    }
+
+    @Override
+    public void shutdownOutput() throws IOException {
+        this.socket.shutdownOutput();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return this.socket.isConnected();
+    }
+
+    @Override
+    public boolean isBound() {
+        return this.socket.isBound();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return this.socket.isClosed();
+    }
+
+    @Override
+    public boolean isInputShutdown() {
+        return this.socket.isInputShutdown();
+    }
+
+    @Override
+    public boolean isOutputShutdown() {
+        return this.socket.isOutputShutdown();
+    }
+
+    @Override
+    public void setPerformancePreferences(final int connectionTime, final int latency, final int bandwidth) {
+        this.socket.setPerformancePreferences(connectionTime, latency, bandwidth);
+    }
+
+    @Override
+    public String toString() {
+        return this.socket.toString();
+    }
+
+    /**
+     * Returns the pushed back bytes before reading from the socket. Unlike
+     * {@link java.io.PushbackInputStream}, a read that can be satisfied from
+     * the pushed back bytes returns without reading from the socket, which
+     * would block if the client has sent nothing more, as with a short
+     * request waiting for its response.
+     */
+    static class PrefixedInputStream extends InputStream {
+
+        private final byte[] prefix;
+        private final int limit;
+        private final InputStream inStream;
+        private int pos;
+
+        PrefixedInputStream(final byte[] prefix, final int limit, final InputStream inStream) {
+            super();
+            this.prefix = prefix;
+            this.limit = limit;
+            this.inStream = inStream;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (this.pos < this.limit) {
+                return this.prefix[this.pos++] & 0xff;
+            }
+            return this.inStream.read();
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (this.pos < this.limit) {
+                if (len == 0) {
+                    return 0;
+                }
+                final int n = Math.min(len, this.limit - this.pos);
+                System.arraycopy(this.prefix, this.pos, b, off, n);
+                this.pos += n;
+                return n;
+            }
+            return this.inStream.read(b, off, len);
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            if (this.pos < this.limit) {
+                final int skipped = (int) Math.min(Math.max(n, 0), this.limit - this.pos);
+                this.pos += skipped;
+                return skipped;
+            }
+            return this.inStream.skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (this.pos < this.limit) {
+                return this.limit - this.pos;
+            }
+            return this.inStream.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.inStream.close();
+        }
+
+    }
+
+}
@@ -35,6 +35,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import org.kodtik.innovations.http.ExceptionLogger;
 import org.kodtik.innovations.http.HttpConnectionFactory;
 import org.kodtik.innovations.http.HttpServerConnection;
+import org.kodtik.innovations.http.config.H2Config;
 import org.kodtik.innovations.http.config.SocketConfig;
 import org.kodtik.innovations.http.protocol.HttpService;
 
@@ -47,6 +48,7 @@ class RequestListener implements Runnable {
     private final ServerSocket serversocket;
     private final HttpService httpService;
     private final HttpConnectionFactory<? extends HttpServerConnection> connectionFactory;
+    private final H2Config h2Config;
     private final ExceptionLogger exceptionLogger;
     private final ExecutorService executorService;
     private final AtomicBoolean terminated;
@@ -56,11 +58,13 @@ class RequestListener implements Runnable {
             final ServerSocket serversocket,
             final HttpService httpService,
             final HttpConnectionFactory<? extends HttpServerConnection> connectionFactory,
+            final H2Config h2Config,
             final ExceptionLogger exceptionLogger,
             final ExecutorService executorService) {
         this.socketConfig = socketConfig;
         this.serversocket = serversocket;
         this.connectionFactory = connectionFactory;
+        this.h2Config = h2Config;
         this.httpService = httpService;
         this.exceptionLogger = exceptionLogger;
         this.executorService = executorService;
@@ -84,8 +88,15 @@ class RequestListener implements Runnable {
                 if (this.socketConfig.getSoLinger() >= 0) {
                     socket.setSoLinger(true, this.socketConfig.getSoLinger());
                 }
-                final HttpServerConnection conn = this.connectionFactory.createConnection(socket);
-                final Worker worker = new Worker(this.httpService, conn, this.exceptionLogger);
+                final Worker worker;
+                if (this.h2Config != null) {
+                    // The protocol is selected by the worker as it may block
+                    worker = new Worker(this.httpService, socket, this.connectionFactory, this.h2Config,
+                            this.executorService, this.exceptionLogger);
+                } else {
+                    final HttpServerConnection conn = this.connectionFactory.createConnection(socket);
+                    worker = new Worker(this.httpService, conn, this.exceptionLogger);
+                }
                 this.executorService.execute(worker);
             }
         } catch (final Exception ex) {
@@ -41,6 +41,7 @@ import org.kodtik.innovations.http.HttpRequestInterceptor;
 import org.kodtik.innovations.http.HttpResponseFactory;
 import org.kodtik.innovations.http.HttpResponseInterceptor;
 import org.kodtik.innovations.http.config.ConnectionConfig;
+import org.kodtik.innovations.http.config.H2Config;
 import org.kodtik.innovations.http.config.SocketConfig;
 import org.kodtik.innovations.http.impl.DefaultBHttpServerConnection;
 import org.kodtik.innovations.http.impl.DefaultBHttpServerConnectionFactory;
@@ -81,6 +82,7 @@ public class ServerBootstrap {
     private ServerSocketFactory serverSocketFactory;
     private SSLContext sslContext;
     private SSLServerSetupHandler sslSetupHandler;
+    private H2Config h2Config;
     private HttpConnectionFactory<? extends DefaultBHttpServerConnection> connectionFactory;
     private ExceptionLogger exceptionLogger;
 
@@ -323,6 +325,27 @@ public class ServerBootstrap {
         return this;
     }
 
+    /**
+     * Enables HTTP/2 with the given configuration. HTTP/2 is disabled by default.
+     * <p>
+     * With HTTP/2 enabled, TLS connections offer {@code h2} and {@code http/1.1}
+     * via ALPN (the {@link SSLServerSetupHandler} may change the protocols offered)
+     * and plain connections accept HTTP/2 from clients with prior knowledge.
+     * Any other connection is served using HTTP/1.1. Each HTTP/2 stream is
+     * dispatched to the request handlers on a worker thread of its own.
+     * Clients sending header blocks larger than the maximum header list size
+     * of the configuration, or 64 KiB if it sets none, are disconnected.
+     * </p>
+     *
+     * @return this
+     *
+     * @since 4.4.15
+     */
+    public final ServerBootstrap setH2Config(final H2Config h2Config) {
+        this.h2Config = h2Config;
+        return this;
+    }
+
     /**
      * Assigns {@link javax.net.ServerSocketFactory} instance.
      *
@@ -453,6 +476,7 @@ public class ServerBootstrap {
                 httpService,
                 connectionFactoryCopy,
                 this.sslSetupHandler,
+                this.h2Config,
                 exceptionLoggerCopy);
     }
 
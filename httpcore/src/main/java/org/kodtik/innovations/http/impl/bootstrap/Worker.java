@@ -27,9 +27,23 @@
 package org.kodtik.innovations.http.impl.bootstrap;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
+import javax.net.ssl.SSLSocket;
+
+import org.kodtik.innovations.http.ConnectionClosedException;
+import org.kodtik.innovations.http.Consts;
 import org.kodtik.innovations.http.ExceptionLogger;
+import org.kodtik.innovations.http.HttpConnection;
+import org.kodtik.innovations.http.HttpConnectionFactory;
+import org.kodtik.innovations.http.HttpException;
 import org.kodtik.innovations.http.HttpServerConnection;
+import org.kodtik.innovations.http.config.H2Config;
+import org.kodtik.innovations.http.impl.h2.H2ServerConnection;
+import org.kodtik.innovations.http.impl.h2.H2ServerStream;
 import org.kodtik.innovations.http.protocol.BasicHttpContext;
 import org.kodtik.innovations.http.protocol.HttpCoreContext;
 import org.kodtik.innovations.http.protocol.HttpService;
@@ -39,9 +53,15 @@ import org.kodtik.innovations.http.protocol.HttpService;
  */
 class Worker implements Runnable {
 
+    private static final byte[] H2_PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(Consts.ASCII);
+
     private final HttpService httpservice;
-    private final HttpServerConnection conn;
     private final ExceptionLogger exceptionLogger;
+    private final Socket socket;
+    private final HttpConnectionFactory<? extends HttpServerConnection> connectionFactory;
+    private final H2Config h2Config;
+    private final Executor streamExecutor;
+    private volatile HttpConnection conn;
 
     Worker(
             final HttpService httpservice,
@@ -51,27 +71,164 @@ class Worker implements Runnable {
         this.httpservice = httpservice;
         this.conn = conn;
         this.exceptionLogger = exceptionLogger;
+        this.socket = null;
+        this.connectionFactory = null;
+        this.h2Config = null;
+        this.streamExecutor = null;
     }
 
-    public HttpServerConnection getConnection() {
+    /**
+     * Creates a worker that selects HTTP/2 or HTTP/1.1 for the given socket
+     * and executes HTTP/2 streams with the given executor.
+     *
+     * @since 4.4.15
+     */
+    Worker(
+            final HttpService httpservice,
+            final Socket socket,
+            final HttpConnectionFactory<? extends HttpServerConnection> connectionFactory,
+            final H2Config h2Config,
+            final Executor streamExecutor,
+            final ExceptionLogger exceptionLogger) {
+        super();
+        this.httpservice = httpservice;
+        this.exceptionLogger = exceptionLogger;
+        this.socket = socket;
+        this.connectionFactory = connectionFactory;
+        this.h2Config = h2Config;
+        this.streamExecutor = streamExecutor;
+    }
+
+    /**
+     * Returns the connection served by this worker or {@code null} if the
+     * protocol has not been selected yet.
+     */
+    public HttpConnection getConnection() {
         return this.conn;
     }
 
+    /**
+     * Shuts down the connection served by this worker or, if the protocol
+     * has not been selected yet, its socket.
+     *
+     * @since 4.4.15
+     */
+    public void shutdown() throws IOException {
+        final HttpConnection local = this.conn;
+        if (local != null) {
+            local.shutdown();
+        } else if (this.socket != null) {
+            this.socket.close();
+        }
+    }
+
     @Override
     public void run() {
         try {
-            final BasicHttpContext localContext = new BasicHttpContext();
-            final HttpCoreContext context = HttpCoreContext.adapt(localContext);
-            while (!Thread.interrupted() && this.conn.isOpen()) {
-                this.httpservice.handleRequest(this.conn, context);
-                localContext.clear();
+            HttpConnection local = this.conn;
+            if (local == null) {
+                local = selectProtocol();
+                this.conn = local;
+            }
+            if (local instanceof H2ServerConnection) {
+                serveStreams((H2ServerConnection) local);
+            } else {
+                serveRequests((HttpServerConnection) local);
+            }
+        } catch (final Exception ex) {
+            this.exceptionLogger.log(ex);
+        } finally {
+            try {
+                shutdown();
+            } catch (final IOException ex) {
+                this.exceptionLogger.log(ex);
+            }
+        }
+    }
+
+    private HttpConnection selectProtocol() throws IOException {
+        if (this.socket instanceof SSLSocket) {
+            final SSLSocket sslSocket = (SSLSocket) this.socket;
+            sslSocket.startHandshake();
+            if ("h2".equals(AlpnSupport.getApplicationProtocol(sslSocket))) {
+                return startH2(sslSocket);
+            }
+            return this.connectionFactory.createConnection(sslSocket);
+        }
+        // Look for the preface of a client with prior knowledge of HTTP/2,
+        // which HTTP/1.1 request lines diverge from within a few bytes
+        final InputStream inStream = this.socket.getInputStream();
+        final byte[] b = new byte[H2_PREFACE.length];
+        int len = 0;
+        while (len < b.length) {
+            final int n = inStream.read(b, len, b.length - len);
+            if (n == -1) {
+                throw new ConnectionClosedException("Client closed connection");
+            }
+            final int end = len + n;
+            for (; len < end; len++) {
+                if (b[len] != H2_PREFACE[len]) {
+                    return this.connectionFactory.createConnection(new PushbackSocket(this.socket, b, end));
+                }
+            }
+        }
+        return startH2(new PushbackSocket(this.socket, b, len));
+    }
+
+    private H2ServerConnection startH2(final Socket h2Socket) throws IOException {
+        final H2ServerConnection h2conn = new H2ServerConnection(h2Socket, this.h2Config);
+        this.conn = h2conn;
+        h2conn.start();
+        return h2conn;
+    }
+
+    private void serveRequests(final HttpServerConnection conn) throws IOException, HttpException {
+        final BasicHttpContext localContext = new BasicHttpContext();
+        final HttpCoreContext context = HttpCoreContext.adapt(localContext);
+        while (!Thread.interrupted() && conn.isOpen()) {
+            this.httpservice.handleRequest(conn, context);
+            localContext.clear();
+        }
+        conn.close();
+    }
+
+    private void serveStreams(final H2ServerConnection conn) throws IOException {
+        try {
+            for (;;) {
+                final H2ServerStream stream = conn.acceptStream();
+                if (stream == null) {
+                    break;
+                }
+                try {
+                    this.streamExecutor.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            serveStream(stream);
+                        }
+
+                    });
+                } catch (final RejectedExecutionException ex) {
+                    stream.shutdown();
+                    break;
+                }
             }
-            this.conn.close();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        conn.close();
+    }
+
+    private void serveStream(final H2ServerStream stream) {
+        try {
+            final HttpCoreContext context = HttpCoreContext.create();
+            this.httpservice.handleRequest(stream, context);
+            stream.close();
         } catch (final Exception ex) {
             this.exceptionLogger.log(ex);
         } finally {
             try {
-                this.conn.shutdown();
+                stream.shutdown();
             } catch (final IOException ex) {
                 this.exceptionLogger.log(ex);
             }
@@ -0,0 +1,98 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.h2;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.kodtik.innovations.http.ConnectionClosedException;
+import org.kodtik.innovations.http.impl.io.HttpTransportMetricsImpl;
+
+/**
+ * Reads HTTP/2 frames from a blocking input stream.
+ */
+final class FrameInputBuffer {
+
+    static final int FRAME_HEAD_SIZE = 9;
+
+    private final InputStream inStream;
+    private final HttpTransportMetricsImpl metrics;
+    private final byte[] head;
+    private final int maxFrameSize;
+
+    FrameInputBuffer(final InputStream inStream, final HttpTransportMetricsImpl metrics, final int maxFrameSize) {
+        super();
+        this.inStream = inStream;
+        this.metrics = metrics;
+        this.head = new byte[FRAME_HEAD_SIZE];
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Reads exactly {@code len} bytes. Returns {@code false} if the end of stream
+     * has been reached before the first byte.
+     */
+    boolean readFully(final byte[] b, final int len, final boolean eofAllowed) throws IOException {
+        int off = 0;
+        while (off < len) {
+            final int n = this.inStream.read(b, off, len - off);
+            if (n < 0) {
+                if (off == 0 && eofAllowed) {
+                    return false;
+                }
+                throw new ConnectionClosedException("Premature end of HTTP/2 frame");
+            }
+            off += n;
+        }
+        this.metrics.incrementBytesTransferred(len);
+        return true;
+    }
+
+    /**
+     * Reads the next frame, blocking if necessary.
+     *
+     * @return the next frame or {@code null} if the opposite endpoint has
+     *   closed the connection at a frame boundary.
+     */
+    RawFrame read() throws IOException {
+        if (!readFully(this.head, FRAME_HEAD_SIZE, true)) {
+            return null;
+        }
+        final int length = ((this.head[0] & 0xff) << 16) | ((this.head[1] & 0xff) << 8) | (this.head[2] & 0xff);
+        final int type = this.head[3] & 0xff;
+        final int flags = this.head[4] & 0xff;
+        final int streamId = ((this.head[5] & 0x7f) << 24) | ((this.head[6] & 0xff) << 16)
+                | ((this.head[7] & 0xff) << 8) | (this.head[8] & 0xff);
+        if (length > this.maxFrameSize) {
+            throw new H2ConnectionException(H2Error.FRAME_SIZE_ERROR, "Frame size exceeds maximum: " + length);
+        }
+        final byte[] payload = new byte[length];
+        readFully(payload, length, false);
+        return new RawFrame(type, flags, streamId, payload);
+    }
+
+}
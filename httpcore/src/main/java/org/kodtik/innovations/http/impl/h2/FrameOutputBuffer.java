@@ -0,0 +1,109 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.h2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.kodtik.innovations.http.impl.io.HttpTransportMetricsImpl;
+
+/**
+ * Writes HTTP/2 frames to a blocking output stream. Frames are accumulated
+ * in an internal buffer until it is full or {@link #flush()} is called.
+ * <p>
+ * Instances of this class are not thread-safe; writers must serialize
+ * access externally.
+ * </p>
+ */
+final class FrameOutputBuffer {
+
+    private final OutputStream outStream;
+    private final HttpTransportMetricsImpl metrics;
+    private final byte[] buffer;
+    private int len;
+
+    FrameOutputBuffer(final OutputStream outStream, final HttpTransportMetricsImpl metrics, final int bufferSize) {
+        super();
+        this.outStream = outStream;
+        this.metrics = metrics;
+        this.buffer = new byte[bufferSize];
+    }
+
+    private void flushBuffer() throws IOException {
+        if (this.len > 0) {
+            this.outStream.write(this.buffer, 0, this.len);
+            this.metrics.incrementBytesTransferred(this.len);
+            this.len = 0;
+        }
+    }
+
+    void writeRaw(final byte[] b, final int off, final int n) throws IOException {
+        if (n > this.buffer.length - this.len) {
+            flushBuffer();
+            if (n >= this.buffer.length) {
+                this.outStream.write(b, off, n);
+                this.metrics.incrementBytesTransferred(n);
+                return;
+            }
+        }
+        System.arraycopy(b, off, this.buffer, this.len, n);
+        this.len += n;
+    }
+
+    void writeFrame(
+            final int type, final int flags, final int streamId,
+            final byte[] payload, final int off, final int length) throws IOException {
+        if (FrameInputBuffer.FRAME_HEAD_SIZE > this.buffer.length - this.len) {
+            flushBuffer();
+        }
+        final byte[] b = this.buffer;
+        int i = this.len;
+        b[i++] = (byte) (length >> 16);
+        b[i++] = (byte) (length >> 8);
+        b[i++] = (byte) length;
+        b[i++] = (byte) type;
+        b[i++] = (byte) flags;
+        b[i++] = (byte) ((streamId >> 24) & 0x7f);
+        b[i++] = (byte) (streamId >> 16);
+        b[i++] = (byte) (streamId >> 8);
+        b[i++] = (byte) streamId;
+        this.len = i;
+        if (length > 0) {
+            writeRaw(payload, off, length);
+        }
+    }
+
+    void writeFrame(final int type, final int flags, final int streamId, final byte[] payload) throws IOException {
+        writeFrame(type, flags, streamId, payload, 0, payload != null ? payload.length : 0);
+    }
+
+    void flush() throws IOException {
+        flushBuffer();
+        this.outStream.flush();
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.h2;
+
+import java.io.IOException;
+import java.net.Socket;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+import org.kodtik.innovations.http.config.H2Config;
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * Client side HTTP/2 connection. Message exchanges are executed over
+ * {@link H2ClientStream}s, any number of which may be active concurrently
+ * up to the limit imposed by the server.
+ * <p>
+ * The connection does not negotiate the protocol. The socket must either be
+ * a TLS socket with {@code h2} selected by ALPN or a plain socket connected
+ * to a server known to support HTTP/2 over cleartext TCP (prior knowledge).
+ * </p>
+ *
+ * @since 4.4.15
+ */
+public class H2ClientConnection extends H2ConnectionBase {
+
+    private final String scheme;
+
+    public H2ClientConnection(final Socket socket, final H2Config config) throws IOException {
+        super(Args.notNull(socket, "Socket"), config, true);
+        this.scheme = socket instanceof SSLSocket ? "https" : "http";
+    }
+
+    /**
+     * Sends the connection preface and the local settings, and starts
+     * the connection reader thread.
+     */
+    public void start() throws IOException {
+        final Socket socket = getSocket();
+        socket.setSoTimeout(0);
+        writePreface();
+        start("h2-client " + socket.getRemoteSocketAddress());
+    }
+
+    /**
+     * Returns the request scheme implied by the connection transport.
+     */
+    public String getScheme() {
+        return this.scheme;
+    }
+
+    /**
+     * Returns the TLS session of the connection or {@code null} if the
+     * connection is not secure.
+     */
+    public SSLSession getSSLSession() {
+        final Socket socket = getSocket();
+        return socket instanceof SSLSocket ? ((SSLSocket) socket).getSession() : null;
+    }
+
+    /**
+     * Creates a connection object for the execution of a single message
+     * exchange over a new stream. The stream is opened by the first request
+     * sent and released when the returned object is closed.
+     */
+    public H2ClientStream createStream() {
+        return new H2ClientStream(this);
+    }
+
+    @Override
+    final void onPeerStream(final H2Stream stream) throws IOException {
+        throw new H2ConnectionException(H2Error.PROTOCOL_ERROR, "Stream " + stream.getId() + " opened by server");
+    }
+
+    @Override
+    final void onTerminated() {
+        onClosed();
+    }
+
+    /**
+     * Invoked once the connection has been closed either by the local or
+     * the opposite endpoint, or due to an I/O error. Invoked by the
+     * connection reader thread.
+     */
+    protected void onClosed() {
+    }
+
+}
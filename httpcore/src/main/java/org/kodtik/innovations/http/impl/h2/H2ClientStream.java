@@ -0,0 +1,336 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.h2;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.kodtik.innovations.http.Header;
+import org.kodtik.innovations.http.HttpClientConnection;
+import org.kodtik.innovations.http.HttpConnectionMetrics;
+import org.kodtik.innovations.http.HttpEntity;
+import org.kodtik.innovations.http.HttpEntityEnclosingRequest;
+import org.kodtik.innovations.http.HttpException;
+import org.kodtik.innovations.http.HttpHeaders;
+import org.kodtik.innovations.http.HttpInetConnection;
+import org.kodtik.innovations.http.HttpRequest;
+import org.kodtik.innovations.http.HttpResponse;
+import org.kodtik.innovations.http.HttpVersion;
+import org.kodtik.innovations.http.ProtocolException;
+import org.kodtik.innovations.http.entity.BasicHttpEntity;
+import org.kodtik.innovations.http.impl.EnglishReasonPhraseCatalog;
+import org.kodtik.innovations.http.message.BasicHeader;
+import org.kodtik.innovations.http.message.BasicHttpResponse;
+import org.kodtik.innovations.http.message.BasicStatusLine;
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * {@link HttpClientConnection} executing a single message exchange over
+ * a stream of a shared {@link H2ClientConnection}. Closing or shutting down
+ * this connection only affects its stream: a stream that has not been
+ * completed is reset.
+ * <p>
+ * Requests are translated to HTTP/2 header blocks: the request line and
+ * the {@code Host} header are conveyed by pseudo-header fields and
+ * connection-specific header fields are dropped. Responses report
+ * {@link HttpVersion#HTTP_2_0} as their protocol version.
+ * </p>
+ *
+ * @since 4.4.15
+ */
+public class H2ClientStream implements HttpClientConnection, HttpInetConnection {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final H2ClientConnection connection;
+    private volatile H2Stream stream;
+    private volatile int socketTimeout;
+    private volatile boolean closed;
+
+    H2ClientStream(final H2ClientConnection connection) {
+        super();
+        this.connection = connection;
+        this.socketTimeout = connection.getSocketTimeout();
+    }
+
+    public H2ClientConnection getConnection() {
+        return this.connection;
+    }
+
+    /**
+     * Returns the stream identifier or {@code -1} if no request has been
+     * sent yet.
+     */
+    public int getStreamId() {
+        final H2Stream local = this.stream;
+        return local != null ? local.getId() : -1;
+    }
+
+    private H2Stream ensureStream() throws IOException {
+        final H2Stream local = this.stream;
+        if (local == null) {
+            throw new IllegalStateException("Request not sent");
+        }
+        return local;
+    }
+
+    static boolean isConnectionSpecific(final String name) {
+        return name.equals("connection")
+                || name.equals("keep-alive")
+                || name.equals("proxy-connection")
+                || name.equals("transfer-encoding")
+                || name.equals("upgrade")
+                || name.equals("host");
+    }
+
+    static List<Header> toHeaderList(final HttpRequest request, final String defaultScheme, final String defaultAuthority)
+            throws ProtocolException {
+        final String method = request.getRequestLine().getMethod();
+        final String uri = request.getRequestLine().getUri();
+        final Header[] headers = request.getAllHeaders();
+        final List<Header> list = new ArrayList<Header>(headers.length + 4);
+        list.add(new BasicHeader(":method", method));
+        if ("CONNECT".equalsIgnoreCase(method)) {
+            list.add(new BasicHeader(":authority", uri));
+        } else {
+            String scheme = defaultScheme;
+            String authority = null;
+            String path = uri;
+            final int i = uri.indexOf("://");
+            if (i > 0 && uri.charAt(0) != '/') {
+                scheme = uri.substring(0, i);
+                final int start = i + 3;
+                int end = start;
+                while (end < uri.length() && uri.charAt(end) != '/' && uri.charAt(end) != '?') {
+                    end++;
+                }
+                authority = uri.substring(start, end);
+                path = end < uri.length() ? uri.substring(end) : "/";
+                if (path.charAt(0) == '?') {
+                    path = "/" + path;
+                }
+            }
+            if (authority == null) {
+                final Header host = request.getFirstHeader(HttpHeaders.HOST);
+                authority = host != null ? host.getValue() : defaultAuthority;
+            }
+            if (path.isEmpty()) {
+                path = "/";
+            }
+            list.add(new BasicHeader(":scheme", scheme));
+            if (authority != null) {
+                list.add(new BasicHeader(":authority", authority));
+            }
+            list.add(new BasicHeader(":path", path));
+        }
+        for (final Header header: headers) {
+            final String name = header.getName().toLowerCase(Locale.ROOT);
+            if (name.isEmpty() || name.charAt(0) == ':') {
+                throw new ProtocolException("Invalid header name: " + header.getName());
+            }
+            if (isConnectionSpecific(name)) {
+                continue;
+            }
+            if (name.equals("te") && !header.getValue().equalsIgnoreCase("trailers")) {
+                continue;
+            }
+            // toLowerCase returns the very same instance if the name is in lower case already
+            list.add(name == header.getName() ? header : new BasicHeader(name, header.getValue()));
+        }
+        return list;
+    }
+
+    @Override
+    public void sendRequestHeader(final HttpRequest request) throws HttpException, IOException {
+        Args.notNull(request, "HTTP request");
+        if (this.closed) {
+            throw new IOException("Stream already closed");
+        }
+        if (this.stream != null) {
+            throw new IllegalStateException("Request already sent over this stream");
+        }
+        final InetAddress remote = this.connection.getRemoteAddress();
+        final List<Header> headers = toHeaderList(request, this.connection.getScheme(),
+                remote != null ? remote.getHostName() + ":" + this.connection.getRemotePort() : null);
+        final HttpEntity entity = request instanceof HttpEntityEnclosingRequest
+                ? ((HttpEntityEnclosingRequest) request).getEntity() : null;
+        this.stream = this.connection.openStream(headers, entity == null, this.socketTimeout);
+    }
+
+    @Override
+    public void sendRequestEntity(final HttpEntityEnclosingRequest request) throws HttpException, IOException {
+        Args.notNull(request, "HTTP request");
+        final H2Stream local = ensureStream();
+        final HttpEntity entity = request.getEntity();
+        if (entity == null || local.isLocalClosed()) {
+            return;
+        }
+        final H2StreamOutputStream outStream = new H2StreamOutputStream(
+                this.connection, local, BUFFER_SIZE, entity.getContentLength(), this.socketTimeout);
+        entity.writeTo(outStream);
+        outStream.close();
+    }
+
+    @Override
+    public boolean isResponseAvailable(final int timeout) throws IOException {
+        final H2Stream local = this.stream;
+        return local != null && local.awaitHeaders(timeout);
+    }
+
+    @Override
+    public HttpResponse receiveResponseHeader() throws HttpException, IOException {
+        final H2Stream local = ensureStream();
+        final List<Header> headers = local.takeHeaders(this.socketTimeout);
+        String status = null;
+        final List<Header> fields = new ArrayList<Header>(headers.size());
+        for (int i = 0; i < headers.size(); i++) {
+            final Header header = headers.get(i);
+            final String name = header.getName();
+            if (name.startsWith(":")) {
+                if (!name.equals(":status") || status != null || !fields.isEmpty()) {
+                    throw new ProtocolException("Invalid response pseudo header: " + name);
+                }
+                status = header.getValue();
+            } else {
+                fields.add(header);
+            }
+        }
+        if (status == null) {
+            throw new ProtocolException("Missing response status");
+        }
+        final int code;
+        try {
+            code = Integer.parseInt(status);
+        } catch (final NumberFormatException ex) {
+            throw new ProtocolException("Invalid response status: " + status);
+        }
+        if (code < 100 || code > 599) {
+            throw new ProtocolException("Invalid response status: " + status);
+        }
+        final HttpResponse response = new BasicHttpResponse(new BasicStatusLine(
+                HttpVersion.HTTP_2_0, code, EnglishReasonPhraseCatalog.INSTANCE.getReason(code, null)));
+        response.setHeaders(fields.toArray(new Header[fields.size()]));
+        if (code >= 200) {
+            this.connection.incrementResponseCount();
+        }
+        return response;
+    }
+
+    @Override
+    public void receiveResponseEntity(final HttpResponse response) throws HttpException, IOException {
+        Args.notNull(response, "HTTP response");
+        final H2Stream local = ensureStream();
+        final BasicHttpEntity entity = new BasicHttpEntity();
+        long len = -1;
+        final Header contentLength = response.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+        if (contentLength != null) {
+            try {
+                len = Long.parseLong(contentLength.getValue());
+            } catch (final NumberFormatException ex) {
+                throw new ProtocolException("Invalid content length: " + contentLength.getValue());
+            }
+        }
+        entity.setContentLength(len);
+        entity.setContent(new H2StreamInputStream(this.connection, local, this.socketTimeout));
+        entity.setContentType(response.getFirstHeader(HttpHeaders.CONTENT_TYPE));
+        entity.setContentEncoding(response.getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+        response.setEntity(entity);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.connection.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        shutdown();
+    }
+
+    @Override
+    public void shutdown() throws IOException {
+        this.closed = true;
+        final H2Stream local = this.stream;
+        if (local != null) {
+            this.connection.releaseStream(local);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !this.closed && this.connection.isOpen();
+    }
+
+    @Override
+    public boolean isStale() {
+        return !isOpen() || (this.stream == null && this.connection.isShuttingDown());
+    }
+
+    @Override
+    public void setSocketTimeout(final int timeout) {
+        this.socketTimeout = timeout;
+    }
+
+    @Override
+    public int getSocketTimeout() {
+        return this.socketTimeout;
+    }
+
+    @Override
+    public HttpConnectionMetrics getMetrics() {
+        return this.connection.getMetrics();
+    }
+
+    @Override
+    public InetAddress getLocalAddress() {
+        return this.connection.getLocalAddress();
+    }
+
+    @Override
+    public int getLocalPort() {
+        return this.connection.getLocalPort();
+    }
+
+    @Override
+    public InetAddress getRemoteAddress() {
+        return this.connection.getRemoteAddress();
+    }
+
+    @Override
+    public int getRemotePort() {
+        return this.connection.getRemotePort();
+    }
+
+    @Override
+    public String toString() {
+        return this.connection + " stream " + getStreamId();
+    }
+
+}
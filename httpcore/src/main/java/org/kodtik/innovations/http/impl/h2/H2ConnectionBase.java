@@ -0,0 +1,1198 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.h2;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.kodtik.innovations.http.ConnectionClosedException;
+import org.kodtik.innovations.http.Consts;
+import org.kodtik.innovations.http.Header;
+import org.kodtik.innovations.http.HttpConnectionMetrics;
+import org.kodtik.innovations.http.HttpInetConnection;
+import org.kodtik.innovations.http.config.H2Config;
+import org.kodtik.innovations.http.impl.HttpConnectionMetricsImpl;
+import org.kodtik.innovations.http.impl.io.HttpTransportMetricsImpl;
+import org.kodtik.innovations.http.util.ByteArrayBuffer;
+
+/**
+ * Base class for HTTP/2 connections multiplexing concurrent streams over
+ * a single blocking socket.
+ * <p>
+ * A dedicated reader thread reads frames off the socket, maintains the
+ * decoding context and flow control windows, and hands header blocks and
+ * data over to the streams they belong to. Threads executing message
+ * exchanges write their own frames, serialized by an output lock, and
+ * block on their streams for inbound messages.
+ * </p>
+ */
+abstract class H2ConnectionBase implements HttpInetConnection {
+
+    static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(Consts.ASCII);
+
+    static final int DEFAULT_WINDOW_SIZE = 65535;
+
+    private static final int DEFAULT_HEADER_BUFFER_SIZE = 1024;
+
+    /** Limit of a header block split across frames if no header list size limit is set. */
+    static final int DEFAULT_MAX_HEADER_BLOCK_SIZE = 64 * 1024;
+
+    private final Socket socket;
+    private final H2Config localConfig;
+    private final boolean client;
+    private final HttpTransportMetricsImpl inTransportMetrics;
+    private final HttpTransportMetricsImpl outTransportMetrics;
+    private final HttpConnectionMetricsImpl connMetrics;
+    private final FrameInputBuffer inBuffer;
+    private final FrameOutputBuffer outBuffer;
+    private final HPackEncoder encoder;
+    private final HPackDecoder decoder;
+    private final ConcurrentHashMap<Integer, H2Stream> streams;
+    private final int connWindowSize;
+    private final int maxHeaderBlockSize;
+
+    /** Guards the frame output buffer, the header buffer, the encoder and stream id allocation. */
+    private final Object outLock;
+    /** Guards send windows. */
+    private final Object windowLock;
+    /** Guards stream counts. */
+    private final Object streamLock;
+
+    private ByteArrayBuffer headerBuffer;
+    private long connSendWindow;
+    private int peerInitialWindowSize;
+    private int nextStreamId;
+    private int localStreamCount;
+    private int peerStreamCount;
+    private long idleSince;
+
+    private volatile int peerMaxFrameSize;
+    private volatile int peerMaxConcurrentStreams;
+    private volatile int peerMaxHeaderListSize;
+    private volatile int lastPeerStreamId;
+    private volatile boolean goAwayReceived;
+    private volatile boolean goAwaySent;
+    private volatile boolean closed;
+    private volatile int socketTimeout;
+
+    // reader thread only
+    private int connRecvWindow;
+    private int connRecvUnacked;
+    private int continuationStreamId;
+    private boolean continuationEndStream;
+    private ByteArrayBuffer continuationBuffer;
+
+    private Thread reader;
+
+    H2ConnectionBase(final Socket socket, final H2Config config, final boolean client) throws IOException {
+        super();
+        this.socket = socket;
+        this.localConfig = config != null ? config : H2Config.DEFAULT;
+        this.client = client;
+        this.inTransportMetrics = new HttpTransportMetricsImpl();
+        this.outTransportMetrics = new HttpTransportMetricsImpl();
+        this.connMetrics = new HttpConnectionMetricsImpl(this.inTransportMetrics, this.outTransportMetrics);
+        this.inBuffer = new FrameInputBuffer(
+                new BufferedInputStream(socket.getInputStream(), 16 * 1024),
+                this.inTransportMetrics,
+                this.localConfig.getMaxFrameSize());
+        this.outBuffer = new FrameOutputBuffer(
+                socket.getOutputStream(), this.outTransportMetrics, 16 * 1024 + FrameInputBuffer.FRAME_HEAD_SIZE);
+        this.encoder = new HPackEncoder(H2Config.DEFAULT_HEADER_TABLE_SIZE);
+        this.decoder = new HPackDecoder(this.localConfig.getHeaderTableSize(), this.localConfig.getMaxHeaderListSize());
+        this.headerBuffer = new ByteArrayBuffer(DEFAULT_HEADER_BUFFER_SIZE);
+        this.maxHeaderBlockSize = this.localConfig.getMaxHeaderListSize() > 0
+                ? this.localConfig.getMaxHeaderListSize() : DEFAULT_MAX_HEADER_BLOCK_SIZE;
+        this.streams = new ConcurrentHashMap<Integer, H2Stream>();
+        this.outLock = new Object();
+        this.windowLock = new Object();
+        this.streamLock = new Object();
+        this.connSendWindow = DEFAULT_WINDOW_SIZE;
+        this.peerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+        this.peerMaxFrameSize = H2Config.DEFAULT_MAX_FRAME_SIZE;
+        this.peerMaxConcurrentStreams = Integer.MAX_VALUE;
+        this.nextStreamId = client ? 1 : 2;
+        this.connWindowSize = (int) Math.min(H2Config.MAX_WINDOW_SIZE,
+                Math.max(DEFAULT_WINDOW_SIZE, 16L * this.localConfig.getInitialWindowSize()));
+        this.connRecvWindow = DEFAULT_WINDOW_SIZE;
+        this.idleSince = System.currentTimeMillis();
+    }
+
+    final Socket getSocket() {
+        return this.socket;
+    }
+
+    final H2Config getLocalConfig() {
+        return this.localConfig;
+    }
+
+    final boolean isLocalStream(final int streamId) {
+        return (streamId & 1) == (this.client ? 1 : 0);
+    }
+
+    final int getLastPeerStreamId() {
+        return this.lastPeerStreamId;
+    }
+
+    final int getPeerMaxHeaderListSize() {
+        return this.peerMaxHeaderListSize;
+    }
+
+    /**
+     * Writes the local settings and starts the reader thread. The client
+     * preface, if any, must have been written or read before.
+     */
+    final void start(final String threadName) throws IOException {
+        final H2Config config = this.localConfig;
+        final ByteArrayBuffer buf = new ByteArrayBuffer(36);
+        appendSetting(buf, FrameType.SETTINGS_HEADER_TABLE_SIZE, config.getHeaderTableSize());
+        appendSetting(buf, FrameType.SETTINGS_ENABLE_PUSH, 0);
+        appendSetting(buf, FrameType.SETTINGS_MAX_CONCURRENT_STREAMS, config.getMaxConcurrentStreams());
+        appendSetting(buf, FrameType.SETTINGS_INITIAL_WINDOW_SIZE, config.getInitialWindowSize());
+        appendSetting(buf, FrameType.SETTINGS_MAX_FRAME_SIZE, config.getMaxFrameSize());
+        if (config.getMaxHeaderListSize() > 0) {
+            appendSetting(buf, FrameType.SETTINGS_MAX_HEADER_LIST_SIZE, config.getMaxHeaderListSize());
+        }
+        synchronized (this.outLock) {
+            this.outBuffer.writeFrame(FrameType.SETTINGS, 0, 0, buf.buffer(), 0, buf.length());
+            if (this.connWindowSize > DEFAULT_WINDOW_SIZE) {
+                this.outBuffer.writeFrame(FrameType.WINDOW_UPDATE, 0, 0,
+                        intBytes(this.connWindowSize - DEFAULT_WINDOW_SIZE));
+            }
+            this.outBuffer.flush();
+        }
+        this.connRecvWindow = this.connWindowSize;
+        this.reader = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                readFrames();
+            }
+
+        }, threadName);
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    final void writePreface() throws IOException {
+        synchronized (this.outLock) {
+            this.outBuffer.writeRaw(PREFACE, 0, PREFACE.length);
+        }
+    }
+
+    final void readPreface() throws IOException {
+        final byte[] b = new byte[PREFACE.length];
+        if (!this.inBuffer.readFully(b, b.length, true)) {
+            throw new ConnectionClosedException("Connection closed before the HTTP/2 preface was received");
+        }
+        for (int i = 0; i < b.length; i++) {
+            if (b[i] != PREFACE[i]) {
+                throw new H2ConnectionException(H2Error.PROTOCOL_ERROR, "Invalid HTTP/2 preface");
+            }
+        }
+    }
+
+    private static void appendSetting(final ByteArrayBuffer buf, final int id, final int value) {
+        buf.append((id >> 8) & 0xff);
+        buf.append(id & 0xff);
+        buf.append((value >> 24) & 0xff);
+        buf.append((value >> 16) & 0xff);
+        buf.append((value >> 8) & 0xff);
+        buf.append(value & 0xff);
+    }
+
+    private static byte[] intBytes(final int value) {
+        return new byte[] { (byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value };
+    }
+
+    // ------------------------------------------------------------------ outbound
+
+    private void checkOpen() throws IOException {
+        if (this.closed) {
+            throw new ConnectionClosedException();
+        }
+    }
+
+    /**
+     * Writes a header block, splitting it into {@code CONTINUATION} frames
+     * as necessary. Must be called holding the output lock.
+     */
+    private void writeHeaders(final int streamId, final List<? extends Header> headers, final boolean endStream)
+            throws IOException {
+        final ByteArrayBuffer buf = this.headerBuffer;
+        buf.clear();
+        this.encoder.encodeHeaders(buf, headers);
+        final int maxFrameSize = this.peerMaxFrameSize;
+        int off = 0;
+        int type = FrameType.HEADERS;
+        do {
+            final int len = Math.min(maxFrameSize, buf.length() - off);
+            int flags = type == FrameType.HEADERS && endStream ? FrameType.FLAG_END_STREAM : 0;
+            if (off + len == buf.length()) {
+                flags |= FrameType.FLAG_END_HEADERS;
+            }
+            this.outBuffer.writeFrame(type, flags, streamId, buf.buffer(), off, len);
+            off += len;
+            type = FrameType.CONTINUATION;
+        } while (off < buf.length());
+        if (buf.capacity() > 64 * 1024) {
+            // Do not hold on to the buffer of an unusually large header block
+            this.headerBuffer = new ByteArrayBuffer(DEFAULT_HEADER_BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * Opens a new locally initiated stream by sending the given header
+     * block, waiting for the opposite endpoint to allow for another
+     * concurrent stream if necessary.
+     */
+    final H2Stream openStream(
+            final List<? extends Header> headers, final boolean endStream, final int timeout) throws IOException {
+        acquireStreamSlot(timeout);
+        boolean success = false;
+        try {
+            final H2Stream stream;
+            synchronized (this.outLock) {
+                checkOpen();
+                if (this.nextStreamId < 0) {
+                    throw new ConnectionClosedException("Stream identifiers exhausted");
+                }
+                final int streamId = this.nextStreamId;
+                this.nextStreamId += 2;
+                synchronized (this.windowLock) {
+                    stream = new H2Stream(streamId, this.peerInitialWindowSize, this.localConfig.getInitialWindowSize());
+                }
+                this.streams.put(Integer.valueOf(streamId), stream);
+                if (endStream) {
+                    stream.setLocalClosed();
+                }
+                writeHeaders(streamId, headers, endStream);
+            }
+            this.connMetrics.incrementRequestCount();
+            success = true;
+            return stream;
+        } finally {
+            if (!success) {
+                releaseStreamSlot();
+            }
+        }
+    }
+
+    /**
+     * Registers a stream initiated by the opposite endpoint.
+     */
+    final H2Stream registerPeerStream(final int streamId) {
+        final H2Stream stream;
+        synchronized (this.windowLock) {
+            stream = new H2Stream(streamId, this.peerInitialWindowSize, this.localConfig.getInitialWindowSize());
+        }
+        this.streams.put(Integer.valueOf(streamId), stream);
+        synchronized (this.streamLock) {
+            this.peerStreamCount++;
+            this.idleSince = 0;
+        }
+        return stream;
+    }
+
+    final void sendHeaders(final H2Stream stream, final List<? extends Header> headers, final boolean endStream)
+            throws IOException {
+        synchronized (this.outLock) {
+            checkOpen();
+            final IOException failure = stream.getFailure();
+            if (failure != null) {
+                throw failure;
+            }
+            writeHeaders(stream.getId(), headers, endStream);
+            if (endStream) {
+                stream.setLocalClosed();
+            }
+        }
+        if (endStream) {
+            completeIfDone(stream);
+        }
+    }
+
+    /**
+     * Sends data on the given stream honoring the connection and stream send
+     * windows. Blocks until the opposite endpoint has granted sufficient
+     * credit, flushing buffered frames before waiting.
+     */
+    final void sendData(
+            final H2Stream stream, final byte[] b, final int off, final int len,
+            final boolean endStream, final int timeout) throws IOException {
+        int pos = off;
+        int remaining = len;
+        while (remaining > 0) {
+            final int n = acquireCredit(stream, Math.min(remaining, this.peerMaxFrameSize), timeout);
+            if (n < 0) {
+                return;
+            }
+            final boolean last = endStream && n == remaining;
+            synchronized (this.outLock) {
+                checkOpen();
+                this.outBuffer.writeFrame(FrameType.DATA, last ? FrameType.FLAG_END_STREAM : 0,
+                        stream.getId(), b, pos, n);
+                if (last) {
+                    stream.setLocalClosed();
+                }
+            }
+            pos += n;
+            remaining -= n;
+        }
+        if (endStream) {
+            if (len == 0) {
+                synchronized (this.outLock) {
+                    checkOpen();
+                    if (!isDiscarded(stream)) {
+                        this.outBuffer.writeFrame(FrameType.DATA, FrameType.FLAG_END_STREAM, stream.getId(), null);
+                    }
+                    stream.setLocalClosed();
+                }
+            }
+            completeIfDone(stream);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the opposite endpoint has sent a complete
+     * response and reset the stream with {@code NO_ERROR}, asking the local
+     * endpoint to stop sending without that being an error.
+     */
+    private static boolean isDiscarded(final H2Stream stream) throws IOException {
+        final IOException failure = stream.getFailure();
+        if (failure == null) {
+            return false;
+        }
+        if (failure instanceof H2StreamResetException
+                && ((H2StreamResetException) failure).getCode() == H2Error.NO_ERROR.getCode()
+                && stream.isRemoteClosed()) {
+            return true;
+        }
+        throw failure;
+    }
+
+    private int acquireCredit(final H2Stream stream, final int requested, final int timeout) throws IOException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        boolean flushed = false;
+        for (;;) {
+            synchronized (this.windowLock) {
+                for (;;) {
+                    checkOpen();
+                    if (isDiscarded(stream)) {
+                        return -1;
+                    }
+                    final long credit = Math.min(Math.min(this.connSendWindow, stream.sendWindow), requested);
+                    if (credit > 0) {
+                        this.connSendWindow -= credit;
+                        stream.sendWindow -= credit;
+                        return (int) credit;
+                    }
+                    if (!flushed) {
+                        break;
+                    }
+                    try {
+                        if (timeout > 0) {
+                            final long remaining = deadline - System.currentTimeMillis();
+                            if (remaining <= 0) {
+                                throw new SocketTimeoutException("Timeout waiting for HTTP/2 flow control credit");
+                            }
+                            this.windowLock.wait(remaining);
+                        } else {
+                            this.windowLock.wait();
+                        }
+                    } catch (final InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+            }
+            flush();
+            flushed = true;
+        }
+    }
+
+    final void sendReset(final H2Stream stream, final H2Error error) throws IOException {
+        stream.fail(new H2StreamResetException(error, "Stream " + stream.getId() + " reset locally"));
+        removeStream(stream);
+        synchronized (this.outLock) {
+            checkOpen();
+            this.outBuffer.writeFrame(FrameType.RST_STREAM, 0, stream.getId(), intBytes(error.getCode()));
+            this.outBuffer.flush();
+        }
+    }
+
+    /**
+     * Releases the given stream once the local endpoint no longer needs it,
+     * resetting it unless the exchange has been completed.
+     */
+    final void releaseStream(final H2Stream stream) {
+        releaseStream(stream, H2Error.CANCEL);
+    }
+
+    final void releaseStream(final H2Stream stream, final H2Error error) {
+        if (!stream.release()) {
+            return;
+        }
+        stream.discard();
+        if (stream.isComplete()) {
+            removeStream(stream);
+            return;
+        }
+        try {
+            sendReset(stream, error);
+        } catch (final IOException ignore) {
+            removeStream(stream);
+        }
+    }
+
+    /**
+     * Credits data consumed from the given stream back to the opposite endpoint.
+     */
+    final void streamDataConsumed(final H2Stream stream) throws IOException {
+        final int credit = stream.takeCredit(this.localConfig.getInitialWindowSize() >> 1);
+        if (credit > 0) {
+            synchronized (this.outLock) {
+                if (this.closed) {
+                    return;
+                }
+                this.outBuffer.writeFrame(FrameType.WINDOW_UPDATE, 0, stream.getId(), intBytes(credit));
+                this.outBuffer.flush();
+            }
+        }
+    }
+
+    final void flush() throws IOException {
+        synchronized (this.outLock) {
+            checkOpen();
+            this.outBuffer.flush();
+        }
+    }
+
+    private void sendGoAway(final H2Error error) {
+        synchronized (this.outLock) {
+            if (this.goAwaySent || this.closed) {
+                return;
+            }
+            this.goAwaySent = true;
+            final byte[] payload = new byte[8];
+            final int last = this.lastPeerStreamId;
+            payload[0] = (byte) (last >> 24);
+            payload[1] = (byte) (last >> 16);
+            payload[2] = (byte) (last >> 8);
+            payload[3] = (byte) last;
+            final int code = error.getCode();
+            payload[4] = (byte) (code >> 24);
+            payload[5] = (byte) (code >> 16);
+            payload[6] = (byte) (code >> 8);
+            payload[7] = (byte) code;
+            try {
+                this.outBuffer.writeFrame(FrameType.GOAWAY, 0, 0, payload);
+                this.outBuffer.flush();
+            } catch (final IOException ignore) {
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------ stream accounting
+
+    private void acquireStreamSlot(final int timeout) throws IOException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        synchronized (this.streamLock) {
+            while (this.localStreamCount >= this.peerMaxConcurrentStreams) {
+                checkOpen();
+                if (this.goAwayReceived) {
+                    throw new ConnectionClosedException("Connection is shutting down");
+                }
+                try {
+                    if (timeout > 0) {
+                        final long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            throw new SocketTimeoutException("Timeout waiting for an HTTP/2 stream");
+                        }
+                        this.streamLock.wait(remaining);
+                    } else {
+                        this.streamLock.wait();
+                    }
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            checkOpen();
+            if (this.goAwayReceived) {
+                throw new ConnectionClosedException("Connection is shutting down");
+            }
+            this.localStreamCount++;
+            this.idleSince = 0;
+        }
+    }
+
+    private void releaseStreamSlot() {
+        synchronized (this.streamLock) {
+            this.localStreamCount--;
+            if (this.streams.isEmpty()) {
+                this.idleSince = System.currentTimeMillis();
+            }
+            this.streamLock.notifyAll();
+        }
+    }
+
+    final void completeIfDone(final H2Stream stream) {
+        if (stream.isComplete()) {
+            removeStream(stream);
+        }
+    }
+
+    private void removeStream(final H2Stream stream) {
+        final Integer key = Integer.valueOf(stream.getId());
+        if (this.streams.remove(key, stream)) {
+            if (isLocalStream(stream.getId())) {
+                releaseStreamSlot();
+            } else {
+                synchronized (this.streamLock) {
+                    this.peerStreamCount--;
+                    if (this.streams.isEmpty()) {
+                        this.idleSince = System.currentTimeMillis();
+                    }
+                }
+            }
+            if (this.goAwayReceived && this.streams.isEmpty()) {
+                shutdownQuietly();
+            }
+        }
+    }
+
+    private int getPeerStreamCount() {
+        synchronized (this.streamLock) {
+            return this.peerStreamCount;
+        }
+    }
+
+    /**
+     * Returns the number of streams currently open.
+     */
+    public int getStreamCount() {
+        return this.streams.size();
+    }
+
+    /**
+     * Returns the time in milliseconds since the last stream was closed or
+     * {@code 0} if there are streams open.
+     */
+    public long getIdleTime() {
+        synchronized (this.streamLock) {
+            return this.idleSince > 0 && this.streams.isEmpty()
+                    ? System.currentTimeMillis() - this.idleSince : 0;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the opposite endpoint will not accept new
+     * streams over this connection.
+     */
+    public boolean isShuttingDown() {
+        return this.goAwayReceived || this.goAwaySent || this.closed;
+    }
+
+    // ------------------------------------------------------------------ inbound
+
+    private void readFrames() {
+        IOException cause = null;
+        try {
+            for (;;) {
+                final RawFrame frame = this.inBuffer.read();
+                if (frame == null) {
+                    break;
+                }
+                handleFrame(frame);
+            }
+        } catch (final H2ConnectionException ex) {
+            sendGoAway(H2Error.getByCode(ex.getCode()) != null ? H2Error.getByCode(ex.getCode()) : H2Error.INTERNAL_ERROR);
+            cause = ex;
+        } catch (final IOException ex) {
+            cause = ex;
+        } catch (final RuntimeException ex) {
+            sendGoAway(H2Error.INTERNAL_ERROR);
+            cause = new IOException(ex.getMessage(), ex);
+        } finally {
+            if (cause == null) {
+                cause = new ConnectionClosedException("Connection closed by peer");
+            } else if (this.closed && !(cause instanceof H2ConnectionException)) {
+                cause = new ConnectionClosedException();
+            }
+            terminate(cause);
+        }
+    }
+
+    private void handleFrame(final RawFrame frame) throws IOException {
+        final int type = frame.getType();
+        final int streamId = frame.getStreamId();
+        if (this.continuationStreamId != 0
+                && (type != FrameType.CONTINUATION || streamId != this.continuationStreamId)) {
+            throw new H2ConnectionException(H2Error.PROTOCOL_ERROR, "CONTINUATION frame expected");
+        }
+        switch (type) {
+            case FrameType.DATA:
+                requireStream(frame);
+                handleData(frame);
+                break;
+            case FrameType.HEADERS:
+                requireStream(frame);
+                handleHeaders(frame);
+                break;
+            case FrameType.CONTINUATION:
+                if (this.continuationStreamId == 0) {
+                    throw new H2ConnectionException(H2Error.PROTOCOL_ERROR, "Unexpected CONTINUATION frame");
+                }
+                appendContinuation(frame.getPayload(), 0, frame.getLength());
+                if (frame.isFlagSet(FrameType.FLAG_END_HEADERS)) {
+                    final ByteArrayBuffer block = this.continuationBuffer;
+                    this.continuationStreamId = 0;
+                    this.continuationBuffer = null;
+                    processHeaderBlock(streamId, block.buffer(), 0, block.length(), this.continuationEndStream);
+                }
+                break;
+            case FrameType.PRIORITY:
+                requireStream(frame);
+                if (frame.getLength() != 5) {
+                    throw new H2ConnectionException(H2Error.FRAME_SIZE_ERROR, "Invalid PRIORITY frame");
+                }
+                break;
+            case FrameType.RST_STREAM:
+                requireStream(frame);
+                if (frame.getLength() != 4) {
+                    throw new H2ConnectionException(H2Error.FRAME_SIZE_ERROR, "Invalid RST_STREAM frame");
+                }
+                checkIdle(streamId);
+                final H2Stream reset = this.streams.get(Integer.valueOf(streamId));
+                if (reset != null) {
+                    final int code = frame.getInt(0);
+                    reset.fail(new H2StreamResetException(code,
+                            "Stream " + streamId + " reset by peer: " + H2Error.toString(code)));
+                    removeStream(reset);
+                    // Wake up senders waiting for credit on the stream
+                    synchronized (this.windowLock) {
+                        this.windowLock.notifyAll();
+                    }
+                }
+                break;
+            case FrameType.SETTINGS:
+                handleSettings(frame);
+                break;
+            case FrameType.PUSH_PROMISE:
+                throw new H2ConnectionException(H2Error.PROTOCOL_ERROR, "Push is disabled");
+            case FrameType.PING:
+                if (streamId != 0) {
+                    throw new H2ConnectionException(H2Error.PROTOCOL_ERROR, "PING frame on a stream");
+                }
+                if (frame.getLength() != 8) {
+                    throw new H2ConnectionException(H2Error.FRAME_SIZE_ERROR, "Invalid PING frame");
+                }
+                if (!frame.isFlagSet(FrameType.FLAG_ACK)) {
+                    synchronized (this.outLock) {
+                        this.outBuffer.writeFrame(FrameType.PING, FrameType.FLAG_ACK, 0, frame.getPayload());
+                        this.outBuffer.flush();
+                    }
+                }
+                break;
+            case FrameType.GOAWAY:
+                handleGoAway(frame);
+                break;
+            case FrameType.WINDOW_UPDATE:
+                handleWindowUpdate(frame);
+                break;
+            default:
+                // Frames of unknown type must be ignored
+        }
+    }
+
+    private static void requireStream(final RawFrame frame) throws H2ConnectionException {
+        if (frame.getStreamId() == 0) {
+            throw new H2ConnectionException(H2Error.PROTOCOL_ERROR,
+                    FrameType.toString(frame.getType()) + " frame on stream 0");
+        }
+    }
+
+    /**
+     * Rejects frames referring to streams that have never been opened.
+     */
+    private void checkIdle(final int streamId) throws H2ConnectionException {
+        final boolean idle;
+        if (isLocalStream(streamId)) {
+            synchronized (this.outLock) {
+                idle = streamId >= this.nextStreamId && this.nextStreamId > 0;
+            }
+        } else {
+            idle = streamId > this.lastPeerStreamId;
+        }
+        if (idle) {
+            throw new H2ConnectionException(H2Error.PROTOCOL_ERROR, "Frame on idle stream " + streamId);
+        }
+    }
+
+    private int paddingOf(final RawFrame frame) throws H2ConnectionException {
+        if (!frame.isFlagSet(FrameType.FLAG_PADDED)) {
+            return 0;
+        }
+        if (frame.getLength() < 1) {
+            throw new H2ConnectionException(H2Error.FRAME_SIZE_ERROR, "Invalid padding");
+        }
+        return frame.getPayload()[0] & 0xff;
+    }
+
+    private void handleData(final RawFrame frame) throws IOException {
+        final int streamId = frame.getStreamId();
+        final int length = frame.getLength();
+        this.connRecvWindow -= length;
+        if (this.connRecvWindow < 0) {
+            throw new H2ConnectionException(H2Error.FLOW_CONTROL_ERROR, "Connection flow control window exceeded");
+        }
+        this.connRecvUnacked += length;
+        if (this.connRecvUnacked >= this.connWindowSize >> 1) {
+            final int credit = this.connRecvUnacked;
+            this.connRecvUnacked = 0;
+            this.connRecvWindow += credit;
+            synchronized (this.outLock) {
+                this.outBuffer.writeFrame(FrameType.WINDOW_UPDATE, 0, 0, intBytes(credit));
+                this.outBuffer.flush();
+            }
+        }
+        final int padding = paddingOf(frame);
+        final int off = frame.isFlagSet(FrameType.FLAG_PADDED) ? 1 : 0;
+        final int len = length - off - padding;
+        if (len < 0) {
+            throw new H2ConnectionException(H2Error.PROTOCOL_ERROR, "Invalid padding");
+        }
+        checkIdle(streamId);
+        final H2Stream stream = this.streams.get(Integer.valueOf(streamId));
+        if (stream == null) {
+            // Data on a stream reset by the local endpoint
+            return;
+        }
+        if (stream.isRemoteClosed()) {
+            stream.fail(new H2StreamResetException(H2Error.STREAM_CLOSED, "Data after end of stream"));
+            resetQuietly(stream, H2Error.STREAM_CLOSED);
+            return;
+        }
+        final boolean endStream = frame.isFlagSet(FrameType.FLAG_END_STREAM);
+        if (!stream.onData(frame.getPayload(), off, len, length, endStream)) {
+            stream.fail(new H2StreamResetException(H2Error.FLOW_CONTROL_ERROR, "Stream flow control window exceeded"));
+            resetQuietly(stream, H2Error.FLOW_CONTROL_ERROR);
+            return;
+        }
+        if (endStream) {
+            completeIfDone(stream);
+        }
+    }
+
+    private void handleHeaders(final RawFrame frame) throws IOException {
+        final int padding = paddingOf(frame);
+        int off = frame.isFlagSet(FrameType.FLAG_PADDED) ? 1 : 0;
+        if (frame.isFlagSet(FrameType.FLAG_PRIORITY)) {
+            off += 5;
+        }
+        final int len = frame.getLength() - off - padding;
+        if (len < 0) {
+            throw new H2ConnectionException(H2Error.PROTOCOL_ERROR, "Invalid HEADERS frame");
+        }
+        final boolean endStream = frame.isFlagSet(FrameType.FLAG_END_STREAM);
+        if (frame.isFlagSet(FrameType.FLAG_END_HEADERS)) {
+            processHeaderBlock(frame.getStreamId(), frame.getPayload(), off, len, endStream);
+        } else {
+            this.continuationStreamId = frame.getStreamId();
+            this.continuationEndStream = endStream;
+            this.continuationBuffer = new ByteArrayBuffer(Math.min(Math.max(len * 2, 1024), this.maxHeaderBlockSize));
+            appendContinuation(frame.getPayload(), off, len);
+        }
+    }
+
+    private void appendContinuation(final byte[] b, final int off, final int len) throws IOException {
+        // Guard against a peer sending an endless sequence of CONTINUATION frames
+        if (len > this.maxHeaderBlockSize - this.continuationBuffer.length()) {
+            throw new H2ConnectionException(H2Error.ENHANCE_YOUR_CALM, "Header block exceeds "
+                    + this.maxHeaderBlockSize + " bytes");
+        }
+        this.continuationBuffer.append(b, off, len);
+    }
+
+    private void processHeaderBlock(
+            final int streamId, final byte[] b, final int off, final int len,
+            final boolean endStream) throws IOException {
+        List<Header> headers;
+        H2StreamResetException rejected = null;
+        try {
+            headers = this.decoder.decodeHeaders(b, off, len);
+        } catch (final H2StreamResetException ex) {
+            headers = null;
+            rejected = ex;
+        }
+        H2Stream stream = this.streams.get(Integer.valueOf(streamId));
+        if (stream == null) {
+            if (isLocalStream(streamId) || streamId <= this.lastPeerStreamId) {
+                checkIdle(streamId);
+                // Headers on a stream reset by the local endpoint
+                return;
+            }
+            this.lastPeerStreamId = streamId;
+            if (rejected != null) {
+                writeReset(streamId, H2Error.getByCode(rejected.getCode()));
+                return;
+            }
+            if (this.goAwaySent || getPeerStreamCount() >= this.localConfig.getMaxConcurrentStreams()) {
+                writeReset(streamId, H2Error.REFUSED_STREAM);
+                return;
+            }
+            stream = registerPeerStream(streamId);
+            stream.onHeaders(headers, endStream);
+            onPeerStream(stream);
+            return;
+        }
+        if (rejected != null) {
+            stream.fail(rejected);
+            resetQuietly(stream, H2Error.getByCode(rejected.getCode()));
+            return;
+        }
+        if (stream.isRemoteClosed()) {
+            stream.fail(new H2StreamResetException(H2Error.STREAM_CLOSED, "Headers after end of stream"));
+            resetQuietly(stream, H2Error.STREAM_CLOSED);
+            return;
+        }
+        stream.onHeaders(headers, endStream);
+        if (endStream) {
+            completeIfDone(stream);
+        }
+    }
+
+    private void writeReset(final int streamId, final H2Error error) throws IOException {
+        synchronized (this.outLock) {
+            this.outBuffer.writeFrame(FrameType.RST_STREAM, 0, streamId, intBytes(error.getCode()));
+            this.outBuffer.flush();
+        }
+    }
+
+    private void resetQuietly(final H2Stream stream, final H2Error error) {
+        removeStream(stream);
+        try {
+            writeReset(stream.getId(), error);
+        } catch (final IOException ignore) {
+        }
+    }
+
+    private void handleSettings(final RawFrame frame) throws IOException {
+        if (frame.getStreamId() != 0) {
+            throw new H2ConnectionException(H2Error.PROTOCOL_ERROR, "SETTINGS frame on a stream");
+        }
+        if (frame.isFlagSet(FrameType.FLAG_ACK)) {
+            if (frame.getLength() != 0) {
+                throw new H2ConnectionException(H2Error.FRAME_SIZE_ERROR, "Invalid SETTINGS acknowledgement");
+            }
+            return;
+        }
+        if (frame.getLength() % 6 != 0) {
+            throw new H2ConnectionException(H2Error.FRAME_SIZE_ERROR, "Invalid SETTINGS frame");
+        }
+        final byte[] payload = frame.getPayload();
+        for (int i = 0; i < frame.getLength(); i += 6) {
+            final int id = ((payload[i] & 0xff) << 8) | (payload[i + 1] & 0xff);
+            final int value = frame.getInt(i + 2);
+            switch (id) {
+                case FrameType.SETTINGS_HEADER_TABLE_SIZE:
+                    synchronized (this.outLock) {
+                        this.encoder.setMaxTableSize(Math.min(value < 0 ? Integer.MAX_VALUE : value,
+                                H2Config.DEFAULT_HEADER_TABLE_SIZE));
+                    }
+                    break;
+                case FrameType.SETTINGS_ENABLE_PUSH:
+                    if (value != 0 && value != 1) {
+                        throw new H2ConnectionException(H2Error.PROTOCOL_ERROR, "Invalid ENABLE_PUSH setting");
+                    }
+                    break;
+                case FrameType.SETTINGS_MAX_CONCURRENT_STREAMS:
+                    synchronized (this.streamLock) {
+                        this.peerMaxConcurrentStreams = value < 0 ? Integer.MAX_VALUE : value;
+                        this.streamLock.notifyAll();
+                    }
+                    break;
+                case FrameType.SETTINGS_INITIAL_WINDOW_SIZE:
+                    if (value < 0) {
+                        throw new H2ConnectionException(H2Error.FLOW_CONTROL_ERROR, "Invalid INITIAL_WINDOW_SIZE setting");
+                    }
+                    synchronized (this.windowLock) {
+                        final int delta = value - this.peerInitialWindowSize;
+                        this.peerInitialWindowSize = value;
+                        for (final H2Stream stream: this.streams.values()) {
+                            stream.sendWindow += delta;
+                            if (stream.sendWindow > H2Config.MAX_WINDOW_SIZE) {
+                                throw new H2ConnectionException(H2Error.FLOW_CONTROL_ERROR, "Window size overflow");
+                            }
+                        }
+                        this.windowLock.notifyAll();
+                    }
+                    break;
+                case FrameType.SETTINGS_MAX_FRAME_SIZE:
+                    if (value < H2Config.DEFAULT_MAX_FRAME_SIZE || value > H2Config.MAX_FRAME_SIZE_LIMIT) {
+                        throw new H2ConnectionException(H2Error.PROTOCOL_ERROR, "Invalid MAX_FRAME_SIZE setting");
+                    }
+                    this.peerMaxFrameSize = value;
+                    break;
+                case FrameType.SETTINGS_MAX_HEADER_LIST_SIZE:
+                    this.peerMaxHeaderListSize = value;
+                    break;
+                default:
+                    // Unknown settings must be ignored
+            }
+        }
+        synchronized (this.outLock) {
+            this.outBuffer.writeFrame(FrameType.SETTINGS, FrameType.FLAG_ACK, 0, null);
+            this.outBuffer.flush();
+        }
+    }
+
+    private void handleWindowUpdate(final RawFrame frame) throws IOException {
+        if (frame.getLength() != 4) {
+            throw new H2ConnectionException(H2Error.FRAME_SIZE_ERROR, "Invalid WINDOW_UPDATE frame");
+        }
+        final int streamId = frame.getStreamId();
+        final int increment = frame.getInt(0) & 0x7fffffff;
+        if (streamId == 0) {
+            if (increment == 0) {
+                throw new H2ConnectionException(H2Error.PROTOCOL_ERROR, "Invalid window increment");
+            }
+            synchronized (this.windowLock) {
+                this.connSendWindow += increment;
+                if (this.connSendWindow > H2Config.MAX_WINDOW_SIZE) {
+                    throw new H2ConnectionException(H2Error.FLOW_CONTROL_ERROR, "Window size overflow");
+                }
+                this.windowLock.notifyAll();
+            }
+            return;
+        }
+        checkIdle(streamId);
+        final H2Stream stream = this.streams.get(Integer.valueOf(streamId));
+        if (stream == null) {
+            return;
+        }
+        if (increment == 0) {
+            stream.fail(new H2StreamResetException(H2Error.PROTOCOL_ERROR, "Invalid window increment"));
+            resetQuietly(stream, H2Error.PROTOCOL_ERROR);
+            return;
+        }
+        boolean overflow = false;
+        synchronized (this.windowLock) {
+            stream.sendWindow += increment;
+            if (stream.sendWindow > H2Config.MAX_WINDOW_SIZE) {
+                overflow = true;
+            }
+            this.windowLock.notifyAll();
+        }
+        if (overflow) {
+            stream.fail(new H2StreamResetException(H2Error.FLOW_CONTROL_ERROR, "Window size overflow"));
+            resetQuietly(stream, H2Error.FLOW_CONTROL_ERROR);
+        }
+    }
+
+    private void handleGoAway(final RawFrame frame) throws IOException {
+        if (frame.getStreamId() != 0) {
+            throw new H2ConnectionException(H2Error.PROTOCOL_ERROR, "GOAWAY frame on a stream");
+        }
+        if (frame.getLength() < 8) {
+            throw new H2ConnectionException(H2Error.FRAME_SIZE_ERROR, "Invalid GOAWAY frame");
+        }
+        final int lastStreamId = frame.getInt(0) & 0x7fffffff;
+        final int code = frame.getInt(4);
+        this.goAwayReceived = true;
+        synchronized (this.streamLock) {
+            this.streamLock.notifyAll();
+        }
+        final List<H2Stream> refused = new ArrayList<H2Stream>();
+        for (final Iterator<H2Stream> it = this.streams.values().iterator(); it.hasNext(); ) {
+            final H2Stream stream = it.next();
+            if (isLocalStream(stream.getId()) && stream.getId() > lastStreamId) {
+                refused.add(stream);
+            }
+        }
+        for (final H2Stream stream: refused) {
+            stream.fail(new H2StreamResetException(H2Error.REFUSED_STREAM,
+                    "Stream " + stream.getId() + " not processed: GOAWAY " + H2Error.toString(code)));
+            removeStream(stream);
+        }
+        if (this.streams.isEmpty()) {
+            shutdownQuietly();
+        }
+    }
+
+    /**
+     * Invoked by the reader thread when the opposite endpoint opens a new stream.
+     */
+    abstract void onPeerStream(H2Stream stream) throws IOException;
+
+    /**
+     * Invoked once after the connection has been terminated and all streams
+     * have failed.
+     */
+    abstract void onTerminated();
+
+    private void terminate(final IOException cause) {
+        this.closed = true;
+        try {
+            this.socket.close();
+        } catch (final IOException ignore) {
+        }
+        for (final H2Stream stream: this.streams.values()) {
+            stream.fail(cause);
+        }
+        this.streams.clear();
+        synchronized (this.streamLock) {
+            this.localStreamCount = 0;
+            this.peerStreamCount = 0;
+            this.streamLock.notifyAll();
+        }
+        synchronized (this.windowLock) {
+            this.windowLock.notifyAll();
+        }
+        onTerminated();
+    }
+
+    private void shutdownQuietly() {
+        this.closed = true;
+        try {
+            this.socket.close();
+        } catch (final IOException ignore) {
+        }
+    }
+
+    // ------------------------------------------------------------------ HttpInetConnection
+
+    /**
+     * Gracefully closes the connection: notifies the opposite endpoint that
+     * no more streams will be processed and closes the socket. Streams still
+     * open fail with {@link ConnectionClosedException}.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        sendGoAway(H2Error.NO_ERROR);
+        shutdown();
+    }
+
+    /**
+     * Force-closes the connection.
+     */
+    @Override
+    public void shutdown() throws IOException {
+        this.closed = true;
+        this.socket.close();
+        if (this.reader == null) {
+            terminate(new ConnectionClosedException());
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !this.closed && !this.socket.isClosed();
+    }
+
+    /**
+     * Returns {@code true} if the connection is closed or is being shut down
+     * and cannot be used for new streams.
+     */
+    @Override
+    public boolean isStale() {
+        return !isOpen() || isShuttingDown();
+    }
+
+    /**
+     * Sets the default timeout of blocking stream operations. It does not
+     * apply to the socket, which is read by the connection reader without
+     * a timeout.
+     */
+    @Override
+    public void setSocketTimeout(final int timeout) {
+        this.socketTimeout = timeout;
+    }
+
+    @Override
+    public int getSocketTimeout() {
+        return this.socketTimeout;
+    }
+
+    @Override
+    public HttpConnectionMetrics getMetrics() {
+        return this.connMetrics;
+    }
+
+    final void incrementRequestCount() {
+        this.connMetrics.incrementRequestCount();
+    }
+
+    final void incrementResponseCount() {
+        this.connMetrics.incrementResponseCount();
+    }
+
+    @Override
+    public InetAddress getLocalAddress() {
+        return this.socket.getLocalAddress();
+    }
+
+    @Override
+    public int getLocalPort() {
+        return this.socket.getLocalPort();
+    }
+
+    @Override
+    public InetAddress getRemoteAddress() {
+        return this.socket.getInetAddress();
+    }
+
+    @Override
+    public int getRemotePort() {
+        return this.socket.getPort();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append(this.socket.getLocalSocketAddress()).append("<->").append(this.socket.getRemoteSocketAddress());
+        buffer.append(" [streams: ").append(this.streams.size());
+        if (isShuttingDown()) {
+            buffer.append(", shutting down");
+        }
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+}
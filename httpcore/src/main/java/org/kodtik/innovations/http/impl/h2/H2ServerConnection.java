@@ -0,0 +1,100 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.h2;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.kodtik.innovations.http.config.H2Config;
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * Server side HTTP/2 connection. Streams opened by the client are handed
+ * out by {@link #acceptStream()} as {@link H2ServerStream}s, each of which
+ * carries a single message exchange and may be processed by a thread of
+ * its own.
+ * <p>
+ * The connection does not negotiate the protocol. The socket must either be
+ * a TLS socket with {@code h2} selected by ALPN or a plain socket whose client
+ * is about to send the HTTP/2 connection preface (prior knowledge).
+ * </p>
+ *
+ * @since 4.4.15
+ */
+public class H2ServerConnection extends H2ConnectionBase {
+
+    private static final Object END_OF_STREAMS = new Object();
+
+    private final BlockingQueue<Object> incoming;
+
+    public H2ServerConnection(final Socket socket, final H2Config config) throws IOException {
+        super(Args.notNull(socket, "Socket"), config, false);
+        this.incoming = new LinkedBlockingQueue<Object>();
+    }
+
+    /**
+     * Reads the client connection preface, sends the local settings and
+     * starts the connection reader thread. The socket timeout in effect
+     * applies to the receipt of the preface and becomes the default timeout
+     * of streams.
+     */
+    public void start() throws IOException {
+        final Socket socket = getSocket();
+        readPreface();
+        setSocketTimeout(socket.getSoTimeout());
+        socket.setSoTimeout(0);
+        start("h2-server " + socket.getRemoteSocketAddress());
+    }
+
+    /**
+     * Waits for the client to open a stream.
+     *
+     * @return the stream or {@code null} if the connection has been closed
+     *   and no more streams will be opened.
+     */
+    public H2ServerStream acceptStream() throws InterruptedException {
+        final Object next = this.incoming.take();
+        if (next == END_OF_STREAMS) {
+            this.incoming.add(END_OF_STREAMS);
+            return null;
+        }
+        return (H2ServerStream) next;
+    }
+
+    @Override
+    final void onPeerStream(final H2Stream stream) {
+        this.incoming.add(new H2ServerStream(this, stream));
+    }
+
+    @Override
+    final void onTerminated() {
+        this.incoming.add(END_OF_STREAMS);
+    }
+
+}
@@ -0,0 +1,354 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.h2;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.kodtik.innovations.http.ConnectionClosedException;
+import org.kodtik.innovations.http.Header;
+import org.kodtik.innovations.http.HttpConnectionMetrics;
+import org.kodtik.innovations.http.HttpEntity;
+import org.kodtik.innovations.http.HttpEntityEnclosingRequest;
+import org.kodtik.innovations.http.HttpException;
+import org.kodtik.innovations.http.HttpHeaders;
+import org.kodtik.innovations.http.HttpInetConnection;
+import org.kodtik.innovations.http.HttpRequest;
+import org.kodtik.innovations.http.HttpResponse;
+import org.kodtik.innovations.http.HttpServerConnection;
+import org.kodtik.innovations.http.HttpStatus;
+import org.kodtik.innovations.http.HttpVersion;
+import org.kodtik.innovations.http.ProtocolException;
+import org.kodtik.innovations.http.entity.BasicHttpEntity;
+import org.kodtik.innovations.http.message.BasicHeader;
+import org.kodtik.innovations.http.message.BasicHttpEntityEnclosingRequest;
+import org.kodtik.innovations.http.message.BasicHttpRequest;
+import org.kodtik.innovations.http.message.BasicRequestLine;
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * {@link HttpServerConnection} carrying a single message exchange over
+ * a stream opened by the client of an {@link H2ServerConnection}. Closing
+ * or shutting down this connection only affects its stream: a stream that
+ * has not been completed is reset.
+ * <p>
+ * Request pseudo-header fields are translated to the request line and,
+ * unless present, a {@code Host} header. Requests report
+ * {@link HttpVersion#HTTP_2_0} as their protocol version and any method
+ * is accepted. Connection-specific response headers are dropped.
+ * </p>
+ *
+ * @since 4.4.15
+ */
+public class H2ServerStream implements HttpServerConnection, HttpInetConnection {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final H2ServerConnection connection;
+    private final H2Stream stream;
+    private volatile int socketTimeout;
+    private volatile boolean closed;
+    private String method;
+
+    H2ServerStream(final H2ServerConnection connection, final H2Stream stream) {
+        super();
+        this.connection = connection;
+        this.stream = stream;
+        this.socketTimeout = connection.getSocketTimeout();
+    }
+
+    public H2ServerConnection getConnection() {
+        return this.connection;
+    }
+
+    public int getStreamId() {
+        return this.stream.getId();
+    }
+
+    static HttpRequest toRequest(final List<Header> headers, final boolean enclosing) throws ProtocolException {
+        String method = null;
+        String scheme = null;
+        String authority = null;
+        String path = null;
+        final List<Header> fields = new ArrayList<Header>(headers.size() + 1);
+        StringBuilder cookie = null;
+        for (int i = 0; i < headers.size(); i++) {
+            final Header header = headers.get(i);
+            final String name = header.getName();
+            final String value = header.getValue();
+            if (name.startsWith(":")) {
+                if (!fields.isEmpty() || cookie != null) {
+                    throw new ProtocolException("Pseudo header after regular headers: " + name);
+                }
+                if (name.equals(":method") && method == null) {
+                    method = value;
+                } else if (name.equals(":scheme") && scheme == null) {
+                    scheme = value;
+                } else if (name.equals(":authority") && authority == null) {
+                    authority = value;
+                } else if (name.equals(":path") && path == null) {
+                    path = value;
+                } else {
+                    throw new ProtocolException("Invalid request pseudo header: " + name);
+                }
+                continue;
+            }
+            if (!name.equals(name.toLowerCase(Locale.ROOT))) {
+                throw new ProtocolException("Header name not in lower case: " + name);
+            }
+            if (!name.equals("host") && H2ClientStream.isConnectionSpecific(name)) {
+                throw new ProtocolException("Connection-specific header: " + name);
+            }
+            if (name.equals("te") && !value.equalsIgnoreCase("trailers")) {
+                throw new ProtocolException("Invalid TE header: " + value);
+            }
+            if (name.equals("cookie")) {
+                // Cookie crumbs are concatenated back into a single header
+                if (cookie == null) {
+                    cookie = new StringBuilder(value);
+                } else {
+                    cookie.append("; ").append(value);
+                }
+                continue;
+            }
+            fields.add(header);
+        }
+        if (method == null) {
+            throw new ProtocolException("Missing request method");
+        }
+        final String uri;
+        if ("CONNECT".equalsIgnoreCase(method)) {
+            if (authority == null || scheme != null || path != null) {
+                throw new ProtocolException("Invalid CONNECT request");
+            }
+            uri = authority;
+        } else {
+            if (scheme == null || path == null || path.isEmpty()) {
+                throw new ProtocolException("Missing request scheme or path");
+            }
+            uri = path;
+        }
+        if (cookie != null) {
+            fields.add(new BasicHeader("cookie", cookie.toString()));
+        }
+        final BasicRequestLine requestLine = new BasicRequestLine(method, uri, HttpVersion.HTTP_2_0);
+        final HttpRequest request = enclosing
+                ? new BasicHttpEntityEnclosingRequest(requestLine) : new BasicHttpRequest(requestLine);
+        if (authority != null && !containsHost(fields)) {
+            request.addHeader(HttpHeaders.HOST, authority);
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            request.addHeader(fields.get(i));
+        }
+        return request;
+    }
+
+    private static boolean containsHost(final List<Header> fields) {
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).getName().equals("host")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public HttpRequest receiveRequestHeader() throws HttpException, IOException {
+        if (this.method != null) {
+            throw new IllegalStateException("Request already received over this stream");
+        }
+        final List<Header> headers = this.stream.takeHeaders(this.socketTimeout);
+        // All data received before the end of the stream has been queued
+        final boolean enclosing = !this.stream.isRemoteClosed() || this.stream.available() > 0;
+        final HttpRequest request;
+        try {
+            request = toRequest(headers, enclosing);
+        } catch (final ProtocolException ex) {
+            this.connection.releaseStream(this.stream, H2Error.PROTOCOL_ERROR);
+            throw ex;
+        }
+        this.method = request.getRequestLine().getMethod();
+        this.connection.incrementRequestCount();
+        return request;
+    }
+
+    @Override
+    public void receiveRequestEntity(final HttpEntityEnclosingRequest request) throws HttpException, IOException {
+        Args.notNull(request, "HTTP request");
+        final BasicHttpEntity entity = new BasicHttpEntity();
+        long len = -1;
+        final Header contentLength = request.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+        if (contentLength != null) {
+            try {
+                len = Long.parseLong(contentLength.getValue());
+            } catch (final NumberFormatException ex) {
+                throw new ProtocolException("Invalid content length: " + contentLength.getValue());
+            }
+        }
+        entity.setContentLength(len);
+        entity.setContent(new H2StreamInputStream(this.connection, this.stream, this.socketTimeout));
+        entity.setContentType(request.getFirstHeader(HttpHeaders.CONTENT_TYPE));
+        entity.setContentEncoding(request.getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+        request.setEntity(entity);
+    }
+
+    private boolean canResponseHaveBody(final int status) {
+        if (this.method != null && "HEAD".equalsIgnoreCase(this.method)) {
+            return false;
+        }
+        return status >= HttpStatus.SC_OK
+                && status != HttpStatus.SC_NO_CONTENT
+                && status != HttpStatus.SC_NOT_MODIFIED
+                && status != HttpStatus.SC_RESET_CONTENT;
+    }
+
+    @Override
+    public void sendResponseHeader(final HttpResponse response) throws HttpException, IOException {
+        Args.notNull(response, "HTTP response");
+        if (this.closed) {
+            throw new IOException("Stream already closed");
+        }
+        final int status = response.getStatusLine().getStatusCode();
+        if (status == HttpStatus.SC_SWITCHING_PROTOCOLS) {
+            throw new ProtocolException("Protocol switching not supported by HTTP/2");
+        }
+        final Header[] headers = response.getAllHeaders();
+        final List<Header> list = new ArrayList<Header>(headers.length + 1);
+        list.add(new BasicHeader(":status", Integer.toString(status)));
+        for (final Header header: headers) {
+            final String name = header.getName().toLowerCase(Locale.ROOT);
+            if (name.isEmpty() || name.charAt(0) == ':') {
+                throw new ProtocolException("Invalid header name: " + header.getName());
+            }
+            if (H2ClientStream.isConnectionSpecific(name)) {
+                continue;
+            }
+            list.add(name == header.getName() ? header : new BasicHeader(name, header.getValue()));
+        }
+        if (status < HttpStatus.SC_OK) {
+            this.connection.sendHeaders(this.stream, list, false);
+            return;
+        }
+        final boolean endStream = response.getEntity() == null || !canResponseHaveBody(status);
+        this.connection.sendHeaders(this.stream, list, endStream);
+        this.connection.incrementResponseCount();
+    }
+
+    @Override
+    public void sendResponseEntity(final HttpResponse response) throws HttpException, IOException {
+        Args.notNull(response, "HTTP response");
+        final HttpEntity entity = response.getEntity();
+        if (entity == null || this.stream.isLocalClosed()) {
+            return;
+        }
+        final H2StreamOutputStream outStream = new H2StreamOutputStream(
+                this.connection, this.stream, BUFFER_SIZE, entity.getContentLength(), this.socketTimeout);
+        entity.writeTo(outStream);
+        outStream.close();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        try {
+            this.connection.flush();
+        } catch (final ConnectionClosedException ex) {
+            // The client may close the connection as soon as it has received
+            // the complete response
+            if (!this.stream.isLocalClosed()) {
+                throw ex;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        // Once the response is complete the client only needs to stop sending
+        this.connection.releaseStream(this.stream,
+                this.stream.isLocalClosed() ? H2Error.NO_ERROR : H2Error.CANCEL);
+    }
+
+    @Override
+    public void shutdown() throws IOException {
+        this.closed = true;
+        this.connection.releaseStream(this.stream, H2Error.INTERNAL_ERROR);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !this.closed && this.connection.isOpen();
+    }
+
+    @Override
+    public boolean isStale() {
+        return !isOpen();
+    }
+
+    @Override
+    public void setSocketTimeout(final int timeout) {
+        this.socketTimeout = timeout;
+    }
+
+    @Override
+    public int getSocketTimeout() {
+        return this.socketTimeout;
+    }
+
+    @Override
+    public HttpConnectionMetrics getMetrics() {
+        return this.connection.getMetrics();
+    }
+
+    @Override
+    public InetAddress getLocalAddress() {
+        return this.connection.getLocalAddress();
+    }
+
+    @Override
+    public int getLocalPort() {
+        return this.connection.getLocalPort();
+    }
+
+    @Override
+    public InetAddress getRemoteAddress() {
+        return this.connection.getRemoteAddress();
+    }
+
+    @Override
+    public int getRemotePort() {
+        return this.connection.getRemotePort();
+    }
+
+    @Override
+    public String toString() {
+        return this.connection + " stream " + getStreamId();
+    }
+
+}
@@ -0,0 +1,267 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.h2;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+
+import org.kodtik.innovations.http.ConnectionClosedException;
+import org.kodtik.innovations.http.Header;
+
+/**
+ * State of an individual HTTP/2 stream.
+ * <p>
+ * Inbound header blocks and data are queued by the connection reader and
+ * consumed by the thread executing the message exchange. Receive side state
+ * is guarded by the stream's own monitor. The send window is guarded by
+ * the connection's flow control lock.
+ * </p>
+ */
+final class H2Stream {
+
+    private final int id;
+    private final ArrayDeque<List<Header>> headerBlocks;
+    private final ArrayDeque<ByteBuffer> data;
+
+    long sendWindow;
+
+    private int recvWindow;
+    private int unacked;
+    private int available;
+    private boolean localClosed;
+    private boolean remoteClosed;
+    private boolean released;
+    private IOException failure;
+    private Object attachment;
+
+    H2Stream(final int id, final int sendWindow, final int recvWindow) {
+        super();
+        this.id = id;
+        this.headerBlocks = new ArrayDeque<List<Header>>(2);
+        this.data = new ArrayDeque<ByteBuffer>();
+        this.sendWindow = sendWindow;
+        this.recvWindow = recvWindow;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    synchronized Object getAttachment() {
+        return attachment;
+    }
+
+    synchronized void setAttachment(final Object attachment) {
+        this.attachment = attachment;
+    }
+
+    synchronized boolean isLocalClosed() {
+        return localClosed;
+    }
+
+    synchronized void setLocalClosed() {
+        this.localClosed = true;
+    }
+
+    synchronized boolean isRemoteClosed() {
+        return remoteClosed;
+    }
+
+    /**
+     * Returns {@code true} once both endpoints have closed the stream
+     * or the stream has been reset.
+     */
+    synchronized boolean isComplete() {
+        return failure != null || (localClosed && remoteClosed);
+    }
+
+    /**
+     * Marks the stream as no longer used by the local endpoint. Returns
+     * {@code true} only on the first invocation.
+     */
+    synchronized boolean release() {
+        if (released) {
+            return false;
+        }
+        released = true;
+        return true;
+    }
+
+    synchronized IOException getFailure() {
+        return failure;
+    }
+
+    synchronized void fail(final IOException cause) {
+        if (this.failure == null) {
+            this.failure = cause;
+        }
+        notifyAll();
+    }
+
+    synchronized void onHeaders(final List<Header> headers, final boolean endStream) {
+        this.headerBlocks.add(headers);
+        if (endStream) {
+            this.remoteClosed = true;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Queues inbound data.
+     *
+     * @param flowControlled the number of bytes counted against the flow
+     *   control window, including padding.
+     * @return {@code false} if the opposite endpoint has exceeded the window.
+     */
+    synchronized boolean onData(
+            final byte[] b, final int off, final int len, final int flowControlled, final boolean endStream) {
+        if (flowControlled > this.recvWindow) {
+            return false;
+        }
+        this.recvWindow -= flowControlled;
+        this.unacked += flowControlled - len;
+        if (len > 0 && !this.released) {
+            this.data.add(ByteBuffer.wrap(b, off, len));
+            this.available += len;
+        }
+        if (endStream) {
+            this.remoteClosed = true;
+        }
+        notifyAll();
+        return true;
+    }
+
+    private void await(final long deadline, final int timeout) throws IOException {
+        try {
+            if (timeout <= 0) {
+                wait();
+                return;
+            }
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new SocketTimeoutException("Read timed out");
+            }
+            wait(remaining);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    synchronized boolean awaitHeaders(final int timeout) throws IOException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        while (this.headerBlocks.isEmpty() && this.failure == null && !this.remoteClosed) {
+            if (deadline - System.currentTimeMillis() <= 0) {
+                return false;
+            }
+            await(deadline, timeout);
+        }
+        return true;
+    }
+
+    synchronized List<Header> takeHeaders(final int timeout) throws IOException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        while (this.headerBlocks.isEmpty()) {
+            if (this.failure != null) {
+                throw this.failure;
+            }
+            if (this.remoteClosed) {
+                throw new ConnectionClosedException("Stream %d closed before a header block was received", id);
+            }
+            await(deadline, timeout);
+        }
+        return this.headerBlocks.poll();
+    }
+
+    /**
+     * Reads inbound data.
+     *
+     * @return the number of bytes read or {@code -1} at the end of stream.
+     */
+    synchronized int read(final byte[] b, final int off, final int len, final int timeout) throws IOException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        while (this.available == 0) {
+            if (this.remoteClosed) {
+                return -1;
+            }
+            if (this.failure != null) {
+                throw this.failure;
+            }
+            await(deadline, timeout);
+        }
+        int total = 0;
+        while (total < len && !this.data.isEmpty()) {
+            final ByteBuffer chunk = this.data.peek();
+            final int n = Math.min(len - total, chunk.remaining());
+            chunk.get(b, off + total, n);
+            total += n;
+            if (!chunk.hasRemaining()) {
+                this.data.poll();
+            }
+        }
+        this.available -= total;
+        this.unacked += total;
+        return total;
+    }
+
+    synchronized int available() {
+        return this.available;
+    }
+
+    /**
+     * Discards inbound data not read yet.
+     */
+    synchronized void discard() {
+        this.unacked += this.available;
+        this.available = 0;
+        this.data.clear();
+    }
+
+    /**
+     * Returns the amount of consumed data that should be credited back to
+     * the opposite endpoint, if it reached the given threshold.
+     */
+    synchronized int takeCredit(final int threshold) {
+        if (this.remoteClosed || this.failure != null || this.unacked < threshold) {
+            return 0;
+        }
+        final int credit = this.unacked;
+        this.unacked = 0;
+        this.recvWindow += credit;
+        return credit;
+    }
+
+    @Override
+    public String toString() {
+        return "stream " + id;
+    }
+
+}
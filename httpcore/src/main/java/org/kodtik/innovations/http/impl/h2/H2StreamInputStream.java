@@ -0,0 +1,92 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.h2;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream of the data received on an HTTP/2 stream. Consumed data is
+ * credited back to the opposite endpoint. Closing the stream before its end
+ * has been reached resets it.
+ */
+final class H2StreamInputStream extends InputStream {
+
+    private final H2ConnectionBase connection;
+    private final H2Stream stream;
+    private final int timeout;
+    private boolean eof;
+    private boolean closed;
+
+    H2StreamInputStream(final H2ConnectionBase connection, final H2Stream stream, final int timeout) {
+        super();
+        this.connection = connection;
+        this.stream = stream;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (this.closed || this.eof) {
+            return -1;
+        }
+        if (len == 0) {
+            return 0;
+        }
+        final int n = this.stream.read(b, off, len, this.timeout);
+        if (n < 0) {
+            this.eof = true;
+            return -1;
+        }
+        this.connection.streamDataConsumed(this.stream);
+        return n;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        final int n = read(b, 0, 1);
+        return n < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return this.closed ? 0 : this.stream.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        if (!this.eof) {
+            this.connection.releaseStream(this.stream);
+        }
+    }
+
+}
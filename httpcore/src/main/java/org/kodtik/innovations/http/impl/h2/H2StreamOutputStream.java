@@ -0,0 +1,152 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.h2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.kodtik.innovations.http.ConnectionClosedException;
+
+/**
+ * Output stream sending data on an HTTP/2 stream. Data is sent in frames
+ * of up to the buffer size; closing the stream ends it. If the content
+ * length is known, the frame carrying the last byte also ends the stream,
+ * so that an intermediate flush does not leave the peer waiting for
+ * an empty end-of-stream frame.
+ */
+final class H2StreamOutputStream extends OutputStream {
+
+    private final H2ConnectionBase connection;
+    private final H2Stream stream;
+    private final int timeout;
+    private final long contentLength;
+    private final byte[] buffer;
+    private long total;
+    private int len;
+    private boolean ended;
+    private boolean pending;
+    private boolean closed;
+
+    H2StreamOutputStream(
+            final H2ConnectionBase connection, final H2Stream stream,
+            final int bufferSize, final long contentLength, final int timeout) {
+        super();
+        this.connection = connection;
+        this.stream = stream;
+        this.timeout = timeout;
+        this.contentLength = contentLength;
+        this.buffer = new byte[bufferSize];
+    }
+
+    private void ensureOpen() throws IOException {
+        if (this.closed) {
+            throw new IOException("Stream already closed");
+        }
+    }
+
+    private boolean isComplete() {
+        return this.contentLength >= 0 && this.total >= this.contentLength;
+    }
+
+    private void flushBuffer(final boolean endStream) throws IOException {
+        if (this.ended) {
+            if (this.len > 0) {
+                throw new IOException("Content exceeds declared length");
+            }
+            return;
+        }
+        if (this.len > 0 || endStream) {
+            final boolean last = endStream || isComplete();
+            this.connection.sendData(this.stream, this.buffer, 0, this.len, last, this.timeout);
+            this.len = 0;
+            this.ended = last;
+            this.pending = true;
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        ensureOpen();
+        if (this.len == this.buffer.length) {
+            flushBuffer(false);
+        }
+        this.buffer[this.len++] = (byte) b;
+        this.total++;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int n) throws IOException {
+        ensureOpen();
+        if (n >= this.buffer.length) {
+            flushBuffer(false);
+            if (this.ended) {
+                throw new IOException("Content exceeds declared length");
+            }
+            this.total += n;
+            final boolean last = isComplete();
+            this.connection.sendData(this.stream, b, off, n, last, this.timeout);
+            this.ended = last;
+            this.pending = true;
+            return;
+        }
+        if (n > this.buffer.length - this.len) {
+            flushBuffer(false);
+        }
+        System.arraycopy(b, off, this.buffer, this.len, n);
+        this.len += n;
+        this.total += n;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        flushBuffer(false);
+        this.connection.flush();
+        this.pending = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        flushBuffer(true);
+        if (this.pending) {
+            try {
+                this.connection.flush();
+            } catch (final ConnectionClosedException ex) {
+                // The peer may close the connection as soon as it has
+                // received the complete message
+                if (!this.stream.isLocalClosed()) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.h2;
+
+import java.io.IOException;
+
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * Signals termination of an individual HTTP/2 stream, either by
+ * the opposite endpoint or by the local one.
+ *
+ * @since 4.4.15
+ */
+public class H2StreamResetException extends IOException {
+
+    private static final long serialVersionUID = 1218403214713424563L;
+
+    private final int code;
+
+    public H2StreamResetException(final H2Error error, final String message) {
+        super(message);
+        Args.notNull(error, "H2 error");
+        this.code = error.getCode();
+    }
+
+    public H2StreamResetException(final int code, final String message) {
+        super(message);
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Returns {@code true} if the opposite endpoint did not process
+     * the stream at all, in which case it is safe to retry the request
+     * even if it is not idempotent.
+     */
+    public boolean isRefused() {
+        return code == H2Error.REFUSED_STREAM.getCode();
+    }
+
+}
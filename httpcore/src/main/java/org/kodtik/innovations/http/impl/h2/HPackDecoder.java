@@ -0,0 +1,189 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.h2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kodtik.innovations.http.Header;
+import org.kodtik.innovations.http.message.BasicHeader;
+
+/**
+ * HPACK header block decoder.
+ * <p>
+ * Indexed fields are returned as the very {@link Header} instances held by
+ * the static and dynamic tables, so fields repeated across messages do not
+ * cause any allocation.
+ * </p>
+ * <p>
+ * Instances of this class are not thread-safe.
+ * </p>
+ */
+final class HPackDecoder {
+
+    private final HPackDynamicTable dynamicTable;
+    private final int maxTableSize;
+    private final int maxListSize;
+    private final StringBuilder stringBuffer;
+
+    private byte[] src;
+    private int pos;
+    private int end;
+
+    /**
+     * @param maxTableSize the dynamic table size announced to the encoder.
+     * @param maxListSize the maximum size of a decoded header list or
+     *   {@code 0} for no limit.
+     */
+    HPackDecoder(final int maxTableSize, final int maxListSize) {
+        super();
+        this.dynamicTable = new HPackDynamicTable(maxTableSize);
+        this.maxTableSize = maxTableSize;
+        this.maxListSize = maxListSize;
+        this.stringBuffer = new StringBuilder(64);
+    }
+
+    private int readByte() throws H2ConnectionException {
+        if (this.pos >= this.end) {
+            throw new H2ConnectionException(H2Error.COMPRESSION_ERROR, "Truncated header block");
+        }
+        return this.src[this.pos++] & 0xff;
+    }
+
+    private int decodeInt(final int first, final int prefixBits) throws H2ConnectionException {
+        final int max = (1 << prefixBits) - 1;
+        int value = first & max;
+        if (value < max) {
+            return value;
+        }
+        int shift = 0;
+        int b;
+        do {
+            b = readByte();
+            if (shift > 21) {
+                throw new H2ConnectionException(H2Error.COMPRESSION_ERROR, "Integer overflow");
+            }
+            value += (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        if (value < 0) {
+            throw new H2ConnectionException(H2Error.COMPRESSION_ERROR, "Integer overflow");
+        }
+        return value;
+    }
+
+    private String decodeString() throws H2ConnectionException {
+        final int first = readByte();
+        final int len = decodeInt(first, 7);
+        if (len > this.end - this.pos) {
+            throw new H2ConnectionException(H2Error.COMPRESSION_ERROR, "Truncated header block");
+        }
+        final String s;
+        if ((first & 0x80) != 0) {
+            this.stringBuffer.setLength(0);
+            HPackHuffman.decode(this.stringBuffer, this.src, this.pos, len);
+            s = this.stringBuffer.toString();
+        } else {
+            final char[] chars = new char[len];
+            for (int i = 0; i < len; i++) {
+                chars[i] = (char) (this.src[this.pos + i] & 0xff);
+            }
+            s = new String(chars);
+        }
+        this.pos += len;
+        return s;
+    }
+
+    private Header getEntry(final int index) throws H2ConnectionException {
+        if (index <= 0) {
+            throw new H2ConnectionException(H2Error.COMPRESSION_ERROR, "Invalid header index: " + index);
+        }
+        if (index <= HPackStaticTable.LENGTH) {
+            return HPackStaticTable.get(index);
+        }
+        final int position = index - HPackStaticTable.LENGTH - 1;
+        if (position >= this.dynamicTable.length()) {
+            throw new H2ConnectionException(H2Error.COMPRESSION_ERROR, "Invalid header index: " + index);
+        }
+        return this.dynamicTable.get(position);
+    }
+
+    private Header decodeLiteral(final int first, final int prefixBits) throws H2ConnectionException {
+        final int nameIndex = decodeInt(first, prefixBits);
+        final String name = nameIndex == 0 ? decodeString() : getEntry(nameIndex).getName();
+        final String value = decodeString();
+        return new BasicHeader(name, value);
+    }
+
+    /**
+     * Decodes a complete header block.
+     *
+     * @throws H2ConnectionException in case of a malformed header block,
+     *   which leaves the decoding context out of sync with the encoder.
+     * @throws H2StreamResetException if the decoded header list exceeds
+     *   the maximum size. The decoding context remains intact in this case.
+     */
+    List<Header> decodeHeaders(final byte[] b, final int off, final int len)
+            throws H2ConnectionException, H2StreamResetException {
+        this.src = b;
+        this.pos = off;
+        this.end = off + len;
+        final List<Header> headers = new ArrayList<Header>();
+        long listSize = 0;
+        try {
+            while (this.pos < this.end) {
+                final int first = readByte();
+                final Header header;
+                if ((first & 0x80) != 0) {
+                    header = getEntry(decodeInt(first, 7));
+                } else if ((first & 0x40) != 0) {
+                    header = decodeLiteral(first, 6);
+                    this.dynamicTable.add(header);
+                } else if ((first & 0x20) != 0) {
+                    final int size = decodeInt(first, 5);
+                    if (size > this.maxTableSize) {
+                        throw new H2ConnectionException(H2Error.COMPRESSION_ERROR,
+                                "Dynamic table size update exceeds limit: " + size);
+                    }
+                    this.dynamicTable.setMaxSize(size);
+                    continue;
+                } else {
+                    header = decodeLiteral(first, 4);
+                }
+                headers.add(header);
+                listSize += HPackDynamicTable.sizeOf(header);
+            }
+        } finally {
+            this.src = null;
+        }
+        if (this.maxListSize > 0 && listSize > this.maxListSize) {
+            throw new H2StreamResetException(H2Error.PROTOCOL_ERROR, "Header list size exceeds limit");
+        }
+        return headers;
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.h2;
+
+import org.kodtik.innovations.http.Header;
+
+/**
+ * HPACK dynamic table: a FIFO of header fields bounded by the total
+ * size of its entries as defined by RFC 7541, section 4.
+ */
+final class HPackDynamicTable {
+
+    static final int ENTRY_OVERHEAD = 32;
+
+    private Header[] entries;
+    private int head;
+    private int count;
+    private int currentSize;
+    private int maxSize;
+
+    HPackDynamicTable(final int maxSize) {
+        super();
+        this.entries = new Header[16];
+        this.maxSize = maxSize;
+    }
+
+    static int sizeOf(final Header header) {
+        return header.getName().length() + header.getValue().length() + ENTRY_OVERHEAD;
+    }
+
+    int length() {
+        return this.count;
+    }
+
+    int getCurrentSize() {
+        return this.currentSize;
+    }
+
+    int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Returns the entry at the given position, {@code 0} being the most
+     * recently added one.
+     */
+    Header get(final int position) {
+        return this.entries[(this.head + this.count - 1 - position) & (this.entries.length - 1)];
+    }
+
+    void setMaxSize(final int maxSize) {
+        this.maxSize = maxSize;
+        evict(0);
+    }
+
+    private void evict(final int required) {
+        while (this.count > 0 && this.currentSize + required > this.maxSize) {
+            final int i = this.head;
+            this.currentSize -= sizeOf(this.entries[i]);
+            this.entries[i] = null;
+            this.head = (i + 1) & (this.entries.length - 1);
+            this.count--;
+        }
+    }
+
+    /**
+     * Adds the given entry evicting older ones as necessary. An entry larger
+     * than the maximum table size empties the table and is not added.
+     */
+    void add(final Header header) {
+        final int size = sizeOf(header);
+        if (size > this.maxSize) {
+            evict(this.maxSize + 1);
+            return;
+        }
+        evict(size);
+        if (this.count == this.entries.length) {
+            final Header[] expanded = new Header[this.entries.length << 1];
+            for (int i = 0; i < this.count; i++) {
+                expanded[i] = this.entries[(this.head + i) & (this.entries.length - 1)];
+            }
+            this.entries = expanded;
+            this.head = 0;
+        }
+        this.entries[(this.head + this.count) & (this.entries.length - 1)] = header;
+        this.count++;
+        this.currentSize += size;
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.h2;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.kodtik.innovations.http.Header;
+import org.kodtik.innovations.http.message.BasicHeader;
+import org.kodtik.innovations.http.util.ByteArrayBuffer;
+
+/**
+ * HPACK header block encoder.
+ * <p>
+ * Fields found in the static or dynamic table are sent as indices.
+ * Other fields are added to the dynamic table unless their values are
+ * expected to change with every message, in which case they are sent as
+ * literals without indexing and do not evict reusable entries. Credentials
+ * are never indexed. String literals are Huffman coded whenever that makes
+ * them shorter.
+ * </p>
+ * <p>
+ * Instances of this class are not thread-safe.
+ * </p>
+ */
+final class HPackEncoder {
+
+    private static final Set<String> UNINDEXED = new HashSet<String>();
+    private static final Set<String> SENSITIVE = new HashSet<String>();
+
+    static {
+        final String[] unindexed = {
+            ":path", "age", "content-length", "content-range", "date", "etag", "if-modified-since",
+            "if-none-match", "if-range", "if-unmodified-since", "last-modified", "location", "range",
+            "set-cookie"
+        };
+        for (final String name: unindexed) {
+            UNINDEXED.add(name);
+        }
+        SENSITIVE.add("authorization");
+        SENSITIVE.add("proxy-authorization");
+    }
+
+    private final HPackDynamicTable dynamicTable;
+    private int maxTableSize;
+    private int minPendingTableSize;
+    private boolean tableSizeUpdate;
+
+    HPackEncoder(final int maxTableSize) {
+        super();
+        this.dynamicTable = new HPackDynamicTable(maxTableSize);
+        this.maxTableSize = maxTableSize;
+        this.minPendingTableSize = maxTableSize;
+    }
+
+    /**
+     * Changes the maximum size of the dynamic table. The change is signalled
+     * to the decoder at the start of the next header block.
+     */
+    void setMaxTableSize(final int maxTableSize) {
+        if (maxTableSize == this.maxTableSize && !this.tableSizeUpdate) {
+            return;
+        }
+        this.maxTableSize = maxTableSize;
+        this.minPendingTableSize = Math.min(this.minPendingTableSize, maxTableSize);
+        this.tableSizeUpdate = true;
+        this.dynamicTable.setMaxSize(maxTableSize);
+    }
+
+    static void encodeInt(final ByteArrayBuffer dst, final int prefixBits, final int value, final int mask) {
+        final int max = (1 << prefixBits) - 1;
+        if (value < max) {
+            dst.append(mask | value);
+            return;
+        }
+        dst.append(mask | max);
+        int remaining = value - max;
+        while (remaining >= 0x80) {
+            dst.append((remaining & 0x7f) | 0x80);
+            remaining >>>= 7;
+        }
+        dst.append(remaining);
+    }
+
+    static void encodeString(final ByteArrayBuffer dst, final String s) {
+        final int len = s.length();
+        final int huffmanLen = HPackHuffman.encodedLength(s);
+        if (huffmanLen < len) {
+            encodeInt(dst, 7, huffmanLen, 0x80);
+            HPackHuffman.encode(dst, s);
+        } else {
+            encodeInt(dst, 7, len, 0);
+            for (int i = 0; i < len; i++) {
+                dst.append(s.charAt(i) & 0xff);
+            }
+        }
+    }
+
+    private int findDynamic(final String name, final String value) {
+        int nameMatch = 0;
+        for (int i = 0; i < this.dynamicTable.length(); i++) {
+            final Header entry = this.dynamicTable.get(i);
+            if (entry.getName().equals(name)) {
+                final int index = HPackStaticTable.LENGTH + i + 1;
+                if (entry.getValue().equals(value)) {
+                    return index;
+                }
+                if (nameMatch == 0) {
+                    nameMatch = -index;
+                }
+            }
+        }
+        return nameMatch;
+    }
+
+    void encodeHeader(final ByteArrayBuffer dst, final String name, final String value) {
+        final boolean sensitive = SENSITIVE.contains(name) || ("cookie".equals(name) && value.length() < 20);
+        int index = HPackStaticTable.find(name, value);
+        if (index <= 0 && !sensitive) {
+            final int dynamicIndex = findDynamic(name, value);
+            if (dynamicIndex > 0) {
+                index = dynamicIndex;
+            } else if (index == 0) {
+                index = dynamicIndex;
+            }
+        }
+        if (index > 0 && !sensitive) {
+            encodeInt(dst, 7, index, 0x80);
+            return;
+        }
+        final int nameIndex = Math.abs(index);
+        if (sensitive) {
+            encodeInt(dst, 4, nameIndex, 0x10);
+        } else if (UNINDEXED.contains(name)) {
+            encodeInt(dst, 4, nameIndex, 0x00);
+        } else {
+            encodeInt(dst, 6, nameIndex, 0x40);
+            this.dynamicTable.add(new BasicHeader(name, value));
+        }
+        if (nameIndex == 0) {
+            encodeString(dst, name);
+        }
+        encodeString(dst, value);
+    }
+
+    /**
+     * Encodes the given header fields as a single header block. Field names
+     * are expected to be in lower case.
+     */
+    void encodeHeaders(final ByteArrayBuffer dst, final List<? extends Header> headers) {
+        if (this.tableSizeUpdate) {
+            if (this.minPendingTableSize < this.maxTableSize) {
+                encodeInt(dst, 5, this.minPendingTableSize, 0x20);
+            }
+            encodeInt(dst, 5, this.maxTableSize, 0x20);
+            this.minPendingTableSize = this.maxTableSize;
+            this.tableSizeUpdate = false;
+        }
+        for (int i = 0; i < headers.size(); i++) {
+            final Header header = headers.get(i);
+            encodeHeader(dst, header.getName(), header.getValue());
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.h2;
+
+/**
+ * HTTP/2 frame as read off the wire.
+ */
+final class RawFrame {
+
+    private final int type;
+    private final int flags;
+    private final int streamId;
+    private final byte[] payload;
+
+    RawFrame(final int type, final int flags, final int streamId, final byte[] payload) {
+        super();
+        this.type = type;
+        this.flags = flags;
+        this.streamId = streamId;
+        this.payload = payload;
+    }
+
+    int getType() {
+        return type;
+    }
+
+    int getFlags() {
+        return flags;
+    }
+
+    boolean isFlagSet(final int flag) {
+        return (flags & flag) == flag;
+    }
+
+    int getStreamId() {
+        return streamId;
+    }
+
+    byte[] getPayload() {
+        return payload;
+    }
+
+    int getLength() {
+        return payload.length;
+    }
+
+    int getInt(final int offset) {
+        return ((payload[offset] & 0xff) << 24)
+                | ((payload[offset + 1] & 0xff) << 16)
+                | ((payload[offset + 2] & 0xff) << 8)
+                | (payload[offset + 3] & 0xff);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[type=").append(FrameType.toString(type))
+                .append(", flags=0x").append(Integer.toHexString(flags))
+                .append(", streamId=").append(streamId)
+                .append(", length=").append(payload.length)
+                .append("]");
+        return buffer.toString();
+    }
+
+}
@@ -108,8 +108,15 @@ public abstract class AbstractMessageWriter<T extends HttpMessage> implements Ht
         writeHeadLine(message);
         for (final HeaderIterator it = message.headerIterator(); it.hasNext(); ) {
             final Header header = it.nextHeader();
-            this.sessionBuffer.writeLine
-                (lineFormatter.formatHeader(this.lineBuf, header));
+            final byte[] encoded = this.lineFormatter instanceof BasicLineFormatter
+                    ? ((BasicLineFormatter) this.lineFormatter).getEncodedHeader(header) : null;
+            if (encoded != null) {
+                // Cached header lines are written as they are
+                this.sessionBuffer.write(encoded);
+            } else {
+                this.sessionBuffer.writeLine
+                    (lineFormatter.formatHeader(this.lineBuf, header));
+            }
         }
         this.lineBuf.clear();
         this.sessionBuffer.writeLine(this.lineBuf);
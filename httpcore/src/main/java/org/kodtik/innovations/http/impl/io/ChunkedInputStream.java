@@ -34,12 +34,13 @@ import org.kodtik.innovations.http.ConnectionClosedException;
 import org.kodtik.innovations.http.Header;
 import org.kodtik.innovations.http.HttpException;
 import org.kodtik.innovations.http.MalformedChunkCodingException;
+import org.kodtik.innovations.http.MessageConstraintException;
 import org.kodtik.innovations.http.TruncatedChunkException;
 import org.kodtik.innovations.http.config.MessageConstraints;
 import org.kodtik.innovations.http.io.BufferInfo;
 import org.kodtik.innovations.http.io.SessionInputBuffer;
+import org.kodtik.innovations.http.protocol.HTTP;
 import org.kodtik.innovations.http.util.Args;
-import org.kodtik.innovations.http.util.CharArrayBuffer;
 
 /**
  * Implements chunked transfer coding. The content is received in small chunks.
@@ -68,7 +69,6 @@ public class ChunkedInputStream extends InputStream {
 
     /** The session input buffer */
     private final SessionInputBuffer in;
-    private final CharArrayBuffer buffer;
     private final MessageConstraints constraints;
 
     private int state;
@@ -100,7 +100,6 @@ public class ChunkedInputStream extends InputStream {
         super();
         this.in = Args.notNull(in, "Session input buffer");
         this.pos = 0L;
-        this.buffer = new CharArrayBuffer(16);
         this.constraints = constraints != null ? constraints : MessageConstraints.DEFAULT;
         this.state = CHUNK_LEN;
     }
@@ -239,43 +238,82 @@ public class ChunkedInputStream extends InputStream {
      * Expects the stream to start with a chunksize in hex with optional
      * comments after a semicolon. The line must end with a CRLF: "a3; some
      * comment\r\n" Positions the stream at the start of the next line.
+     * <p>
+     * The chunk size is decoded byte by byte straight from the session
+     * buffer rather than by decoding the line into characters first.
+     * </p>
      */
     private long getChunkSize() throws IOException {
         final int st = this.state;
         switch (st) {
         case CHUNK_CRLF:
-            this.buffer.clear();
-            final int bytesRead1 = this.in.readLine(this.buffer);
-            if (bytesRead1 == -1) {
+            int ch = this.in.read();
+            if (ch == HTTP.CR) {
+                ch = this.in.read();
+            }
+            if (ch == -1) {
                 throw new MalformedChunkCodingException(
                     "CRLF expected at end of chunk");
             }
-            if (!this.buffer.isEmpty()) {
+            if (ch != HTTP.LF) {
                 throw new MalformedChunkCodingException(
                     "Unexpected content at the end of chunk");
             }
             state = CHUNK_LEN;
             //$FALL-THROUGH$
         case CHUNK_LEN:
-            this.buffer.clear();
-            final int bytesRead2 = this.in.readLine(this.buffer);
-            if (bytesRead2 == -1) {
-                throw new ConnectionClosedException(
-                                "Premature end of chunk coded message body: closing chunk expected");
+            return parseChunkSize();
+        default:
+            throw new IllegalStateException("Inconsistent codec state");
+        }
+    }
+
+    private long parseChunkSize() throws IOException {
+        final int maxLineLen = this.constraints.getMaxLineLength();
+        long size = 0;
+        int digits = 0;
+        int count = 0;
+        boolean extension = false;
+        boolean trailingSpace = false;
+        for (;;) {
+            final int ch = this.in.read();
+            if (ch == -1) {
+                if (count == 0) {
+                    throw new ConnectionClosedException(
+                                    "Premature end of chunk coded message body: closing chunk expected");
+                }
+                break;
             }
-            int separator = this.buffer.indexOf(';');
-            if (separator < 0) {
-                separator = this.buffer.length();
+            count++;
+            if (maxLineLen > 0 && count > maxLineLen) {
+                throw new MessageConstraintException("Maximum line length limit exceeded");
             }
-            final String s = this.buffer.substringTrimmed(0, separator);
-            try {
-                return Long.parseLong(s, 16);
-            } catch (final NumberFormatException e) {
-                throw new MalformedChunkCodingException("Bad chunk header: " + s);
+            if (ch == HTTP.LF) {
+                break;
             }
-        default:
-            throw new IllegalStateException("Inconsistent codec state");
+            if (extension) {
+                continue;
+            }
+            final int digit = Character.digit(ch, 16);
+            if (digit >= 0) {
+                if (trailingSpace || (size >>> 59) != 0) {
+                    throw new MalformedChunkCodingException("Bad chunk header");
+                }
+                size = (size << 4) | digit;
+                digits++;
+            } else if (ch == ';') {
+                extension = true;
+            } else if (ch == HTTP.SP || ch == HTTP.HT || ch == HTTP.CR) {
+                trailingSpace = digits > 0;
+            } else {
+                throw new MalformedChunkCodingException("Bad chunk header: unexpected character 0x"
+                        + Integer.toHexString(ch));
+            }
+        }
+        if (digits == 0) {
+            throw new MalformedChunkCodingException("Bad chunk header: chunk size expected");
         }
+        return size;
     }
 
     /**
@@ -30,13 +30,26 @@ package org.kodtik.innovations.http.impl.io;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import org.kodtik.innovations.http.Header;
 import org.kodtik.innovations.http.io.SessionOutputBuffer;
+import org.kodtik.innovations.http.message.BasicLineFormatter;
+import org.kodtik.innovations.http.protocol.HTTP;
+import org.kodtik.innovations.http.util.Args;
+import org.kodtik.innovations.http.util.Asserts;
+import org.kodtik.innovations.http.util.CharArrayBuffer;
 
 /**
  * Implements chunked transfer coding. The content is sent in small chunks.
  * Entities transferred using this output stream can be of unlimited length.
  * Writes are buffered to an internal buffer (2048 default size).
  * <p>
+ * The internal buffer can optionally grow up to a maximum chunk size if it
+ * keeps filling up, which reduces the chunk overhead for content written in
+ * many small portions. Writes that do not fit into the buffer are sent as
+ * a single chunk straight from the caller's array. Trailer headers to be
+ * sent after the last chunk can be set with {@link #setTrailers(Header...)}.
+ * </p>
+ * <p>
  * Note that this class NEVER closes the underlying stream, even when close
  * gets called.  Instead, the stream will be marked as closed and no further
  * output will be permitted.
@@ -46,13 +59,26 @@ import org.kodtik.innovations.http.io.SessionOutputBuffer;
  */
 public class ChunkedOutputStream extends OutputStream {
 
+    private static final byte[] HEXADECIMAL = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    private static final byte[] CRLF = {HTTP.CR, HTTP.LF};
+
     // ----------------------------------------------------- Instance Variables
     private final SessionOutputBuffer out;
 
-    private final byte[] cache;
+    private final int maxChunkSize;
+
+    /** Chunk size line: up to 8 hex digits followed by CRLF */
+    private final byte[] chunkHeader;
+
+    private byte[] cache;
 
     private int cachePosition = 0;
 
+    private Header[] trailers;
+
     private boolean wroteLastChunk = false;
 
     /** True if the stream is closed. */
@@ -95,19 +121,64 @@ public class ChunkedOutputStream extends OutputStream {
      * @param out The session output buffer
      */
     public ChunkedOutputStream(final int bufferSize, final SessionOutputBuffer out) {
+        this(bufferSize, bufferSize, out);
+    }
+
+    /**
+     * Wraps a session output buffer and chunk-encodes the output using
+     * an internal buffer that adapts to the way content is written.
+     * <p>
+     * The buffer starts out with {@code minChunkSize} bytes. Each time it
+     * fills up with content written in portions smaller than the buffer
+     * itself its size is doubled, up to {@code maxChunkSize} bytes.
+     * </p>
+     *
+     * @param minChunkSize the initial buffer size and minimum chunk size
+     *   (excluding the last chunk and chunks sent on explicit flush).
+     * @param maxChunkSize the maximum size the buffer may grow to.
+     * @param out the session output buffer.
+     *
+     * @since 4.4.15
+     */
+    public ChunkedOutputStream(final int minChunkSize, final int maxChunkSize, final SessionOutputBuffer out) {
         super();
-        this.cache = new byte[bufferSize];
+        Args.check(maxChunkSize >= minChunkSize, "Maximum chunk size may not be less than minimum chunk size");
+        this.cache = new byte[minChunkSize];
+        this.maxChunkSize = maxChunkSize;
+        this.chunkHeader = new byte[10];
         this.out = out;
     }
 
+    private void writeChunkHeader(final int len) throws IOException {
+        int i = this.chunkHeader.length;
+        this.chunkHeader[--i] = HTTP.LF;
+        this.chunkHeader[--i] = HTTP.CR;
+        int n = len;
+        do {
+            this.chunkHeader[--i] = HEXADECIMAL[n & 0x0f];
+            n >>>= 4;
+        } while (n != 0);
+        this.out.write(this.chunkHeader, i, this.chunkHeader.length - i);
+    }
+
+    /**
+     * Doubles the size of the buffer, provided it is empty and below the
+     * maximum chunk size.
+     */
+    private void expandCache() {
+        if (this.cachePosition == 0 && this.cache.length < this.maxChunkSize) {
+            this.cache = new byte[(int) Math.min(this.maxChunkSize, (long) this.cache.length << 1)];
+        }
+    }
+
     /**
      * Writes the cache out onto the underlying stream
      */
     protected void flushCache() throws IOException {
         if (this.cachePosition > 0) {
-            this.out.writeLine(Integer.toHexString(this.cachePosition));
+            writeChunkHeader(this.cachePosition);
             this.out.write(this.cache, 0, this.cachePosition);
-            this.out.writeLine("");
+            this.out.write(CRLF, 0, CRLF.length);
             this.cachePosition = 0;
         }
     }
@@ -117,19 +188,43 @@ public class ChunkedOutputStream extends OutputStream {
      * as one large chunk
      */
     protected void flushCacheWithAppend(final byte bufferToAppend[], final int off, final int len) throws IOException {
-        this.out.writeLine(Integer.toHexString(this.cachePosition + len));
-        this.out.write(this.cache, 0, this.cachePosition);
+        writeChunkHeader(this.cachePosition + len);
+        if (this.cachePosition > 0) {
+            this.out.write(this.cache, 0, this.cachePosition);
+        }
         this.out.write(bufferToAppend, off, len);
-        this.out.writeLine("");
+        this.out.write(CRLF, 0, CRLF.length);
         this.cachePosition = 0;
     }
 
     protected void writeClosingChunk() throws IOException {
         // Write the final chunk.
         this.out.writeLine("0");
+        if (this.trailers != null) {
+            final CharArrayBuffer lineBuffer = new CharArrayBuffer(64);
+            for (final Header trailer : this.trailers) {
+                lineBuffer.clear();
+                this.out.writeLine(BasicLineFormatter.INSTANCE.formatHeader(lineBuffer, trailer));
+            }
+        }
         this.out.writeLine("");
     }
 
+    /**
+     * Sets trailer headers to be sent along with the closing chunk. Content
+     * producers can use this method to send metadata computed while
+     * streaming the content, such as a checksum, after the content itself.
+     * Trailers must be set before the stream is finished or closed.
+     *
+     * @param trailers the trailer headers. May be {@code null}.
+     *
+     * @since 4.4.15
+     */
+    public void setTrailers(final Header... trailers) {
+        Asserts.check(!this.wroteLastChunk, "Closing chunk has already been written");
+        this.trailers = trailers != null ? trailers.clone() : null;
+    }
+
     // ----------------------------------------------------------- Public Methods
     /**
      * Must be called to ensure the internal cache is flushed and the closing
@@ -154,6 +249,7 @@ public class ChunkedOutputStream extends OutputStream {
         this.cachePosition++;
         if (this.cachePosition == this.cache.length) {
             flushCache();
+            expandCache();
         }
     }
 
@@ -177,6 +273,10 @@ public class ChunkedOutputStream extends OutputStream {
         }
         if (len >= this.cache.length - this.cachePosition) {
             flushCacheWithAppend(src, off, len);
+            if (len < this.cache.length) {
+                // The write would have fit in an empty buffer
+                expandCache();
+            }
         } else {
             System.arraycopy(src, off, cache, this.cachePosition, len);
             this.cachePosition += len;
@@ -0,0 +1,123 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.io;
+
+import java.io.InputStream;
+
+import org.kodtik.innovations.http.Header;
+import org.kodtik.innovations.http.HeaderElement;
+import org.kodtik.innovations.http.NameValuePair;
+
+/**
+ * A single part of a {@code multipart} body read by {@link MultipartReader}.
+ * <p>
+ * The content stream of a part is only valid until the next part is
+ * requested from the reader.
+ * </p>
+ *
+ * @since 4.4.15
+ */
+public class MultipartPart {
+
+    private final Header[] headers;
+    private final InputStream content;
+
+    MultipartPart(final Header[] headers, final InputStream content) {
+        super();
+        this.headers = headers;
+        this.content = content;
+    }
+
+    public Header[] getAllHeaders() {
+        return this.headers.clone();
+    }
+
+    public Header getFirstHeader(final String name) {
+        for (final Header header : this.headers) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                return header;
+            }
+        }
+        return null;
+    }
+
+    private String getDispositionParameter(final String name) {
+        final Header header = getFirstHeader("Content-Disposition");
+        if (header == null) {
+            return null;
+        }
+        final HeaderElement[] elements = header.getElements();
+        if (elements.length == 0) {
+            return null;
+        }
+        final NameValuePair param = elements[0].getParameterByName(name);
+        return param != null ? param.getValue() : null;
+    }
+
+    /**
+     * Returns the value of the {@code name} parameter of the
+     * {@code Content-Disposition} header, or {@code null} if absent.
+     */
+    public String getName() {
+        return getDispositionParameter("name");
+    }
+
+    /**
+     * Returns the value of the {@code filename} parameter of the
+     * {@code Content-Disposition} header, or {@code null} if absent.
+     */
+    public String getFilename() {
+        return getDispositionParameter("filename");
+    }
+
+    /**
+     * Returns the value of the {@code Content-Type} header, or {@code null} if absent.
+     */
+    public String getContentType() {
+        final Header header = getFirstHeader("Content-Type");
+        return header != null ? header.getValue() : null;
+    }
+
+    /**
+     * Returns the content of the part. The stream is read directly
+     * off the underlying multipart body.
+     */
+    public InputStream getContent() {
+        return this.content;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[name: ").append(getName());
+        buffer.append("; filename: ").append(getFilename());
+        buffer.append("; content-type: ").append(getContentType());
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+}
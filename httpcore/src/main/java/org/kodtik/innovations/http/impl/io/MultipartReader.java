@@ -0,0 +1,397 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kodtik.innovations.http.Consts;
+import org.kodtik.innovations.http.ContentTooLongException;
+import org.kodtik.innovations.http.Header;
+import org.kodtik.innovations.http.HttpEntity;
+import org.kodtik.innovations.http.MalformedMultipartException;
+import org.kodtik.innovations.http.ParseException;
+import org.kodtik.innovations.http.config.MultipartConstraints;
+import org.kodtik.innovations.http.entity.ContentType;
+import org.kodtik.innovations.http.message.BasicLineParser;
+import org.kodtik.innovations.http.util.Args;
+import org.kodtik.innovations.http.util.ByteArrayBuffer;
+import org.kodtik.innovations.http.util.CharArrayBuffer;
+
+/**
+ * Incremental reader of {@code multipart} message bodies such as
+ * {@code multipart/form-data} uploads.
+ * <p>
+ * The reader consumes the body stream through a fixed size buffer and
+ * locates part delimiters with a Boyer-Moore-Horspool search, so bodies
+ * of any size are processed in constant memory. Parts are handed out one
+ * at a time by {@link #nextPart()}; the content of a part is read directly
+ * off the body stream and is skipped if the part is abandoned before
+ * being read fully.
+ * </p>
+ * <p>
+ * This class can be used by {@link org.kodtik.innovations.http.protocol.HttpRequestHandler}s
+ * to process the entity of an incoming request:
+ * </p>
+ * <pre>
+ * final MultipartReader reader = MultipartReader.create(entity, MultipartConstraints.DEFAULT);
+ * try {
+ *     MultipartPart part;
+ *     while ((part = reader.nextPart()) != null) {
+ *         final InputStream content = part.getContent();
+ *         ...
+ *     }
+ * } finally {
+ *     reader.close();
+ * }
+ * </pre>
+ *
+ * @since 4.4.15
+ */
+public class MultipartReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final InputStream inStream;
+    private final MultipartConstraints constraints;
+    private final byte[] delimiter;
+    private final int[] skip;
+    private final byte[] buffer;
+
+    private int pos;
+    private int limit;
+    private boolean eof;
+    /** Buffer positions below this index are known not to start a delimiter. */
+    private int searchFrom;
+    /** Buffer index of the next delimiter, or {@code -1} if not located yet. */
+    private int delimiterAt;
+
+    private boolean inBody;
+    private boolean done;
+    private int partCount;
+    private long partSize;
+    private PartInputStream current;
+
+    /**
+     * Creates a reader of the given multipart body.
+     *
+     * @param inStream the body stream.
+     * @param boundary the boundary parameter of the body's content type.
+     * @param constraints limits on the number and size of parts.
+     *   {@code null} implies {@link MultipartConstraints#DEFAULT}.
+     */
+    public MultipartReader(
+            final InputStream inStream, final String boundary, final MultipartConstraints constraints) {
+        super();
+        this.inStream = Args.notNull(inStream, "Input stream");
+        Args.notEmpty(boundary, "Boundary");
+        Args.check(boundary.length() <= 256, "Boundary too long");
+        this.constraints = constraints != null ? constraints : MultipartConstraints.DEFAULT;
+        final byte[] b = boundary.getBytes(Consts.ASCII);
+        this.delimiter = new byte[b.length + 4];
+        this.delimiter[0] = '\r';
+        this.delimiter[1] = '\n';
+        this.delimiter[2] = '-';
+        this.delimiter[3] = '-';
+        System.arraycopy(b, 0, this.delimiter, 4, b.length);
+        this.skip = new int[256];
+        final int n = this.delimiter.length;
+        for (int i = 0; i < this.skip.length; i++) {
+            this.skip[i] = n;
+        }
+        for (int i = 0; i < n - 1; i++) {
+            this.skip[this.delimiter[i] & 0xff] = n - 1 - i;
+        }
+        this.buffer = new byte[BUFFER_SIZE];
+        // The first delimiter may not be preceded by a line break, so
+        // one is assumed in front of the body
+        this.buffer[0] = '\r';
+        this.buffer[1] = '\n';
+        this.limit = 2;
+        this.delimiterAt = -1;
+        this.inBody = true;
+    }
+
+    /**
+     * Creates a reader of the content of the given entity, taking the boundary
+     * from the entity's {@code Content-Type}.
+     *
+     * @throws MalformedMultipartException if the entity is not of a
+     *   {@code multipart} type or declares no boundary.
+     */
+    public static MultipartReader create(
+            final HttpEntity entity, final MultipartConstraints constraints) throws IOException {
+        Args.notNull(entity, "Entity");
+        final ContentType contentType;
+        try {
+            contentType = ContentType.get(entity);
+        } catch (final ParseException ex) {
+            throw new MalformedMultipartException("Invalid content type: " + ex.getMessage());
+        }
+        if (contentType == null || !contentType.getMimeType().startsWith("multipart/")) {
+            throw new MalformedMultipartException("Entity is not a multipart entity");
+        }
+        final String boundary = contentType.getParameter("boundary");
+        if (boundary == null || boundary.isEmpty()) {
+            throw new MalformedMultipartException("Multipart boundary not specified");
+        }
+        return new MultipartReader(entity.getContent(), boundary, constraints);
+    }
+
+    /**
+     * Returns the next part of the body or {@code null} if there are no more
+     * parts. Content of the previous part that has not been read is skipped.
+     *
+     * @throws MalformedMultipartException if the body is malformed.
+     * @throws ContentTooLongException if a limit of the reader's constraints is exceeded.
+     */
+    public MultipartPart nextPart() throws IOException {
+        if (this.done) {
+            return null;
+        }
+        if (this.current != null) {
+            this.current.detached = true;
+            this.current = null;
+        }
+        while (this.inBody) {
+            readBody(null, 0, BUFFER_SIZE);
+        }
+        int b = readByte();
+        if (b == '-') {
+            if (readByte() != '-') {
+                throw new MalformedMultipartException("Invalid multipart delimiter");
+            }
+            this.done = true;
+            return null;
+        }
+        // skip transport padding
+        while (b == ' ' || b == '\t') {
+            b = readByte();
+        }
+        if (b != '\r' || readByte() != '\n') {
+            throw new MalformedMultipartException(b == -1
+                    ? "Unexpected end of multipart body" : "Invalid multipart delimiter");
+        }
+        this.partCount++;
+        final int maxPartCount = this.constraints.getMaxPartCount();
+        if (maxPartCount >= 0 && this.partCount > maxPartCount) {
+            throw new ContentTooLongException("Maximum part count exceeded");
+        }
+        final Header[] headers = readHeaders();
+        this.inBody = true;
+        this.partSize = 0;
+        this.current = new PartInputStream();
+        return new MultipartPart(headers, this.current);
+    }
+
+    private Header[] readHeaders() throws IOException {
+        final int maxHeaderSize = this.constraints.getMaxHeaderSize();
+        final List<Header> headers = new ArrayList<Header>();
+        final ByteArrayBuffer line = new ByteArrayBuffer(128);
+        int total = 0;
+        for (;;) {
+            line.clear();
+            for (;;) {
+                final int b = readByte();
+                if (b == -1) {
+                    throw new MalformedMultipartException("Unexpected end of multipart body");
+                }
+                total++;
+                if (maxHeaderSize >= 0 && total > maxHeaderSize) {
+                    throw new ContentTooLongException("Maximum part header size exceeded");
+                }
+                if (b == '\n') {
+                    break;
+                }
+                line.append(b);
+            }
+            int len = line.length();
+            if (len > 0 && line.byteAt(len - 1) == '\r') {
+                len--;
+            }
+            if (len == 0) {
+                return headers.toArray(new Header[headers.size()]);
+            }
+            final String s = new String(line.buffer(), 0, len, Consts.UTF_8);
+            final CharArrayBuffer chars = new CharArrayBuffer(s.length());
+            chars.append(s);
+            try {
+                headers.add(BasicLineParser.INSTANCE.parseHeader(chars));
+            } catch (final ParseException ex) {
+                throw new MalformedMultipartException("Invalid part header: " + ex.getMessage());
+            }
+        }
+    }
+
+    private int readByte() throws IOException {
+        if (this.pos >= this.limit) {
+            if (this.eof || fill() == -1) {
+                return -1;
+            }
+        }
+        return this.buffer[this.pos++] & 0xff;
+    }
+
+    /**
+     * Compacts the buffer and reads more data from the body stream.
+     */
+    private int fill() throws IOException {
+        if (this.pos > 0) {
+            final int len = this.limit - this.pos;
+            if (len > 0) {
+                System.arraycopy(this.buffer, this.pos, this.buffer, 0, len);
+            }
+            this.limit = len;
+            this.searchFrom = Math.max(0, this.searchFrom - this.pos);
+            if (this.delimiterAt >= 0) {
+                this.delimiterAt -= this.pos;
+            }
+            this.pos = 0;
+        }
+        final int n = this.inStream.read(this.buffer, this.limit, this.buffer.length - this.limit);
+        if (n == -1) {
+            this.eof = true;
+        } else {
+            this.limit += n;
+        }
+        return n;
+    }
+
+    private void locateDelimiter() {
+        final byte[] d = this.delimiter;
+        final int last = d.length - 1;
+        int i = Math.max(this.pos, this.searchFrom);
+        while (i + last < this.limit) {
+            int j = last;
+            while (j >= 0 && this.buffer[i + j] == d[j]) {
+                j--;
+            }
+            if (j < 0) {
+                this.delimiterAt = i;
+                return;
+            }
+            i += this.skip[this.buffer[i + last] & 0xff];
+        }
+        this.searchFrom = Math.max(i, this.limit - last);
+    }
+
+    /**
+     * Reads content preceding the next delimiter. If {@code b} is {@code null}
+     * the content is skipped. Returns {@code -1} once the delimiter has been
+     * reached and consumed.
+     */
+    int readBody(final byte[] b, final int off, final int len) throws IOException {
+        if (!this.inBody) {
+            return -1;
+        }
+        for (;;) {
+            if (this.delimiterAt < 0) {
+                locateDelimiter();
+            }
+            int avail;
+            if (this.delimiterAt >= 0) {
+                avail = this.delimiterAt - this.pos;
+                if (avail == 0) {
+                    this.pos += this.delimiter.length;
+                    this.searchFrom = this.pos;
+                    this.delimiterAt = -1;
+                    this.inBody = false;
+                    return -1;
+                }
+            } else {
+                avail = this.limit - this.pos - (this.delimiter.length - 1);
+            }
+            if (avail > 0) {
+                final int n = Math.min(len, avail);
+                if (b != null) {
+                    System.arraycopy(this.buffer, this.pos, b, off, n);
+                }
+                this.pos += n;
+                // Content skipped by nextPart() and the preamble count as well,
+                // so that no stretch of the body escapes the limit
+                this.partSize += n;
+                final long maxPartSize = this.constraints.getMaxPartSize();
+                if (maxPartSize >= 0 && this.partSize > maxPartSize) {
+                    throw new ContentTooLongException("Maximum part size exceeded");
+                }
+                return n;
+            }
+            if (this.eof || fill() == -1) {
+                throw new MalformedMultipartException("Unexpected end of multipart body");
+            }
+        }
+    }
+
+    /**
+     * Closes the underlying body stream.
+     */
+    @Override
+    public void close() throws IOException {
+        this.done = true;
+        this.inBody = false;
+        this.inStream.close();
+    }
+
+    class PartInputStream extends InputStream {
+
+        private final byte[] single = new byte[1];
+        boolean detached;
+
+        @Override
+        public int read() throws IOException {
+            final int n = read(this.single, 0, 1);
+            return n == -1 ? -1 : this.single[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (this.detached || len == 0) {
+                return this.detached ? -1 : 0;
+            }
+            return readBody(b, off, len);
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            if (this.detached || n <= 0) {
+                return 0;
+            }
+            final int count = readBody(null, 0, (int) Math.min(n, BUFFER_SIZE));
+            return count > 0 ? count : 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.detached = true;
+        }
+
+    }
+
+}
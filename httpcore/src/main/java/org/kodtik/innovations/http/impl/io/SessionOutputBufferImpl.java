@@ -31,6 +31,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
 
@@ -50,6 +51,13 @@ import org.kodtik.innovations.http.util.CharArrayBuffer;
  * <p>
  * {@link #writeLine(CharArrayBuffer)} and {@link #writeLine(String)} methods
  * of this class use CR-LF as a line delimiter.
+ * <p>
+ * A fragment too large to be buffered is sent together with the data
+ * buffered ahead of it, typically a message head, in a single write as long
+ * as both do not exceed 64 KiB. This saves a system call and a separate TCP
+ * segment for messages with a small body. If the buffer is bound to a
+ * {@link GatheringByteChannel} the write gathers from both arrays, otherwise
+ * they are coalesced into one array first.
  *
  * @since 4.3
  */
@@ -57,13 +65,17 @@ public class SessionOutputBufferImpl implements SessionOutputBuffer, BufferInfo
 
     private static final byte[] CRLF = new byte[] {HTTP.CR, HTTP.LF};
 
+    private static final int GATHER_LIMIT = 64 * 1024;
+
     private final HttpTransportMetricsImpl metrics;
     private final ByteArrayBuffer buffer;
     private final int fragementSizeHint;
     private final CharsetEncoder encoder;
 
     private OutputStream outStream;
+    private GatheringByteChannel channel;
     private ByteBuffer bbuf;
+    private byte[] gatherBuffer;
 
     /**
      * Creates new instance of SessionOutputBufferImpl.
@@ -97,7 +109,23 @@ public class SessionOutputBufferImpl implements SessionOutputBuffer, BufferInfo
     }
 
     public void bind(final OutputStream outStream) {
+        bind(outStream, null);
+    }
+
+    /**
+     * Binds this session buffer to the given output stream and the channel
+     * backing it. The channel is only used for gathering writes and must
+     * write to the same destination as the stream. It must be in blocking
+     * mode.
+     *
+     * @param outStream the output stream.
+     * @param channel the channel backing the output stream. May be {@code null}.
+     *
+     * @since 4.4.15
+     */
+    public void bind(final OutputStream outStream, final GatheringByteChannel channel) {
         this.outStream = outStream;
+        this.channel = channel;
     }
 
     public boolean isBound() {
@@ -139,6 +167,35 @@ public class SessionOutputBufferImpl implements SessionOutputBuffer, BufferInfo
         }
     }
 
+    /**
+     * Writes the buffered data followed by the given fragment with a single
+     * write operation.
+     */
+    private void gatherWrite(final byte[] b, final int off, final int len) throws IOException {
+        final int buffered = this.buffer.length();
+        if (this.channel != null) {
+            // Make sure nothing is pending in the stream ahead of the channel
+            flushStream();
+            final ByteBuffer[] srcs = new ByteBuffer[] {
+                    ByteBuffer.wrap(this.buffer.buffer(), 0, buffered),
+                    ByteBuffer.wrap(b, off, len)
+            };
+            while (srcs[1].hasRemaining()) {
+                this.channel.write(srcs);
+            }
+        } else {
+            final int total = buffered + len;
+            if (this.gatherBuffer == null || this.gatherBuffer.length < total) {
+                this.gatherBuffer = new byte[Math.min(GATHER_LIMIT, Math.max(total, this.buffer.capacity() << 1))];
+            }
+            System.arraycopy(this.buffer.buffer(), 0, this.gatherBuffer, 0, buffered);
+            System.arraycopy(b, off, this.gatherBuffer, buffered, len);
+            streamWrite(this.gatherBuffer, 0, total);
+        }
+        this.buffer.clear();
+        this.metrics.incrementBytesTransferred(buffered + len);
+    }
+
     @Override
     public void flush() throws IOException {
         flushBuffer();
@@ -154,6 +211,12 @@ public class SessionOutputBufferImpl implements SessionOutputBuffer, BufferInfo
         // if the byte array is larger then MIN_CHUNK_LIMIT
         // write it directly to the output stream
         if (len > this.fragementSizeHint || len > this.buffer.capacity()) {
+            final int buffered = this.buffer.length();
+            if (buffered > 0 && len <= GATHER_LIMIT - buffered) {
+                // send the buffered data along with the fragment
+                gatherWrite(b, off, len);
+                return;
+            }
             // flush the buffer
             flushBuffer();
             // write directly to the out stream
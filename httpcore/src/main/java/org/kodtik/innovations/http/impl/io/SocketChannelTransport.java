@@ -0,0 +1,304 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * Blocking I/O over a {@link SocketChannel} that is kept in non-blocking
+ * mode and waited on with a selector owned by the transport.
+ * <p>
+ * The streams returned by {@link #getInputStream()} and
+ * {@link #getOutputStream()} behave like those of a regular socket: reads
+ * block until data is available and time out after the socket timeout
+ * ({@link Socket#getSoTimeout()}), writes block until all data has been
+ * written. Unlike with regular sockets, the read timeout can be overridden
+ * for individual reads with {@link #setReadTimeout(int)} without touching
+ * the socket options, which makes readiness and stale connection checks
+ * cheap, and end of stream sent by the peer is detected with a
+ * non-blocking read. The output stream is also a
+ * {@link GatheringByteChannel}.
+ * </p>
+ * <p>
+ * {@link #release()} switches the channel back to blocking mode, for
+ * instance in order to layer TLS on top of the socket. The streams then
+ * delegate to those of the socket.
+ * </p>
+ * <p>
+ * Instances of this class are not thread-safe, except for {@link #close()},
+ * which may be called by another thread to abort blocked I/O operations.
+ * </p>
+ *
+ * @since 4.4.15
+ */
+public class SocketChannelTransport implements Closeable {
+
+    private final Socket socket;
+    private final SocketChannel channel;
+    private final Selector selector;
+    private final SelectionKey key;
+    private final ChannelInputStream inStream;
+    private final ChannelOutputStream outStream;
+
+    private int readTimeout;
+    private volatile boolean released;
+
+    /**
+     * Puts the channel of the given connected socket in non-blocking mode
+     * and registers it with a new selector.
+     *
+     * @param socket a connected socket backed by a {@link SocketChannel}.
+     */
+    public SocketChannelTransport(final Socket socket) throws IOException {
+        super();
+        Args.notNull(socket, "Socket");
+        this.socket = socket;
+        this.channel = Args.notNull(socket.getChannel(), "Socket channel");
+        Args.check(this.channel.isConnected(), "Socket channel is not connected");
+        this.channel.configureBlocking(false);
+        this.selector = Selector.open();
+        try {
+            this.key = this.channel.register(this.selector, 0);
+        } catch (final IOException ex) {
+            this.selector.close();
+            throw ex;
+        }
+        this.inStream = new ChannelInputStream();
+        this.outStream = new ChannelOutputStream();
+        this.readTimeout = -1;
+    }
+
+    public Socket getSocket() {
+        return this.socket;
+    }
+
+    public InputStream getInputStream() {
+        return this.inStream;
+    }
+
+    /**
+     * Returns the output stream, which is a {@link GatheringByteChannel} as well.
+     */
+    public OutputStream getOutputStream() {
+        return this.outStream;
+    }
+
+    /**
+     * Overrides the socket timeout for subsequent reads.
+     *
+     * @param timeout timeout in milliseconds, {@code 0} to wait indefinitely
+     *   or a negative value to revert to the socket timeout.
+     */
+    public void setReadTimeout(final int timeout) {
+        this.readTimeout = timeout;
+    }
+
+    public boolean isReleased() {
+        return this.released;
+    }
+
+    /**
+     * Deregisters the channel and switches it back to blocking mode.
+     */
+    public void release() throws IOException {
+        if (!this.released) {
+            this.released = true;
+            // Closing the selector deregisters the channel
+            this.selector.close();
+            if (this.channel.isOpen()) {
+                this.channel.configureBlocking(true);
+            }
+        }
+    }
+
+    /**
+     * Closes the selector, aborting any I/O operation blocked on it. Does not
+     * close the socket.
+     */
+    @Override
+    public void close() throws IOException {
+        this.selector.close();
+    }
+
+    private void await(final int ops, final int timeout) throws IOException {
+        try {
+            if (this.key.interestOps() != ops) {
+                this.key.interestOps(ops);
+            }
+            final long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+            for (;;) {
+                final int n;
+                if (timeout > 0) {
+                    final long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new SocketTimeoutException("Read timed out");
+                    }
+                    n = this.selector.select(remaining);
+                } else {
+                    n = this.selector.select();
+                }
+                if (!this.channel.isOpen()) {
+                    throw new SocketException("Socket closed");
+                }
+                if (n > 0) {
+                    this.selector.selectedKeys().clear();
+                    return;
+                }
+            }
+        } catch (final ClosedSelectorException ex) {
+            throw new SocketException("Socket closed");
+        } catch (final CancelledKeyException ex) {
+            throw new SocketException("Socket closed");
+        }
+    }
+
+    private int currentReadTimeout() throws SocketException {
+        return this.readTimeout >= 0 ? this.readTimeout : this.socket.getSoTimeout();
+    }
+
+    private void writeFully(final ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            if (this.channel.write(src) == 0) {
+                await(SelectionKey.OP_WRITE, 0);
+            }
+        }
+    }
+
+    class ChannelInputStream extends InputStream {
+
+        private final byte[] single = new byte[1];
+
+        @Override
+        public int read() throws IOException {
+            final int n = read(this.single, 0, 1);
+            return n > 0 ? this.single[0] & 0xff : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (released) {
+                return socket.getInputStream().read(b, off, len);
+            }
+            if (len == 0) {
+                return 0;
+            }
+            final ByteBuffer dst = ByteBuffer.wrap(b, off, len);
+            for (;;) {
+                final int n = channel.read(dst);
+                if (n != 0) {
+                    return n;
+                }
+                await(SelectionKey.OP_READ, currentReadTimeout());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the socket is managed by the connection
+        }
+
+    }
+
+    class ChannelOutputStream extends OutputStream implements GatheringByteChannel {
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (released) {
+                socket.getOutputStream().write(b, off, len);
+                return;
+            }
+            writeFully(ByteBuffer.wrap(b, off, len));
+        }
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException {
+            final int len = src.remaining();
+            if (released) {
+                while (src.hasRemaining()) {
+                    channel.write(src);
+                }
+            } else {
+                writeFully(src);
+            }
+            return len;
+        }
+
+        @Override
+        public long write(final ByteBuffer[] srcs, final int offset, final int length) throws IOException {
+            long total = 0;
+            for (int i = offset; i < offset + length; i++) {
+                total += srcs[i].remaining();
+            }
+            long written = 0;
+            while (written < total) {
+                final long n = channel.write(srcs, offset, length);
+                if (n == 0 && !released) {
+                    await(SelectionKey.OP_WRITE, 0);
+                }
+                written += n;
+            }
+            return written;
+        }
+
+        @Override
+        public long write(final ByteBuffer[] srcs) throws IOException {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the socket is managed by the connection
+        }
+
+    }
+
+}
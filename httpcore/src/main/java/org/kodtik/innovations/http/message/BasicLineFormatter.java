@@ -63,10 +63,26 @@ public class BasicLineFormatter implements LineFormatter {
     @Deprecated
     public final static BasicLineFormatter DEFAULT = new BasicLineFormatter();
 
-    public final static BasicLineFormatter INSTANCE = new BasicLineFormatter();
+    public final static BasicLineFormatter INSTANCE = new BasicLineFormatter(HeaderCache.INSTANCE);
+
+    private final HeaderCache headerCache;
 
     public BasicLineFormatter() {
+        this(null);
+    }
+
+    /**
+     * Creates a new line formatter.
+     *
+     * @param headerCache the cache to look up formatted headers in, or
+     *   {@code null} to format every header. Derived classes customizing
+     *   {@link #doFormatHeader} should not use a cache.
+     *
+     * @since 4.4.15
+     */
+    public BasicLineFormatter(final HeaderCache headerCache) {
         super();
+        this.headerCache = headerCache;
     }
 
     /**
@@ -282,7 +298,15 @@ public class BasicLineFormatter implements LineFormatter {
         Args.notNull(header, "Header");
         final CharArrayBuffer result;
 
-        if (header instanceof FormattedHeader) {
+        final FormattedHeader cached = header instanceof HeaderCache.CachedHeader
+                ? (FormattedHeader) header
+                : this.headerCache != null ? this.headerCache.getHeader(header) : null;
+        if (cached != null) {
+            // Cached lines are shared by all threads and must not be handed
+            // out to callers who may modify them
+            result = initBuffer(buffer);
+            result.append(cached.getBuffer());
+        } else if (header instanceof FormattedHeader) {
             // If the header is backed by a buffer, re-use the buffer
             result = ((FormattedHeader)header).getBuffer();
         } else {
@@ -294,6 +318,24 @@ public class BasicLineFormatter implements LineFormatter {
     } // formatHeader
 
 
+    /**
+     * Returns the header line of the given header encoded as bytes and
+     * followed by CR-LF, if the header is held by the header cache of this
+     * formatter. The returned array is shared and must not be modified.
+     *
+     * @param header    the header to look up
+     *
+     * @return  the encoded header line, or {@code null} if the header
+     *          has to be formatted with {@link #formatHeader}
+     *
+     * @since 4.4.15
+     */
+    public byte[] getEncodedHeader(final Header header) {
+        Args.notNull(header, "Header");
+        return this.headerCache != null ? this.headerCache.getEncoded(header) : null;
+    }
+
+
     /**
      * Actually formats a header.
      * Called from {@link #formatHeader}.
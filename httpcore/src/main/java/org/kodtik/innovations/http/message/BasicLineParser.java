@@ -71,7 +71,7 @@ public class BasicLineParser implements LineParser {
     @Deprecated
     public final static BasicLineParser DEFAULT = new BasicLineParser();
 
-    public final static BasicLineParser INSTANCE = new BasicLineParser();
+    public final static BasicLineParser INSTANCE = new BasicLineParser(null, HeaderCache.INSTANCE);
 
     /**
      * A version of the protocol to parse.
@@ -79,6 +79,8 @@ public class BasicLineParser implements LineParser {
      */
     protected final ProtocolVersion protocol;
 
+    private final HeaderCache headerCache;
+
 
     /**
      * Creates a new line parser for the given HTTP-like protocol.
@@ -86,9 +88,27 @@ public class BasicLineParser implements LineParser {
      * @param proto     a version of the protocol to parse, or
      *                  {@code null} for HTTP. The actual version
      *                  is not relevant, only the protocol name.
+     * @param headerCache the cache to look up header lines in, or
+     *                  {@code null} to create a new header for
+     *                  every header line.
+     *
+     * @since 4.4.15
      */
-    public BasicLineParser(final ProtocolVersion proto) {
+    public BasicLineParser(final ProtocolVersion proto, final HeaderCache headerCache) {
         this.protocol = proto != null? proto : HttpVersion.HTTP_1_1;
+        this.headerCache = headerCache;
+    }
+
+
+    /**
+     * Creates a new line parser for the given HTTP-like protocol.
+     *
+     * @param proto     a version of the protocol to parse, or
+     *                  {@code null} for HTTP. The actual version
+     *                  is not relevant, only the protocol name.
+     */
+    public BasicLineParser(final ProtocolVersion proto) {
+        this(proto, null);
     }
 
 
@@ -441,6 +461,9 @@ public class BasicLineParser implements LineParser {
     public Header parseHeader(final CharArrayBuffer buffer)
         throws ParseException {
 
+        if (this.headerCache != null) {
+            return this.headerCache.parseHeader(buffer);
+        }
         // the actual parser code is in the constructor of BufferedHeader
         return new BufferedHeader(buffer);
     }
@@ -90,6 +90,18 @@ public class BufferedHeader implements FormattedHeader, Cloneable, Serializable
         this.valuePos = colon + 1;
     }
 
+    /**
+     * Creates a new header from a buffer already split by the caller.
+     *
+     * @since 4.4.15
+     */
+    BufferedHeader(final String name, final CharArrayBuffer buffer, final int valuePos) {
+        super();
+        this.name = name;
+        this.buffer = buffer;
+        this.valuePos = valuePos;
+    }
+
 
     @Override
     public String getName() {
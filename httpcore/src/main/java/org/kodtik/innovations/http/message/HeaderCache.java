@@ -0,0 +1,748 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.message;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.kodtik.innovations.http.FormattedHeader;
+import org.kodtik.innovations.http.Header;
+import org.kodtik.innovations.http.ParseException;
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+import org.kodtik.innovations.http.protocol.HTTP;
+import org.kodtik.innovations.http.util.Args;
+import org.kodtik.innovations.http.util.CharArrayBuffer;
+
+/**
+ * Bounded cache of interned header names and complete header lines shared
+ * by the HTTP/1.1 line parser and line formatter.
+ * <p>
+ * Header names are interned so that parsed headers with the same name share
+ * a single {@code String}. Headers whose values are typically drawn from
+ * a small set, such as {@code Content-Type: application/json} or
+ * {@code Transfer-Encoding: chunked}, are cached as complete lines along
+ * with their pre-encoded form, so that parsing or writing such a header
+ * again allocates nothing. The cache comes seeded with the header names of
+ * the HPACK static table (RFC 7541, Appendix A) in their usual HTTP/1.1
+ * spelling and with a number of common header lines.
+ * </p>
+ * <p>
+ * The cache is lock-free and bounded. A name or line is only admitted once
+ * it has been seen twice in a row at its position, so that values unique
+ * to a message, such as a {@code Content-Type} carrying a multipart
+ * boundary, do not take up room. Once the cache is full, an admitted entry
+ * replaces one near its position that has not been used since the cache
+ * last looked at it (CLOCK), so entries that fell out of use are reclaimed.
+ * Headers that are not cached are parsed and formatted as usual. Only lines
+ * consisting of printable US-ASCII characters and without parameters other
+ * than {@code charset} are cached, whose encoded form is the same in all
+ * charsets usable for HTTP message heads.
+ * </p>
+ *
+ * @since 4.4.15
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public final class HeaderCache {
+
+    private static final int MAX_NAME_LENGTH = 64;
+    private static final int MAX_LINE_LENGTH = 128;
+    private static final int MAX_PROBES = 8;
+
+    private static final String[] NAMES = {
+        "Accept",
+        "Accept-Charset",
+        "Accept-Encoding",
+        "Accept-Language",
+        "Accept-Ranges",
+        "Access-Control-Allow-Origin",
+        "Age",
+        "Allow",
+        "Authorization",
+        "Cache-Control",
+        "Connection",
+        "Content-Disposition",
+        "Content-Encoding",
+        "Content-Language",
+        "Content-Length",
+        "Content-Location",
+        "Content-Range",
+        "Content-Type",
+        "Cookie",
+        "Date",
+        "ETag",
+        "Expect",
+        "Expires",
+        "From",
+        "Host",
+        "If-Match",
+        "If-Modified-Since",
+        "If-None-Match",
+        "If-Range",
+        "If-Unmodified-Since",
+        "Keep-Alive",
+        "Last-Modified",
+        "Link",
+        "Location",
+        "Max-Forwards",
+        "Pragma",
+        "Proxy-Authenticate",
+        "Proxy-Authorization",
+        "Proxy-Connection",
+        "Range",
+        "Referer",
+        "Refresh",
+        "Retry-After",
+        "Server",
+        "Set-Cookie",
+        "Strict-Transport-Security",
+        "TE",
+        "Trailer",
+        "Transfer-Encoding",
+        "Upgrade",
+        "User-Agent",
+        "Vary",
+        "Via",
+        "WWW-Authenticate"
+    };
+
+    /**
+     * Lower case names of headers whose complete lines get cached. Headers
+     * whose values vary with the host or the client, such as {@code Host} or
+     * {@code User-Agent}, are left out as they would only fill the cache.
+     */
+    private static final Set<String> VALUE_NAMES = new HashSet<String>(Arrays.asList(
+        "accept",
+        "accept-charset",
+        "accept-encoding",
+        "accept-language",
+        "accept-ranges",
+        "allow",
+        "cache-control",
+        "connection",
+        "content-encoding",
+        "content-language",
+        "content-type",
+        "expect",
+        "pragma",
+        "proxy-connection",
+        "strict-transport-security",
+        "te",
+        "transfer-encoding",
+        "upgrade",
+        "vary",
+        "x-content-type-options",
+        "x-frame-options"));
+
+    private static final String[] LINES = {
+        "Accept: */*",
+        "Accept: application/json",
+        "Accept-Encoding: gzip,deflate",
+        "Accept-Encoding: gzip, deflate",
+        "Accept-Encoding: gzip, deflate, br",
+        "Accept-Ranges: bytes",
+        "Cache-Control: max-age=0",
+        "Cache-Control: no-cache",
+        "Cache-Control: no-store",
+        "Cache-Control: private",
+        "Connection: close",
+        "Connection: keep-alive",
+        "Connection: Keep-Alive",
+        "Content-Encoding: gzip",
+        "Content-Type: application/json",
+        "Content-Type: application/json; charset=UTF-8",
+        "Content-Type: application/json; charset=utf-8",
+        "Content-Type: application/octet-stream",
+        "Content-Type: application/x-www-form-urlencoded",
+        "Content-Type: application/xml",
+        "Content-Type: text/html; charset=UTF-8",
+        "Content-Type: text/html; charset=utf-8",
+        "Content-Type: text/plain; charset=ISO-8859-1",
+        "Content-Type: text/plain; charset=UTF-8",
+        "Expect: 100-continue",
+        "Pragma: no-cache",
+        "Transfer-Encoding: chunked",
+        "Vary: Accept-Encoding",
+        "X-Content-Type-Options: nosniff"
+    };
+
+    // Initialized last as it depends on the tables above
+    /**
+     * Shared instance used by {@link BasicLineParser#INSTANCE} and
+     * {@link BasicLineFormatter#INSTANCE}.
+     */
+    public static final HeaderCache INSTANCE = new HeaderCache(1024);
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<NameEntry> names;
+    private final AtomicReferenceArray<CachedHeader> lines;
+    private final AtomicInteger nameCount;
+    private final AtomicInteger lineCount;
+    // Hashes of names and lines last seen but not admitted, by position
+    private final AtomicIntegerArray nameSightings;
+    private final AtomicIntegerArray lineSightings;
+
+    /**
+     * Creates a cache seeded with common header names and lines.
+     *
+     * @param capacity maximum number of header names, and of header lines,
+     *   held by the cache.
+     */
+    public HeaderCache(final int capacity) {
+        super();
+        this.capacity = Args.positive(capacity, "Capacity");
+        final int slots = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) << 1;
+        this.mask = slots - 1;
+        this.names = new AtomicReferenceArray<NameEntry>(slots);
+        this.lines = new AtomicReferenceArray<CachedHeader>(slots);
+        this.nameCount = new AtomicInteger();
+        this.lineCount = new AtomicInteger();
+        this.nameSightings = new AtomicIntegerArray(slots);
+        this.lineSightings = new AtomicIntegerArray(slots);
+        for (final String name: NAMES) {
+            internName(name, true);
+        }
+        for (final String line: LINES) {
+            final int colon = line.indexOf(':');
+            lookup(line.substring(0, colon), line.substring(colon + 2), true);
+        }
+    }
+
+    /**
+     * Parses a header line, returning a shared instance if the line is
+     * cached. The returned header is equivalent to a
+     * {@link BufferedHeader} created from the line, except that it may
+     * be backed by a different buffer.
+     *
+     * @param buffer the header line without the line delimiter.
+     * @return the header.
+     * @throws ParseException in case the line is not a valid header.
+     */
+    public Header parseHeader(final CharArrayBuffer buffer) throws ParseException {
+        Args.notNull(buffer, "Char array buffer");
+        final char[] b = buffer.buffer();
+        final int len = buffer.length();
+        final boolean cacheable = len <= MAX_LINE_LENGTH;
+        final int lineHash = cacheable ? hash(0, b, 0, len) : 0;
+        if (cacheable) {
+            final CachedHeader cached = findLine(b, len, lineHash);
+            if (cached != null) {
+                cached.markReferenced();
+                return cached;
+            }
+        }
+        final int colon = buffer.indexOf(':');
+        if (colon == -1) {
+            throw new ParseException("Invalid header: " + buffer.toString());
+        }
+        int beginIndex = 0;
+        int endIndex = colon;
+        while (beginIndex < endIndex && HTTP.isWhitespace(b[beginIndex])) {
+            beginIndex++;
+        }
+        while (endIndex > beginIndex && HTTP.isWhitespace(b[endIndex - 1])) {
+            endIndex--;
+        }
+        if (beginIndex == endIndex) {
+            throw new ParseException("Invalid header: " + buffer.toString());
+        }
+        final NameEntry nameEntry = internName(b, beginIndex, endIndex - beginIndex);
+        final String name = nameEntry != null ? nameEntry.name : new String(b, beginIndex, endIndex - beginIndex);
+        if (nameEntry != null && nameEntry.values && cacheable && isPrintable(b, 0, len)) {
+            final CachedHeader cached = addLine(name, b, len, colon + 1, lineHash, false);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        return new BufferedHeader(name, buffer, colon + 1);
+    }
+
+    /**
+     * Returns a cached header equivalent to the given one, adding the header
+     * to the cache if its name is known to take values from a small set.
+     *
+     * @return the cached header or {@code null} if the header is not cacheable.
+     */
+    public FormattedHeader getHeader(final Header header) {
+        Args.notNull(header, "Header");
+        return lookup(header);
+    }
+
+    /**
+     * Returns the pre-encoded form of the given header, that is its header
+     * line followed by CR-LF, if the header is cacheable.
+     * <p>
+     * The returned array is shared and must not be modified.
+     * </p>
+     *
+     * @return the encoded header line or {@code null} if the header is not cacheable.
+     */
+    public byte[] getEncoded(final Header header) {
+        Args.notNull(header, "Header");
+        final CachedHeader cached = lookup(header);
+        return cached != null ? cached.encoded : null;
+    }
+
+    private CachedHeader lookup(final Header header) {
+        if (header instanceof CachedHeader) {
+            return (CachedHeader) header;
+        }
+        if (header instanceof FormattedHeader) {
+            // Its own buffer is to be written as is
+            return null;
+        }
+        return lookup(header.getName(), header.getValue(), false);
+    }
+
+    private CachedHeader lookup(final String name, final String value, final boolean seed) {
+        if (name == null || value == null) {
+            return null;
+        }
+        final int len = name.length() + 2 + value.length();
+        if (len > MAX_LINE_LENGTH) {
+            return null;
+        }
+        final int lineHash = hash(hash(hash(0, name), ": "), value);
+        int index = indexFor(lineHash);
+        for (int i = 0; i < MAX_PROBES; i++) {
+            final CachedHeader entry = this.lines.get(index);
+            if (entry == null) {
+                break;
+            }
+            if (entry.hash == lineHash && entry.matches(name, value)) {
+                entry.markReferenced();
+                return entry;
+            }
+            index = nextIndex(index);
+        }
+        if (!isPrintable(value)) {
+            return null;
+        }
+        final NameEntry nameEntry = internName(name, seed);
+        if (nameEntry == null || !nameEntry.values) {
+            return null;
+        }
+        final CharArrayBuffer buffer = new CharArrayBuffer(len);
+        buffer.append(name);
+        buffer.append(": ");
+        buffer.append(value);
+        return addLine(nameEntry.name, buffer.buffer(), len, name.length() + 1, lineHash, seed);
+    }
+
+    private CachedHeader findLine(final char[] b, final int len, final int lineHash) {
+        int index = indexFor(lineHash);
+        for (int i = 0; i < MAX_PROBES; i++) {
+            final CachedHeader entry = this.lines.get(index);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.hash == lineHash && entry.matches(b, len)) {
+                return entry;
+            }
+            index = nextIndex(index);
+        }
+        return null;
+    }
+
+    /**
+     * Adds a header line to the cache. Returns {@code null} if the line is
+     * not admitted or no room could be made for it.
+     */
+    private CachedHeader addLine(
+            final String name, final char[] b, final int len, final int valuePos, final int lineHash,
+            final boolean seed) {
+        if (!seed && (hasParameters(b, valuePos, len) || !admit(this.lineSightings, lineHash))) {
+            return null;
+        }
+        final CharArrayBuffer line = new CharArrayBuffer(len);
+        line.append(b, 0, len);
+        final byte[] encoded = new byte[len + 2];
+        for (int i = 0; i < len; i++) {
+            encoded[i] = (byte) b[i];
+        }
+        encoded[len] = (byte) HTTP.CR;
+        encoded[len + 1] = (byte) HTTP.LF;
+        final CachedHeader header = new CachedHeader(
+                name, line, valuePos, line.substringTrimmed(valuePos, len), lineHash, encoded);
+        return add(this.lines, this.lineCount, lineHash, header) ? header : null;
+    }
+
+    private NameEntry internName(final char[] b, final int off, final int len) {
+        final int nameHash = hash(0, b, off, len);
+        int index = indexFor(nameHash);
+        for (int i = 0; i < MAX_PROBES; i++) {
+            final NameEntry entry = this.names.get(index);
+            if (entry == null) {
+                break;
+            }
+            if (entry.hash == nameHash && entry.matches(b, off, len)) {
+                entry.markReferenced();
+                return entry;
+            }
+            index = nextIndex(index);
+        }
+        if (len > MAX_NAME_LENGTH || !isToken(b, off, len) || !admit(this.nameSightings, nameHash)) {
+            return null;
+        }
+        return addName(new String(b, off, len), nameHash);
+    }
+
+    private NameEntry internName(final String name, final boolean seed) {
+        final int nameHash = hash(0, name);
+        int index = indexFor(nameHash);
+        for (int i = 0; i < MAX_PROBES; i++) {
+            final NameEntry entry = this.names.get(index);
+            if (entry == null) {
+                break;
+            }
+            if (entry.hash == nameHash && entry.name.equals(name)) {
+                entry.markReferenced();
+                return entry;
+            }
+            index = nextIndex(index);
+        }
+        if (name.length() > MAX_NAME_LENGTH || !isToken(name)) {
+            return null;
+        }
+        if (!seed && !admit(this.nameSightings, nameHash)) {
+            return null;
+        }
+        return addName(name, nameHash);
+    }
+
+    private NameEntry addName(final String name, final int nameHash) {
+        final NameEntry entry = new NameEntry(
+                name, nameHash, VALUE_NAMES.contains(name.toLowerCase(Locale.ROOT)));
+        return add(this.names, this.nameCount, nameHash, entry) ? entry : null;
+    }
+
+    /**
+     * Records a sighting of a name or line that is not cached. Returns
+     * {@code true} if the same one was the last seen at its position.
+     */
+    private boolean admit(final AtomicIntegerArray sightings, final int h) {
+        final int index = indexFor(h);
+        if (sightings.get(index) == h) {
+            return true;
+        }
+        sightings.set(index, h);
+        return false;
+    }
+
+    private boolean reserve(final AtomicInteger count) {
+        for (;;) {
+            final int current = count.get();
+            if (current >= this.capacity) {
+                return false;
+            }
+            if (count.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Claims the first free slot within reach of the hash as long as the
+     * cache is not full, or else replaces the first entry within reach that
+     * has not been used since it was last passed over. Slots are never
+     * emptied, so lookups can stop at the first empty one. Entries racing
+     * for the same key may both get added, which is harmless as lookups
+     * then consistently find the first one.
+     */
+    private <T extends Entry> boolean add(
+            final AtomicReferenceArray<T> table, final AtomicInteger count, final int h, final T entry) {
+        if (reserve(count)) {
+            int index = indexFor(h);
+            for (int i = 0; i < MAX_PROBES; i++) {
+                if (table.get(index) == null && table.compareAndSet(index, null, entry)) {
+                    return true;
+                }
+                index = nextIndex(index);
+            }
+            count.decrementAndGet();
+        }
+        int index = indexFor(h);
+        for (int i = 0; i < MAX_PROBES; i++) {
+            final T current = table.get(index);
+            // Entries used since last passed over get a second chance
+            if (current != null && !current.clearReferenced() && table.compareAndSet(index, current, entry)) {
+                return true;
+            }
+            index = nextIndex(index);
+        }
+        return false;
+    }
+
+    private int indexFor(final int h) {
+        return (h ^ (h >>> 16)) & this.mask;
+    }
+
+    private int nextIndex(final int index) {
+        return (index + 1) & this.mask;
+    }
+
+    private static int hash(final int h, final char[] b, final int off, final int len) {
+        int result = h;
+        for (int i = off; i < off + len; i++) {
+            result = 31 * result + b[i];
+        }
+        return result;
+    }
+
+    private static int hash(final int h, final String s) {
+        int result = h;
+        for (int i = 0; i < s.length(); i++) {
+            result = 31 * result + s.charAt(i);
+        }
+        return result;
+    }
+
+    private static boolean isToken(final char[] b, final int off, final int len) {
+        for (int i = off; i < off + len; i++) {
+            if (b[i] <= 0x20 || b[i] >= 0x7f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isToken(final String s) {
+        for (int i = 0; i < s.length(); i++) {
+            final char ch = s.charAt(i);
+            if (ch <= 0x20 || ch >= 0x7f) {
+                return false;
+            }
+        }
+        return !s.isEmpty();
+    }
+
+    /**
+     * Checks whether a header value has parameters other than
+     * {@code charset}, which are typically unique to a message.
+     */
+    private static boolean hasParameters(final char[] b, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (b[i] == ';') {
+                int pos = i + 1;
+                while (pos < to && HTTP.isWhitespace(b[pos])) {
+                    pos++;
+                }
+                if (!regionMatches(b, pos, to, "charset=")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionMatches(final char[] b, final int pos, final int to, final String s) {
+        if (to - pos < s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.toLowerCase(b[pos + i]) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPrintable(final char[] b, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (b[i] < 0x20 || b[i] >= 0x7f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPrintable(final String s) {
+        for (int i = 0; i < s.length(); i++) {
+            final char ch = s.charAt(i);
+            if (ch < 0x20 || ch >= 0x7f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[names: ").append(this.nameCount.get());
+        buffer.append("; lines: ").append(this.lineCount.get());
+        buffer.append("; capacity: ").append(this.capacity);
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    /**
+     * Cache entry with a CLOCK reference mark. The mark is set by lookups
+     * and cleared when the entry is passed over for eviction; lost updates
+     * only affect which entry gets evicted.
+     */
+    interface Entry {
+
+        /**
+         * Clears the reference mark, returning whether it was set.
+         */
+        boolean clearReferenced();
+
+    }
+
+    static final class NameEntry implements Entry {
+
+        final String name;
+        final int hash;
+        final boolean values;
+        boolean referenced;
+
+        NameEntry(final String name, final int hash, final boolean values) {
+            this.name = name;
+            this.hash = hash;
+            this.values = values;
+        }
+
+        boolean matches(final char[] b, final int off, final int len) {
+            if (this.name.length() != len) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                if (this.name.charAt(i) != b[off + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void markReferenced() {
+            // Only written when not set yet, as the entry is shared by all threads
+            if (!this.referenced) {
+                this.referenced = true;
+            }
+        }
+
+        @Override
+        public boolean clearReferenced() {
+            final boolean result = this.referenced;
+            this.referenced = false;
+            return result;
+        }
+
+    }
+
+    /**
+     * Header shared by all messages containing the same header line, immutable
+     * apart from its reference mark.
+     */
+    static final class CachedHeader extends BufferedHeader implements Entry {
+
+        private static final long serialVersionUID = 2734926415781307562L;
+
+        private final String value;
+        final int hash;
+        final byte[] encoded;
+        transient boolean referenced;
+
+        CachedHeader(
+                final String name,
+                final CharArrayBuffer buffer,
+                final int valuePos,
+                final String value,
+                final int hash,
+                final byte[] encoded) {
+            super(name, buffer, valuePos);
+            this.value = value;
+            this.hash = hash;
+            this.encoded = encoded;
+        }
+
+        @Override
+        public String getValue() {
+            return this.value;
+        }
+
+        void markReferenced() {
+            // Only written when not set yet, as the entry is shared by all threads
+            if (!this.referenced) {
+                this.referenced = true;
+            }
+        }
+
+        @Override
+        public boolean clearReferenced() {
+            final boolean result = this.referenced;
+            this.referenced = false;
+            return result;
+        }
+
+        boolean matches(final char[] b, final int len) {
+            final CharArrayBuffer line = getBuffer();
+            if (line.length() != len) {
+                return false;
+            }
+            final char[] chars = line.buffer();
+            for (int i = 0; i < len; i++) {
+                if (chars[i] != b[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean matches(final String name, final String value) {
+            final CharArrayBuffer line = getBuffer();
+            final int nameLen = name.length();
+            if (line.length() != nameLen + 2 + value.length()) {
+                return false;
+            }
+            final char[] chars = line.buffer();
+            for (int i = 0; i < nameLen; i++) {
+                if (chars[i] != name.charAt(i)) {
+                    return false;
+                }
+            }
+            if (chars[nameLen] != ':' || chars[nameLen + 1] != ' ') {
+                return false;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                if (chars[nameLen + 2 + i] != value.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
@@ -27,13 +27,17 @@
 package org.kodtik.innovations.http.pool;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -41,7 +45,6 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -70,15 +73,20 @@ import org.kodtik.innovations.http.util.Asserts;
 public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
                                                implements ConnPool<T, E>, ConnPoolControl<T> {
 
+    private static final int MAINTENANCE_BATCH = 16;
+
     private final Lock lock;
-    private final Condition condition;
     private final ConnFactory<T, C> connFactory;
     private final Map<T, RouteSpecificPool<T, C, E>> routeToPool;
     private final Set<E> leased;
     private final LinkedList<E> available;
-    private final LinkedList<Future<E>> pending;
+    private final TreeSet<E> availableByExpiry;
+    private final TreeSet<LeaseWaiter<T>> pending;
     private final Map<T, Integer> maxPerRoute;
 
+    private long entrySerial;
+    private long waiterSerial;
+
     private volatile boolean isShutDown;
     private volatile int defaultMaxPerRoute;
     private volatile int maxTotal;
@@ -93,11 +101,21 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
         this.defaultMaxPerRoute = Args.positive(defaultMaxPerRoute, "Max per route value");
         this.maxTotal = Args.positive(maxTotal, "Max total value");
         this.lock = new ReentrantLock();
-        this.condition = this.lock.newCondition();
         this.routeToPool = new HashMap<T, RouteSpecificPool<T, C, E>>();
         this.leased = new HashSet<E>();
         this.available = new LinkedList<E>();
-        this.pending = new LinkedList<Future<E>>();
+        this.availableByExpiry = new TreeSet<E>(new Comparator<E>() {
+
+            @Override
+            public int compare(final E e1, final E e2) {
+                if (e1.queuedExpiry != e2.queuedExpiry) {
+                    return e1.queuedExpiry < e2.queuedExpiry ? -1 : 1;
+                }
+                return e1.serial < e2.serial ? -1 : (e1.serial == e2.serial ? 0 : 1);
+            }
+
+        });
+        this.pending = new TreeSet<LeaseWaiter<T>>();
         this.maxPerRoute = new HashMap<T, Integer>();
     }
 
@@ -157,6 +175,7 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
             this.routeToPool.clear();
             this.leased.clear();
             this.available.clear();
+            this.availableByExpiry.clear();
         } finally {
             this.lock.unlock();
         }
@@ -192,6 +211,39 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
      */
     @Override
     public Future<E> lease(final T route, final Object state, final FutureCallback<E> callback) {
+        return lease(route, state, 0, callback);
+    }
+
+    /**
+     * Attempts to lease a connection for the given route and with the given
+     * state and priority from the pool.
+     * <p>
+     * When the pool is exhausted lease requests are queued and served in
+     * the order of their priority, then of the deadline given by the timeout
+     * passed to {@link Future#get(long, TimeUnit)}, then of their arrival.
+     * Only the request that is to be served next is woken up when
+     * a connection is released back to the pool.
+     * </p>
+     * <p>
+     * Please note that this class does not maintain its own pool of execution
+     * {@link Thread}s. Therefore, one <b>must</b> call {@link Future#get()}
+     * or {@link Future#get(long, TimeUnit)} method on the {@link Future}
+     * returned by this method in order for the lease operation to complete.
+     * </p>
+     *
+     * @param route route of the connection.
+     * @param state arbitrary object that represents a particular state
+     *  (usually a security principal or a unique token identifying
+     *  the user whose credentials have been used while establishing the connection).
+     *  May be {@code null}.
+     * @param priority priority of the lease request. Requests with a higher
+     *  priority are served first. Default priority is {@code 0}.
+     * @param callback operation completion callback. May be {@code null}.
+     * @return future for a leased pool entry.
+     *
+     * @since 4.4.15
+     */
+    public Future<E> lease(final T route, final Object state, final int priority, final FutureCallback<E> callback) {
         Args.notNull(route, "Route");
         Asserts.check(!this.isShutDown, "Connection pool shut down");
 
@@ -207,7 +259,11 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
                     cancelled.set(true);
                     lock.lock();
                     try {
-                        condition.signalAll();
+                        for (final LeaseWaiter<T> waiter: pending) {
+                            if (waiter.future == this) {
+                                waiter.condition.signal();
+                            }
+                        }
                     } finally {
                         lock.unlock();
                     }
@@ -250,14 +306,16 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
                             if (done.get()) {
                                 throw new ExecutionException(operationAborted());
                             }
-                            final E leasedEntry = getPoolEntryBlocking(route, state, timeout, timeUnit, this);
+                            final E leasedEntry = getPoolEntryBlocking(route, state, priority, timeout, timeUnit, this);
                             if (validateAfterInactivity > 0)  {
-                                if (leasedEntry.getUpdated() + validateAfterInactivity <= System.currentTimeMillis()) {
+                                final long now = System.currentTimeMillis();
+                                if (leasedEntry.getValidated() + validateAfterInactivity <= now) {
                                     if (!validate(leasedEntry)) {
                                         leasedEntry.close();
                                         release(leasedEntry, false);
                                         continue;
                                     }
+                                    leasedEntry.markValidated(now);
                                 }
                             }
                             if (done.compareAndSet(false, true)) {
@@ -308,7 +366,7 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
     }
 
     private E getPoolEntryBlocking(
-            final T route, final Object state,
+            final T route, final Object state, final int priority,
             final long timeout, final TimeUnit timeUnit,
             final Future<E> future) throws IOException, InterruptedException, ExecutionException, TimeoutException {
 
@@ -316,6 +374,8 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
         if (timeout > 0) {
             deadline = new Date (System.currentTimeMillis() + timeUnit.toMillis(timeout));
         }
+        LeaseWaiter<T> waiter = null;
+        boolean leased = false;
         this.lock.lock();
         try {
             E entry;
@@ -334,16 +394,17 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
                         entry.close();
                     }
                     if (entry.isClosed()) {
-                        this.available.remove(entry);
+                        removeAvailable(entry);
                         pool.free(entry, false);
                     } else {
                         break;
                     }
                 }
                 if (entry != null) {
-                    this.available.remove(entry);
+                    removeAvailable(entry);
                     this.leased.add(entry);
                     onReuse(entry);
+                    leased = true;
                     return entry;
                 }
 
@@ -358,7 +419,7 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
                             break;
                         }
                         lastUsed.close();
-                        this.available.remove(lastUsed);
+                        removeAvailable(lastUsed);
                         pool.remove(lastUsed);
                     }
                 }
@@ -370,7 +431,8 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
                         final int totalAvailable = this.available.size();
                         if (totalAvailable > freeCapacity - 1) {
                             if (!this.available.isEmpty()) {
-                                final E lastUsed = this.available.removeLast();
+                                final E lastUsed = this.available.getLast();
+                                removeAvailable(lastUsed);
                                 lastUsed.close();
                                 final RouteSpecificPool<T, C, E> otherpool = getPool(lastUsed.getRoute());
                                 otherpool.remove(lastUsed);
@@ -378,19 +440,33 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
                         }
                         final C conn = this.connFactory.create(route);
                         entry = pool.add(conn);
+                        entry.serial = ++this.entrySerial;
                         this.leased.add(entry);
+                        leased = true;
                         return entry;
                     }
                 }
 
+                if (waiter == null) {
+                    waiter = new LeaseWaiter<T>(route, future, this.lock.newCondition(), priority,
+                            deadline != null ? deadline.getTime() : Long.MAX_VALUE, ++this.waiterSerial);
+                }
+                if (waiter.signalled) {
+                    // Woken up for capacity this waiter cannot use after all,
+                    // for instance as its route is at its limit. Handing the
+                    // wakeup to a single waiter could bounce it between waiters
+                    // in the same situation, so let every waiter try instead.
+                    signalAllWaiters();
+                }
+                waiter.signalled = false;
                 boolean success = false;
                 try {
-                    pool.queue(future);
-                    this.pending.add(future);
+                    pool.queue(waiter);
+                    this.pending.add(waiter);
                     if (deadline != null) {
-                        success = this.condition.awaitUntil(deadline);
+                        success = waiter.condition.awaitUntil(deadline);
                     } else {
-                        this.condition.await();
+                        waiter.condition.await();
                         success = true;
                     }
                     if (future.isCancelled()) {
@@ -401,8 +477,8 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
                     // connection pool and should now have a connection
                     // waiting for us, or else we're shutting down.
                     // Just continue in the loop, both cases are checked.
-                    pool.unqueue(future);
-                    this.pending.remove(future);
+                    pool.unqueue(waiter);
+                    this.pending.remove(waiter);
                 }
                 // check for spurious wakeup vs. timeout
                 if (!success && (deadline != null && deadline.getTime() <= System.currentTimeMillis())) {
@@ -411,10 +487,42 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
             }
             throw new TimeoutException("Timeout waiting for connection");
         } finally {
+            if (!leased && waiter != null && waiter.signalled) {
+                // Pass the wakeup on to the next waiter
+                signalNextWaiter(getPool(route));
+            }
             this.lock.unlock();
         }
     }
 
+    private void signalNextWaiter(final RouteSpecificPool<T, C, E> pool) {
+        final long now = System.currentTimeMillis();
+        LeaseWaiter<T> waiter = pool.nextPending(now);
+        if (waiter == null) {
+            for (;;) {
+                waiter = this.pending.pollFirst();
+                if (waiter == null || !waiter.isExpired(now)) {
+                    break;
+                }
+            }
+            if (waiter != null) {
+                getPool(waiter.route).unqueue(waiter);
+            }
+        } else {
+            this.pending.remove(waiter);
+        }
+        if (waiter != null) {
+            waiter.signalled = true;
+            waiter.condition.signal();
+        }
+    }
+
+    private void signalAllWaiters() {
+        for (final LeaseWaiter<T> waiter: this.pending) {
+            waiter.condition.signal();
+        }
+    }
+
     @Override
     public void release(final E entry, final boolean reusable) {
         this.lock.lock();
@@ -423,26 +531,30 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
                 final RouteSpecificPool<T, C, E> pool = getPool(entry.getRoute());
                 pool.free(entry, reusable);
                 if (reusable && !this.isShutDown) {
-                    this.available.addFirst(entry);
+                    addAvailable(entry);
                 } else {
                     entry.close();
                 }
                 onRelease(entry);
-                Future<E> future = pool.nextPending();
-                if (future != null) {
-                    this.pending.remove(future);
-                } else {
-                    future = this.pending.poll();
-                }
-                if (future != null) {
-                    this.condition.signalAll();
-                }
+                signalNextWaiter(pool);
             }
         } finally {
             this.lock.unlock();
         }
     }
 
+    private void addAvailable(final E entry) {
+        entry.queuedExpiry = entry.getExpiry();
+        this.available.addFirst(entry);
+        this.availableByExpiry.add(entry);
+    }
+
+    private void removeAvailable(final E entry) {
+        if (this.available.remove(entry)) {
+            this.availableByExpiry.remove(entry);
+        }
+    }
+
     private int getMax(final T route) {
         final Integer v = this.maxPerRoute.get(route);
         return v != null ? v.intValue() : this.defaultMaxPerRoute;
@@ -577,6 +689,7 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
                     final RouteSpecificPool<T, C, E> pool = getPool(entry.getRoute());
                     pool.remove(entry);
                     it.remove();
+                    this.availableByExpiry.remove(entry);
                 }
             }
             purgePoolMap();
@@ -644,17 +757,130 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
      * Closes expired connections and evicts them from the pool.
      */
     public void closeExpired() {
-        final long now = System.currentTimeMillis();
-        enumAvailable(new PoolEntryCallback<T, C>() {
+        evictExpired(System.currentTimeMillis(), null);
+    }
 
-            @Override
-            public void process(final PoolEntry<T, C> entry) {
-                if (entry.isExpired(now)) {
-                    entry.close();
+    /**
+     * Evicts available connections that have expired by the given time
+     * from the pool and closes them.
+     * <p>
+     * Available connections are kept ordered by their expiry time, so only
+     * expired connections are visited. Connections are evicted in small
+     * batches and closed without holding the pool lock.
+     *
+     * @param now the current time.
+     * @param callback callback to be notified of every evicted connection.
+     *   May be {@code null}.
+     *
+     * @since 4.4.15
+     */
+    protected void evictExpired(final long now, final PoolEntryCallback<T, C> callback) {
+        final List<E> evicted = new ArrayList<E>(MAINTENANCE_BATCH);
+        boolean done = false;
+        while (!done) {
+            this.lock.lock();
+            try {
+                while (evicted.size() < MAINTENANCE_BATCH) {
+                    final E entry = this.availableByExpiry.isEmpty() ? null : this.availableByExpiry.first();
+                    if (entry == null || entry.queuedExpiry > now) {
+                        done = true;
+                        break;
+                    }
+                    this.availableByExpiry.pollFirst();
+                    if (!entry.isExpired(now)) {
+                        // Expiry has been extended since the entry was queued
+                        entry.queuedExpiry = entry.getExpiry();
+                        this.availableByExpiry.add(entry);
+                        continue;
+                    }
+                    this.available.remove(entry);
+                    getPool(entry.getRoute()).remove(entry);
+                    evicted.add(entry);
+                }
+                if (done) {
+                    purgePoolMap();
+                }
+            } finally {
+                this.lock.unlock();
+            }
+            for (final E entry: evicted) {
+                entry.close();
+                if (callback != null) {
+                    callback.process(entry);
                 }
             }
+            evicted.clear();
+        }
+    }
 
-        });
+    /**
+     * Validates available connections that have not been used or validated
+     * for longer than the {@link #getValidateAfterInactivity() validate after inactivity}
+     * period, closing and evicting the ones found to be stale.
+     * <p>
+     * This method is intended to be called periodically by a background thread
+     * in order to take the cost of connection validation off the lease path.
+     * Connections are checked out of the pool in small batches, least recently
+     * used first, and validated without holding the pool lock. While being
+     * validated a connection is accounted for as leased.
+     *
+     * @param callback callback to be notified of every evicted connection.
+     *   May be {@code null}.
+     *
+     * @since 4.4.15
+     */
+    protected void validateIdle(final PoolEntryCallback<T, C> callback) {
+        final int inactivity = this.validateAfterInactivity;
+        if (inactivity <= 0) {
+            return;
+        }
+        final long deadline = System.currentTimeMillis() - inactivity;
+        final List<E> batch = new ArrayList<E>(MAINTENANCE_BATCH);
+        for (;;) {
+            this.lock.lock();
+            try {
+                if (this.isShutDown) {
+                    return;
+                }
+                final Iterator<E> it = this.available.descendingIterator();
+                while (it.hasNext() && batch.size() < MAINTENANCE_BATCH) {
+                    final E entry = it.next();
+                    if (entry.getValidated() <= deadline) {
+                        it.remove();
+                        this.availableByExpiry.remove(entry);
+                        getPool(entry.getRoute()).checkout(entry);
+                        this.leased.add(entry);
+                        batch.add(entry);
+                    }
+                }
+            } finally {
+                this.lock.unlock();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            for (final E entry: batch) {
+                boolean valid = false;
+                try {
+                    final long now = System.currentTimeMillis();
+                    if (!entry.isClosed() && !entry.isExpired(now) && validate(entry)) {
+                        entry.markValidated(now);
+                        valid = true;
+                    }
+                } finally {
+                    if (valid) {
+                        release(entry, true);
+                    } else {
+                        entry.close();
+                        release(entry, false);
+                        if (callback != null) {
+                            callback.process(entry);
+                        }
+                    }
+                }
+            }
+            batch.clear();
+        }
     }
 
     /**
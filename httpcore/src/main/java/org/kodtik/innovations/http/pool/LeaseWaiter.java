@@ -0,0 +1,95 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.pool;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Condition;
+
+/**
+ * A lease request waiting for a connection to become available. Waiters
+ * are ordered by priority (highest first), then by deadline (earliest first),
+ * then by arrival.
+ *
+ * @param <T> the route type.
+ */
+final class LeaseWaiter<T> implements Comparable<LeaseWaiter<T>> {
+
+    final T route;
+    final Future<?> future;
+    final Condition condition;
+    final int priority;
+    final long deadline;
+    final long serial;
+
+    // Guarded by the pool lock
+    boolean signalled;
+
+    LeaseWaiter(
+            final T route,
+            final Future<?> future,
+            final Condition condition,
+            final int priority,
+            final long deadline,
+            final long serial) {
+        super();
+        this.route = route;
+        this.future = future;
+        this.condition = condition;
+        this.priority = priority;
+        this.deadline = deadline;
+        this.serial = serial;
+    }
+
+    boolean isExpired(final long now) {
+        return this.deadline <= now;
+    }
+
+    @Override
+    public int compareTo(final LeaseWaiter<T> other) {
+        if (this.priority != other.priority) {
+            return this.priority > other.priority ? -1 : 1;
+        }
+        if (this.deadline != other.deadline) {
+            return this.deadline < other.deadline ? -1 : 1;
+        }
+        return this.serial < other.serial ? -1 : (this.serial == other.serial ? 0 : 1);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[route: ");
+        buffer.append(this.route);
+        buffer.append("][priority: ");
+        buffer.append(this.priority);
+        buffer.append("][deadline: ");
+        buffer.append(this.deadline);
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+}
@@ -59,8 +59,15 @@ public abstract class PoolEntry<T, C> {
 
     private long updated;
 
+    private long validated;
+
     private long expiry;
 
+    // Expiry snapshot and tie-breaker used to order available entries
+    // by their AbstractConnPool. Guarded by the pool lock.
+    long queuedExpiry;
+    long serial;
+
     private volatile Object state;
 
     /**
@@ -84,6 +91,7 @@ public abstract class PoolEntry<T, C> {
         this.conn = conn;
         this.created = System.currentTimeMillis();
         this.updated = this.created;
+        this.validated = this.created;
         if (timeToLive > 0) {
             final long deadline = this.created + timeUnit.toMillis(timeToLive);
             // If the above overflows then default to Long.MAX_VALUE
@@ -148,6 +156,28 @@ public abstract class PoolEntry<T, C> {
         return this.updated;
     }
 
+    /**
+     * Returns the time the connection was last known to be usable, that is,
+     * the time it was last released back to the pool or successfully validated,
+     * whichever is later.
+     *
+     * @since 4.4.15
+     */
+    public synchronized long getValidated() {
+        return this.validated;
+    }
+
+    /**
+     * Marks the connection as having been validated at the given time.
+     *
+     * @since 4.4.15
+     */
+    public synchronized void markValidated(final long now) {
+        if (now > this.validated) {
+            this.validated = now;
+        }
+    }
+
     public synchronized long getExpiry() {
         return this.expiry;
     }
@@ -155,6 +185,7 @@ public abstract class PoolEntry<T, C> {
     public synchronized void updateExpiry(final long time, final TimeUnit timeUnit) {
         Args.notNull(timeUnit, "Time unit");
         this.updated = System.currentTimeMillis();
+        this.validated = this.updated;
         final long newExpiry;
         if (time > 0) {
             newExpiry = this.updated + timeUnit.toMillis(time);
@@ -30,7 +30,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Set;
-import java.util.concurrent.Future;
+import java.util.TreeSet;
 
 import org.kodtik.innovations.http.util.Args;
 import org.kodtik.innovations.http.util.Asserts;
@@ -40,14 +40,14 @@ abstract class RouteSpecificPool<T, C, E extends PoolEntry<T, C>> {
     private final T route;
     private final Set<E> leased;
     private final LinkedList<E> available;
-    private final LinkedList<Future<E>> pending;
+    private final TreeSet<LeaseWaiter<T>> pending;
 
     RouteSpecificPool(final T route) {
         super();
         this.route = route;
         this.leased = new HashSet<E>();
         this.available = new LinkedList<E>();
-        this.pending = new LinkedList<Future<E>>();
+        this.pending = new TreeSet<LeaseWaiter<T>>();
     }
 
     protected abstract E createEntry(C conn);
@@ -112,6 +112,14 @@ abstract class RouteSpecificPool<T, C, E extends PoolEntry<T, C>> {
         return true;
     }
 
+    public boolean checkout(final E entry) {
+        if (this.available.remove(entry)) {
+            this.leased.add(entry);
+            return true;
+        }
+        return false;
+    }
+
     public void free(final E entry, final boolean reusable) {
         Args.notNull(entry, "Pool entry");
         final boolean found = this.leased.remove(entry);
@@ -127,28 +135,37 @@ abstract class RouteSpecificPool<T, C, E extends PoolEntry<T, C>> {
         return entry;
     }
 
-    public void queue(final Future<E> future) {
-        if (future == null) {
+    public void queue(final LeaseWaiter<T> waiter) {
+        if (waiter == null) {
             return;
         }
-        this.pending.add(future);
-    }
-
-    public Future<E> nextPending() {
-        return this.pending.poll();
+        this.pending.add(waiter);
+    }
+
+    /**
+     * Removes and returns the most urgent waiter whose deadline has not passed yet.
+     * Waiters past their deadline are dropped, as they time out on their own.
+     */
+    public LeaseWaiter<T> nextPending(final long now) {
+        for (;;) {
+            final LeaseWaiter<T> waiter = this.pending.pollFirst();
+            if (waiter == null || !waiter.isExpired(now)) {
+                return waiter;
+            }
+        }
     }
 
-    public void unqueue(final Future<E> future) {
-        if (future == null) {
+    public void unqueue(final LeaseWaiter<T> waiter) {
+        if (waiter == null) {
             return;
         }
 
-        this.pending.remove(future);
+        this.pending.remove(waiter);
     }
 
     public void shutdown() {
-        for (final Future<E> future: this.pending) {
-            future.cancel(true);
+        for (final LeaseWaiter<T> waiter: this.pending) {
+            waiter.future.cancel(true);
         }
         this.pending.clear();
         for (final E entry: this.available) {
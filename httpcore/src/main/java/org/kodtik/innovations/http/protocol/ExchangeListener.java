@@ -0,0 +1,78 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.protocol;
+
+/**
+ * Listener notified as a request execution passes the boundaries of its
+ * phases. It can be used to export request traces or spans without
+ * resorting to wire logging.
+ * <p>
+ * Methods of this interface are invoked on the critical path of request
+ * execution and must not block. Implementations must be thread-safe as
+ * a single listener instance is usually shared by all requests executed
+ * by a client.
+ * </p>
+ *
+ * @see ExchangeTimings
+ *
+ * @since 4.4.15
+ */
+public interface ExchangeListener {
+
+    /**
+     * Triggered when a connection has been leased from the connection manager.
+     */
+    void connectionAcquired(ExchangeTimings timings, HttpContext context);
+
+    /**
+     * Triggered when a socket connection to the opposite endpoint has been
+     * established.
+     */
+    void connected(ExchangeTimings timings, HttpContext context);
+
+    /**
+     * Triggered when a TLS handshake has been completed.
+     */
+    void handshakeCompleted(ExchangeTimings timings, HttpContext context);
+
+    /**
+     * Triggered when the request head has been written to the connection.
+     */
+    void headersSent(ExchangeTimings timings, HttpContext context);
+
+    /**
+     * Triggered when the response head has been received.
+     */
+    void firstByteReceived(ExchangeTimings timings, HttpContext context);
+
+    /**
+     * Triggered when the exchange is complete and the connection has been
+     * released.
+     */
+    void completed(ExchangeTimings timings, HttpContext context);
+
+}
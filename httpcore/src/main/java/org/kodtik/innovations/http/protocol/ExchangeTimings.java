@@ -0,0 +1,209 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.protocol;
+
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+
+/**
+ * Compact record of monotonic {@link System#nanoTime()} timestamps taken at
+ * the boundaries of the individual phases of a request execution: connection
+ * lease, host name resolution, connect, TLS handshake, request transmission
+ * and response receipt.
+ * <p>
+ * An instance of this class is expected to be bound to the execution context
+ * with the {@link HttpCoreContext#EXCHANGE_TIMINGS} attribute name. Components
+ * on the execution path record phase boundaries by means of
+ * {@link #mark(HttpContext, Phase)}, which is a no-op if no instance is bound.
+ * Recording a timestamp does not allocate.
+ * </p>
+ * <p>
+ * Timestamps are reset at the start of each request execution attempt and
+ * therefore describe the most recent attempt only.
+ * </p>
+ * <p>
+ * Instances of this class are not thread-safe. They are updated by the thread
+ * executing the request and, upon completion, by the thread that consumes
+ * the response content.
+ * </p>
+ *
+ * @since 4.4.15
+ */
+@Contract(threading = ThreadingBehavior.UNSAFE)
+public final class ExchangeTimings {
+
+    /**
+     * Phase boundaries of a request execution.
+     */
+    public enum Phase {
+
+        /** Request execution has started and a connection is about to be requested. */
+        START,
+        /** A connection has been leased from the connection manager. */
+        CONNECTION_ACQUIRED,
+        /** Host name resolution has started. */
+        DNS_START,
+        /** Host name resolution has completed. */
+        DNS_END,
+        /** Socket connect has started. */
+        CONNECT_START,
+        /** Socket connect has completed. */
+        CONNECTED,
+        /** TLS handshake has started. */
+        HANDSHAKE_START,
+        /** TLS handshake has completed. */
+        HANDSHAKE_DONE,
+        /** Request head has been written to the connection. */
+        HEADERS_SENT,
+        /** Request has been fully transmitted and flushed. */
+        REQUEST_SENT,
+        /** Response head has been received. */
+        FIRST_BYTE,
+        /** The connection has been released back to the connection manager. */
+        COMPLETE
+
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final ExchangeListener listener;
+    private final long[] timestamps;
+    private int marked;
+
+    /**
+     * @param listener listener to be notified of phase completion. May be {@code null}.
+     */
+    public ExchangeTimings(final ExchangeListener listener) {
+        super();
+        this.listener = listener;
+        this.timestamps = new long[PHASES.length];
+    }
+
+    public ExchangeTimings() {
+        this(null);
+    }
+
+    /**
+     * Records the current time as the given phase boundary of the exchange
+     * bound to the given context, if any.
+     */
+    public static void mark(final HttpContext context, final Phase phase) {
+        if (context != null) {
+            final Object obj = context.getAttribute(HttpCoreContext.EXCHANGE_TIMINGS);
+            if (obj instanceof ExchangeTimings) {
+                ((ExchangeTimings) obj).mark(phase, context);
+            }
+        }
+    }
+
+    /**
+     * Records the current time as the given phase boundary and notifies
+     * the listener, if any.
+     */
+    public void mark(final Phase phase, final HttpContext context) {
+        final int i = phase.ordinal();
+        this.timestamps[i] = System.nanoTime();
+        this.marked |= 1 << i;
+        if (this.listener != null) {
+            switch (phase) {
+            case CONNECTION_ACQUIRED:
+                this.listener.connectionAcquired(this, context);
+                break;
+            case CONNECTED:
+                this.listener.connected(this, context);
+                break;
+            case HANDSHAKE_DONE:
+                this.listener.handshakeCompleted(this, context);
+                break;
+            case HEADERS_SENT:
+                this.listener.headersSent(this, context);
+                break;
+            case FIRST_BYTE:
+                this.listener.firstByteReceived(this, context);
+                break;
+            case COMPLETE:
+                this.listener.completed(this, context);
+                break;
+            default:
+            }
+        }
+    }
+
+    public boolean isMarked(final Phase phase) {
+        return (this.marked & (1 << phase.ordinal())) != 0;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} timestamp of the given phase boundary.
+     * The returned value is meaningful only if {@link #isMarked(Phase)} returns
+     * {@code true}.
+     */
+    public long get(final Phase phase) {
+        return this.timestamps[phase.ordinal()];
+    }
+
+    /**
+     * Returns time in nanoseconds elapsed between the two phase boundaries
+     * or {@code -1} if either of them has not been recorded.
+     */
+    public long getElapsed(final Phase from, final Phase to) {
+        if (!isMarked(from) || !isMarked(to)) {
+            return -1;
+        }
+        return this.timestamps[to.ordinal()] - this.timestamps[from.ordinal()];
+    }
+
+    public void clear(final Phase phase) {
+        this.marked &= ~(1 << phase.ordinal());
+    }
+
+    public void reset() {
+        this.marked = 0;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[");
+        long origin = 0;
+        boolean first = true;
+        for (final Phase phase: PHASES) {
+            if (isMarked(phase)) {
+                if (first) {
+                    origin = get(phase);
+                    first = false;
+                } else {
+                    buffer.append("; ");
+                }
+                buffer.append(phase).append(": +").append((get(phase) - origin) / 1000).append("us");
+            }
+        }
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+}
@@ -72,6 +72,14 @@ public class HttpCoreContext implements HttpContext {
      */
     public static final String HTTP_REQ_SENT    = "http.request_sent";
 
+    /**
+     * Attribute name of a {@link ExchangeTimings} object that records
+     * the phase timings of the actual request execution.
+     *
+     * @since 4.4.15
+     */
+    public static final String EXCHANGE_TIMINGS = "http.exchange-timings";
+
     public static HttpCoreContext create() {
         return new HttpCoreContext(new BasicHttpContext());
     }
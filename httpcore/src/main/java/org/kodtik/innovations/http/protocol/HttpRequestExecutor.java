@@ -203,6 +203,7 @@ public class HttpRequestExecutor {
         context.setAttribute(HttpCoreContext.HTTP_REQ_SENT, Boolean.FALSE);
 
         conn.sendRequestHeader(request);
+        ExchangeTimings.mark(context, ExchangeTimings.Phase.HEADERS_SENT);
         if (request instanceof HttpEntityEnclosingRequest) {
             // Check for expect-continue handshake. We have to flush the
             // headers and wait for an 100-continue response to handle it.
@@ -218,6 +219,7 @@ public class HttpRequestExecutor {
                 // 100-continue response forever. On timeout, send the entity.
                 if (conn.isResponseAvailable(this.waitForContinue)) {
                     response = conn.receiveResponseHeader();
+                    ExchangeTimings.mark(context, ExchangeTimings.Phase.FIRST_BYTE);
                     if (canResponseHaveBody(request, response)) {
                         conn.receiveResponseEntity(response);
                     }
@@ -239,6 +241,7 @@ public class HttpRequestExecutor {
             }
         }
         conn.flush();
+        ExchangeTimings.mark(context, ExchangeTimings.Phase.REQUEST_SENT);
         context.setAttribute(HttpCoreContext.HTTP_REQ_SENT, Boolean.TRUE);
         return response;
     }
@@ -270,7 +273,11 @@ public class HttpRequestExecutor {
 
         while (response == null || statusCode < HttpStatus.SC_OK) {
 
+            final boolean first = response == null;
             response = conn.receiveResponseHeader();
+            if (first) {
+                ExchangeTimings.mark(context, ExchangeTimings.Phase.FIRST_BYTE);
+            }
             statusCode = response.getStatusLine().getStatusCode();
             if (statusCode < HttpStatus.SC_CONTINUE) {
                 throw new ProtocolException("Invalid response: " + response.getStatusLine());
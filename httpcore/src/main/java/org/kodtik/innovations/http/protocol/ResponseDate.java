@@ -60,8 +60,7 @@ public class ResponseDate implements HttpResponseInterceptor {
         final int status = response.getStatusLine().getStatusCode();
         if ((status >= HttpStatus.SC_OK) &&
             !response.containsHeader(HTTP.DATE_HEADER)) {
-            final String httpdate = DATE_GENERATOR.getCurrentDate();
-            response.setHeader(HTTP.DATE_HEADER, httpdate);
+            response.setHeader(DATE_GENERATOR.getCurrentDateHeader());
         }
     }
 
@@ -0,0 +1,105 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.bootstrap;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kodtik.innovations.http.Consts;
+import org.kodtik.innovations.http.HttpException;
+import org.kodtik.innovations.http.HttpRequest;
+import org.kodtik.innovations.http.HttpResponse;
+import org.kodtik.innovations.http.config.H2Config;
+import org.kodtik.innovations.http.entity.StringEntity;
+import org.kodtik.innovations.http.protocol.HttpContext;
+import org.kodtik.innovations.http.protocol.HttpRequestHandler;
+
+public class TestServerProtocolSelection {
+
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = ServerBootstrap.bootstrap()
+                .setH2Config(H2Config.DEFAULT)
+                .registerHandler("*", new HttpRequestHandler() {
+
+                    @Override
+                    public void handle(
+                            final HttpRequest request,
+                            final HttpResponse response,
+                            final HttpContext context) throws HttpException, IOException {
+                        response.setEntity(new StringEntity("OK"));
+                    }
+
+                })
+                .create();
+        this.server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.server.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    private String execute(final String request) throws IOException {
+        final Socket socket = new Socket(InetAddress.getLoopbackAddress(), this.server.getLocalPort());
+        try {
+            socket.setSoTimeout(5000);
+            final OutputStream outStream = socket.getOutputStream();
+            outStream.write(request.getBytes(Consts.ASCII));
+            outStream.flush();
+            final BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), Consts.ASCII));
+            return reader.readLine();
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testShortHttp10Request() throws Exception {
+        // Shorter than the HTTP/2 connection preface and nothing sent after it
+        Assert.assertEquals("HTTP/1.1 200 OK", execute("GET / HTTP/1.0\r\n\r\n"));
+    }
+
+    @Test
+    public void testHttp11Request() throws Exception {
+        Assert.assertEquals("HTTP/1.1 200 OK", execute(
+                "GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"));
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.client.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kodtik.innovations.http.Header;
+import org.kodtik.innovations.http.ProtocolVersion;
+import org.kodtik.innovations.http.StatusLine;
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * Response held by the client HTTP response cache: status line, headers,
+ * body and the times the response was requested and received.
+ *
+ * @since 4.5.15
+ */
+@Contract(threading = ThreadingBehavior.IMMUTABLE)
+public class HttpCacheEntry {
+
+    private final long requestDate;
+    private final long responseDate;
+    private final StatusLine statusLine;
+    private final Header[] headers;
+    private final Resource resource;
+
+    /**
+     * @param requestDate time the request was sent, in milliseconds since the epoch.
+     * @param responseDate time the response was received, in milliseconds since the epoch.
+     * @param statusLine the response status line.
+     * @param headers the response headers.
+     * @param resource the response body or {@code null} if the response has none.
+     */
+    public HttpCacheEntry(
+            final long requestDate,
+            final long responseDate,
+            final StatusLine statusLine,
+            final Header[] headers,
+            final Resource resource) {
+        super();
+        this.requestDate = requestDate;
+        this.responseDate = responseDate;
+        this.statusLine = Args.notNull(statusLine, "Status line");
+        this.headers = Args.notNull(headers, "Headers").clone();
+        this.resource = resource;
+    }
+
+    public long getRequestDate() {
+        return this.requestDate;
+    }
+
+    public long getResponseDate() {
+        return this.responseDate;
+    }
+
+    public StatusLine getStatusLine() {
+        return this.statusLine;
+    }
+
+    public int getStatusCode() {
+        return this.statusLine.getStatusCode();
+    }
+
+    public ProtocolVersion getProtocolVersion() {
+        return this.statusLine.getProtocolVersion();
+    }
+
+    public Header[] getAllHeaders() {
+        return this.headers.clone();
+    }
+
+    public Header getFirstHeader(final String name) {
+        for (final Header header : this.headers) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                return header;
+            }
+        }
+        return null;
+    }
+
+    public Header[] getHeaders(final String name) {
+        final List<Header> list = new ArrayList<Header>(2);
+        for (final Header header : this.headers) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                list.add(header);
+            }
+        }
+        return list.toArray(new Header[list.size()]);
+    }
+
+    public Resource getResource() {
+        return this.resource;
+    }
+
+    /**
+     * Returns {@code true} if the response varies by request headers, that is
+     * it carries a {@code Vary} header.
+     */
+    public boolean hasVariants() {
+        return getFirstHeader("Vary") != null;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[request date: ").append(this.requestDate);
+        buffer.append("; response date: ").append(this.responseDate);
+        buffer.append("; status: ").append(this.statusLine);
+        buffer.append("; length: ").append(this.resource != null ? this.resource.length() : 0);
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+}
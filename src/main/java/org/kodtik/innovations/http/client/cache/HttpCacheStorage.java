@@ -0,0 +1,54 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.client.cache;
+
+import java.io.IOException;
+
+/**
+ * Storage back-end of the client HTTP response cache. Implementations
+ * decide how many entries they retain and for how long.
+ *
+ * @since 4.5.15
+ */
+public interface HttpCacheStorage {
+
+    /**
+     * Stores the entry under the given key, replacing any existing entry.
+     */
+    void putEntry(String key, HttpCacheEntry entry) throws IOException;
+
+    /**
+     * Returns the entry stored under the given key or {@code null} if none.
+     */
+    HttpCacheEntry getEntry(String key) throws IOException;
+
+    /**
+     * Removes the entry stored under the given key, if any.
+     */
+    void removeEntry(String key) throws IOException;
+
+}
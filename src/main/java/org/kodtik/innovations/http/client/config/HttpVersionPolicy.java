@@ -0,0 +1,55 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.client.config;
+
+/**
+ * Policy that determines the HTTP protocol version used to execute
+ * requests over direct routes. Requests executed via a proxy always
+ * use HTTP/1.1.
+ *
+ * @since 4.5.15
+ */
+public enum HttpVersionPolicy {
+
+    /**
+     * HTTP/1.1 only.
+     */
+    FORCE_HTTP_1,
+
+    /**
+     * HTTP/2 over TLS if selected by the server via ALPN, HTTP/1.1
+     * otherwise. Plain connections use HTTP/1.1.
+     */
+    NEGOTIATE,
+
+    /**
+     * HTTP/2 only. TLS connections fail unless the server selects
+     * {@code h2} via ALPN; plain connections use HTTP/2 with prior knowledge.
+     */
+    FORCE_HTTP_2
+
+}
@@ -0,0 +1,140 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.client.entity;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.kodtik.innovations.http.HttpEntity;
+import org.kodtik.innovations.http.entity.HttpEntityWrapper;
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * Wrapping entity that computes message digests of the content as it is
+ * being written out, without an additional pass over the content.
+ * <p>
+ * Once the content has been written out in full the digests are retained
+ * and can be obtained with {@link #getDigest(String)}. The Digest scheme
+ * uses them for {@code qop=auth-int}: the body of a repeatable request is
+ * digested while it streams out with the initial, unauthenticated request,
+ * so that the retry answering the challenge does not need to read the
+ * content once more just to compute its hash.
+ * </p>
+ *
+ * @since 4.5.15
+ */
+public class DigestingEntity extends HttpEntityWrapper {
+
+    private final String[] algorithms;
+    private final Map<String, byte[]> digests;
+
+    /**
+     * @param entity the entity to wrap.
+     * @param algorithms names of the digest algorithms to compute.
+     */
+    public DigestingEntity(final HttpEntity entity, final String... algorithms) {
+        super(entity);
+        Args.notNull(algorithms, "Algorithms");
+        Args.check(algorithms.length > 0, "At least one algorithm must be given");
+        this.algorithms = new String[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            Args.notBlank(algorithms[i], "Algorithm");
+            this.algorithms[i] = algorithms[i].toUpperCase(Locale.ROOT);
+        }
+        this.digests = new ConcurrentHashMap<String, byte[]>();
+    }
+
+    /**
+     * Creates an entity that computes an MD5 digest of the content.
+     */
+    public DigestingEntity(final HttpEntity entity) {
+        this(entity, "MD5");
+    }
+
+    @Override
+    public void writeTo(final OutputStream outStream) throws IOException {
+        Args.notNull(outStream, "Output stream");
+        final MessageDigest[] digesters = new MessageDigest[this.algorithms.length];
+        for (int i = 0; i < digesters.length; i++) {
+            try {
+                digesters[i] = MessageDigest.getInstance(this.algorithms[i]);
+            } catch (final NoSuchAlgorithmException ex) {
+                throw new IOException("Unsupported digest algorithm: " + this.algorithms[i], ex);
+            }
+        }
+        final OutputStream digestingStream = new FilterOutputStream(outStream) {
+
+            @Override
+            public void write(final int b) throws IOException {
+                out.write(b);
+                for (final MessageDigest digester : digesters) {
+                    digester.update((byte) b);
+                }
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                out.write(b, off, len);
+                for (final MessageDigest digester : digesters) {
+                    digester.update(b, off, len);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                // the enclosing stream is managed by the caller
+                out.flush();
+            }
+
+        };
+        wrappedEntity.writeTo(digestingStream);
+        // Only retain the digests if the wrapped entity has been
+        // successfully written out
+        for (int i = 0; i < digesters.length; i++) {
+            this.digests.put(this.algorithms[i], digesters[i].digest());
+        }
+    }
+
+    /**
+     * Returns the digest of the content computed by the last complete
+     * {@link #writeTo(OutputStream)} invocation with the given algorithm, or
+     * {@code null} if the content has not been written out yet or the
+     * algorithm is not one of those this entity computes.
+     */
+    public byte[] getDigest(final String algorithm) {
+        Args.notNull(algorithm, "Algorithm");
+        final byte[] digest = this.digests.get(algorithm.toUpperCase(Locale.ROOT));
+        return digest != null ? digest.clone() : null;
+    }
+
+}
@@ -0,0 +1,257 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.client.entity;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.kodtik.innovations.http.Consts;
+import org.kodtik.innovations.http.HttpEntity;
+import org.kodtik.innovations.http.entity.ByteArrayEntity;
+import org.kodtik.innovations.http.entity.ContentType;
+import org.kodtik.innovations.http.entity.FileEntity;
+import org.kodtik.innovations.http.entity.InputStreamEntity;
+import org.kodtik.innovations.http.entity.StringEntity;
+import org.kodtik.innovations.http.util.Args;
+import org.kodtik.innovations.http.util.ByteArrayBuffer;
+import org.kodtik.innovations.http.util.TextUtils;
+
+/**
+ * Builder for streaming {@code multipart/form-data} entities as defined by RFC 7578.
+ * <p>
+ * Parts are written out in the order they were added, directly from their
+ * content sources. File parts are transferred through
+ * {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * and stream parts are copied through a fixed size buffer, so very large
+ * uploads are sent with constant memory. The resulting entity declares
+ * a {@code Content-Length} if the length of every part is known and is
+ * chunk coded otherwise.
+ * </p>
+ *
+ * @since 4.5.15
+ */
+public class MultipartEntityBuilder {
+
+    private static final char[] BOUNDARY_CHARS =
+            "-_1234567890abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+    private static final class PartSpec {
+
+        final String name;
+        final String filename;
+        final HttpEntity body;
+
+        PartSpec(final String name, final String filename, final HttpEntity body) {
+            this.name = name;
+            this.filename = filename;
+            this.body = body;
+        }
+
+    }
+
+    private final List<PartSpec> parts;
+    private String boundary;
+    private Charset charset;
+
+    MultipartEntityBuilder() {
+        super();
+        this.parts = new ArrayList<PartSpec>();
+    }
+
+    public static MultipartEntityBuilder create() {
+        return new MultipartEntityBuilder();
+    }
+
+    /**
+     * Sets the boundary delimiting parts. If not set, a random boundary
+     * is generated when the entity is built.
+     */
+    public MultipartEntityBuilder setBoundary(final String boundary) {
+        this.boundary = boundary;
+        return this;
+    }
+
+    /**
+     * Sets the charset used to encode part names and file names in part
+     * headers. Defaults to UTF-8.
+     */
+    public MultipartEntityBuilder setCharset(final Charset charset) {
+        this.charset = charset;
+        return this;
+    }
+
+    /**
+     * Adds a part with the given name whose content is provided by the given
+     * entity. The {@code Content-Type} of the entity, if any, is sent as the
+     * content type of the part.
+     *
+     * @param name the part name.
+     * @param body the part content.
+     * @param filename the file name of the part. May be {@code null}.
+     */
+    public MultipartEntityBuilder addPart(final String name, final HttpEntity body, final String filename) {
+        Args.notNull(name, "Name");
+        Args.notNull(body, "Body");
+        this.parts.add(new PartSpec(name, filename, body));
+        return this;
+    }
+
+    public MultipartEntityBuilder addPart(final String name, final HttpEntity body) {
+        return addPart(name, body, null);
+    }
+
+    public MultipartEntityBuilder addTextBody(final String name, final String text, final ContentType contentType) {
+        return addPart(name, new StringEntity(text, contentType != null ? contentType : ContentType.DEFAULT_TEXT));
+    }
+
+    public MultipartEntityBuilder addTextBody(final String name, final String text) {
+        return addTextBody(name, text, ContentType.DEFAULT_TEXT);
+    }
+
+    public MultipartEntityBuilder addBinaryBody(
+            final String name, final byte[] b, final ContentType contentType, final String filename) {
+        return addPart(name,
+                new ByteArrayEntity(b, contentType != null ? contentType : ContentType.DEFAULT_BINARY), filename);
+    }
+
+    public MultipartEntityBuilder addBinaryBody(final String name, final byte[] b) {
+        return addBinaryBody(name, b, ContentType.DEFAULT_BINARY, null);
+    }
+
+    public MultipartEntityBuilder addBinaryBody(
+            final String name, final File file, final ContentType contentType, final String filename) {
+        return addPart(name,
+                new FileEntity(file, contentType != null ? contentType : ContentType.DEFAULT_BINARY), filename);
+    }
+
+    public MultipartEntityBuilder addBinaryBody(final String name, final File file) {
+        return addBinaryBody(name, file, ContentType.DEFAULT_BINARY, file != null ? file.getName() : null);
+    }
+
+    /**
+     * Adds a part whose content is read from the given stream.
+     *
+     * @param length the number of bytes the stream provides or {@code -1}
+     *   if unknown, in which case the entity is chunk coded.
+     */
+    public MultipartEntityBuilder addBinaryBody(
+            final String name, final InputStream stream, final long length,
+            final ContentType contentType, final String filename) {
+        return addPart(name, new InputStreamEntity(stream, length,
+                contentType != null ? contentType : ContentType.DEFAULT_BINARY), filename);
+    }
+
+    public MultipartEntityBuilder addBinaryBody(
+            final String name, final InputStream stream, final ContentType contentType, final String filename) {
+        return addBinaryBody(name, stream, -1, contentType, filename);
+    }
+
+    public MultipartEntityBuilder addBinaryBody(final String name, final InputStream stream) {
+        return addBinaryBody(name, stream, -1, ContentType.DEFAULT_BINARY, null);
+    }
+
+    private static String generateBoundary() {
+        final Random rand = new Random();
+        final char[] buffer = new char[30 + rand.nextInt(11)];
+        for (int i = 0; i < buffer.length; i++) {
+            buffer[i] = BOUNDARY_CHARS[rand.nextInt(BOUNDARY_CHARS.length)];
+        }
+        return new String(buffer);
+    }
+
+    private static void appendAscii(final ByteArrayBuffer buffer, final String s) {
+        for (int i = 0; i < s.length(); i++) {
+            buffer.append(s.charAt(i));
+        }
+    }
+
+    /**
+     * Appends a quoted-string parameter value escaping quotes and line breaks
+     * the way RFC 7578 section 4.2 recommends for HTML forms.
+     */
+    private static void appendQuoted(final ByteArrayBuffer buffer, final String value, final Charset charset) {
+        buffer.append('"');
+        final StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char ch = value.charAt(i);
+            switch (ch) {
+                case '"':
+                    escaped.append("%22");
+                    break;
+                case '\r':
+                    escaped.append("%0D");
+                    break;
+                case '\n':
+                    escaped.append("%0A");
+                    break;
+                default:
+                    escaped.append(ch);
+            }
+        }
+        final byte[] b = escaped.toString().getBytes(charset);
+        buffer.append(b, 0, b.length);
+        buffer.append('"');
+    }
+
+    public HttpEntity build() {
+        final String boundaryCopy = !TextUtils.isBlank(this.boundary) ? this.boundary : generateBoundary();
+        final Charset charsetCopy = this.charset != null ? this.charset : Consts.UTF_8;
+        final List<MultipartFormEntity.Part> formParts =
+                new ArrayList<MultipartFormEntity.Part>(this.parts.size());
+        final ByteArrayBuffer buffer = new ByteArrayBuffer(256);
+        for (final PartSpec spec : this.parts) {
+            buffer.clear();
+            appendAscii(buffer, "--");
+            appendAscii(buffer, boundaryCopy);
+            appendAscii(buffer, "\r\nContent-Disposition: form-data; name=");
+            appendQuoted(buffer, spec.name, charsetCopy);
+            if (spec.filename != null) {
+                appendAscii(buffer, "; filename=");
+                appendQuoted(buffer, spec.filename, charsetCopy);
+            }
+            appendAscii(buffer, "\r\n");
+            if (spec.body.getContentType() != null) {
+                appendAscii(buffer, "Content-Type: ");
+                appendAscii(buffer, spec.body.getContentType().getValue());
+                appendAscii(buffer, "\r\n");
+            }
+            appendAscii(buffer, "\r\n");
+            formParts.add(new MultipartFormEntity.Part(buffer.toByteArray(), spec.body));
+        }
+        buffer.clear();
+        appendAscii(buffer, "--");
+        appendAscii(buffer, boundaryCopy);
+        appendAscii(buffer, "--\r\n");
+        return new MultipartFormEntity(formParts, buffer.toByteArray(),
+                ContentType.MULTIPART_FORM_DATA.getMimeType() + "; boundary=" + boundaryCopy);
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.client.entity;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.kodtik.innovations.http.HttpEntity;
+import org.kodtik.innovations.http.entity.AbstractHttpEntity;
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * {@code multipart/form-data} entity built by {@link MultipartEntityBuilder}.
+ * <p>
+ * Part headers are encoded once at build time. Part bodies are written
+ * out in order straight from their entities, so the memory footprint of
+ * the entity does not depend on the size of its parts.
+ * </p>
+ *
+ * @since 4.5.15
+ */
+class MultipartFormEntity extends AbstractHttpEntity {
+
+    static final class Part {
+
+        final byte[] head;
+        final HttpEntity body;
+
+        Part(final byte[] head, final HttpEntity body) {
+            this.head = head;
+            this.body = body;
+        }
+
+    }
+
+    private static final byte[] CRLF = { '\r', '\n' };
+
+    private final List<Part> parts;
+    private final byte[] tail;
+    private final long contentLength;
+
+    MultipartFormEntity(final List<Part> parts, final byte[] tail, final String contentType) {
+        super();
+        this.parts = parts;
+        this.tail = tail;
+        long len = tail.length;
+        for (final Part part : parts) {
+            final long bodyLen = part.body.getContentLength();
+            if (bodyLen < 0) {
+                len = -1;
+                break;
+            }
+            len += part.head.length + bodyLen + CRLF.length;
+        }
+        this.contentLength = len;
+        setContentType(contentType);
+        setChunked(len < 0);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        for (final Part part : this.parts) {
+            if (!part.body.isRepeatable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        for (final Part part : this.parts) {
+            if (part.body.isStreaming()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long getContentLength() {
+        return this.contentLength;
+    }
+
+    /**
+     * Returns a stream that reads the part heads and bodies in sequence,
+     * obtaining the content of each part only once the previous one has
+     * been read.
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        return new PartsInputStream();
+    }
+
+    @Override
+    public void writeTo(final OutputStream outStream) throws IOException {
+        Args.notNull(outStream, "Output stream");
+        for (final Part part : this.parts) {
+            outStream.write(part.head);
+            part.body.writeTo(outStream);
+            outStream.write(CRLF);
+        }
+        outStream.write(this.tail);
+        outStream.flush();
+    }
+
+    class PartsInputStream extends InputStream {
+
+        private final byte[] single = new byte[1];
+        private int index;
+        private InputStream current;
+
+        PartsInputStream() {
+            super();
+        }
+
+        /**
+         * Returns the stream of the next element (part head, part body or
+         * delimiter), or {@code null} once all elements have been read.
+         */
+        private InputStream next() throws IOException {
+            final int count = parts.size() * 3;
+            if (this.index > count) {
+                return null;
+            }
+            final int i = this.index++;
+            if (i == count) {
+                return new ByteArrayInputStream(tail);
+            }
+            final Part part = parts.get(i / 3);
+            switch (i % 3) {
+                case 0:
+                    return new ByteArrayInputStream(part.head);
+                case 1:
+                    return part.body.getContent();
+                default:
+                    return new ByteArrayInputStream(CRLF);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int n = read(this.single, 0, 1);
+            return n == -1 ? -1 : this.single[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            for (;;) {
+                if (this.current == null) {
+                    this.current = next();
+                    if (this.current == null) {
+                        return -1;
+                    }
+                }
+                final int n = this.current.read(b, off, len);
+                if (n > 0) {
+                    return n;
+                }
+                if (n == -1) {
+                    this.current.close();
+                    this.current = null;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.current != null) {
+                this.current.close();
+                this.current = null;
+            }
+            this.index = parts.size() * 3 + 1;
+        }
+
+    }
+
+}
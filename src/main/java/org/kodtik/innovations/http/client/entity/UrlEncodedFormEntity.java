@@ -26,24 +26,41 @@
  */
 package org.kodtik.innovations.http.client.entity;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.kodtik.innovations.http.NameValuePair;
+import org.kodtik.innovations.http.client.utils.URLEncodedCodec;
 import org.kodtik.innovations.http.client.utils.URLEncodedUtils;
 import org.kodtik.innovations.http.entity.ContentType;
 import org.kodtik.innovations.http.entity.StringEntity;
 import org.kodtik.innovations.http.protocol.HTTP;
+import org.kodtik.innovations.http.util.Args;
+import org.kodtik.innovations.http.util.ByteArrayBuffer;
 
 /**
  * An entity composed of a list of url-encoded pairs.
  * This is typically useful while sending an HTTP POST request.
+ * <p>
+ * As of version 4.5.15 the name/value pairs are encoded with
+ * {@link URLEncodedCodec} directly into the output stream when the entity
+ * is written out, rather than being formatted into a string upfront.
+ * </p>
  *
  * @since 4.0
  */
 public class UrlEncodedFormEntity extends StringEntity {
 
+    private final List<NameValuePair> parameters;
+    private final Charset charset;
+    private final long contentLength;
+
     /**
      * Constructs a new {@link UrlEncodedFormEntity} with the list
      * of parameters in the specified encoding.
@@ -55,9 +72,7 @@ public class UrlEncodedFormEntity extends StringEntity {
     public UrlEncodedFormEntity (
         final List <? extends NameValuePair> parameters,
         final String charset) throws UnsupportedEncodingException {
-        super(URLEncodedUtils.format(parameters,
-                charset != null ? charset : HTTP.DEF_CONTENT_CHARSET.name()),
-                ContentType.create(URLEncodedUtils.CONTENT_TYPE, charset));
+        this(parameters, charset != null ? Charset.forName(charset) : null);
     }
 
     /**
@@ -72,9 +87,14 @@ public class UrlEncodedFormEntity extends StringEntity {
     public UrlEncodedFormEntity (
         final Iterable <? extends NameValuePair> parameters,
         final Charset charset) {
-        super(URLEncodedUtils.format(parameters,
-                charset != null ? charset : HTTP.DEF_CONTENT_CHARSET),
-                ContentType.create(URLEncodedUtils.CONTENT_TYPE, charset));
+        super("", ContentType.create(URLEncodedUtils.CONTENT_TYPE, charset));
+        Args.notNull(parameters, "Parameters");
+        this.parameters = new ArrayList<NameValuePair>();
+        for (final NameValuePair parameter : parameters) {
+            this.parameters.add(parameter);
+        }
+        this.charset = charset != null ? charset : HTTP.DEF_CONTENT_CHARSET;
+        this.contentLength = URLEncodedCodec.encodedLength(this.parameters, '&', this.charset);
     }
 
     /**
@@ -102,4 +122,23 @@ public class UrlEncodedFormEntity extends StringEntity {
         this(parameters, null);
     }
 
+    @Override
+    public long getContentLength() {
+        return this.contentLength;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        final ByteArrayBuffer buffer = new ByteArrayBuffer((int) this.contentLength);
+        URLEncodedCodec.encode(this.parameters, '&', this.charset, buffer);
+        return new ByteArrayInputStream(buffer.buffer(), 0, buffer.length());
+    }
+
+    @Override
+    public void writeTo(final OutputStream outStream) throws IOException {
+        Args.notNull(outStream, "Output stream");
+        URLEncodedCodec.encode(this.parameters, '&', this.charset, outStream);
+        outStream.flush();
+    }
+
 }
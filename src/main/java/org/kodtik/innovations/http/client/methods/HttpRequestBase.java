@@ -32,6 +32,7 @@ import java.net.URI;
 import org.kodtik.innovations.http.ProtocolVersion;
 import org.kodtik.innovations.http.RequestLine;
 import org.kodtik.innovations.http.client.config.RequestConfig;
+import org.kodtik.innovations.http.client.utils.RequestTarget;
 import org.kodtik.innovations.http.message.BasicRequestLine;
 import org.kodtik.innovations.http.params.HttpProtocolParams;
 
@@ -47,6 +48,7 @@ public abstract class HttpRequestBase extends AbstractExecutionAwareRequest
     private ProtocolVersion version;
     private URI uri;
     private RequestConfig config;
+    private volatile RequestTarget requestTarget;
 
     @Override
     public abstract String getMethod();
@@ -101,6 +103,29 @@ public abstract class HttpRequestBase extends AbstractExecutionAwareRequest
 
     public void setURI(final URI uri) {
         this.uri = uri;
+        this.requestTarget = null;
+    }
+
+    /**
+     * Returns the pre-parsed {@link RequestTarget} of the request URI. The instance
+     * is cached until the request URI changes, so that the request target gets parsed
+     * and rewritten only once across retries of this request.
+     *
+     * @return the request target or {@code null} if the request URI is not set.
+     *
+     * @since 4.5.15
+     */
+    public RequestTarget getRequestTarget() {
+        final URI uriCopy = getURI();
+        if (uriCopy == null) {
+            return null;
+        }
+        RequestTarget target = this.requestTarget;
+        if (target == null || target.getURI() != uriCopy) {
+            target = new RequestTarget(uriCopy);
+            this.requestTarget = target;
+        }
+        return target;
     }
 
     /**
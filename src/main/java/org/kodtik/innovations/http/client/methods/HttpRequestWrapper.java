@@ -62,8 +62,9 @@ public class HttpRequestWrapper extends AbstractHttpMessage implements HttpUriRe
         super();
         this.original = Args.notNull(request, "HTTP request");
         this.target = target;
-        this.version = this.original.getRequestLine().getProtocolVersion();
-        this.method = this.original.getRequestLine().getMethod();
+        final RequestLine originalLine = this.original.getRequestLine();
+        this.version = originalLine.getProtocolVersion();
+        this.method = originalLine.getMethod();
         if (request instanceof HttpUriRequest) {
             this.uri = ((HttpUriRequest) request).getURI();
         } else {
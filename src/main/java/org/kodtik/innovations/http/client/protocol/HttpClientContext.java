@@ -43,6 +43,7 @@ import org.kodtik.innovations.http.cookie.CookieOrigin;
 import org.kodtik.innovations.http.cookie.CookieSpec;
 import org.kodtik.innovations.http.cookie.CookieSpecProvider;
 import org.kodtik.innovations.http.protocol.BasicHttpContext;
+import org.kodtik.innovations.http.protocol.ExchangeTimings;
 import org.kodtik.innovations.http.protocol.HttpContext;
 import org.kodtik.innovations.http.protocol.HttpCoreContext;
 
@@ -133,6 +134,14 @@ public class HttpClientContext extends HttpCoreContext {
      */
     public static final String REQUEST_CONFIG = "http.request-config";
 
+    /**
+     * Attribute name of an {@link Integer} object that represents the priority
+     * of connection lease requests.
+     *
+     * @since 4.5.15
+     */
+    public static final String LEASE_PRIORITY = "http.lease-priority";
+
     public static HttpClientContext adapt(final HttpContext context) {
         return context instanceof HttpClientContext
                         ? (HttpClientContext) context
@@ -242,4 +251,45 @@ public class HttpClientContext extends HttpCoreContext {
         setAttribute(REQUEST_CONFIG, config);
     }
 
+    /**
+     * @since 4.5.15
+     */
+    public int getLeasePriority() {
+        final Integer priority = getAttribute(LEASE_PRIORITY, Integer.class);
+        return priority != null ? priority.intValue() : 0;
+    }
+
+    /**
+     * Sets the priority of connection lease requests made while executing
+     * requests with this context. When the connection pool is exhausted,
+     * requests with a higher priority are given connections first. Default
+     * priority is {@code 0}; negative values can be used for background traffic.
+     *
+     * @since 4.5.15
+     */
+    public void setLeasePriority(final int priority) {
+        setAttribute(LEASE_PRIORITY, Integer.valueOf(priority));
+    }
+
+    /**
+     * Returns the {@link ExchangeTimings} instance bound to this context, or
+     * {@code null} if there is none or the attribute holds another object.
+     *
+     * @since 4.5.15
+     */
+    public ExchangeTimings getExchangeTimings() {
+        final Object timings = getAttribute(EXCHANGE_TIMINGS);
+        return timings instanceof ExchangeTimings ? (ExchangeTimings) timings : null;
+    }
+
+    /**
+     * Binds {@link ExchangeTimings} instance to this context in order to record
+     * phase timings of request executions using this context.
+     *
+     * @since 4.5.15
+     */
+    public void setExchangeTimings(final ExchangeTimings timings) {
+        setAttribute(EXCHANGE_TIMINGS, timings);
+    }
+
 }
@@ -132,6 +132,13 @@ public final class DateUtils {
             v = v.substring (1, v.length() - 1);
         }
 
+        final int formats = dateFormats != null ? supportedFormats(dateFormats) : HttpDateParser.ALL;
+        if (formats != 0) {
+            final long millis = HttpDateParser.parse(v, formats, localStartDate.getTime());
+            if (millis != HttpDateParser.INVALID) {
+                return new Date(millis);
+            }
+        }
         for (final String dateFormat : localDateFormats) {
             final SimpleDateFormat dateParser = DateFormatHolder.formatFor(dateFormat);
             dateParser.set2DigitYearStart(localStartDate);
@@ -144,6 +151,54 @@ public final class DateUtils {
         return null;
     }
 
+    /**
+     * Parses a date value in any of the RFC 1123, RFC 1036 or ANSI C {@code asctime()}
+     * formats and returns it as the number of milliseconds since epoch.
+     * <p>
+     * Well-formed dates in the GMT time zone are parsed without allocating any
+     * intermediate objects. Other values are parsed with the same patterns
+     * as used by {@link #parseDate(String)}. Two digit years are placed in
+     * the century starting with year {@code 2000}.
+     * </p>
+     *
+     * @param dateValue the date value to parse
+     * @param defaultValue the value to return if the date value could not be parsed
+     *
+     * @return the parsed date in milliseconds since epoch or {@code defaultValue}
+     *
+     * @since 4.5.15
+     */
+    public static long parseDateMillis(final String dateValue, final long defaultValue) {
+        Args.notNull(dateValue, "Date value");
+        final long millis = HttpDateParser.parse(dateValue, HttpDateParser.ALL, DEFAULT_TWO_DIGIT_YEAR_START.getTime());
+        if (millis != HttpDateParser.INVALID) {
+            return millis;
+        }
+        final Date date = parseDate(dateValue, null, null);
+        return date != null ? date.getTime() : defaultValue;
+    }
+
+    /**
+     * Returns the {@link HttpDateParser} format mask for the leading patterns that
+     * it can handle. Parsing stops being equivalent at the first pattern it does not
+     * support, as that pattern takes precedence over any following one.
+     */
+    private static int supportedFormats(final String[] dateFormats) {
+        int formats = 0;
+        for (final String dateFormat : dateFormats) {
+            if (PATTERN_RFC1123.equals(dateFormat)) {
+                formats |= HttpDateParser.RFC1123;
+            } else if (PATTERN_RFC1036.equals(dateFormat)) {
+                formats |= HttpDateParser.RFC1036;
+            } else if (PATTERN_ASCTIME.equals(dateFormat)) {
+                formats |= HttpDateParser.ASCTIME;
+            } else {
+                break;
+            }
+        }
+        return formats;
+    }
+
     /**
      * Formats the given date according to the RFC 1123 pattern.
      *
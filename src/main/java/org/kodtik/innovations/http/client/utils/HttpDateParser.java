@@ -0,0 +1,358 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.client.utils;
+
+/**
+ * Hand-written parser for the three HTTP date formats that does not go
+ * through {@link java.text.SimpleDateFormat} and does not allocate. Only
+ * well-formed dates in the GMT time zone are accepted; callers are expected
+ * to fall back to the pattern based parser for anything this class rejects.
+ */
+final class HttpDateParser {
+
+    /**
+     * Value returned for input that could not be parsed.
+     */
+    static final long INVALID = Long.MIN_VALUE;
+
+    /** {@code Sun, 06 Nov 1994 08:49:37 GMT} */
+    static final int RFC1123 = 1;
+    /** {@code Sunday, 06-Nov-94 08:49:37 GMT} */
+    static final int RFC1036 = 2;
+    /** {@code Sun Nov  6 08:49:37 1994} */
+    static final int ASCTIME = 4;
+    static final int ALL = RFC1123 | RFC1036 | ASCTIME;
+
+    private static final String[] DAY_NAME_SUFFIXES = {
+        "day", "day", "sday", "nesday", "rsday", "day", "urday"
+    };
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private static final int[] DAYS_IN_MONTH = { 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+    private HttpDateParser() {
+    }
+
+    /**
+     * Parses a date in any of the given formats.
+     *
+     * @param s the date value.
+     * @param formats bit mask of {@link #RFC1123}, {@link #RFC1036} and
+     *   {@link #ASCTIME} formats to accept.
+     * @param twoDigitYearStart two digit years are placed in the century
+     *   starting at this time (milliseconds since epoch), as done by
+     *   {@link java.text.SimpleDateFormat#set2DigitYearStart(java.util.Date)}.
+     * @return the number of milliseconds since epoch or {@link #INVALID}.
+     */
+    static long parse(final CharSequence s, final int formats, final long twoDigitYearStart) {
+        if (s.length() < 23) {
+            return INVALID;
+        }
+        final char c = s.charAt(3);
+        if (c == ',') {
+            if ((formats & RFC1123) != 0 && s.charAt(7) == ' ') {
+                return parseRfc1123(s);
+            }
+            if ((formats & RFC1036) != 0) {
+                return parseRfc1036(s, twoDigitYearStart);
+            }
+        } else if (c == ' ') {
+            if ((formats & ASCTIME) != 0) {
+                return parseAsctime(s);
+            }
+        } else if ((formats & RFC1036) != 0) {
+            return parseRfc1036(s, twoDigitYearStart);
+        }
+        return INVALID;
+    }
+
+    /**
+     * Parses a date in RFC 1123 format ({@code Sun, 06 Nov 1994 08:49:37 GMT}).
+     *
+     * @return the number of milliseconds since epoch or {@link #INVALID}.
+     */
+    static long parseRfc1123(final CharSequence s) {
+        if (s.length() != 29
+                || dayOfWeek(s, 0) < 0
+                || s.charAt(3) != ',' || s.charAt(4) != ' '
+                || s.charAt(7) != ' ' || s.charAt(11) != ' ' || s.charAt(16) != ' ' || s.charAt(25) != ' '
+                || !isGmt(s, 26)) {
+            return INVALID;
+        }
+        final int day = digits(s, 5, 2);
+        final int month = month(s, 8);
+        final int year = digits(s, 12, 4);
+        if (day < 0 || month < 0 || year < 0) {
+            return INVALID;
+        }
+        return toMillis(year, month, day, s, 17);
+    }
+
+    /**
+     * Parses a date in RFC 1036 format ({@code Sunday, 06-Nov-94 08:49:37 GMT}).
+     * Abbreviated day names and four digit years are accepted as well.
+     *
+     * @return the number of milliseconds since epoch or {@link #INVALID}.
+     */
+    static long parseRfc1036(final CharSequence s, final long twoDigitYearStart) {
+        final int len = s.length();
+        final int dayOfWeek = dayOfWeek(s, 0);
+        if (dayOfWeek < 0) {
+            return INVALID;
+        }
+        int pos = 3;
+        if (s.charAt(pos) != ',') {
+            final String suffix = DAY_NAME_SUFFIXES[dayOfWeek];
+            if (len < pos + suffix.length() || !regionMatches(s, pos, suffix)) {
+                return INVALID;
+            }
+            pos += suffix.length();
+        }
+        final int yearDigits = len - pos - 22;
+        if (yearDigits != 2 && yearDigits != 4) {
+            return INVALID;
+        }
+        final int timeOff = pos + 10 + yearDigits;
+        if (s.charAt(pos) != ',' || s.charAt(pos + 1) != ' '
+                || s.charAt(pos + 4) != '-' || s.charAt(pos + 8) != '-'
+                || s.charAt(timeOff - 1) != ' ' || s.charAt(timeOff + 8) != ' '
+                || !isGmt(s, timeOff + 9)) {
+            return INVALID;
+        }
+        final int day = digits(s, pos + 2, 2);
+        final int month = month(s, pos + 5);
+        int year = digits(s, pos + 9, yearDigits);
+        if (day < 0 || month < 0 || year < 0) {
+            return INVALID;
+        }
+        if (yearDigits == 2) {
+            final int startYear = yearOf(twoDigitYearStart);
+            final boolean ambiguous = year == startYear % 100;
+            year += (startYear / 100) * 100 + (year < startYear % 100 ? 100 : 0);
+            final long millis = toMillis(year, month, day, s, timeOff);
+            if (ambiguous && millis != INVALID && millis < twoDigitYearStart) {
+                return toMillis(year + 100, month, day, s, timeOff);
+            }
+            return millis;
+        }
+        return toMillis(year, month, day, s, timeOff);
+    }
+
+    /**
+     * Parses a date in ANSI C {@code asctime()} format ({@code Sun Nov  6 08:49:37 1994}).
+     * The day of month may be padded with a space or a zero, or not padded at all.
+     *
+     * @return the number of milliseconds since epoch or {@link #INVALID}.
+     */
+    static long parseAsctime(final CharSequence s) {
+        final int len = s.length();
+        if (len != 23 && len != 24
+                || dayOfWeek(s, 0) < 0
+                || s.charAt(3) != ' ' || s.charAt(7) != ' ') {
+            return INVALID;
+        }
+        final int month = month(s, 4);
+        final int day;
+        final int timeOff;
+        if (len == 24) {
+            final int d0 = s.charAt(8) == ' ' ? 0 : digit(s, 8);
+            final int d1 = digit(s, 9);
+            day = d0 >= 0 && d1 >= 0 ? d0 * 10 + d1 : -1;
+            timeOff = 11;
+        } else {
+            day = digit(s, 8);
+            timeOff = 10;
+        }
+        if (s.charAt(timeOff - 1) != ' ' || s.charAt(timeOff + 8) != ' ') {
+            return INVALID;
+        }
+        final int year = digits(s, timeOff + 9, 4);
+        if (day < 0 || month < 0 || year < 0) {
+            return INVALID;
+        }
+        return toMillis(year, month, day, s, timeOff);
+    }
+
+    private static boolean regionMatches(final CharSequence s, final int off, final String region) {
+        for (int i = 0; i < region.length(); i++) {
+            if (s.charAt(off + i) != region.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int digit(final CharSequence s, final int off) {
+        final int d = s.charAt(off) - '0';
+        return d >= 0 && d <= 9 ? d : -1;
+    }
+
+    static int digits(final CharSequence s, final int off, final int count) {
+        int value = 0;
+        for (int i = off; i < off + count; i++) {
+            final int d = digit(s, i);
+            if (d < 0) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    static int dayOfWeek(final CharSequence s, final int off) {
+        final char c0 = s.charAt(off);
+        final char c1 = s.charAt(off + 1);
+        final char c2 = s.charAt(off + 2);
+        switch (c0) {
+            case 'S':
+                if (c1 == 'u' && c2 == 'n') {
+                    return 0;
+                }
+                return c1 == 'a' && c2 == 't' ? 6 : -1;
+            case 'M':
+                return c1 == 'o' && c2 == 'n' ? 1 : -1;
+            case 'T':
+                if (c1 == 'u' && c2 == 'e') {
+                    return 2;
+                }
+                return c1 == 'h' && c2 == 'u' ? 4 : -1;
+            case 'W':
+                return c1 == 'e' && c2 == 'd' ? 3 : -1;
+            case 'F':
+                return c1 == 'r' && c2 == 'i' ? 5 : -1;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the month (1 to 12) of the three letter month name at the given offset.
+     */
+    static int month(final CharSequence s, final int off) {
+        final char c0 = s.charAt(off);
+        final char c1 = s.charAt(off + 1);
+        final char c2 = s.charAt(off + 2);
+        switch (c0) {
+            case 'J':
+                if (c1 == 'a' && c2 == 'n') {
+                    return 1;
+                }
+                if (c1 == 'u') {
+                    return c2 == 'n' ? 6 : (c2 == 'l' ? 7 : -1);
+                }
+                return -1;
+            case 'F':
+                return c1 == 'e' && c2 == 'b' ? 2 : -1;
+            case 'M':
+                if (c1 == 'a') {
+                    return c2 == 'r' ? 3 : (c2 == 'y' ? 5 : -1);
+                }
+                return -1;
+            case 'A':
+                if (c1 == 'p' && c2 == 'r') {
+                    return 4;
+                }
+                return c1 == 'u' && c2 == 'g' ? 8 : -1;
+            case 'S':
+                return c1 == 'e' && c2 == 'p' ? 9 : -1;
+            case 'O':
+                return c1 == 'c' && c2 == 't' ? 10 : -1;
+            case 'N':
+                return c1 == 'o' && c2 == 'v' ? 11 : -1;
+            case 'D':
+                return c1 == 'e' && c2 == 'c' ? 12 : -1;
+            default:
+                return -1;
+        }
+    }
+
+    static boolean isGmt(final CharSequence s, final int off) {
+        return s.charAt(off) == 'G' && s.charAt(off + 1) == 'M' && s.charAt(off + 2) == 'T';
+    }
+
+    /**
+     * Converts the given date and the {@code HH:mm:ss} time at the given offset
+     * to milliseconds since epoch. Returns {@link #INVALID} if any of the fields
+     * is out of range.
+     */
+    static long toMillis(final int year, final int month, final int day, final CharSequence s, final int timeOff) {
+        if (s.charAt(timeOff + 2) != ':' || s.charAt(timeOff + 5) != ':') {
+            return INVALID;
+        }
+        final int hour = digits(s, timeOff, 2);
+        final int minute = digits(s, timeOff + 3, 2);
+        final int second = digits(s, timeOff + 6, 2);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return INVALID;
+        }
+        if (month < 1 || month > 12 || day < 1 || day > DAYS_IN_MONTH[month - 1]) {
+            return INVALID;
+        }
+        if (month == 2 && day == 29 && !isLeapYear(year)) {
+            return INVALID;
+        }
+        return daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + (hour * 3600 + minute * 60 + second) * 1000L;
+    }
+
+    /**
+     * Returns the year of the proleptic Gregorian calendar in GMT the given
+     * number of milliseconds since epoch falls into.
+     */
+    static int yearOf(final long millis) {
+        long days = millis / MILLIS_PER_DAY;
+        if (millis % MILLIS_PER_DAY < 0) {
+            days--;
+        }
+        final long z = days + 719468;
+        final long era = (z >= 0 ? z : z - 146096) / 146097;
+        final long doe = z - era * 146097;
+        final long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final long mp = (5 * doy + 2) / 153;
+        return (int) (yoe + era * 400 + (mp >= 10 ? 1 : 0));
+    }
+
+    static boolean isLeapYear(final int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    /**
+     * Returns the number of days since epoch of the given date of the proleptic
+     * Gregorian calendar.
+     */
+    static long daysFromCivil(final int year, final int month, final int day) {
+        final long y = month <= 2 ? year - 1 : year;
+        final long era = (y >= 0 ? y : y - 399) / 400;
+        final long yoe = y - era * 400;
+        final long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+}
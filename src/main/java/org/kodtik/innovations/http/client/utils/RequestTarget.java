@@ -0,0 +1,239 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.client.utils;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import org.kodtik.innovations.http.HttpHost;
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+import org.kodtik.innovations.http.conn.routing.RouteInfo;
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * Pre-parsed request target. Keeps the raw scheme, authority, path and query
+ * components of a request {@link URI} and rewrites it to the form required
+ * by a route by concatenating those components, rather than by decoding and
+ * re-encoding them through {@link URIBuilder}. Targets that cannot be rewritten
+ * this way without changing the outcome (such as paths subject to normalization
+ * or URIs with user information) are handed over to {@link URIUtils}.
+ * <p>
+ * The result of the last rewrite is cached, so a request target re-used across
+ * retries of the same request is rewritten only once.
+ * </p>
+ *
+ * @since 4.5.15
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public final class RequestTarget {
+
+    private final URI uri;
+    private final String scheme;
+    private final String rawUserInfo;
+    private final String rawAuthority;
+    private final String host;
+    private final int port;
+    private final String rawPath;
+    private final String rawQuery;
+    private final String rawFragment;
+
+    private volatile Rewrite lastRewrite;
+
+    public RequestTarget(final URI uri) {
+        super();
+        this.uri = Args.notNull(uri, "URI");
+        this.scheme = uri.getScheme();
+        this.rawUserInfo = uri.getRawUserInfo();
+        this.rawAuthority = uri.getRawAuthority();
+        this.host = uri.getHost();
+        this.port = uri.getPort();
+        this.rawPath = uri.getRawPath();
+        this.rawQuery = uri.getRawQuery();
+        this.rawFragment = uri.getRawFragment();
+    }
+
+    public URI getURI() {
+        return this.uri;
+    }
+
+    public String getScheme() {
+        return this.scheme;
+    }
+
+    public String getRawPath() {
+        return this.rawPath;
+    }
+
+    public String getRawQuery() {
+        return this.rawQuery;
+    }
+
+    /**
+     * Returns the request target in either the relative (origin) form or the absolute
+     * form as required by the given route. The result is equivalent to that of
+     * {@link URIUtils#rewriteURIForRoute(URI, RouteInfo, boolean)}.
+     *
+     * @param route the route the request is to be executed over.
+     * @param normalizeUri whether or not to normalize the path.
+     * @throws URISyntaxException if the resulting URI is invalid.
+     */
+    public URI rewriteForRoute(final RouteInfo route, final boolean normalizeUri) throws URISyntaxException {
+        Args.notNull(route, "Route");
+        final boolean absolute = route.getProxyHost() != null && !route.isTunnelled();
+        final HttpHost target = absolute && !this.uri.isAbsolute() ? route.getTargetHost() : null;
+        final Rewrite rewrite = this.lastRewrite;
+        if (rewrite != null && rewrite.matches(absolute, normalizeUri, target)) {
+            return rewrite.result;
+        }
+        final URI result = doRewrite(absolute, normalizeUri, target);
+        this.lastRewrite = new Rewrite(absolute, normalizeUri, target, result);
+        return result;
+    }
+
+    private URI doRewrite(
+            final boolean absolute, final boolean normalizeUri, final HttpHost target) throws URISyntaxException {
+        if (this.uri.isOpaque()) {
+            return this.uri;
+        }
+        final boolean simplePath = isSimplePath(normalizeUri);
+        if (absolute) {
+            if (this.uri.isAbsolute()) {
+                // Absolute URI: drop fragment and user info, lower case host
+                if (simplePath && this.rawUserInfo == null && this.rawFragment == null
+                        && isCanonicalAuthority()) {
+                    return this.uri;
+                }
+                return URIUtils.rewriteURI(this.uri);
+            }
+            // Relative URI: take scheme, host and port from the target
+            if (simplePath && this.rawUserInfo == null && target.getHostName().indexOf(':') < 0) {
+                final StringBuilder buffer = new StringBuilder(
+                        target.getSchemeName().length() + target.getHostName().length() + this.rawPath.length()
+                        + (this.rawQuery != null ? this.rawQuery.length() + 1 : 0) + 10);
+                buffer.append(target.getSchemeName()).append("://").append(target.getHostName());
+                if (target.getPort() >= 0) {
+                    buffer.append(':').append(target.getPort());
+                }
+                appendPathAndQuery(buffer);
+                return new URI(buffer.toString());
+            }
+            return URIUtils.rewriteURI(this.uri, target,
+                    normalizeUri ? URIUtils.DROP_FRAGMENT_AND_NORMALIZE : URIUtils.DROP_FRAGMENT);
+        }
+        if (this.uri.isAbsolute()) {
+            // Absolute URI: keep path and query only
+            if (simplePath) {
+                final StringBuilder buffer = new StringBuilder(
+                        this.rawPath.length() + (this.rawQuery != null ? this.rawQuery.length() + 1 : 0));
+                appendPathAndQuery(buffer);
+                return new URI(buffer.toString());
+            }
+            return URIUtils.rewriteURI(this.uri, null,
+                    normalizeUri ? URIUtils.DROP_FRAGMENT_AND_NORMALIZE : URIUtils.DROP_FRAGMENT);
+        }
+        // Relative URI: drop fragment
+        if (simplePath && this.rawFragment == null && this.rawUserInfo == null
+                && isCanonicalAuthority()) {
+            return this.uri;
+        }
+        return URIUtils.rewriteURI(this.uri);
+    }
+
+    private void appendPathAndQuery(final StringBuilder buffer) {
+        buffer.append(this.rawPath);
+        if (this.rawQuery != null) {
+            buffer.append('?').append(this.rawQuery);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the raw path is absolute and would not be altered
+     * by normalization, that is, contains no empty segments other than the last one.
+     */
+    private boolean isSimplePath(final boolean normalizeUri) {
+        final String path = this.rawPath;
+        if (path == null || path.isEmpty() || path.charAt(0) != '/') {
+            return false;
+        }
+        return !normalizeUri || path.indexOf("//") < 0;
+    }
+
+    /**
+     * Returns {@code true} if the authority consists of a lower case host
+     * and an optional port only, as it would be rebuilt by {@link URIBuilder}.
+     */
+    private boolean isCanonicalAuthority() {
+        final String authority = this.rawAuthority;
+        if (authority == null || this.host == null) {
+            return authority == null;
+        }
+        if (!authority.startsWith(this.host)) {
+            return false;
+        }
+        final int hostLen = this.host.length();
+        for (int i = 0; i < hostLen; i++) {
+            final char ch = this.host.charAt(i);
+            if (ch >= 'A' && ch <= 'Z' || ch > 0x7f) {
+                return false;
+            }
+        }
+        if (this.port < 0) {
+            return authority.length() == hostLen;
+        }
+        return authority.length() > hostLen + 1
+                && authority.charAt(hostLen) == ':'
+                && authority.regionMatches(hostLen + 1, Integer.toString(this.port), 0, authority.length() - hostLen - 1);
+    }
+
+    @Override
+    public String toString() {
+        return this.uri.toString();
+    }
+
+    static final class Rewrite {
+
+        final boolean absolute;
+        final boolean normalizeUri;
+        final HttpHost target;
+        final URI result;
+
+        Rewrite(final boolean absolute, final boolean normalizeUri, final HttpHost target, final URI result) {
+            this.absolute = absolute;
+            this.normalizeUri = normalizeUri;
+            this.target = target;
+            this.result = result;
+        }
+
+        boolean matches(final boolean absolute, final boolean normalizeUri, final HttpHost target) {
+            return this.absolute == absolute && this.normalizeUri == normalizeUri
+                    && (this.target == null ? target == null : this.target.equals(target));
+        }
+
+    }
+
+}
@@ -0,0 +1,462 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.client.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+import org.kodtik.innovations.http.Consts;
+import org.kodtik.innovations.http.NameValuePair;
+import org.kodtik.innovations.http.util.Args;
+import org.kodtik.innovations.http.util.ByteArrayBuffer;
+import org.kodtik.innovations.http.util.CharArrayBuffer;
+
+/**
+ * Streaming codec for {@code application/x-www-form-urlencoded} content.
+ * <p>
+ * Unlike {@link URLEncodedUtils}, this class encodes parameters directly
+ * into a {@link ByteArrayBuffer} or an {@link OutputStream} in the target
+ * charset and decodes parameters into reusable buffers handed over to
+ * a {@link ParameterHandler}, without building intermediate strings.
+ * Characters of the US-ASCII range and, for UTF-8 and ISO-8859-1, all other
+ * characters are encoded without going through a {@link java.nio.charset.CharsetEncoder}.
+ * </p>
+ * <p>
+ * The encoding and decoding rules are the same as those of
+ * {@link URLEncodedUtils#format(Iterable, char, Charset)} and
+ * {@link URLEncodedUtils#parse(CharArrayBuffer, Charset, char...)}.
+ * </p>
+ *
+ * @since 4.5.15
+ */
+public final class URLEncodedCodec {
+
+    /**
+     * Callback receiving parameters decoded by
+     * {@link URLEncodedCodec#decode(CharSequence, Charset, ParameterHandler, char...)}.
+     */
+    public interface ParameterHandler {
+
+        /**
+         * Handles a decoded parameter. Both buffers are re-used for
+         * subsequent parameters and must not be retained by the handler.
+         *
+         * @param name decoded parameter name. Never empty.
+         * @param value decoded parameter value or {@code null} if the parameter
+         *   has no {@code '='} separator.
+         */
+        void handle(CharArrayBuffer name, CharArrayBuffer value);
+
+    }
+
+    private static final int CHUNK_SIZE = 4096;
+
+    private static final byte[] HEX = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
+    /**
+     * Safe characters for x-www-form-urlencoded data, as per java.net.URLEncoder and browser behaviour,
+     * i.e. alphanumeric plus {@code "-", "_", ".", "*"}
+     */
+    private static final boolean[] SAFE = new boolean[128];
+
+    static {
+        for (int i = 'a'; i <= 'z'; i++) {
+            SAFE[i] = true;
+        }
+        for (int i = 'A'; i <= 'Z'; i++) {
+            SAFE[i] = true;
+        }
+        for (int i = '0'; i <= '9'; i++) {
+            SAFE[i] = true;
+        }
+        SAFE['-'] = true;
+        SAFE['_'] = true;
+        SAFE['.'] = true;
+        SAFE['*'] = true;
+    }
+
+    private URLEncodedCodec() {
+    }
+
+    /**
+     * Encodes the given parameters and appends the result to the buffer.
+     * As with {@link URLEncodedUtils#format(Iterable, char, Charset)}, no separator
+     * is emitted until some content has been encoded.
+     *
+     * @param parameters the parameters to encode.
+     * @param parameterSeparator the parameter separator, by convention, {@code '&'} or {@code ';'}.
+     * @param charset the charset to encode names and values with.
+     *   {@code null} implies UTF-8.
+     * @param dst the buffer to append the encoded parameters to.
+     */
+    public static void encode(
+            final Iterable<? extends NameValuePair> parameters,
+            final char parameterSeparator,
+            final Charset charset,
+            final ByteArrayBuffer dst) {
+        Args.notNull(parameters, "Parameters");
+        Args.notNull(dst, "Buffer");
+        final Charset cs = charset != null ? charset : Consts.UTF_8;
+        final int start = dst.length();
+        for (final NameValuePair parameter : parameters) {
+            if (dst.length() > start) {
+                dst.append(parameterSeparator);
+            }
+            encodePair(parameter, cs, dst);
+        }
+    }
+
+    /**
+     * Encodes the given parameters and writes the result to the output stream
+     * in chunks, without buffering the complete content.
+     *
+     * @param parameters the parameters to encode.
+     * @param parameterSeparator the parameter separator, by convention, {@code '&'} or {@code ';'}.
+     * @param charset the charset to encode names and values with.
+     *   {@code null} implies UTF-8.
+     * @param outStream the output stream to write the encoded parameters to.
+     * @throws IOException in case of an I/O error.
+     */
+    public static void encode(
+            final Iterable<? extends NameValuePair> parameters,
+            final char parameterSeparator,
+            final Charset charset,
+            final OutputStream outStream) throws IOException {
+        Args.notNull(parameters, "Parameters");
+        Args.notNull(outStream, "Output stream");
+        final Charset cs = charset != null ? charset : Consts.UTF_8;
+        final ByteArrayBuffer buffer = new ByteArrayBuffer(CHUNK_SIZE);
+        boolean written = false;
+        for (final NameValuePair parameter : parameters) {
+            if (written || !buffer.isEmpty()) {
+                buffer.append(parameterSeparator);
+            }
+            encodePair(parameter, cs, buffer);
+            if (buffer.length() >= CHUNK_SIZE) {
+                outStream.write(buffer.buffer(), 0, buffer.length());
+                buffer.clear();
+                written = true;
+            }
+        }
+        if (!buffer.isEmpty()) {
+            outStream.write(buffer.buffer(), 0, buffer.length());
+        }
+    }
+
+    /**
+     * Returns the number of bytes the given parameters take once encoded.
+     *
+     * @param parameters the parameters to encode.
+     * @param parameterSeparator the parameter separator.
+     * @param charset the charset to encode names and values with.
+     *   {@code null} implies UTF-8.
+     */
+    public static long encodedLength(
+            final Iterable<? extends NameValuePair> parameters,
+            final char parameterSeparator,
+            final Charset charset) {
+        Args.notNull(parameters, "Parameters");
+        final Charset cs = charset != null ? charset : Consts.UTF_8;
+        final ByteArrayBuffer buffer = new ByteArrayBuffer(64);
+        long len = 0;
+        for (final NameValuePair parameter : parameters) {
+            if (len > 0) {
+                len++;
+            }
+            encodePair(parameter, cs, buffer);
+            len += buffer.length();
+            buffer.clear();
+        }
+        return len;
+    }
+
+    private static void encodePair(final NameValuePair parameter, final Charset charset, final ByteArrayBuffer dst) {
+        encodeField(parameter.getName(), charset, dst);
+        final String value = parameter.getValue();
+        if (value != null) {
+            dst.append('=');
+            encodeField(value, charset, dst);
+        }
+    }
+
+    private static void encodeField(final String content, final Charset charset, final ByteArrayBuffer dst) {
+        if (content == null) {
+            return;
+        }
+        final int kind;
+        if (charset.equals(Consts.UTF_8)) {
+            kind = 0;
+        } else if (charset.equals(Consts.ISO_8859_1)) {
+            kind = 1;
+        } else if (charset.equals(Consts.ASCII)) {
+            kind = 2;
+        } else {
+            final ByteBuffer bb = charset.encode(content);
+            while (bb.hasRemaining()) {
+                encodeByte(bb.get() & 0xff, dst);
+            }
+            return;
+        }
+        final int len = content.length();
+        for (int i = 0; i < len; i++) {
+            final char ch = content.charAt(i);
+            if (ch < 0x80) {
+                encodeByte(ch, dst);
+            } else if (kind == 0) {
+                if (ch < 0x800) {
+                    encodeByte(0xc0 | (ch >> 6), dst);
+                    encodeByte(0x80 | (ch & 0x3f), dst);
+                } else if (Character.isHighSurrogate(ch)
+                        && i + 1 < len && Character.isLowSurrogate(content.charAt(i + 1))) {
+                    final int cp = Character.toCodePoint(ch, content.charAt(++i));
+                    encodeByte(0xf0 | (cp >> 18), dst);
+                    encodeByte(0x80 | ((cp >> 12) & 0x3f), dst);
+                    encodeByte(0x80 | ((cp >> 6) & 0x3f), dst);
+                    encodeByte(0x80 | (cp & 0x3f), dst);
+                } else if (Character.isSurrogate(ch)) {
+                    // unpaired surrogate, replaced the same way Charset#encode does
+                    encodeByte('?', dst);
+                } else {
+                    encodeByte(0xe0 | (ch >> 12), dst);
+                    encodeByte(0x80 | ((ch >> 6) & 0x3f), dst);
+                    encodeByte(0x80 | (ch & 0x3f), dst);
+                }
+            } else if (kind == 1 && ch <= 0xff) {
+                encodeByte(ch, dst);
+            } else {
+                if (Character.isHighSurrogate(ch)
+                        && i + 1 < len && Character.isLowSurrogate(content.charAt(i + 1))) {
+                    i++;
+                }
+                encodeByte('?', dst);
+            }
+        }
+    }
+
+    private static void encodeByte(final int b, final ByteArrayBuffer dst) {
+        if (b < 0x80 && SAFE[b]) {
+            dst.append(b);
+        } else if (b == ' ') {
+            dst.append('+');
+        } else {
+            dst.append('%');
+            dst.append(HEX[(b >> 4) & 0xf]);
+            dst.append(HEX[b & 0xf]);
+        }
+    }
+
+    /**
+     * Decodes parameters from the given {@code application/x-www-form-urlencoded}
+     * content and passes them to the handler in order of appearance.
+     * Parameters with an empty name are skipped.
+     *
+     * @param s the content to decode.
+     * @param charset the charset to decode escaped octets with.
+     *   {@code null} implies UTF-8.
+     * @param handler the handler to receive decoded parameters.
+     * @param separators parameter separators, by convention {@code '&'} and {@code ';'}.
+     */
+    public static void decode(
+            final CharSequence s,
+            final Charset charset,
+            final ParameterHandler handler,
+            final char... separators) {
+        Args.notNull(s, "Content");
+        Args.notNull(handler, "Parameter handler");
+        final Decoder decoder = new Decoder(charset != null ? charset : Consts.UTF_8);
+        final CharArrayBuffer name = new CharArrayBuffer(32);
+        final CharArrayBuffer value = new CharArrayBuffer(64);
+        final int len = s.length();
+        int pos = 0;
+        while (pos < len) {
+            final int nameEnd = indexOfDelimiter(s, pos, len, separators, true);
+            boolean hasValue = false;
+            int next = nameEnd;
+            int valueEnd = nameEnd;
+            if (nameEnd < len) {
+                next = nameEnd + 1;
+                if (s.charAt(nameEnd) == '=') {
+                    hasValue = true;
+                    valueEnd = indexOfDelimiter(s, next, len, separators, false);
+                    next = valueEnd < len ? valueEnd + 1 : valueEnd;
+                }
+            }
+            name.clear();
+            decoder.decode(s, pos, nameEnd, name);
+            if (!name.isEmpty()) {
+                if (hasValue) {
+                    value.clear();
+                    decoder.decode(s, nameEnd + 1, valueEnd, value);
+                    handler.handle(name, value);
+                } else {
+                    handler.handle(name, null);
+                }
+            }
+            pos = next;
+        }
+    }
+
+    private static int indexOfDelimiter(
+            final CharSequence s, final int from, final int to, final char[] separators, final boolean name) {
+        for (int i = from; i < to; i++) {
+            final char ch = s.charAt(i);
+            if (ch == '=') {
+                if (name) {
+                    return i;
+                }
+                continue;
+            }
+            for (final char separator : separators) {
+                if (ch == separator) {
+                    return i;
+                }
+            }
+        }
+        return to;
+    }
+
+    private static boolean isWhitespace(final char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\r' || ch == '\n';
+    }
+
+    /**
+     * Decodes a single field. Surrounding whitespace is trimmed and inner
+     * whitespace runs count as a single space, consistent with
+     * {@link org.kodtik.innovations.http.message.TokenParser}.
+     */
+    static final class Decoder {
+
+        private final Charset charset;
+        private final ByteArrayBuffer octets;
+        private CharsetDecoder charsetDecoder;
+
+        Decoder(final Charset charset) {
+            super();
+            this.charset = charset;
+            this.octets = new ByteArrayBuffer(16);
+        }
+
+        void decode(final CharSequence s, final int from, final int to, final CharArrayBuffer dst) {
+            int start = from;
+            while (start < to && isWhitespace(s.charAt(start))) {
+                start++;
+            }
+            int end = to;
+            while (end > start && isWhitespace(s.charAt(end - 1))) {
+                end--;
+            }
+            int i = start;
+            while (i < end) {
+                final char ch = charAt(s, i);
+                final int i1 = next(s, i);
+                if (ch == '%' && i1 < end) {
+                    final int i2 = next(s, i1);
+                    if (i2 < end) {
+                        final char uc = charAt(s, i1);
+                        final char lc = charAt(s, i2);
+                        final int u = Character.digit(uc, 16);
+                        final int l = Character.digit(lc, 16);
+                        if (u != -1 && l != -1) {
+                            this.octets.append((u << 4) + l);
+                        } else {
+                            flush(dst);
+                            dst.append('%');
+                            dst.append(uc);
+                            dst.append(lc);
+                        }
+                        i = next(s, i2);
+                        continue;
+                    }
+                }
+                flush(dst);
+                dst.append(ch == '+' ? ' ' : ch);
+                i = i1;
+            }
+            flush(dst);
+        }
+
+        private static char charAt(final CharSequence s, final int i) {
+            final char ch = s.charAt(i);
+            return isWhitespace(ch) ? ' ' : ch;
+        }
+
+        private static int next(final CharSequence s, final int i) {
+            int j = i + 1;
+            if (isWhitespace(s.charAt(i))) {
+                while (j < s.length() && isWhitespace(s.charAt(j))) {
+                    j++;
+                }
+            }
+            return j;
+        }
+
+        private void flush(final CharArrayBuffer dst) {
+            final int len = this.octets.length();
+            if (len == 0) {
+                return;
+            }
+            final byte[] b = this.octets.buffer();
+            boolean ascii = true;
+            for (int i = 0; i < len; i++) {
+                if (b[i] < 0) {
+                    ascii = false;
+                    break;
+                }
+            }
+            if (ascii && (this.charset.equals(Consts.UTF_8)
+                    || this.charset.equals(Consts.ISO_8859_1) || this.charset.equals(Consts.ASCII))) {
+                dst.ensureCapacity(len);
+                for (int i = 0; i < len; i++) {
+                    dst.append((char) b[i]);
+                }
+            } else {
+                if (this.charsetDecoder == null) {
+                    this.charsetDecoder = this.charset.newDecoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                }
+                try {
+                    final CharBuffer cb = this.charsetDecoder.reset().decode(ByteBuffer.wrap(b, 0, len));
+                    dst.append(cb.array(), cb.arrayOffset() + cb.position(), cb.remaining());
+                } catch (final CharacterCodingException ex) {
+                    // cannot happen with the REPLACE action
+                    throw new IllegalStateException(ex);
+                }
+            }
+            this.octets.clear();
+        }
+
+    }
+
+}
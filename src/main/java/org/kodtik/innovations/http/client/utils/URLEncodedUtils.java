@@ -50,9 +50,9 @@ import org.kodtik.innovations.http.NameValuePair;
 import org.kodtik.innovations.http.entity.ContentType;
 import org.kodtik.innovations.http.message.BasicNameValuePair;
 import org.kodtik.innovations.http.message.ParserCursor;
-import org.kodtik.innovations.http.message.TokenParser;
 import org.kodtik.innovations.http.protocol.HTTP;
 import org.kodtik.innovations.http.util.Args;
+import org.kodtik.innovations.http.util.ByteArrayBuffer;
 import org.kodtik.innovations.http.util.CharArrayBuffer;
 
 /**
@@ -285,34 +285,15 @@ public class URLEncodedUtils {
     public static List<NameValuePair> parse(
             final CharArrayBuffer buf, final Charset charset, final char... separators) {
         Args.notNull(buf, "Char array buffer");
-        final TokenParser tokenParser = TokenParser.INSTANCE;
-        final BitSet delimSet = new BitSet();
-        for (final char separator: separators) {
-            delimSet.set(separator);
-        }
-        final ParserCursor cursor = new ParserCursor(0, buf.length());
         final List<NameValuePair> list = new ArrayList<NameValuePair>();
-        while (!cursor.atEnd()) {
-            delimSet.set('=');
-            final String name = tokenParser.parseToken(buf, cursor, delimSet);
-            String value = null;
-            if (!cursor.atEnd()) {
-                final int delim = buf.charAt(cursor.getPos());
-                cursor.updatePos(cursor.getPos() + 1);
-                if (delim == '=') {
-                    delimSet.clear('=');
-                    value = tokenParser.parseToken(buf, cursor, delimSet);
-                    if (!cursor.atEnd()) {
-                        cursor.updatePos(cursor.getPos() + 1);
-                    }
-                }
-            }
-            if (!name.isEmpty()) {
-                list.add(new BasicNameValuePair(
-                        decodeFormFields(name, charset),
-                        decodeFormFields(value, charset)));
+        URLEncodedCodec.decode(buf, charset, new URLEncodedCodec.ParameterHandler() {
+
+            @Override
+            public void handle(final CharArrayBuffer name, final CharArrayBuffer value) {
+                list.add(new BasicNameValuePair(name.toString(), value != null ? value.toString() : null));
             }
-        }
+
+        }, separators);
         return list;
     }
 
@@ -437,20 +418,7 @@ public class URLEncodedUtils {
             final List <? extends NameValuePair> parameters,
             final char parameterSeparator,
             final String charset) {
-        final StringBuilder result = new StringBuilder();
-        for (final NameValuePair parameter : parameters) {
-            final String encodedName = encodeFormFields(parameter.getName(), charset);
-            final String encodedValue = encodeFormFields(parameter.getValue(), charset);
-            if (result.length() > 0) {
-                result.append(parameterSeparator);
-            }
-            result.append(encodedName);
-            if (encodedValue != null) {
-                result.append(NAME_VALUE_SEPARATOR);
-                result.append(encodedValue);
-            }
-        }
-        return result.toString();
+        return format(parameters, parameterSeparator, charset != null ? Charset.forName(charset) : Consts.UTF_8);
     }
 
     /**
@@ -485,20 +453,9 @@ public class URLEncodedUtils {
             final char parameterSeparator,
             final Charset charset) {
         Args.notNull(parameters, "Parameters");
-        final StringBuilder result = new StringBuilder();
-        for (final NameValuePair parameter : parameters) {
-            final String encodedName = encodeFormFields(parameter.getName(), charset);
-            final String encodedValue = encodeFormFields(parameter.getValue(), charset);
-            if (result.length() > 0) {
-                result.append(parameterSeparator);
-            }
-            result.append(encodedName);
-            if (encodedValue != null) {
-                result.append(NAME_VALUE_SEPARATOR);
-                result.append(encodedValue);
-            }
-        }
-        return result.toString();
+        final ByteArrayBuffer buffer = new ByteArrayBuffer(64);
+        URLEncodedCodec.encode(parameters, parameterSeparator, charset, buffer);
+        return new String(buffer.buffer(), 0, buffer.length(), Consts.ASCII);
     }
 
     /**
@@ -534,13 +491,6 @@ public class URLEncodedUtils {
      */
     private static final BitSet RESERVED     = new BitSet(256);
 
-
-    /**
-     * Safe characters for x-www-form-urlencoded data, as per java.net.URLEncoder and browser behaviour,
-     * i.e. alphanumeric plus {@code "-", "_", ".", "*"}
-     */
-    private static final BitSet URLENCODER   = new BitSet(256);
-
     private static final BitSet PATH_SPECIAL = new BitSet(256);
 
     static {
@@ -560,7 +510,6 @@ public class URLEncodedUtils {
         UNRESERVED.set('-');
         UNRESERVED.set('.');
         UNRESERVED.set('*');
-        URLENCODER.or(UNRESERVED); // skip remaining unreserved characters
         UNRESERVED.set('!');
         UNRESERVED.set('~');
         UNRESERVED.set('\'');
@@ -697,56 +646,6 @@ public class URLEncodedUtils {
         return urlDecode(content, charset != null ? Charset.forName(charset) : Consts.UTF_8, true);
     }
 
-    /**
-     * Decode/unescape www-url-form-encoded content.
-     *
-     * @param content the content to decode, will decode '+' as space
-     * @param charset the charset to use
-     * @return encoded string
-     */
-    private static String decodeFormFields (final String content, final Charset charset) {
-        if (content == null) {
-            return null;
-        }
-        return urlDecode(content, charset != null ? charset : Consts.UTF_8, true);
-    }
-
-    /**
-     * Encode/escape www-url-form-encoded content.
-     * <p>
-     * Uses the {@link #URLENCODER} set of characters, rather than
-     * the {@link #UNRESERVED} set; this is for compatibilty with previous
-     * releases, URLEncoder.encode() and most browsers.
-     *
-     * @param content the content to encode, will convert space to '+'
-     * @param charset the charset to use
-     * @return encoded string
-     */
-    private static String encodeFormFields(final String content, final String charset) {
-        if (content == null) {
-            return null;
-        }
-        return urlEncode(content, charset != null ? Charset.forName(charset) : Consts.UTF_8, URLENCODER, true);
-    }
-
-    /**
-     * Encode/escape www-url-form-encoded content.
-     * <p>
-     * Uses the {@link #URLENCODER} set of characters, rather than
-     * the {@link #UNRESERVED} set; this is for compatibilty with previous
-     * releases, URLEncoder.encode() and most browsers.
-     *
-     * @param content the content to encode, will convert space to '+'
-     * @param charset the charset to use
-     * @return encoded string
-     */
-    private static String encodeFormFields (final String content, final Charset charset) {
-        if (content == null) {
-            return null;
-        }
-        return urlEncode(content, charset != null ? charset : Consts.UTF_8, URLENCODER, true);
-    }
-
     /**
      * Encode a String using the {@link #USERINFO} set of characters.
      * <p>
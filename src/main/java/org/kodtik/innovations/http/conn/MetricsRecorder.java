@@ -0,0 +1,95 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.conn;
+
+import org.kodtik.innovations.http.conn.routing.HttpRoute;
+
+/**
+ * Receives timing and volume measurements taken on the connection lease,
+ * connection establishment and message exchange paths.
+ * <p>
+ * Methods of this interface are invoked on the request execution threads
+ * and, in case of pool maintenance, on background threads. Implementations
+ * must therefore be thread-safe and should avoid blocking or taking locks,
+ * as they directly add to the latency of every request.
+ * </p>
+ * <p>
+ * All durations are measured with {@link System#nanoTime()} and reported
+ * in nanoseconds.
+ * </p>
+ *
+ * @since 4.5.15
+ */
+public interface MetricsRecorder {
+
+    /**
+     * Records the time spent waiting for a connection lease.
+     *
+     * @param route the route of the leased connection.
+     * @param waitNanos time spent waiting for the pool.
+     * @param reused {@code true} if the leased connection was already open
+     *   and is being re-used, {@code false} if a new connection is to be opened.
+     */
+    void recordLease(HttpRoute route, long waitNanos, boolean reused);
+
+    /**
+     * Records the time spent opening a socket connection to the opposite
+     * endpoint, excluding the TLS handshake.
+     */
+    void recordConnect(HttpRoute route, long connectNanos);
+
+    /**
+     * Records the time spent in the TLS handshake.
+     */
+    void recordHandshake(HttpRoute route, long handshakeNanos);
+
+    /**
+     * Records the completion of a request / response exchange.
+     *
+     * @param route the route of the connection the exchange was executed over.
+     * @param timeToFirstByteNanos time elapsed between the start of the request
+     *   transmission and the receipt of the response head.
+     * @param statusCode the response status code.
+     */
+    void recordResponse(HttpRoute route, long timeToFirstByteNanos, int statusCode);
+
+    /**
+     * Records the number of bytes transferred over a connection while it was
+     * leased.
+     *
+     * @param route the route of the connection.
+     * @param sentBytes number of bytes sent (request heads and bodies).
+     * @param receivedBytes number of bytes received (response heads and bodies).
+     */
+    void recordTransfer(HttpRoute route, long sentBytes, long receivedBytes);
+
+    /**
+     * Records eviction of an idle or expired persistent connection from the pool.
+     */
+    void recordEviction(HttpRoute route);
+
+}
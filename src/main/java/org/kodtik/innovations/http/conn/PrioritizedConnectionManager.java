@@ -0,0 +1,51 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.conn;
+
+import org.kodtik.innovations.http.conn.routing.HttpRoute;
+
+/**
+ * {@link HttpClientConnectionManager} that serves pending connection
+ * requests in the order of their priority when it runs out of connections.
+ *
+ * @since 4.5.15
+ */
+public interface PrioritizedConnectionManager extends HttpClientConnectionManager {
+
+    /**
+     * Returns a new {@link ConnectionRequest} with the given priority. Requests
+     * with a higher priority are given connections first. Default priority is
+     * {@code 0}.
+     *
+     * @param route HTTP route of the requested connection.
+     * @param state expected state of the connection or {@code null}
+     *              if the connection is not expected to carry any state.
+     * @param priority priority of the request.
+     */
+    ConnectionRequest requestConnection(HttpRoute route, Object state, int priority);
+
+}
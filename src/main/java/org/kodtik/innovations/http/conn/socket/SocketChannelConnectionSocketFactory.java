@@ -0,0 +1,64 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.conn.socket;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+import org.kodtik.innovations.http.protocol.HttpContext;
+
+/**
+ * Plain socket factory that creates sockets backed by a {@link SocketChannel}.
+ * <p>
+ * Connections bound to such sockets perform I/O directly on the channel,
+ * using a selector per connection for read timeouts and readiness checks.
+ * This allows for gathering writes of the message head and body and for
+ * detecting connections closed by the opposite endpoint without blocking.
+ * Blocking semantics and timeouts are the same as with regular sockets.
+ * </p>
+ *
+ * @see org.kodtik.innovations.http.impl.io.SocketChannelTransport
+ * @since 4.5.15
+ */
+@Contract(threading = ThreadingBehavior.IMMUTABLE)
+public class SocketChannelConnectionSocketFactory extends PlainConnectionSocketFactory {
+
+    public static final SocketChannelConnectionSocketFactory INSTANCE = new SocketChannelConnectionSocketFactory();
+
+    public SocketChannelConnectionSocketFactory() {
+        super();
+    }
+
+    @Override
+    public Socket createSocket(final HttpContext context) throws IOException {
+        return SocketChannel.open().socket();
+    }
+
+}
@@ -29,6 +29,7 @@ package org.kodtik.innovations.http.conn.ssl;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.security.cert.Certificate;
@@ -44,6 +45,7 @@ import javax.net.SocketFactory;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
@@ -56,6 +58,7 @@ import org.kodtik.innovations.http.annotation.Contract;
 import org.kodtik.innovations.http.annotation.ThreadingBehavior;
 import org.kodtik.innovations.http.conn.socket.LayeredConnectionSocketFactory;
 import org.kodtik.innovations.http.conn.util.PublicSuffixMatcherLoader;
+import org.kodtik.innovations.http.protocol.ExchangeTimings;
 import org.kodtik.innovations.http.protocol.HttpContext;
 import org.kodtik.innovations.http.ssl.SSLContexts;
 import org.kodtik.innovations.http.util.Args;
@@ -144,6 +147,34 @@ public class SSLConnectionSocketFactory implements LayeredConnectionSocketFactor
     public static final String SSL   = "SSL";
     public static final String SSLV2 = "SSLv2";
 
+    /**
+     * Attribute name of a {@link Long} object that represents the duration
+     * in nanoseconds of the last TLS handshake performed by this factory
+     * in the given execution context.
+     *
+     * @since 4.5.15
+     */
+    public static final String HANDSHAKE_TIME = "http.ssl.handshake-time";
+
+    /**
+     * Attribute name of a {@code String[]} object that lists the application
+     * protocols to be offered via ALPN, in order of preference, by TLS
+     * handshakes performed by this factory in the given execution context.
+     *
+     * @since 4.5.15
+     */
+    public static final String APPLICATION_PROTOCOLS = "http.ssl.application-protocols";
+
+    /**
+     * Attribute name of a {@link String} object that represents the application
+     * protocol selected via ALPN during the last TLS handshake performed by this
+     * factory in the given execution context. The attribute is only set if
+     * {@link #APPLICATION_PROTOCOLS} were offered and the JRE supports ALPN.
+     *
+     * @since 4.5.15
+     */
+    public static final String APPLICATION_PROTOCOL = "http.ssl.application-protocol";
+
     /**
      * @deprecated Use {@link AllowAllHostnameVerifier#INSTANCE}.
      */
@@ -170,6 +201,12 @@ public class SSLConnectionSocketFactory implements LayeredConnectionSocketFactor
             + "DSS_EXPORT|DH_DSS_EXPORT|DH_RSA_EXPORT|RSA_EXPORT|KRB5_EXPORT)_(.*)";
     private static final String WEAK_CIPHERS
             = "^(TLS|SSL)_(.*)_WITH_(NULL|DES_CBC|DES40_CBC|DES_CBC_40|3DES_EDE_CBC|RC4_128|RC4_40|RC2_CBC_40)_(.*)";
+    // ALPN is only available as of Java 9 and later Java 8 updates
+    private static final Method SET_APPLICATION_PROTOCOLS = getMethod(
+            SSLParameters.class, "setApplicationProtocols", String[].class);
+    private static final Method GET_APPLICATION_PROTOCOL = getMethod(
+            SSLSocket.class, "getApplicationProtocol");
+
     private static final List<Pattern> WEAK_CIPHER_SUITE_PATTERNS = Collections.unmodifiableList(Arrays.asList(
             Pattern.compile(WEAK_KEY_EXCHANGES, Pattern.CASE_INSENSITIVE),
             Pattern.compile(WEAK_CIPHERS, Pattern.CASE_INSENSITIVE)));
@@ -366,6 +403,7 @@ public class SSLConnectionSocketFactory implements LayeredConnectionSocketFactor
                 this.log.debug("Connecting socket to " + remoteAddress + " with timeout " + connectTimeout);
             }
             sock.connect(remoteAddress, connectTimeout);
+            ExchangeTimings.mark(context, ExchangeTimings.Phase.CONNECTED);
         } catch (final IOException ex) {
             try {
                 sock.close();
@@ -376,8 +414,15 @@ public class SSLConnectionSocketFactory implements LayeredConnectionSocketFactor
         // Setup SSL layering if necessary
         if (sock instanceof SSLSocket) {
             final SSLSocket sslsock = (SSLSocket) sock;
+            final boolean alpn = applyApplicationProtocols(sslsock, context);
             this.log.debug("Starting handshake");
+            ExchangeTimings.mark(context, ExchangeTimings.Phase.HANDSHAKE_START);
+            final long start = System.nanoTime();
             sslsock.startHandshake();
+            recordHandshake(context, start);
+            if (alpn) {
+                recordApplicationProtocol(sslsock, context);
+            }
             verifyHostname(sslsock, host.getHostName());
             return sock;
         }
@@ -432,12 +477,68 @@ public class SSLConnectionSocketFactory implements LayeredConnectionSocketFactor
         }
 
         prepareSocket(sslsock);
+        final boolean alpn = applyApplicationProtocols(sslsock, context);
         this.log.debug("Starting handshake");
+        ExchangeTimings.mark(context, ExchangeTimings.Phase.HANDSHAKE_START);
+        final long start = System.nanoTime();
         sslsock.startHandshake();
+        recordHandshake(context, start);
+        if (alpn) {
+            recordApplicationProtocol(sslsock, context);
+        }
         verifyHostname(sslsock, target);
         return sslsock;
     }
 
+    private static void recordHandshake(final HttpContext context, final long start) {
+        ExchangeTimings.mark(context, ExchangeTimings.Phase.HANDSHAKE_DONE);
+        if (context != null) {
+            context.setAttribute(HANDSHAKE_TIME, Long.valueOf(System.nanoTime() - start));
+        }
+    }
+
+    private static Method getMethod(final Class<?> clazz, final String name, final Class<?>... parameterTypes) {
+        try {
+            return clazz.getMethod(name, parameterTypes);
+        } catch (final NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    private boolean applyApplicationProtocols(final SSLSocket sslsock, final HttpContext context) {
+        final Object protocols = context != null ? context.getAttribute(APPLICATION_PROTOCOLS) : null;
+        if (!(protocols instanceof String[])) {
+            return false;
+        }
+        if (SET_APPLICATION_PROTOCOLS == null || GET_APPLICATION_PROTOCOL == null) {
+            this.log.debug("ALPN is not supported by the JRE");
+            return false;
+        }
+        final SSLParameters sslParameters = sslsock.getSSLParameters();
+        try {
+            SET_APPLICATION_PROTOCOLS.invoke(sslParameters, protocols);
+        } catch (final Exception ex) {
+            this.log.debug("Unable to set ALPN protocols", ex);
+            return false;
+        }
+        sslsock.setSSLParameters(sslParameters);
+        return true;
+    }
+
+    private void recordApplicationProtocol(final SSLSocket sslsock, final HttpContext context) {
+        try {
+            final String protocol = (String) GET_APPLICATION_PROTOCOL.invoke(sslsock);
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("ALPN protocol: " + protocol);
+            }
+            if (protocol != null && !protocol.isEmpty()) {
+                context.setAttribute(APPLICATION_PROTOCOL, protocol);
+            }
+        } catch (final Exception ex) {
+            this.log.debug("Unable to obtain ALPN protocol", ex);
+        }
+    }
+
     private void verifyHostname(final SSLSocket sslsock, final String hostname) throws IOException {
         try {
             SSLSession session = sslsock.getSession();
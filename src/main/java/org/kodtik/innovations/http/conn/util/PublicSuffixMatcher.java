@@ -26,11 +26,9 @@
  */
 package org.kodtik.innovations.http.conn.util;
 
-import java.net.IDN;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.kodtik.innovations.http.annotation.Contract;
 import org.kodtik.innovations.http.annotation.ThreadingBehavior;
@@ -49,8 +47,7 @@ import org.kodtik.innovations.http.util.Args;
 @Contract(threading = ThreadingBehavior.SAFE)
 public final class PublicSuffixMatcher {
 
-    private final Map<String, DomainType> rules;
-    private final Map<String, DomainType> exceptions;
+    private final PublicSuffixTrie trie;
 
     public PublicSuffixMatcher(final Collection<String> rules, final Collection<String> exceptions) {
         this(DomainType.UNKNOWN, rules, exceptions);
@@ -63,16 +60,9 @@ public final class PublicSuffixMatcher {
             final DomainType domainType, final Collection<String> rules, final Collection<String> exceptions) {
         Args.notNull(domainType,  "Domain type");
         Args.notNull(rules,  "Domain suffix rules");
-        this.rules = new ConcurrentHashMap<String, DomainType>(rules.size());
-        for (final String rule: rules) {
-            this.rules.put(rule, domainType);
-        }
-        this.exceptions = new ConcurrentHashMap<String, DomainType>();
-        if (exceptions != null) {
-            for (final String exception: exceptions) {
-                this.exceptions.put(exception, domainType);
-            }
-        }
+        this.trie = new PublicSuffixTrie.Builder()
+                .add(domainType, toList(rules), exceptions != null ? toList(exceptions) : null)
+                .build();
     }
 
     /**
@@ -80,28 +70,23 @@ public final class PublicSuffixMatcher {
      */
     public PublicSuffixMatcher(final Collection<PublicSuffixList> lists) {
         Args.notNull(lists,  "Domain suffix lists");
-        this.rules = new ConcurrentHashMap<String, DomainType>();
-        this.exceptions = new ConcurrentHashMap<String, DomainType>();
+        final PublicSuffixTrie.Builder builder = new PublicSuffixTrie.Builder();
         for (final PublicSuffixList list: lists) {
-            final DomainType domainType = list.getType();
-            final List<String> rules = list.getRules();
-            for (final String rule: rules) {
-                this.rules.put(rule, domainType);
-            }
-            final List<String> exceptions = list.getExceptions();
-            if (exceptions != null) {
-                for (final String exception: exceptions) {
-                    this.exceptions.put(exception, domainType);
-                }
-            }
+            builder.add(list.getType(), list.getRules(), list.getExceptions());
         }
+        this.trie = builder.build();
     }
 
-    private static DomainType findEntry(final Map<String, DomainType> map, final String rule) {
-        if (map == null) {
-            return null;
-        }
-        return map.get(rule);
+    PublicSuffixMatcher(final PublicSuffixTrie trie) {
+        this.trie = trie;
+    }
+
+    private static List<String> toList(final Collection<String> c) {
+        return c instanceof List ? (List<String>) c : new ArrayList<String>(c);
+    }
+
+    PublicSuffixTrie getTrie() {
+        return this.trie;
     }
 
     private static boolean match(final DomainType domainType, final DomainType expectedType) {
@@ -137,42 +122,48 @@ public final class PublicSuffixMatcher {
             return null;
         }
         final String normalized = DnsUtils.normalize(domain);
-        String segment = normalized;
-        String result = null;
-        while (segment != null) {
-            // An exception rule takes priority over any other matching rule.
-            final String key = IDN.toUnicode(segment);
-            final DomainType exceptionRule = findEntry(exceptions, key);
-            if (match(exceptionRule, expectedType)) {
-                return segment;
+        // Walk labels right to left. The longest matching suffix decides:
+        // the start of the matching suffix and whether the domain root is
+        // that suffix itself or the suffix one label longer.
+        int matchStart = -1;
+        boolean matchItself = false;
+        int node = PublicSuffixTrie.ROOT;
+        int labelEnd = normalized.length();
+        for (;;) {
+            final int dot = labelEnd > 0 ? normalized.lastIndexOf('.', labelEnd - 1) : -1;
+            final int labelStart = dot + 1;
+            final int child = this.trie.findChild(node, normalized, labelStart, labelEnd);
+            final int wildcard = node != PublicSuffixTrie.ROOT ? this.trie.findChild(node, "*", 0, 1) : -1;
+            if (child != -1 && match(this.trie.getException(child), expectedType)) {
+                // An exception rule takes priority over any other matching rule.
+                matchStart = labelStart;
+                matchItself = true;
+            } else if (child != -1 && match(this.trie.getRule(child), expectedType)) {
+                matchStart = labelStart;
+                matchItself = this.trie.getRule(child) == DomainType.PRIVATE;
+            } else if (wildcard != -1 && match(this.trie.getRule(wildcard), expectedType)) {
+                matchStart = labelStart;
+                matchItself = this.trie.getRule(wildcard) == DomainType.PRIVATE;
             }
-            final DomainType domainRule = findEntry(rules, key);
-            if (match(domainRule, expectedType)) {
-                if (domainRule == DomainType.PRIVATE) {
-                    return segment;
-                }
-                return result;
+            if (child == -1 || dot == -1) {
+                break;
             }
-
-            final int nextdot = segment.indexOf('.');
-            final String nextSegment = nextdot != -1 ? segment.substring(nextdot + 1) : null;
-
-            if (nextSegment != null) {
-                final DomainType wildcardDomainRule = findEntry(rules, "*." + IDN.toUnicode(nextSegment));
-                if (match(wildcardDomainRule, expectedType)) {
-                    if (wildcardDomainRule == DomainType.PRIVATE) {
-                        return segment;
-                    }
-                    return result;
-                }
+            node = child;
+            labelEnd = dot;
+        }
+        if (matchStart != -1) {
+            if (matchItself) {
+                return normalized.substring(matchStart);
+            }
+            if (matchStart == 0) {
+                return null;
             }
-            result = segment;
-            segment = nextSegment;
+            return normalized.substring(normalized.lastIndexOf('.', matchStart - 2) + 1);
         }
 
-        // If no expectations then this result is good.
+        // If no expectations then the top level label is good.
         if (expectedType == null || expectedType == DomainType.UNKNOWN) {
-            return result;
+            return normalized.substring(normalized.lastIndexOf('.') + 1);
         }
 
         // If we did have expectations apparently there was no match
@@ -26,12 +26,18 @@
  */
 package org.kodtik.innovations.http.conn.util;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.List;
 
@@ -41,21 +47,50 @@ import org.kodtik.innovations.http.Consts;
 import org.kodtik.innovations.http.annotation.Contract;
 import org.kodtik.innovations.http.annotation.ThreadingBehavior;
 import org.kodtik.innovations.http.util.Args;
+import org.kodtik.innovations.http.util.ByteArrayBuffer;
 
 /**
  * {@link org.kodtik.innovations.http.conn.util.PublicSuffixMatcher} loader.
+ * <p>
+ * Lists can be loaded from their text form as published by
+ * <a href="http://publicsuffix.org/">publicsuffix.org</a> or from the compact
+ * binary form produced by {@link #compile(InputStream, OutputStream)}, which
+ * loads without parsing. The form is detected from the content.
+ * </p>
  *
  * @since 4.4
  */
 @Contract(threading = ThreadingBehavior.SAFE)
 public final class PublicSuffixMatcherLoader {
 
-    private static PublicSuffixMatcher load(final InputStream in) throws IOException {
+    private static PublicSuffixMatcher load(final ByteBuffer content) throws IOException {
+        if (PublicSuffixTrie.isCompiled(content)) {
+            return new PublicSuffixMatcher(PublicSuffixTrie.read(content));
+        }
+        final InputStream in;
+        if (content.hasArray()) {
+            in = new ByteArrayInputStream(
+                    content.array(), content.arrayOffset() + content.position(), content.remaining());
+        } else {
+            final byte[] b = new byte[content.remaining()];
+            content.get(b);
+            in = new ByteArrayInputStream(b);
+        }
         final List<PublicSuffixList> lists = new PublicSuffixListParser().parseByType(
                 new InputStreamReader(in, Consts.UTF_8));
         return new PublicSuffixMatcher(lists);
     }
 
+    private static PublicSuffixMatcher load(final InputStream in) throws IOException {
+        final ByteArrayBuffer buffer = new ByteArrayBuffer(64 * 1024);
+        final byte[] tmp = new byte[8 * 1024];
+        int l;
+        while ((l = in.read(tmp)) != -1) {
+            buffer.append(tmp, 0, l);
+        }
+        return load(ByteBuffer.wrap(buffer.buffer(), 0, buffer.length()).slice());
+    }
+
     public static PublicSuffixMatcher load(final URL url) throws IOException {
         Args.notNull(url, "URL");
         final InputStream in = url.openStream();
@@ -68,9 +103,51 @@ public final class PublicSuffixMatcherLoader {
 
     public static PublicSuffixMatcher load(final File file) throws IOException {
         Args.notNull(file, "File");
-        final InputStream in = new FileInputStream(file);
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
         try {
-            return load(in);
+            final FileChannel channel = raf.getChannel();
+            return load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Compiles a public suffix list in its text form into the binary form.
+     *
+     * @param in the text form of the list. The caller is responsible for closing the stream.
+     * @param out the output stream for the binary form. The caller is responsible
+     *   for closing the stream.
+     *
+     * @since 4.5.15
+     */
+    public static void compile(final InputStream in, final OutputStream out) throws IOException {
+        Args.notNull(in, "Input stream");
+        Args.notNull(out, "Output stream");
+        load(in).getTrie().writeTo(out);
+    }
+
+    /**
+     * Compiles the public suffix list given by the first argument into the binary
+     * form written to the file given by the second argument. Used at build time.
+     *
+     * @since 4.5.15
+     */
+    public static void main(final String[] args) throws IOException {
+        Args.check(args.length == 2, "Usage: PublicSuffixMatcherLoader <list file> <output file>");
+        final File target = new File(args[1]);
+        final File dir = target.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+        final InputStream in = new FileInputStream(args[0]);
+        try {
+            final OutputStream out = new FileOutputStream(target);
+            try {
+                compile(in, out);
+            } finally {
+                out.close();
+            }
         } finally {
             in.close();
         }
@@ -82,8 +159,12 @@ public final class PublicSuffixMatcherLoader {
         if (DEFAULT_INSTANCE == null) {
             synchronized (PublicSuffixMatcherLoader.class) {
                 if (DEFAULT_INSTANCE == null){
-                    final URL url = PublicSuffixMatcherLoader.class.getResource(
-                            "/mozilla/public-suffix-list.txt");
+                    URL url = PublicSuffixMatcherLoader.class.getResource(
+                            "/mozilla/public-suffix-list.bin");
+                    if (url == null) {
+                        url = PublicSuffixMatcherLoader.class.getResource(
+                                "/mozilla/public-suffix-list.txt");
+                    }
                     if (url != null) {
                         try {
                             DEFAULT_INSTANCE = load(url);
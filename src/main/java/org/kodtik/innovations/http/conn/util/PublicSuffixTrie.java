@@ -0,0 +1,365 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.conn.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.IDN;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+
+/**
+ * Immutable trie of public suffix rules keyed by domain labels in reverse
+ * order, from the top level domain down.
+ * <p>
+ * Nodes and edges are held in flat arrays, edge labels in a single shared
+ * character array, so that the trie can be written to and read back from
+ * its binary form with bulk copies and can be searched without creating
+ * intermediate strings. Rule labels in their Unicode form are also reachable
+ * through their ASCII compatible (punycode) form.
+ * </p>
+ *
+ * @since 4.5.15
+ */
+@Contract(threading = ThreadingBehavior.IMMUTABLE)
+final class PublicSuffixTrie {
+
+    static final int MAGIC = 0x50534c54; // PSLT
+    static final int VERSION = 1;
+
+    static final int ROOT = 0;
+
+    private static final DomainType[] TYPES = DomainType.values();
+
+    private final int[] nodeFirstEdge;
+    private final byte[] nodeRule;
+    private final byte[] nodeException;
+    private final int[] edgeLabelOffset;
+    private final int[] edgeLabelLength;
+    private final int[] edgeTarget;
+    private final char[] labels;
+
+    private PublicSuffixTrie(
+            final int[] nodeFirstEdge,
+            final byte[] nodeRule,
+            final byte[] nodeException,
+            final int[] edgeLabelOffset,
+            final int[] edgeLabelLength,
+            final int[] edgeTarget,
+            final char[] labels) {
+        this.nodeFirstEdge = nodeFirstEdge;
+        this.nodeRule = nodeRule;
+        this.nodeException = nodeException;
+        this.edgeLabelOffset = edgeLabelOffset;
+        this.edgeLabelLength = edgeLabelLength;
+        this.edgeTarget = edgeTarget;
+        this.labels = labels;
+    }
+
+    /**
+     * Returns the child of the given node reached through the label
+     * given by the region {@code [from, to)} of the sequence or {@code -1}
+     * if there is none.
+     */
+    int findChild(final int node, final CharSequence s, final int from, final int to) {
+        int low = this.nodeFirstEdge[node];
+        int high = this.nodeFirstEdge[node + 1] - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = compare(mid, s, from, to);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return this.edgeTarget[mid];
+            }
+        }
+        return -1;
+    }
+
+    private int compare(final int edge, final CharSequence s, final int from, final int to) {
+        final int offset = this.edgeLabelOffset[edge];
+        final int len1 = this.edgeLabelLength[edge];
+        final int len2 = to - from;
+        final int n = Math.min(len1, len2);
+        for (int i = 0; i < n; i++) {
+            final char c1 = this.labels[offset + i];
+            final char c2 = s.charAt(from + i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return len1 - len2;
+    }
+
+    /**
+     * Returns the type of the rule ending at the given node or {@code null}.
+     */
+    DomainType getRule(final int node) {
+        final int b = this.nodeRule[node];
+        return b > 0 ? TYPES[b - 1] : null;
+    }
+
+    /**
+     * Returns the type of the exception rule ending at the given node or {@code null}.
+     */
+    DomainType getException(final int node) {
+        final int b = this.nodeException[node];
+        return b > 0 ? TYPES[b - 1] : null;
+    }
+
+    int getNodeCount() {
+        return this.nodeRule.length;
+    }
+
+    /**
+     * Writes the binary form of this trie.
+     */
+    void writeTo(final OutputStream outStream) throws IOException {
+        final DataOutputStream out = new DataOutputStream(outStream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(this.nodeRule.length);
+        out.writeInt(this.edgeTarget.length);
+        out.writeInt(this.labels.length);
+        for (final int i : this.nodeFirstEdge) {
+            out.writeInt(i);
+        }
+        out.write(this.nodeRule);
+        out.write(this.nodeException);
+        for (final int i : this.edgeLabelOffset) {
+            out.writeInt(i);
+        }
+        for (final int i : this.edgeLabelLength) {
+            out.writeInt(i);
+        }
+        for (final int i : this.edgeTarget) {
+            out.writeInt(i);
+        }
+        for (final char ch : this.labels) {
+            out.writeChar(ch);
+        }
+        out.flush();
+    }
+
+    /**
+     * Tests whether the given content starts with the binary form signature.
+     */
+    static boolean isCompiled(final ByteBuffer buffer) {
+        return buffer.remaining() >= 4 && buffer.getInt(buffer.position()) == MAGIC;
+    }
+
+    /**
+     * Reads the binary form of a trie from the given buffer.
+     */
+    static PublicSuffixTrie read(final ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a compiled public suffix list");
+            }
+            final int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported compiled public suffix list version: " + version);
+            }
+            final int nodeCount = buffer.getInt();
+            final int edgeCount = buffer.getInt();
+            final int labelCount = buffer.getInt();
+            if (nodeCount < 1 || edgeCount < 0 || labelCount < 0) {
+                throw new IOException("Corrupt compiled public suffix list");
+            }
+            final int[] nodeFirstEdge = new int[nodeCount + 1];
+            buffer.asIntBuffer().get(nodeFirstEdge);
+            buffer.position(buffer.position() + nodeFirstEdge.length * 4);
+            final byte[] nodeRule = new byte[nodeCount];
+            buffer.get(nodeRule);
+            final byte[] nodeException = new byte[nodeCount];
+            buffer.get(nodeException);
+            final int[] edgeLabelOffset = new int[edgeCount];
+            buffer.asIntBuffer().get(edgeLabelOffset);
+            buffer.position(buffer.position() + edgeCount * 4);
+            final int[] edgeLabelLength = new int[edgeCount];
+            buffer.asIntBuffer().get(edgeLabelLength);
+            buffer.position(buffer.position() + edgeCount * 4);
+            final int[] edgeTarget = new int[edgeCount];
+            buffer.asIntBuffer().get(edgeTarget);
+            buffer.position(buffer.position() + edgeCount * 4);
+            final char[] labels = new char[labelCount];
+            buffer.asCharBuffer().get(labels);
+            buffer.position(buffer.position() + labelCount * 2);
+            for (int i = 0; i < nodeCount; i++) {
+                if (nodeFirstEdge[i] < 0 || nodeFirstEdge[i] > nodeFirstEdge[i + 1]
+                        || nodeRule[i] < 0 || nodeRule[i] > TYPES.length
+                        || nodeException[i] < 0 || nodeException[i] > TYPES.length) {
+                    throw new IOException("Corrupt compiled public suffix list");
+                }
+            }
+            if (nodeFirstEdge[nodeCount] != edgeCount) {
+                throw new IOException("Corrupt compiled public suffix list");
+            }
+            for (int i = 0; i < edgeCount; i++) {
+                if (edgeTarget[i] <= 0 || edgeTarget[i] >= nodeCount
+                        || edgeLabelOffset[i] < 0 || edgeLabelLength[i] < 0
+                        || edgeLabelOffset[i] + edgeLabelLength[i] > labelCount) {
+                    throw new IOException("Corrupt compiled public suffix list");
+                }
+            }
+            return new PublicSuffixTrie(
+                    nodeFirstEdge, nodeRule, nodeException, edgeLabelOffset, edgeLabelLength, edgeTarget, labels);
+        } catch (final BufferUnderflowException ex) {
+            throw new IOException("Truncated compiled public suffix list");
+        }
+    }
+
+    static class Builder {
+
+        static class Node {
+
+            final Map<String, Node> children = new TreeMap<String, Node>();
+            byte rule;
+            byte exception;
+
+        }
+
+        private final Node root = new Node();
+
+        Builder add(final DomainType domainType, final List<String> rules, final List<String> exceptions) {
+            if (rules != null) {
+                for (final String rule : rules) {
+                    insert(rule).rule = (byte) (domainType.ordinal() + 1);
+                }
+            }
+            if (exceptions != null) {
+                for (final String exception : exceptions) {
+                    insert(exception).exception = (byte) (domainType.ordinal() + 1);
+                }
+            }
+            return this;
+        }
+
+        private Node insert(final String name) {
+            Node node = this.root;
+            int end = name.length();
+            for (;;) {
+                final int dot = name.lastIndexOf('.', end - 1);
+                final String label = name.substring(dot + 1, end);
+                Node child = node.children.get(label);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(label, child);
+                    final String ascii = toASCII(label);
+                    if (ascii != null && !ascii.equals(label) && !node.children.containsKey(ascii)) {
+                        node.children.put(ascii, child);
+                    }
+                }
+                node = child;
+                if (dot < 0) {
+                    return node;
+                }
+                end = dot;
+            }
+        }
+
+        private static String toASCII(final String label) {
+            for (int i = 0; i < label.length(); i++) {
+                if (label.charAt(i) >= 0x80) {
+                    try {
+                        return IDN.toASCII(label);
+                    } catch (final IllegalArgumentException ex) {
+                        return null;
+                    }
+                }
+            }
+            return null;
+        }
+
+        PublicSuffixTrie build() {
+            // Lay out nodes breadth first; nodes reachable through several
+            // labels are laid out once
+            final List<Node> nodes = new ArrayList<Node>();
+            final Map<Node, Integer> index = new IdentityHashMap<Node, Integer>();
+            nodes.add(this.root);
+            index.put(this.root, Integer.valueOf(0));
+            int edgeCount = 0;
+            for (int i = 0; i < nodes.size(); i++) {
+                for (final Node child : nodes.get(i).children.values()) {
+                    edgeCount++;
+                    if (!index.containsKey(child)) {
+                        index.put(child, Integer.valueOf(nodes.size()));
+                        nodes.add(child);
+                    }
+                }
+            }
+            final int nodeCount = nodes.size();
+            final int[] nodeFirstEdge = new int[nodeCount + 1];
+            final byte[] nodeRule = new byte[nodeCount];
+            final byte[] nodeException = new byte[nodeCount];
+            final int[] edgeLabelOffset = new int[edgeCount];
+            final int[] edgeLabelLength = new int[edgeCount];
+            final int[] edgeTarget = new int[edgeCount];
+            final StringBuilder labels = new StringBuilder();
+            final Map<String, Integer> labelOffsets = new HashMap<String, Integer>();
+            int edge = 0;
+            for (int i = 0; i < nodeCount; i++) {
+                final Node node = nodes.get(i);
+                nodeFirstEdge[i] = edge;
+                nodeRule[i] = node.rule;
+                nodeException[i] = node.exception;
+                for (final Map.Entry<String, Node> entry : node.children.entrySet()) {
+                    final String label = entry.getKey();
+                    Integer offset = labelOffsets.get(label);
+                    if (offset == null) {
+                        offset = Integer.valueOf(labels.length());
+                        labels.append(label);
+                        labelOffsets.put(label, offset);
+                    }
+                    edgeLabelOffset[edge] = offset.intValue();
+                    edgeLabelLength[edge] = label.length();
+                    edgeTarget[edge] = index.get(entry.getValue()).intValue();
+                    edge++;
+                }
+            }
+            nodeFirstEdge[nodeCount] = edge;
+            final char[] chars = new char[labels.length()];
+            labels.getChars(0, chars.length, chars, 0);
+            return new PublicSuffixTrie(
+                    nodeFirstEdge, nodeRule, nodeException, edgeLabelOffset, edgeLabelLength, edgeTarget, chars);
+        }
+
+    }
+
+}
@@ -32,9 +32,11 @@ import java.security.MessageDigest;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Formatter;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 
@@ -48,6 +50,7 @@ import org.kodtik.innovations.http.auth.AuthenticationException;
 import org.kodtik.innovations.http.auth.ChallengeState;
 import org.kodtik.innovations.http.auth.Credentials;
 import org.kodtik.innovations.http.auth.MalformedChallengeException;
+import org.kodtik.innovations.http.client.entity.DigestingEntity;
 import org.kodtik.innovations.http.message.BasicHeaderValueFormatter;
 import org.kodtik.innovations.http.message.BasicNameValuePair;
 import org.kodtik.innovations.http.message.BufferedHeader;
@@ -60,9 +63,10 @@ import org.kodtik.innovations.http.util.EncodingUtils;
 /**
  * Digest authentication scheme as defined in RFC 2617.
  * Both MD5 (default) and MD5-sess are supported.
- * Currently only qop=auth or no qop is supported. qop=auth-int
- * is unsupported. If auth and auth-int are provided, auth is
- * used.
+ * qop=auth-int is used for requests enclosing a repeatable entity
+ * if offered by the server. The entity digest is computed with an
+ * additional pass over the content unless the entity is a
+ * {@link DigestingEntity} that has already been written out once.
  * <p>
  * Since the digest username is included as clear text in the generated
  * Authentication header, the charset of the username must be compatible
@@ -94,6 +98,25 @@ public class DigestScheme extends RFC2617Scheme {
     private static final int QOP_AUTH_INT = 1;
     private static final int QOP_AUTH = 2;
 
+    private static final ThreadLocal<Map<String, MessageDigest>> DIGESTERS =
+            new ThreadLocal<Map<String, MessageDigest>>() {
+
+        @Override
+        protected Map<String, MessageDigest> initialValue() {
+            return new HashMap<String, MessageDigest>();
+        }
+
+    };
+
+    private static final ThreadLocal<SecureRandom> RANDOMS = new ThreadLocal<SecureRandom>() {
+
+        @Override
+        protected SecureRandom initialValue() {
+            return new SecureRandom();
+        }
+
+    };
+
     private String lastNonce;
     private long nounceCount;
     private String cnonce;
@@ -228,15 +251,28 @@ public class DigestScheme extends RFC2617Scheme {
         return createDigestHeader(credentials, request);
     }
 
+    /**
+     * Returns a message digest of the given algorithm owned by the calling
+     * thread. Instances are reset and re-used across invocations.
+     */
     private static MessageDigest createMessageDigest(
             final String digAlg) throws UnsupportedDigestAlgorithmException {
+        final String key = digAlg.toUpperCase(Locale.ROOT);
+        final Map<String, MessageDigest> digesters = DIGESTERS.get();
+        MessageDigest digester = digesters.get(key);
+        if (digester != null) {
+            digester.reset();
+            return digester;
+        }
         try {
-            return MessageDigest.getInstance(digAlg);
+            digester = MessageDigest.getInstance(digAlg);
         } catch (final Exception e) {
             throw new UnsupportedDigestAlgorithmException(
               "Unsupported algorithm in HTTP Digest authentication: "
                + digAlg);
         }
+        digesters.put(key, digester);
+        return digester;
     }
 
     /**
@@ -362,16 +398,24 @@ public class DigestScheme extends RFC2617Scheme {
                             "a non-repeatable entity");
                 }
             } else {
-                final HttpEntityDigester entityDigester = new HttpEntityDigester(digester);
-                try {
-                    if (entity != null) {
-                        entity.writeTo(entityDigester);
+                byte[] entityDigest = null;
+                if (entity instanceof DigestingEntity) {
+                    // Digest computed while the content was sent with a previous attempt
+                    entityDigest = ((DigestingEntity) entity).getDigest(digAlg);
+                }
+                if (entityDigest == null) {
+                    final HttpEntityDigester entityDigester = new HttpEntityDigester(digester);
+                    try {
+                        if (entity != null) {
+                            entity.writeTo(entityDigester);
+                        }
+                        entityDigester.close();
+                    } catch (final IOException ex) {
+                        throw new AuthenticationException("I/O error reading entity content", ex);
                     }
-                    entityDigester.close();
-                } catch (final IOException ex) {
-                    throw new AuthenticationException("I/O error reading entity content", ex);
+                    entityDigest = entityDigester.getDigest();
                 }
-                a2 = method + ':' + uri + ':' + encode(entityDigester.getDigest());
+                a2 = method + ':' + uri + ':' + encode(entityDigest);
             }
         } else {
             a2 = method + ':' + uri;
@@ -469,12 +513,13 @@ public class DigestScheme extends RFC2617Scheme {
 
 
     /**
-     * Creates a random cnonce value based on the current time.
+     * Creates a random cnonce value using a secure random generator owned
+     * by the calling thread.
      *
      * @return The cnonce value as String.
      */
     public static String createCnonce() {
-        final SecureRandom rnd = new SecureRandom();
+        final SecureRandom rnd = RANDOMS.get();
         final byte[] tmp = new byte[8];
         rnd.nextBytes(tmp);
         return encode(tmp);
@@ -71,6 +71,7 @@ public abstract class GGSSchemeBase extends AuthSchemeBase {
     private final Base64 base64codec;
     private final boolean stripPort;
     private final boolean useCanonicalHostname;
+    private final GSSSecurityCache securityCache;
 
     /** Authentication process state */
     private State state;
@@ -78,14 +79,22 @@ public abstract class GGSSchemeBase extends AuthSchemeBase {
     /** base64 decoded challenge **/
     private byte[] token;
 
-    GGSSchemeBase(final boolean stripPort, final boolean useCanonicalHostname) {
+    GGSSchemeBase(
+            final boolean stripPort,
+            final boolean useCanonicalHostname,
+            final GSSSecurityCache securityCache) {
         super();
         this.base64codec = new Base64(0);
         this.stripPort = stripPort;
         this.useCanonicalHostname = useCanonicalHostname;
+        this.securityCache = securityCache;
         this.state = State.UNINITIATED;
     }
 
+    GGSSchemeBase(final boolean stripPort, final boolean useCanonicalHostname) {
+        this(stripPort, useCanonicalHostname, null);
+    }
+
     GGSSchemeBase(final boolean stripPort) {
         this(stripPort, true);
     }
@@ -110,19 +119,29 @@ public abstract class GGSSchemeBase extends AuthSchemeBase {
             final byte[] input, final Oid oid, final String authServer,
             final Credentials credentials) throws GSSException {
         final GSSManager manager = getManager();
-        final GSSName serverName = manager.createName("HTTP@" + authServer, GSSName.NT_HOSTBASED_SERVICE);
+        final GSSName serverName = this.securityCache != null
+                ? this.securityCache.getServiceName(manager, authServer, oid)
+                : manager.createName("HTTP@" + authServer, GSSName.NT_HOSTBASED_SERVICE);
 
-        final GSSCredential gssCredential;
+        GSSCredential gssCredential;
         if (credentials instanceof KerberosCredentials) {
             gssCredential = ((KerberosCredentials) credentials).getGSSCredential();
         } else {
             gssCredential = null;
         }
+        if (gssCredential == null && this.securityCache != null) {
+            gssCredential = this.securityCache.getDefaultCredential(manager, oid);
+        }
 
+        final long start = System.nanoTime();
         final GSSContext gssContext = createGSSContext(manager, oid, serverName, gssCredential);
-        return input != null
+        final byte[] token = input != null
                         ? gssContext.initSecContext(input, 0, input.length)
                         : gssContext.initSecContext(new byte[] {}, 0, 0);
+        if (this.securityCache != null) {
+            this.securityCache.recordContextCreation(System.nanoTime() - start);
+        }
+        return token;
     }
 
     GSSContext createGSSContext(
@@ -205,7 +224,9 @@ public abstract class GGSSchemeBase extends AuthSchemeBase {
                          //TODO: as soon canonical hostname resolving is implemented in the SystemDefaultDnsResolver
                          //final DnsResolver dnsResolver = SystemDefaultDnsResolver.INSTANCE;
                          //hostname = dnsResolver.resolveCanonicalHostname(host.getHostName());
-                         hostname = resolveCanonicalHostname(hostname);
+                         hostname = this.securityCache != null
+                                 ? this.securityCache.getCanonicalHostname(hostname)
+                                 : resolveCanonicalHostname(hostname);
                     } catch (final UnknownHostException ignore){
                     }
                 }
@@ -273,7 +294,7 @@ public abstract class GGSSchemeBase extends AuthSchemeBase {
         }
     }
 
-    private String resolveCanonicalHostname(final String host) throws UnknownHostException {
+    static String resolveCanonicalHostname(final String host) throws UnknownHostException {
         final InetAddress in = InetAddress.getByName(host);
         final String canonicalServer = in.getCanonicalHostName();
         if (in.getHostAddress().contentEquals(canonicalServer)) {
@@ -0,0 +1,246 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.auth;
+
+import java.net.UnknownHostException;
+import java.security.AccessController;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.security.auth.Subject;
+
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+import org.kodtik.innovations.http.impl.conn.LatencyHistogram;
+import org.kodtik.innovations.http.util.Args;
+import org.ietf.jgss.GSSCredential;
+import org.ietf.jgss.GSSException;
+import org.ietf.jgss.GSSManager;
+import org.ietf.jgss.GSSName;
+import org.ietf.jgss.Oid;
+
+/**
+ * Cache of the expensive, reusable parts of GSS-API authentication shared
+ * by {@link GGSSchemeBase} instances across connections.
+ * <p>
+ * The following are retained:
+ * </p>
+ * <ul>
+ * <li>canonical host names of authentication servers, which otherwise
+ * cost a DNS round trip per challenge;</li>
+ * <li>service principal names canonicalized for a mechanism, which
+ * may also involve DNS lookups;</li>
+ * <li>default initiator credentials of the process, for as long as their
+ * remaining lifetime exceeds a safety margin. Service tickets obtained
+ * with a credential are retained by the mechanism along with it, so
+ * keeping the credential saves ticket acquisition for subsequent
+ * connections to the same service.</li>
+ * </ul>
+ * <p>
+ * Security tokens themselves are never cached as Kerberos authenticators
+ * are single use and get rejected by the replay cache of the server.
+ * Default credentials are not cached if the calling thread runs on behalf
+ * of a JAAS {@link Subject}, as the mechanism already keeps credentials
+ * and service tickets in the subject in this case.
+ * </p>
+ *
+ * @since 4.5.15
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public class GSSSecurityCache {
+
+    public static final long DEFAULT_NAME_TTL = TimeUnit.MINUTES.toMillis(5);
+    public static final long DEFAULT_MIN_CREDENTIAL_LIFETIME = TimeUnit.MINUTES.toMillis(1);
+
+    private static final int MAX_ENTRIES = 1024;
+
+    private final long nameTtlNanos;
+    private final int minCredentialLifetimeSecs;
+    private final ConcurrentHashMap<String, Entry<String>> hostnames;
+    private final ConcurrentHashMap<String, Entry<GSSName>> names;
+    private final ConcurrentHashMap<Oid, Entry<GSSCredential>> credentials;
+    private final LatencyHistogram contextCreationTime;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    /**
+     * @param nameTtl how long canonical host names and service names are
+     *   retained.
+     * @param minCredentialLifetime minimum remaining lifetime of a cached
+     *   credential. Credentials closer to their expiry are re-acquired.
+     * @param timeUnit the time unit of both durations.
+     */
+    public GSSSecurityCache(final long nameTtl, final long minCredentialLifetime, final TimeUnit timeUnit) {
+        super();
+        Args.notNegative(nameTtl, "Name TTL");
+        Args.notNegative(minCredentialLifetime, "Minimum credential lifetime");
+        Args.notNull(timeUnit, "Time unit");
+        this.nameTtlNanos = timeUnit.toNanos(nameTtl);
+        this.minCredentialLifetimeSecs = (int) Math.min(Integer.MAX_VALUE, timeUnit.toSeconds(minCredentialLifetime));
+        this.hostnames = new ConcurrentHashMap<String, Entry<String>>();
+        this.names = new ConcurrentHashMap<String, Entry<GSSName>>();
+        this.credentials = new ConcurrentHashMap<Oid, Entry<GSSCredential>>();
+        this.contextCreationTime = new LatencyHistogram();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    public GSSSecurityCache() {
+        this(DEFAULT_NAME_TTL, DEFAULT_MIN_CREDENTIAL_LIFETIME, TimeUnit.MILLISECONDS);
+    }
+
+    String getCanonicalHostname(final String hostname) throws UnknownHostException {
+        final long now = System.nanoTime();
+        final Entry<String> entry = this.hostnames.get(hostname);
+        if (entry != null && entry.isValid(now)) {
+            this.hits.incrementAndGet();
+            return entry.value;
+        }
+        this.misses.incrementAndGet();
+        final String canonical = GGSSchemeBase.resolveCanonicalHostname(hostname);
+        put(this.hostnames, hostname, new Entry<String>(canonical, now + this.nameTtlNanos));
+        return canonical;
+    }
+
+    GSSName getServiceName(final GSSManager manager, final String authServer, final Oid oid) throws GSSException {
+        final String key = oid + " HTTP@" + authServer;
+        final long now = System.nanoTime();
+        final Entry<GSSName> entry = this.names.get(key);
+        if (entry != null && entry.isValid(now)) {
+            this.hits.incrementAndGet();
+            return entry.value;
+        }
+        this.misses.incrementAndGet();
+        final GSSName name = manager.createName("HTTP@" + authServer, GSSName.NT_HOSTBASED_SERVICE)
+                .canonicalize(oid);
+        put(this.names, key, new Entry<GSSName>(name, now + this.nameTtlNanos));
+        return name;
+    }
+
+    /**
+     * Returns the default initiator credential for the given mechanism or
+     * {@code null} if the mechanism is to pick one itself.
+     */
+    GSSCredential getDefaultCredential(final GSSManager manager, final Oid oid) throws GSSException {
+        if (Subject.getSubject(AccessController.getContext()) != null) {
+            return null;
+        }
+        final long now = System.nanoTime();
+        final Entry<GSSCredential> entry = this.credentials.get(oid);
+        if (entry != null && entry.isValid(now)) {
+            this.hits.incrementAndGet();
+            return entry.value;
+        }
+        this.misses.incrementAndGet();
+        final GSSCredential credential = manager.createCredential(
+                null, GSSCredential.DEFAULT_LIFETIME, oid, GSSCredential.INITIATE_ONLY);
+        final int lifetime = credential.getRemainingLifetime();
+        final long expiry;
+        if (lifetime == GSSCredential.INDEFINITE_LIFETIME) {
+            expiry = Long.MAX_VALUE;
+        } else {
+            expiry = now + TimeUnit.SECONDS.toNanos((long) lifetime - this.minCredentialLifetimeSecs);
+        }
+        put(this.credentials, oid, new Entry<GSSCredential>(credential, expiry));
+        return credential;
+    }
+
+    void recordContextCreation(final long nanos) {
+        this.contextCreationTime.record(nanos);
+    }
+
+    private static <K, V> void put(final ConcurrentHashMap<K, Entry<V>> map, final K key, final Entry<V> entry) {
+        if (map.size() >= MAX_ENTRIES) {
+            final long now = System.nanoTime();
+            for (final Map.Entry<K, Entry<V>> e: map.entrySet()) {
+                if (!e.getValue().isValid(now)) {
+                    map.remove(e.getKey(), e.getValue());
+                }
+            }
+            if (map.size() >= MAX_ENTRIES) {
+                map.clear();
+            }
+        }
+        map.put(key, entry);
+    }
+
+    /**
+     * Discards all cached names and credentials, for instance after a change
+     * of the Kerberos configuration or ticket cache.
+     */
+    public void clear() {
+        this.hostnames.clear();
+        this.names.clear();
+        this.credentials.clear();
+    }
+
+    /**
+     * Returns the time spent creating security contexts and generating
+     * their initial tokens, including acquisition of service tickets
+     * where these are not cached.
+     */
+    public LatencyHistogram getContextCreationTime() {
+        return this.contextCreationTime;
+    }
+
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[context creation: ").append(this.contextCreationTime);
+        buffer.append("][hits: ").append(getHitCount());
+        buffer.append("][misses: ").append(getMissCount());
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    static final class Entry<T> {
+
+        final T value;
+        final long expiry;
+
+        Entry(final T value, final long expiry) {
+            this.value = value;
+            this.expiry = expiry;
+        }
+
+        boolean isValid(final long now) {
+            return this.expiry == Long.MAX_VALUE || now - this.expiry < 0;
+        }
+
+    }
+
+}
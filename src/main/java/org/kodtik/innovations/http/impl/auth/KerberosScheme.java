@@ -44,6 +44,19 @@ public class KerberosScheme extends GGSSchemeBase {
 
     private static final String KERBEROS_OID = "1.2.840.113554.1.2.2";
 
+    /**
+     * @param securityCache cache of host names, service names and
+     *   credentials shared with other schemes. May be {@code null}.
+     *
+     * @since 4.5.15
+     */
+    public KerberosScheme(
+            final boolean stripPort,
+            final boolean useCanonicalHostname,
+            final GSSSecurityCache securityCache) {
+        super(stripPort, useCanonicalHostname, securityCache);
+    }
+
     /**
      * @since 4.4
      */
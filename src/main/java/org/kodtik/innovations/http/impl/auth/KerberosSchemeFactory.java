@@ -46,20 +46,35 @@ public class KerberosSchemeFactory implements AuthSchemeFactory, AuthSchemeProvi
 
     private final boolean stripPort;
     private final boolean useCanonicalHostname;
+    private final GSSSecurityCache securityCache;
 
     /**
-     * @since 4.4
+     * Creates a factory whose {@link KerberosScheme} instances share the given
+     * cache of canonical host names, service names and default credentials.
+     *
+     * @param securityCache the cache. May be {@code null}.
+     *
+     * @since 4.5.15
      */
-    public KerberosSchemeFactory(final boolean stripPort, final boolean useCanonicalHostname) {
+    public KerberosSchemeFactory(
+            final boolean stripPort,
+            final boolean useCanonicalHostname,
+            final GSSSecurityCache securityCache) {
         super();
         this.stripPort = stripPort;
         this.useCanonicalHostname = useCanonicalHostname;
+        this.securityCache = securityCache;
+    }
+
+    /**
+     * @since 4.4
+     */
+    public KerberosSchemeFactory(final boolean stripPort, final boolean useCanonicalHostname) {
+        this(stripPort, useCanonicalHostname, null);
     }
 
     public KerberosSchemeFactory(final boolean stripPort) {
-        super();
-        this.stripPort = stripPort;
-        this.useCanonicalHostname = true;
+        this(stripPort, true, null);
     }
 
     public KerberosSchemeFactory() {
@@ -74,14 +89,21 @@ public class KerberosSchemeFactory implements AuthSchemeFactory, AuthSchemeProvi
         return useCanonicalHostname;
     }
 
+    /**
+     * @since 4.5.15
+     */
+    public GSSSecurityCache getSecurityCache() {
+        return securityCache;
+    }
+
     @Override
     public AuthScheme newInstance(final HttpParams params) {
-        return new KerberosScheme(this.stripPort, this.useCanonicalHostname);
+        return new KerberosScheme(this.stripPort, this.useCanonicalHostname, this.securityCache);
     }
 
     @Override
     public AuthScheme create(final HttpContext context) {
-        return new KerberosScheme(this.stripPort, this.useCanonicalHostname);
+        return new KerberosScheme(this.stripPort, this.useCanonicalHostname, this.securityCache);
     }
 
 }
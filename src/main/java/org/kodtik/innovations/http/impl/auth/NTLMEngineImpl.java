@@ -26,15 +26,21 @@
  */
 package org.kodtik.innovations.http.impl.auth;
 
+import java.lang.ref.SoftReference;
 import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
+import java.util.WeakHashMap;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.SecretKeySpec;
@@ -95,15 +101,15 @@ final class NTLMEngineImpl implements NTLMEngine {
     static final int MSV_AV_FLAGS_MIC = 0x00000002; // Indicates that the client is providing message integrity in the MIC field in the AUTHENTICATE_MESSAGE.
     static final int MSV_AV_FLAGS_UNTRUSTED_TARGET_SPN = 0x00000004; // Indicates that the client is providing a target SPN generated from an untrusted source.
 
-    /** Secure random generator */
-    private static final java.security.SecureRandom RND_GEN;
+    /** MD5 digest instances are cloned from this one to avoid provider lookups */
+    private static final MessageDigest MD5_PROTOTYPE;
     static {
-        java.security.SecureRandom rnd = null;
+        MessageDigest md5 = null;
         try {
-            rnd = java.security.SecureRandom.getInstance("SHA1PRNG");
-        } catch (final Exception ignore) {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (final NoSuchAlgorithmException ignore) {
         }
-        RND_GEN = rnd;
+        MD5_PROTOTYPE = md5;
     }
 
     /** The signature string as bytes in the default encoding */
@@ -134,7 +140,22 @@ final class NTLMEngineImpl implements NTLMEngine {
 
     private static final String TYPE_1_MESSAGE = new Type1Message().getResponse();
 
+    /** LM and NT hashes keyed by password, or null if hashes are not to be cached */
+    private final Map<String, byte[][]> hashCache;
+
     NTLMEngineImpl() {
+        this(false);
+    }
+
+    /**
+     * @param cacheHashes whether to retain the LM and NT hashes of passwords
+     *   for as long as the password strings are referenced by credentials.
+     *
+     * @since 4.5.15
+     */
+    NTLMEngineImpl(final boolean cacheHashes) {
+        this.hashCache = cacheHashes
+                ? Collections.synchronizedMap(new WeakHashMap<String, byte[][]>()) : null;
     }
 
     /**
@@ -299,7 +320,7 @@ final class NTLMEngineImpl implements NTLMEngine {
             final byte[] challenge, final String target, final byte[] targetInformation,
             final byte[] clientChallenge, final byte[] clientChallenge2,
             final byte[] secondaryKey, final byte[] timestamp) {
-            this(RND_GEN, System.currentTimeMillis(),
+            this(CryptoHolder.getRandom(), System.currentTimeMillis(),
                 domain, user, password, challenge, target, targetInformation,
                 clientChallenge, clientChallenge2,
                 secondaryKey, timestamp);
@@ -335,7 +356,7 @@ final class NTLMEngineImpl implements NTLMEngine {
             final byte[] challenge,
             final String target,
             final byte[] targetInformation) {
-            this(RND_GEN, System.currentTimeMillis(), domain, user, password, challenge, target, targetInformation);
+            this(CryptoHolder.getRandom(), System.currentTimeMillis(), domain, user, password, challenge, target, targetInformation);
         }
 
         public CipherGen(final Random random, final long currentTime,
@@ -552,10 +573,9 @@ final class NTLMEngineImpl implements NTLMEngine {
                     final Key highKey = createDESKey(keyBytes, 7);
                     final byte[] truncatedResponse = new byte[8];
                     System.arraycopy(getLMResponse(), 0, truncatedResponse, 0, truncatedResponse.length);
-                    Cipher des = Cipher.getInstance("DES/ECB/NoPadding");
+                    final Cipher des = CryptoHolder.getDES();
                     des.init(Cipher.ENCRYPT_MODE, lowKey);
                     final byte[] lowPart = des.doFinal(truncatedResponse);
-                    des = Cipher.getInstance("DES/ECB/NoPadding");
                     des.init(Cipher.ENCRYPT_MODE, highKey);
                     final byte[] highPart = des.doFinal(truncatedResponse);
                     lanManagerSessionKey = new byte[16];
@@ -581,7 +601,7 @@ final class NTLMEngineImpl implements NTLMEngine {
     static byte[] RC4(final byte[] value, final byte[] key)
         throws NTLMEngineException {
         try {
-            final Cipher rc4 = Cipher.getInstance("RC4");
+            final Cipher rc4 = CryptoHolder.getRC4();
             rc4.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "RC4"));
             return rc4.doFinal(value);
         } catch (final Exception e) {
@@ -634,7 +654,7 @@ final class NTLMEngineImpl implements NTLMEngine {
             final Key lowKey = createDESKey(keyBytes, 0);
             final Key highKey = createDESKey(keyBytes, 7);
             final byte[] magicConstant = "KGS!@#$%".getBytes(Consts.ASCII);
-            final Cipher des = Cipher.getInstance("DES/ECB/NoPadding");
+            final Cipher des = CryptoHolder.getDES();
             des.init(Cipher.ENCRYPT_MODE, lowKey);
             final byte[] lowHash = des.doFinal(magicConstant);
             des.init(Cipher.ENCRYPT_MODE, highKey);
@@ -724,7 +744,7 @@ final class NTLMEngineImpl implements NTLMEngine {
             final Key lowKey = createDESKey(keyBytes, 0);
             final Key middleKey = createDESKey(keyBytes, 7);
             final Key highKey = createDESKey(keyBytes, 14);
-            final Cipher des = Cipher.getInstance("DES/ECB/NoPadding");
+            final Cipher des = CryptoHolder.getDES();
             des.init(Cipher.ENCRYPT_MODE, lowKey);
             final byte[] lowResponse = des.doFinal(challenge);
             des.init(Cipher.ENCRYPT_MODE, middleKey);
@@ -1502,7 +1522,7 @@ final class NTLMEngineImpl implements NTLMEngine {
             final byte[] type1Message,
             final byte[] type2Message)
             throws NTLMEngineException {
-            this(RND_GEN, System.currentTimeMillis(), domain, host, user, password, nonce, type2Flags, target, targetInformation, peerServerCertificate, type1Message, type2Message);
+            this(CryptoHolder.getRandom(), System.currentTimeMillis(), domain, host, user, password, nonce, type2Flags, target, targetInformation, peerServerCertificate, type1Message, type2Message);
         }
 
         /** Constructor. Pass the arguments we will need */
@@ -1519,6 +1539,25 @@ final class NTLMEngineImpl implements NTLMEngine {
             final byte[] type1Message,
             final byte[] type2Message)
             throws NTLMEngineException {
+            this(random, currentTime, domain, host, user, password, nonce, type2Flags, target, targetInformation,
+                peerServerCertificate, type1Message, type2Message, null);
+        }
+
+        /** Constructor. Re-uses password hashes from the given cache if not null */
+        Type3Message(final Random random, final long currentTime,
+            final String domain,
+            final String host,
+            final String user,
+            final String password,
+            final byte[] nonce,
+            final int type2Flags,
+            final String target,
+            final byte[] targetInformation,
+            final Certificate peerServerCertificate,
+            final byte[] type1Message,
+            final byte[] type2Message,
+            final Map<String, byte[][]> hashCache)
+            throws NTLMEngineException {
 
             if (random == null) {
                 throw new NTLMEngineException("Random generator not available");
@@ -1550,6 +1589,11 @@ final class NTLMEngineImpl implements NTLMEngine {
                 nonce,
                 target,
                 responseTargetInformation);
+            final byte[][] cachedHashes = hashCache != null && password != null ? hashCache.get(password) : null;
+            if (cachedHashes != null) {
+                gen.lmHash = cachedHashes[0];
+                gen.ntlmHash = cachedHashes[1];
+            }
 
             // Use the new code to calculate the responses, including v2 if that
             // seems warranted.
@@ -1599,6 +1643,10 @@ final class NTLMEngineImpl implements NTLMEngine {
                     userSessionKey = gen.getLMUserSessionKey();
                 }
             }
+            if (hashCache != null && password != null
+                    && (cachedHashes == null || cachedHashes[0] != gen.lmHash || cachedHashes[1] != gen.ntlmHash)) {
+                hashCache.put(password, new byte[][] { gen.lmHash, gen.ntlmHash });
+            }
 
             if ((type2Flags & FLAG_REQUEST_SIGN) != 0) {
                 if ((type2Flags & FLAG_REQUEST_EXPLICIT_KEY_EXCH) != 0) {
@@ -1844,6 +1892,12 @@ final class NTLMEngineImpl implements NTLMEngine {
     }
 
     static MessageDigest getMD5() {
+        if (MD5_PROTOTYPE != null) {
+            try {
+                return (MessageDigest) MD5_PROTOTYPE.clone();
+            } catch (final CloneNotSupportedException ignore) {
+            }
+        }
         try {
             return MessageDigest.getInstance("MD5");
         } catch (final NoSuchAlgorithmException ex) {
@@ -1851,6 +1905,65 @@ final class NTLMEngineImpl implements NTLMEngine {
         }
     }
 
+    /**
+     * Per-thread cryptographic primitives. Ciphers obtained from this class
+     * must be initialized before use and must not be retained beyond the
+     * computation at hand.
+     */
+    static final class CryptoHolder {
+
+        private static final ThreadLocal<SoftReference<CryptoHolder>> THREADLOCAL_CRYPTO =
+                new ThreadLocal<SoftReference<CryptoHolder>>();
+
+        private SecureRandom random;
+        private boolean randomUnavailable;
+        private Cipher des;
+        private Cipher rc4;
+
+        private static CryptoHolder get() {
+            final SoftReference<CryptoHolder> ref = THREADLOCAL_CRYPTO.get();
+            CryptoHolder holder = ref != null ? ref.get() : null;
+            if (holder == null) {
+                holder = new CryptoHolder();
+                THREADLOCAL_CRYPTO.set(new SoftReference<CryptoHolder>(holder));
+            }
+            return holder;
+        }
+
+        /**
+         * Returns the secure random generator of the current thread,
+         * or {@code null} if none is available.
+         */
+        static SecureRandom getRandom() {
+            final CryptoHolder holder = get();
+            if (holder.random == null && !holder.randomUnavailable) {
+                try {
+                    holder.random = SecureRandom.getInstance("SHA1PRNG");
+                } catch (final Exception ignore) {
+                    holder.randomUnavailable = true;
+                }
+            }
+            return holder.random;
+        }
+
+        static Cipher getDES() throws GeneralSecurityException {
+            final CryptoHolder holder = get();
+            if (holder.des == null) {
+                holder.des = Cipher.getInstance("DES/ECB/NoPadding");
+            }
+            return holder.des;
+        }
+
+        static Cipher getRC4() throws GeneralSecurityException {
+            final CryptoHolder holder = get();
+            if (holder.rc4 == null) {
+                holder.rc4 = Cipher.getInstance("RC4");
+            }
+            return holder.rc4;
+        }
+
+    }
+
     /**
      * Cryptography support - MD4. The following class was based loosely on the
      * RFC and on code found at http://www.cs.umd.edu/~harry/jotp/src/md.java.
@@ -2094,15 +2207,30 @@ final class NTLMEngineImpl implements NTLMEngine {
             final String workstation,
             final String challenge) throws NTLMEngineException {
         final Type2Message t2m = new Type2Message(challenge);
-        return getType3Message(
+        if (this.hashCache == null) {
+            return getType3Message(
+                    username,
+                    password,
+                    workstation,
+                    domain,
+                    t2m.getChallenge(),
+                    t2m.getFlags(),
+                    t2m.getTarget(),
+                    t2m.getTargetInfo());
+        }
+        return new Type3Message(CryptoHolder.getRandom(), System.currentTimeMillis(),
+                domain,
+                workstation,
                 username,
                 password,
-                workstation,
-                domain,
                 t2m.getChallenge(),
                 t2m.getFlags(),
                 t2m.getTarget(),
-                t2m.getTargetInfo());
+                t2m.getTargetInfo(),
+                null,
+                null,
+                null,
+                this.hashCache).getResponse();
     }
 
 }
@@ -46,14 +46,36 @@ import org.kodtik.innovations.http.protocol.HttpContext;
 @SuppressWarnings("deprecation")
 public class NTLMSchemeFactory implements AuthSchemeFactory, AuthSchemeProvider {
 
+    private final NTLMEngine engine;
+
+    /**
+     * Creates a factory whose {@link NTLMScheme} instances share a single
+     * {@link NTLMEngine} that optionally retains the LM and NT hashes of
+     * passwords for as long as the credentials holding them are in use,
+     * which saves re-computing them each time a new connection is
+     * authenticated.
+     *
+     * @param cacheHashes whether to cache password hashes.
+     *
+     * @since 4.5.15
+     */
+    public NTLMSchemeFactory(final boolean cacheHashes) {
+        super();
+        this.engine = cacheHashes ? new NTLMEngineImpl(true) : null;
+    }
+
+    public NTLMSchemeFactory() {
+        this(false);
+    }
+
     @Override
     public AuthScheme newInstance(final HttpParams params) {
-        return new NTLMScheme();
+        return this.engine != null ? new NTLMScheme(this.engine) : new NTLMScheme();
     }
 
     @Override
     public AuthScheme create(final HttpContext context) {
-        return new NTLMScheme();
+        return this.engine != null ? new NTLMScheme(this.engine) : new NTLMScheme();
     }
 
 }
@@ -62,7 +62,20 @@ public class NegotiateScheme extends GGSSchemeBase {
      *
      */
     public NegotiateScheme(final SpnegoTokenGenerator spengoGenerator, final boolean stripPort) {
-        super(stripPort);
+        this(spengoGenerator, stripPort, null);
+    }
+
+    /**
+     * @param securityCache cache of host names, service names and
+     *   credentials shared with other schemes. May be {@code null}.
+     *
+     * @since 4.5.15
+     */
+    public NegotiateScheme(
+            final SpnegoTokenGenerator spengoGenerator,
+            final boolean stripPort,
+            final GSSSecurityCache securityCache) {
+        super(stripPort, true, securityCache);
         this.spengoGenerator = spengoGenerator;
     }
 
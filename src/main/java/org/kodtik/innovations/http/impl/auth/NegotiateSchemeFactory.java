@@ -43,11 +43,27 @@ public class NegotiateSchemeFactory implements AuthSchemeFactory {
 
     private final SpnegoTokenGenerator spengoGenerator;
     private final boolean stripPort;
+    private final GSSSecurityCache securityCache;
 
-    public NegotiateSchemeFactory(final SpnegoTokenGenerator spengoGenerator, final boolean stripPort) {
+    /**
+     * @param securityCache cache of canonical host names, service names and
+     *   default credentials shared by the schemes created by this factory.
+     *   May be {@code null}.
+     *
+     * @since 4.5.15
+     */
+    public NegotiateSchemeFactory(
+            final SpnegoTokenGenerator spengoGenerator,
+            final boolean stripPort,
+            final GSSSecurityCache securityCache) {
         super();
         this.spengoGenerator = spengoGenerator;
         this.stripPort = stripPort;
+        this.securityCache = securityCache;
+    }
+
+    public NegotiateSchemeFactory(final SpnegoTokenGenerator spengoGenerator, final boolean stripPort) {
+        this(spengoGenerator, stripPort, null);
     }
 
     public NegotiateSchemeFactory(final SpnegoTokenGenerator spengoGenerator) {
@@ -60,7 +76,7 @@ public class NegotiateSchemeFactory implements AuthSchemeFactory {
 
     @Override
     public AuthScheme newInstance(final HttpParams params) {
-        return new NegotiateScheme(this.spengoGenerator, this.stripPort);
+        return new NegotiateScheme(this.spengoGenerator, this.stripPort, this.securityCache);
     }
 
     public boolean isStripPort() {
@@ -71,4 +87,11 @@ public class NegotiateSchemeFactory implements AuthSchemeFactory {
         return spengoGenerator;
     }
 
+    /**
+     * @since 4.5.15
+     */
+    public GSSSecurityCache getSecurityCache() {
+        return securityCache;
+    }
+
 }
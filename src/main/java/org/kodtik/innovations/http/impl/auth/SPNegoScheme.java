@@ -45,6 +45,19 @@ public class SPNegoScheme extends GGSSchemeBase {
 
     private static final String SPNEGO_OID = "1.3.6.1.5.5.2";
 
+    /**
+     * @param securityCache cache of host names, service names and
+     *   credentials shared with other schemes. May be {@code null}.
+     *
+     * @since 4.5.15
+     */
+    public SPNegoScheme(
+            final boolean stripPort,
+            final boolean useCanonicalHostname,
+            final GSSSecurityCache securityCache) {
+        super(stripPort, useCanonicalHostname, securityCache);
+    }
+
     /**
      * @since 4.4
      */
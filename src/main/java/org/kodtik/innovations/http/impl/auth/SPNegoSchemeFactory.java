@@ -46,20 +46,35 @@ public class SPNegoSchemeFactory implements AuthSchemeFactory, AuthSchemeProvide
 
     private final boolean stripPort;
     private final boolean useCanonicalHostname;
+    private final GSSSecurityCache securityCache;
 
     /**
-     * @since 4.4
+     * Creates a factory whose {@link SPNegoScheme} instances share the given
+     * cache of canonical host names, service names and default credentials.
+     *
+     * @param securityCache the cache. May be {@code null}.
+     *
+     * @since 4.5.15
      */
-    public SPNegoSchemeFactory(final boolean stripPort, final boolean useCanonicalHostname) {
+    public SPNegoSchemeFactory(
+            final boolean stripPort,
+            final boolean useCanonicalHostname,
+            final GSSSecurityCache securityCache) {
         super();
         this.stripPort = stripPort;
         this.useCanonicalHostname = useCanonicalHostname;
+        this.securityCache = securityCache;
+    }
+
+    /**
+     * @since 4.4
+     */
+    public SPNegoSchemeFactory(final boolean stripPort, final boolean useCanonicalHostname) {
+        this(stripPort, useCanonicalHostname, null);
     }
 
     public SPNegoSchemeFactory(final boolean stripPort) {
-        super();
-        this.stripPort = stripPort;
-        this.useCanonicalHostname = true;
+        this(stripPort, true, null);
     }
 
     public SPNegoSchemeFactory() {
@@ -74,14 +89,21 @@ public class SPNegoSchemeFactory implements AuthSchemeFactory, AuthSchemeProvide
         return useCanonicalHostname;
     }
 
+    /**
+     * @since 4.5.15
+     */
+    public GSSSecurityCache getSecurityCache() {
+        return securityCache;
+    }
+
     @Override
     public AuthScheme newInstance(final HttpParams params) {
-        return new SPNegoScheme(this.stripPort, this.useCanonicalHostname);
+        return new SPNegoScheme(this.stripPort, this.useCanonicalHostname, this.securityCache);
     }
 
     @Override
     public AuthScheme create(final HttpContext context) {
-        return new SPNegoScheme(this.stripPort, this.useCanonicalHostname);
+        return new SPNegoScheme(this.stripPort, this.useCanonicalHostname, this.securityCache);
     }
 
 }
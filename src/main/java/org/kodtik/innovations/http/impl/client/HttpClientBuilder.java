@@ -58,6 +58,7 @@ import org.kodtik.innovations.http.client.RedirectStrategy;
 import org.kodtik.innovations.http.client.ServiceUnavailableRetryStrategy;
 import org.kodtik.innovations.http.client.UserTokenHandler;
 import org.kodtik.innovations.http.client.config.AuthSchemes;
+import org.kodtik.innovations.http.client.config.HttpVersionPolicy;
 import org.kodtik.innovations.http.client.config.RequestConfig;
 import org.kodtik.innovations.http.client.entity.InputStreamFactory;
 import org.kodtik.innovations.http.client.protocol.RequestAcceptEncoding;
@@ -69,12 +70,14 @@ import org.kodtik.innovations.http.client.protocol.RequestExpectContinue;
 import org.kodtik.innovations.http.client.protocol.ResponseContentEncoding;
 import org.kodtik.innovations.http.client.protocol.ResponseProcessCookies;
 import org.kodtik.innovations.http.config.ConnectionConfig;
+import org.kodtik.innovations.http.config.H2Config;
 import org.kodtik.innovations.http.config.Lookup;
 import org.kodtik.innovations.http.config.RegistryBuilder;
 import org.kodtik.innovations.http.config.SocketConfig;
 import org.kodtik.innovations.http.conn.ConnectionKeepAliveStrategy;
 import org.kodtik.innovations.http.conn.DnsResolver;
 import org.kodtik.innovations.http.conn.HttpClientConnectionManager;
+import org.kodtik.innovations.http.conn.MetricsRecorder;
 import org.kodtik.innovations.http.conn.SchemePortResolver;
 import org.kodtik.innovations.http.conn.routing.HttpRoutePlanner;
 import org.kodtik.innovations.http.conn.socket.ConnectionSocketFactory;
@@ -92,18 +95,22 @@ import org.kodtik.innovations.http.impl.auth.DigestSchemeFactory;
 import org.kodtik.innovations.http.impl.auth.KerberosSchemeFactory;
 import org.kodtik.innovations.http.impl.auth.NTLMSchemeFactory;
 import org.kodtik.innovations.http.impl.auth.SPNegoSchemeFactory;
+import org.kodtik.innovations.http.impl.conn.ConnectionPoolMaintainer;
 import org.kodtik.innovations.http.impl.conn.DefaultProxyRoutePlanner;
 import org.kodtik.innovations.http.impl.conn.DefaultRoutePlanner;
 import org.kodtik.innovations.http.impl.conn.DefaultSchemePortResolver;
+import org.kodtik.innovations.http.impl.conn.H2ClientConnectionManager;
 import org.kodtik.innovations.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.kodtik.innovations.http.impl.conn.SystemDefaultRoutePlanner;
 import org.kodtik.innovations.http.impl.execchain.BackoffStrategyExec;
 import org.kodtik.innovations.http.impl.execchain.ClientExecChain;
+import org.kodtik.innovations.http.impl.execchain.CoalescingExec;
 import org.kodtik.innovations.http.impl.execchain.MainClientExec;
 import org.kodtik.innovations.http.impl.execchain.ProtocolExec;
 import org.kodtik.innovations.http.impl.execchain.RedirectExec;
 import org.kodtik.innovations.http.impl.execchain.RetryExec;
 import org.kodtik.innovations.http.impl.execchain.ServiceUnavailableRetryExec;
+import org.kodtik.innovations.http.protocol.ExchangeListener;
 import org.kodtik.innovations.http.protocol.HttpProcessor;
 import org.kodtik.innovations.http.protocol.HttpProcessorBuilder;
 import org.kodtik.innovations.http.protocol.HttpRequestExecutor;
@@ -174,6 +181,10 @@ public class HttpClientBuilder {
     private UserTokenHandler userTokenHandler;
     private HttpProcessor httpprocessor;
     private DnsResolver dnsResolver;
+    private MetricsRecorder metricsRecorder;
+    private ExchangeListener exchangeListener;
+    private HttpVersionPolicy versionPolicy;
+    private H2Config h2Config;
 
     private LinkedList<HttpRequestInterceptor> requestFirst;
     private LinkedList<HttpRequestInterceptor> requestLast;
@@ -201,6 +212,9 @@ public class HttpClientBuilder {
     private boolean evictIdleConnections;
     private long maxIdleTime;
     private TimeUnit maxIdleTimeUnit;
+    private boolean validateConnectionsInBackground;
+    private long maintenancePeriod;
+    private TimeUnit maintenancePeriodUnit;
 
     private boolean systemProperties;
     private boolean redirectHandlingDisabled;
@@ -210,6 +224,7 @@ public class HttpClientBuilder {
     private boolean authCachingDisabled;
     private boolean connectionStateDisabled;
     private boolean defaultUserAgentDisabled;
+    private boolean requestCoalescing;
 
     private int maxConnTotal = 0;
     private int maxConnPerRoute = 0;
@@ -627,6 +642,63 @@ public class HttpClientBuilder {
         return this;
     }
 
+    /**
+     * Assigns {@link MetricsRecorder} instance that receives connection pool,
+     * connection establishment and message exchange measurements.
+     * <p>
+     * Please note pool related measurements will not be recorded if the connection
+     * manager is set with the {@link #setConnectionManager(HttpClientConnectionManager)}
+     * method. Such connection managers are expected to be configured by the caller.
+     * </p>
+     *
+     * @since 4.5.15
+     */
+    public final HttpClientBuilder setMetricsRecorder(final MetricsRecorder metricsRecorder) {
+        this.metricsRecorder = metricsRecorder;
+        return this;
+    }
+
+    /**
+     * Assigns {@link ExchangeListener} instance to be notified of request execution
+     * phases. If set, an {@link org.kodtik.innovations.http.protocol.ExchangeTimings}
+     * instance will be bound to the execution context of each request unless one
+     * has already been bound by the caller.
+     *
+     * @since 4.5.15
+     */
+    public final HttpClientBuilder setExchangeListener(final ExchangeListener exchangeListener) {
+        this.exchangeListener = exchangeListener;
+        return this;
+    }
+
+    /**
+     * Assigns {@link HttpVersionPolicy} that determines whether requests over
+     * direct routes are executed using HTTP/2. Defaults to
+     * {@link HttpVersionPolicy#FORCE_HTTP_1}.
+     * <p>
+     * Unless HTTP/1.1 is forced the connection manager is decorated with
+     * {@link H2ClientConnectionManager}, which also applies to connection
+     * managers set with the {@link #setConnectionManager(HttpClientConnectionManager)}
+     * method.
+     * </p>
+     *
+     * @since 4.5.15
+     */
+    public final HttpClientBuilder setVersionPolicy(final HttpVersionPolicy versionPolicy) {
+        this.versionPolicy = versionPolicy;
+        return this;
+    }
+
+    /**
+     * Assigns {@link H2Config} of HTTP/2 connections.
+     *
+     * @since 4.5.15
+     */
+    public final HttpClientBuilder setH2Config(final H2Config h2Config) {
+        this.h2Config = h2Config;
+        return this;
+    }
+
     /**
      * Assigns {@link HttpRequestRetryHandler} instance.
      * <p>
@@ -869,6 +941,39 @@ public class HttpClientBuilder {
         return this;
     }
 
+    /**
+     * Makes this instance of HttpClient proactively validate persistent connections
+     * kept alive in the connection pool using a background thread, so that connections
+     * leased from the pool have usually been checked for staleness already. The background
+     * thread also evicts expired connections and, if {@link #evictIdleConnections(long, TimeUnit)}
+     * has been set, idle connections.
+     * <p>
+     * One MUST explicitly close HttpClient with {@link CloseableHttpClient#close()} in order
+     * to stop and release the background thread.
+     * <p>
+     * Please note this method has no effect if the instance of HttpClient is configuted to
+     * use a shared connection manager or a connection manager other than
+     * {@link PoolingHttpClientConnectionManager}.
+     * <p>
+     * Please note this method may not be used when the instance of HttpClient is created
+     * inside an EJB container.
+     *
+     * @see #setConnectionManagerShared(boolean)
+     * @see PoolingHttpClientConnectionManager#validateIdleConnections()
+     * @see PoolingHttpClientConnectionManager#setValidateAfterInactivity(int)
+     *
+     * @param period period between two consecutive maintenance runs.
+     * @param timeUnit time unit for the above parameter.
+     *
+     * @since 4.5.15
+     */
+    public final HttpClientBuilder validateConnectionsInBackground(final long period, final TimeUnit timeUnit) {
+        this.validateConnectionsInBackground = true;
+        this.maintenancePeriod = period;
+        this.maintenancePeriodUnit = timeUnit;
+        return this;
+    }
+
     /**
      * Disables the default user agent set by this builder if none has been provided by the user.
      *
@@ -879,6 +984,20 @@ public class HttpClientBuilder {
         return this;
     }
 
+    /**
+     * Makes this instance of HttpClient collapse identical {@code GET} and
+     * {@code HEAD} requests executed concurrently into a single exchange
+     * with the target server, sharing the response among all of them.
+     *
+     * @see CoalescingExec
+     *
+     * @since 4.5.15
+     */
+    public final HttpClientBuilder coalesceRequests() {
+        this.requestCoalescing = true;
+        return this;
+    }
+
     /**
      * Produces an instance of {@link ClientExecChain} to be used as a main exec.
      * <p>
@@ -908,7 +1027,8 @@ public class HttpClientBuilder {
                 proxyHttpProcessor,
                 targetAuthStrategy,
                 proxyAuthStrategy,
-                userTokenHandler);
+                userTokenHandler,
+                metricsRecorder);
     }
 
     /**
@@ -1016,8 +1136,17 @@ public class HttpClientBuilder {
             if (maxConnPerRoute > 0) {
                 poolingmgr.setDefaultMaxPerRoute(maxConnPerRoute);
             }
+            if (metricsRecorder != null) {
+                poolingmgr.setMetricsRecorder(metricsRecorder);
+            }
             connManagerCopy = poolingmgr;
         }
+        final HttpClientConnectionManager baseConnManager = connManagerCopy;
+        H2ClientConnectionManager h2ConnManager = null;
+        if (versionPolicy != null && versionPolicy != HttpVersionPolicy.FORCE_HTTP_1) {
+            h2ConnManager = new H2ClientConnectionManager(baseConnManager, versionPolicy, h2Config);
+            connManagerCopy = h2ConnManager;
+        }
         ConnectionReuseStrategy reuseStrategyCopy = this.reuseStrategy;
         if (reuseStrategyCopy == null) {
             if (systemProperties) {
@@ -1073,6 +1202,9 @@ public class HttpClientBuilder {
                 proxyAuthStrategyCopy,
                 userTokenHandlerCopy);
 
+        if (requestCoalescing) {
+            execChain = new CoalescingExec(execChain);
+        }
         execChain = decorateMainExec(execChain);
 
         HttpProcessor httpprocessorCopy = this.httpprocessor;
@@ -1222,7 +1354,26 @@ public class HttpClientBuilder {
             }
             final HttpClientConnectionManager cm = connManagerCopy;
 
-            if (evictExpiredConnections || evictIdleConnections) {
+            if (validateConnectionsInBackground && baseConnManager instanceof PoolingHttpClientConnectionManager) {
+                final ConnectionPoolMaintainer connectionMaintainer = new ConnectionPoolMaintainer(
+                        (PoolingHttpClientConnectionManager) baseConnManager,
+                        maintenancePeriod > 0 ? maintenancePeriod : 1, maintenancePeriodUnit != null ? maintenancePeriodUnit : TimeUnit.SECONDS,
+                        evictIdleConnections ? maxIdleTime : 0, maxIdleTimeUnit);
+                closeablesCopy.add(new Closeable() {
+
+                    @Override
+                    public void close() throws IOException {
+                        connectionMaintainer.shutdown();
+                        try {
+                            connectionMaintainer.awaitTermination(1L, TimeUnit.SECONDS);
+                        } catch (final InterruptedException interrupted) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+
+                });
+                connectionMaintainer.start();
+            } else if (evictExpiredConnections || evictIdleConnections) {
                 final IdleConnectionEvictor connectionEvictor = new IdleConnectionEvictor(cm,
                         maxIdleTime > 0 ? maxIdleTime : 10, maxIdleTimeUnit != null ? maxIdleTimeUnit : TimeUnit.SECONDS,
                         maxIdleTime, maxIdleTimeUnit);
@@ -1249,6 +1400,12 @@ public class HttpClientBuilder {
                 }
 
             });
+        } else if (h2ConnManager != null) {
+            // HTTP/2 connections are owned by the client even if the pool is not
+            if (closeablesCopy == null) {
+                closeablesCopy = new ArrayList<Closeable>(1);
+            }
+            closeablesCopy.add(h2ConnManager);
         }
 
         return new InternalHttpClient(
@@ -1260,7 +1417,8 @@ public class HttpClientBuilder {
                 defaultCookieStore,
                 defaultCredentialsProvider,
                 defaultRequestConfig != null ? defaultRequestConfig : RequestConfig.DEFAULT,
-                closeablesCopy);
+                closeablesCopy,
+                exchangeListener);
     }
 
 }
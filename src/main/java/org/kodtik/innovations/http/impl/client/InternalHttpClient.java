@@ -65,6 +65,8 @@ import org.kodtik.innovations.http.impl.execchain.ClientExecChain;
 import org.kodtik.innovations.http.params.HttpParams;
 import org.kodtik.innovations.http.params.HttpParamsNames;
 import org.kodtik.innovations.http.protocol.BasicHttpContext;
+import org.kodtik.innovations.http.protocol.ExchangeListener;
+import org.kodtik.innovations.http.protocol.ExchangeTimings;
 import org.kodtik.innovations.http.protocol.HttpContext;
 import org.kodtik.innovations.http.util.Args;
 
@@ -88,6 +90,7 @@ class InternalHttpClient extends CloseableHttpClient implements Configurable {
     private final CredentialsProvider credentialsProvider;
     private final RequestConfig defaultConfig;
     private final List<Closeable> closeables;
+    private final ExchangeListener exchangeListener;
 
     public InternalHttpClient(
             final ClientExecChain execChain,
@@ -98,7 +101,8 @@ class InternalHttpClient extends CloseableHttpClient implements Configurable {
             final CookieStore cookieStore,
             final CredentialsProvider credentialsProvider,
             final RequestConfig defaultConfig,
-            final List<Closeable> closeables) {
+            final List<Closeable> closeables,
+            final ExchangeListener exchangeListener) {
         super();
         Args.notNull(execChain, "HTTP client exec chain");
         Args.notNull(connManager, "HTTP connection manager");
@@ -112,6 +116,21 @@ class InternalHttpClient extends CloseableHttpClient implements Configurable {
         this.credentialsProvider = credentialsProvider;
         this.defaultConfig = defaultConfig;
         this.closeables = closeables;
+        this.exchangeListener = exchangeListener;
+    }
+
+    public InternalHttpClient(
+            final ClientExecChain execChain,
+            final HttpClientConnectionManager connManager,
+            final HttpRoutePlanner routePlanner,
+            final Lookup<CookieSpecProvider> cookieSpecRegistry,
+            final Lookup<AuthSchemeProvider> authSchemeRegistry,
+            final CookieStore cookieStore,
+            final CredentialsProvider credentialsProvider,
+            final RequestConfig defaultConfig,
+            final List<Closeable> closeables) {
+        this(execChain, connManager, routePlanner, cookieSpecRegistry, authSchemeRegistry,
+                cookieStore, credentialsProvider, defaultConfig, closeables, null);
     }
 
     private HttpRoute determineRoute(
@@ -147,6 +166,9 @@ class InternalHttpClient extends CloseableHttpClient implements Configurable {
         if (context.getAttribute(HttpClientContext.REQUEST_CONFIG) == null) {
             context.setAttribute(HttpClientContext.REQUEST_CONFIG, this.defaultConfig);
         }
+        if (this.exchangeListener != null && context.getAttribute(HttpClientContext.EXCHANGE_TIMINGS) == null) {
+            context.setAttribute(HttpClientContext.EXCHANGE_TIMINGS, new ExchangeTimings(this.exchangeListener));
+        }
     }
 
     @Override
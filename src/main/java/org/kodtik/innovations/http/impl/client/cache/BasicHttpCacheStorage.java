@@ -0,0 +1,103 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.client.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+import org.kodtik.innovations.http.client.cache.HttpCacheEntry;
+import org.kodtik.innovations.http.client.cache.HttpCacheStorage;
+
+/**
+ * In-memory {@link HttpCacheStorage} that retains up to
+ * {@link CacheConfig#getMaxCacheEntries()} entries, evicting the least
+ * recently used entry once the limit is exceeded.
+ *
+ * @since 4.5.15
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public class BasicHttpCacheStorage implements HttpCacheStorage {
+
+    private final Map<String, HttpCacheEntry> entries;
+
+    public BasicHttpCacheStorage(final CacheConfig config) {
+        super();
+        final int maxEntries = (config != null ? config : CacheConfig.DEFAULT).getMaxCacheEntries();
+        this.entries = new LinkedHashMap<String, HttpCacheEntry>(20, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, HttpCacheEntry> eldest) {
+                if (size() > maxEntries) {
+                    dispose(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+
+        };
+    }
+
+    public BasicHttpCacheStorage() {
+        this(CacheConfig.DEFAULT);
+    }
+
+    private static void dispose(final HttpCacheEntry entry) {
+        if (entry != null && entry.getResource() != null) {
+            entry.getResource().dispose();
+        }
+    }
+
+    @Override
+    public synchronized void putEntry(final String key, final HttpCacheEntry entry) {
+        final HttpCacheEntry previous = this.entries.put(key, entry);
+        if (previous != null && previous != entry && previous.getResource() != entry.getResource()) {
+            dispose(previous);
+        }
+    }
+
+    @Override
+    public synchronized HttpCacheEntry getEntry(final String key) {
+        return this.entries.get(key);
+    }
+
+    @Override
+    public synchronized void removeEntry(final String key) {
+        dispose(this.entries.remove(key));
+    }
+
+    /**
+     * Returns the number of entries currently held.
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+}
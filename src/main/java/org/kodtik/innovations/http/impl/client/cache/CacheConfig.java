@@ -0,0 +1,212 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.client.cache;
+
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * Configuration of the client HTTP response cache.
+ *
+ * @since 4.5.15
+ */
+@Contract(threading = ThreadingBehavior.IMMUTABLE)
+public class CacheConfig implements Cloneable {
+
+    public static final long DEFAULT_MAX_OBJECT_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_CACHE_ENTRIES = 1000;
+    public static final float DEFAULT_HEURISTIC_COEFFICIENT = 0.1f;
+
+    public static final CacheConfig DEFAULT = new Builder().build();
+
+    private final long maxObjectSize;
+    private final int maxCacheEntries;
+    private final boolean sharedCache;
+    private final boolean heuristicCachingEnabled;
+    private final float heuristicCoefficient;
+    private final long heuristicDefaultLifetime;
+
+    CacheConfig(
+            final long maxObjectSize,
+            final int maxCacheEntries,
+            final boolean sharedCache,
+            final boolean heuristicCachingEnabled,
+            final float heuristicCoefficient,
+            final long heuristicDefaultLifetime) {
+        super();
+        this.maxObjectSize = maxObjectSize;
+        this.maxCacheEntries = maxCacheEntries;
+        this.sharedCache = sharedCache;
+        this.heuristicCachingEnabled = heuristicCachingEnabled;
+        this.heuristicCoefficient = heuristicCoefficient;
+        this.heuristicDefaultLifetime = heuristicDefaultLifetime;
+    }
+
+    /**
+     * Returns the maximum size of a response body, in bytes, that will be cached.
+     */
+    public long getMaxObjectSize() {
+        return maxObjectSize;
+    }
+
+    /**
+     * Returns the maximum number of entries the cache storage retains.
+     */
+    public int getMaxCacheEntries() {
+        return maxCacheEntries;
+    }
+
+    /**
+     * Returns whether the cache behaves as a shared cache, that is it
+     * does not store responses marked {@code private}.
+     */
+    public boolean isSharedCache() {
+        return sharedCache;
+    }
+
+    /**
+     * Returns whether responses without explicit freshness information may
+     * be served from the cache based on a heuristic freshness lifetime.
+     */
+    public boolean isHeuristicCachingEnabled() {
+        return heuristicCachingEnabled;
+    }
+
+    /**
+     * Returns the fraction of the time elapsed since {@code Last-Modified}
+     * used as heuristic freshness lifetime.
+     */
+    public float getHeuristicCoefficient() {
+        return heuristicCoefficient;
+    }
+
+    /**
+     * Returns the heuristic freshness lifetime, in seconds, of responses without
+     * a {@code Last-Modified} header.
+     */
+    public long getHeuristicDefaultLifetime() {
+        return heuristicDefaultLifetime;
+    }
+
+    @Override
+    protected CacheConfig clone() throws CloneNotSupportedException {
+        return (CacheConfig) super.clone();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("[maxObjectSize=").append(this.maxObjectSize)
+                .append(", maxCacheEntries=").append(this.maxCacheEntries)
+                .append(", sharedCache=").append(this.sharedCache)
+                .append(", heuristicCachingEnabled=").append(this.heuristicCachingEnabled)
+                .append(", heuristicCoefficient=").append(this.heuristicCoefficient)
+                .append(", heuristicDefaultLifetime=").append(this.heuristicDefaultLifetime)
+                .append("]");
+        return builder.toString();
+    }
+
+    public static CacheConfig.Builder custom() {
+        return new Builder();
+    }
+
+    public static CacheConfig.Builder copy(final CacheConfig config) {
+        Args.notNull(config, "Cache config");
+        return new Builder()
+            .setMaxObjectSize(config.getMaxObjectSize())
+            .setMaxCacheEntries(config.getMaxCacheEntries())
+            .setSharedCache(config.isSharedCache())
+            .setHeuristicCachingEnabled(config.isHeuristicCachingEnabled())
+            .setHeuristicCoefficient(config.getHeuristicCoefficient())
+            .setHeuristicDefaultLifetime(config.getHeuristicDefaultLifetime());
+    }
+
+    public static class Builder {
+
+        private long maxObjectSize;
+        private int maxCacheEntries;
+        private boolean sharedCache;
+        private boolean heuristicCachingEnabled;
+        private float heuristicCoefficient;
+        private long heuristicDefaultLifetime;
+
+        Builder() {
+            this.maxObjectSize = DEFAULT_MAX_OBJECT_SIZE;
+            this.maxCacheEntries = DEFAULT_MAX_CACHE_ENTRIES;
+            this.sharedCache = true;
+            this.heuristicCachingEnabled = false;
+            this.heuristicCoefficient = DEFAULT_HEURISTIC_COEFFICIENT;
+            this.heuristicDefaultLifetime = 0;
+        }
+
+        public Builder setMaxObjectSize(final long maxObjectSize) {
+            this.maxObjectSize = maxObjectSize;
+            return this;
+        }
+
+        public Builder setMaxCacheEntries(final int maxCacheEntries) {
+            this.maxCacheEntries = maxCacheEntries;
+            return this;
+        }
+
+        public Builder setSharedCache(final boolean sharedCache) {
+            this.sharedCache = sharedCache;
+            return this;
+        }
+
+        public Builder setHeuristicCachingEnabled(final boolean heuristicCachingEnabled) {
+            this.heuristicCachingEnabled = heuristicCachingEnabled;
+            return this;
+        }
+
+        public Builder setHeuristicCoefficient(final float heuristicCoefficient) {
+            this.heuristicCoefficient = heuristicCoefficient;
+            return this;
+        }
+
+        /**
+         * @param heuristicDefaultLifetime lifetime in seconds.
+         */
+        public Builder setHeuristicDefaultLifetime(final long heuristicDefaultLifetime) {
+            this.heuristicDefaultLifetime = heuristicDefaultLifetime;
+            return this;
+        }
+
+        public CacheConfig build() {
+            return new CacheConfig(
+                    maxObjectSize,
+                    maxCacheEntries,
+                    sharedCache,
+                    heuristicCachingEnabled,
+                    heuristicCoefficient,
+                    heuristicDefaultLifetime);
+        }
+
+    }
+
+}
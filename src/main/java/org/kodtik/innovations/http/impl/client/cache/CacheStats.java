@@ -0,0 +1,100 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.client.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+
+/**
+ * Counters of the outcomes of requests executed by a {@link CachingExec}.
+ * <p>
+ * An instance can be passed to
+ * {@link CachingHttpClientBuilder#setCacheStats(CacheStats)} in order to
+ * observe the cache of the client built, and may be shared by several
+ * clients to aggregate their counts.
+ * </p>
+ *
+ * @since 4.5.15
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public final class CacheStats {
+
+    private final AtomicLong cacheHits;
+    private final AtomicLong cacheMisses;
+    private final AtomicLong cacheUpdates;
+
+    public CacheStats() {
+        super();
+        this.cacheHits = new AtomicLong();
+        this.cacheMisses = new AtomicLong();
+        this.cacheUpdates = new AtomicLong();
+    }
+
+    /**
+     * Returns the number of responses served from the cache without
+     * contacting the origin server.
+     */
+    public long getCacheHits() {
+        return this.cacheHits.get();
+    }
+
+    /**
+     * Returns the number of responses obtained from the origin server.
+     */
+    public long getCacheMisses() {
+        return this.cacheMisses.get();
+    }
+
+    /**
+     * Returns the number of cache entries successfully revalidated with
+     * the origin server.
+     */
+    public long getCacheUpdates() {
+        return this.cacheUpdates.get();
+    }
+
+    void recordHit() {
+        this.cacheHits.incrementAndGet();
+    }
+
+    void recordMiss() {
+        this.cacheMisses.incrementAndGet();
+    }
+
+    void recordUpdate() {
+        this.cacheUpdates.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "[hits: " + getCacheHits() + "; misses: " + getCacheMisses()
+                + "; updates: " + getCacheUpdates() + "]";
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.client.cache;
+
+import org.kodtik.innovations.http.Header;
+import org.kodtik.innovations.http.HeaderElement;
+import org.kodtik.innovations.http.HttpMessage;
+import org.kodtik.innovations.http.ParseException;
+import org.kodtik.innovations.http.client.cache.HttpCacheEntry;
+import org.kodtik.innovations.http.client.utils.DateUtils;
+
+/**
+ * Computes age and freshness of cache entries as defined by RFC 7234, section 4.2.
+ */
+class CacheValidityPolicy {
+
+    /** Value of a directive that is present without an argument. */
+    static final long NO_ARGUMENT = Long.MAX_VALUE;
+
+    private final CacheConfig config;
+
+    CacheValidityPolicy(final CacheConfig config) {
+        super();
+        this.config = config;
+    }
+
+    /**
+     * Returns the argument of the given {@code Cache-Control} directive in seconds,
+     * {@link #NO_ARGUMENT} if the directive has no argument or {@code -1} if
+     * the directive is absent. Malformed arguments are treated as zero.
+     */
+    static long getDirective(final Header[] headers, final String directive) {
+        for (final Header header : headers) {
+            final HeaderElement[] elements;
+            try {
+                elements = header.getElements();
+            } catch (final ParseException ex) {
+                continue;
+            }
+            for (final HeaderElement element : elements) {
+                if (directive.equalsIgnoreCase(element.getName())) {
+                    final String value = element.getValue();
+                    if (value == null) {
+                        return NO_ARGUMENT;
+                    }
+                    try {
+                        final long n = Long.parseLong(value.trim());
+                        return n >= 0 ? n : 0;
+                    } catch (final NumberFormatException ex) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    static long getDirective(final HttpMessage message, final String directive) {
+        return getDirective(message.getHeaders("Cache-Control"), directive);
+    }
+
+    static long getDirective(final HttpCacheEntry entry, final String directive) {
+        return getDirective(entry.getHeaders("Cache-Control"), directive);
+    }
+
+    static boolean hasDirective(final HttpCacheEntry entry, final String directive) {
+        return getDirective(entry, directive) != -1;
+    }
+
+    /**
+     * Returns the value of the {@code Date} header in milliseconds or, if absent
+     * or invalid, the time the response was received.
+     */
+    static long getDate(final HttpCacheEntry entry) {
+        final Header date = entry.getFirstHeader("Date");
+        final long value = date != null ? DateUtils.parseDateMillis(date.getValue(), Long.MIN_VALUE) : Long.MIN_VALUE;
+        return value != Long.MIN_VALUE ? value : entry.getResponseDate();
+    }
+
+    /**
+     * Returns the current age of the entry in seconds.
+     */
+    long getCurrentAge(final HttpCacheEntry entry, final long now) {
+        final long apparentAge = Math.max(0, entry.getResponseDate() - getDate(entry)) / 1000;
+        long ageValue = 0;
+        final Header age = entry.getFirstHeader("Age");
+        if (age != null) {
+            try {
+                ageValue = Math.max(0, Long.parseLong(age.getValue().trim()));
+            } catch (final NumberFormatException ex) {
+                // an invalid Age renders the response stale
+                ageValue = Integer.MAX_VALUE;
+            }
+        }
+        final long responseDelay = Math.max(0, entry.getResponseDate() - entry.getRequestDate()) / 1000;
+        final long correctedInitialAge = Math.max(apparentAge, ageValue + responseDelay);
+        final long residentTime = Math.max(0, now - entry.getResponseDate()) / 1000;
+        return correctedInitialAge + residentTime;
+    }
+
+    /**
+     * Returns {@code true} if the status code of the entry permits
+     * heuristic freshness (RFC 7231, section 6.1).
+     */
+    static boolean isHeuristicallyCacheable(final int status) {
+        switch (status) {
+            case 200:
+            case 203:
+            case 204:
+            case 300:
+            case 301:
+            case 308:
+            case 404:
+            case 405:
+            case 410:
+            case 414:
+            case 501:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the entry carries explicit freshness information.
+     */
+    boolean hasExplicitFreshness(final HttpCacheEntry entry) {
+        return entry.getFirstHeader("Expires") != null
+                || hasDirective(entry, "max-age")
+                || (this.config.isSharedCache() && hasDirective(entry, "s-maxage"));
+    }
+
+    /**
+     * Returns the freshness lifetime of the entry in seconds.
+     */
+    long getFreshnessLifetime(final HttpCacheEntry entry) {
+        if (this.config.isSharedCache()) {
+            final long sMaxAge = getDirective(entry, "s-maxage");
+            if (sMaxAge >= 0 && sMaxAge != NO_ARGUMENT) {
+                return sMaxAge;
+            }
+        }
+        final long maxAge = getDirective(entry, "max-age");
+        if (maxAge >= 0 && maxAge != NO_ARGUMENT) {
+            return maxAge;
+        }
+        final Header expires = entry.getFirstHeader("Expires");
+        if (expires != null) {
+            final long value = DateUtils.parseDateMillis(expires.getValue(), Long.MIN_VALUE);
+            // invalid dates such as "0" mean already expired
+            return value != Long.MIN_VALUE ? Math.max(0, value - getDate(entry)) / 1000 : 0;
+        }
+        if (this.config.isHeuristicCachingEnabled() && isHeuristicallyCacheable(entry.getStatusCode())) {
+            final Header lastModified = entry.getFirstHeader("Last-Modified");
+            if (lastModified != null) {
+                final long value = DateUtils.parseDateMillis(lastModified.getValue(), Long.MIN_VALUE);
+                final long date = getDate(entry);
+                if (value != Long.MIN_VALUE && date > value) {
+                    return (long) (this.config.getHeuristicCoefficient() * (date - value)) / 1000;
+                }
+            }
+            return this.config.getHeuristicDefaultLifetime();
+        }
+        return 0;
+    }
+
+    /**
+     * Returns {@code true} if the entry may only be used once revalidated
+     * when it is stale, regardless of request directives.
+     */
+    boolean mustRevalidate(final HttpCacheEntry entry) {
+        return hasDirective(entry, "must-revalidate")
+                || (this.config.isSharedCache() && hasDirective(entry, "proxy-revalidate"));
+    }
+
+    /**
+     * Returns {@code true} if the entry can be served without revalidation in
+     * response to a request with the given {@code Cache-Control} directives.
+     */
+    boolean isSuitable(final HttpCacheEntry entry, final Header[] requestCacheControl, final long now) {
+        if (hasDirective(entry, "no-cache")) {
+            return false;
+        }
+        final long age = getCurrentAge(entry, now);
+        final long lifetime = getFreshnessLifetime(entry);
+        final long maxAge = getDirective(requestCacheControl, "max-age");
+        if (maxAge >= 0 && maxAge != NO_ARGUMENT && age > maxAge) {
+            return false;
+        }
+        final long minFresh = getDirective(requestCacheControl, "min-fresh");
+        if (minFresh >= 0 && minFresh != NO_ARGUMENT && lifetime - age < minFresh) {
+            return false;
+        }
+        if (age < lifetime) {
+            return true;
+        }
+        final long maxStale = getDirective(requestCacheControl, "max-stale");
+        return maxStale >= 0 && !mustRevalidate(entry) && age - lifetime <= maxStale;
+    }
+
+}
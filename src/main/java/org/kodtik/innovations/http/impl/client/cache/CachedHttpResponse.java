@@ -0,0 +1,56 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.client.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.kodtik.innovations.http.HttpEntity;
+import org.kodtik.innovations.http.StatusLine;
+import org.kodtik.innovations.http.client.methods.CloseableHttpResponse;
+import org.kodtik.innovations.http.message.BasicHttpResponse;
+
+/**
+ * Response served by the cache. Closing it closes the content stream,
+ * if any.
+ */
+class CachedHttpResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+    CachedHttpResponse(final StatusLine statusline) {
+        super(statusline);
+    }
+
+    @Override
+    public void close() throws IOException {
+        final HttpEntity entity = getEntity();
+        if (entity != null && entity.isStreaming()) {
+            final InputStream inStream = entity.getContent();
+            inStream.close();
+        }
+    }
+
+}
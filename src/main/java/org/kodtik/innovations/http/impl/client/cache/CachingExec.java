@@ -0,0 +1,655 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.client.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.kodtik.innovations.http.Header;
+import org.kodtik.innovations.http.HeaderElement;
+import org.kodtik.innovations.http.HttpEntity;
+import org.kodtik.innovations.http.HttpException;
+import org.kodtik.innovations.http.HttpHost;
+import org.kodtik.innovations.http.HttpResponse;
+import org.kodtik.innovations.http.HttpStatus;
+import org.kodtik.innovations.http.ParseException;
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+import org.kodtik.innovations.http.client.cache.CacheResponseStatus;
+import org.kodtik.innovations.http.client.cache.HttpCacheEntry;
+import org.kodtik.innovations.http.client.cache.HttpCacheStorage;
+import org.kodtik.innovations.http.client.cache.Resource;
+import org.kodtik.innovations.http.client.methods.CloseableHttpResponse;
+import org.kodtik.innovations.http.client.methods.HttpExecutionAware;
+import org.kodtik.innovations.http.client.methods.HttpRequestWrapper;
+import org.kodtik.innovations.http.client.protocol.HttpClientContext;
+import org.kodtik.innovations.http.conn.routing.HttpRoute;
+import org.kodtik.innovations.http.entity.BasicHttpEntity;
+import org.kodtik.innovations.http.impl.execchain.ClientExecChain;
+import org.kodtik.innovations.http.message.BasicHeader;
+import org.kodtik.innovations.http.util.Args;
+import org.kodtik.innovations.http.util.ByteArrayBuffer;
+
+/**
+ * Request executor in the request execution chain that serves {@code GET}
+ * and {@code HEAD} requests from an {@link HttpCacheStorage} as defined by
+ * RFC 7234.
+ * <p>
+ * Fresh entries are served without contacting the origin server. Stale
+ * entries carrying an {@code ETag} or {@code Last-Modified} validator are
+ * revalidated with a conditional request. Freshness is computed from the
+ * {@code Cache-Control}, {@code Expires}, {@code Date} and {@code Age}
+ * response headers and, if enabled, heuristically from {@code Last-Modified}.
+ * Responses with a {@code Vary} header are stored per variant of the
+ * nominated request headers. Successful responses to unsafe methods
+ * invalidate the entries of the request URI and of the
+ * {@code Location} / {@code Content-Location} URIs on the same host.
+ * </p>
+ * <p>
+ * The outcome of each request is stored in the execution context under
+ * {@link #CACHE_RESPONSE_STATUS}. Errors of the cache storage are logged
+ * and otherwise ignored.
+ * </p>
+ *
+ * @since 4.5.15
+ */
+@Contract(threading = ThreadingBehavior.SAFE_CONDITIONAL)
+public class CachingExec implements ClientExecChain {
+
+    /**
+     * Context attribute holding the {@link CacheResponseStatus} of the last request.
+     */
+    public static final String CACHE_RESPONSE_STATUS = "http.cache.response.status";
+
+    private static final String[] HOP_BY_HOP_HEADERS = {
+        "Connection", "Keep-Alive", "Proxy-Connection", "Proxy-Authenticate",
+        "TE", "Trailer", "Transfer-Encoding", "Upgrade" };
+
+    private static final String[] NOT_UPDATED_HEADERS = {
+        "Content-Length", "Content-Encoding", "Content-Type", "Content-Range" };
+
+    private static final String[] CONDITIONAL_HEADERS = {
+        "If-Match", "If-None-Match", "If-Modified-Since", "If-Unmodified-Since", "If-Range", "Range" };
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final ClientExecChain backend;
+    private final HttpCacheStorage storage;
+    private final CacheConfig config;
+    private final CacheValidityPolicy validityPolicy;
+    private final CacheStats stats;
+
+    /**
+     * @param backend the next executor in the request execution chain.
+     * @param storage the cache storage.
+     * @param config the cache configuration, or {@code null} for the default.
+     * @param stats the counters to update, or {@code null} to use counters
+     *   of its own.
+     */
+    public CachingExec(
+            final ClientExecChain backend,
+            final HttpCacheStorage storage,
+            final CacheConfig config,
+            final CacheStats stats) {
+        super();
+        this.backend = Args.notNull(backend, "HTTP request executor");
+        this.storage = Args.notNull(storage, "Cache storage");
+        this.config = config != null ? config : CacheConfig.DEFAULT;
+        this.validityPolicy = new CacheValidityPolicy(this.config);
+        this.stats = stats != null ? stats : new CacheStats();
+    }
+
+    public CachingExec(
+            final ClientExecChain backend,
+            final HttpCacheStorage storage,
+            final CacheConfig config) {
+        this(backend, storage, config, null);
+    }
+
+    public CachingExec(final ClientExecChain backend, final CacheConfig config) {
+        this(backend, new BasicHttpCacheStorage(config), config);
+    }
+
+    /**
+     * Returns the counters updated by this executor.
+     */
+    public CacheStats getCacheStats() {
+        return this.stats;
+    }
+
+    /**
+     * Returns the number of responses served from the cache without
+     * contacting the origin server.
+     */
+    public long getCacheHits() {
+        return this.stats.getCacheHits();
+    }
+
+    /**
+     * Returns the number of responses obtained from the origin server.
+     */
+    public long getCacheMisses() {
+        return this.stats.getCacheMisses();
+    }
+
+    /**
+     * Returns the number of cache entries successfully revalidated with
+     * the origin server.
+     */
+    public long getCacheUpdates() {
+        return this.stats.getCacheUpdates();
+    }
+
+    @Override
+    public CloseableHttpResponse execute(
+            final HttpRoute route,
+            final HttpRequestWrapper request,
+            final HttpClientContext context,
+            final HttpExecutionAware execAware) throws IOException, HttpException {
+        final String method = request.getRequestLine().getMethod();
+        final boolean head = "HEAD".equalsIgnoreCase(method);
+        if (!head && !"GET".equalsIgnoreCase(method)) {
+            final CloseableHttpResponse response = callBackend(route, request, context, execAware);
+            if (!isSafeMethod(method)) {
+                invalidate(route, request, response);
+            }
+            return response;
+        }
+        final Header[] requestCacheControl = request.getHeaders("Cache-Control");
+        if (CacheValidityPolicy.getDirective(requestCacheControl, "no-store") != -1
+                || containsAny(request, CONDITIONAL_HEADERS)) {
+            return callBackend(route, request, context, execAware);
+        }
+        final String key = getKey(route.getTargetHost(), request);
+        final HttpCacheEntry entry = lookup(key, request);
+        if (entry == null) {
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Cache miss: " + key);
+            }
+            return fetch(route, request, context, execAware, key, !head);
+        }
+        final long now = System.currentTimeMillis();
+        final boolean noCache = CacheValidityPolicy.getDirective(requestCacheControl, "no-cache") != -1
+                || (requestCacheControl.length == 0 && isPragmaNoCache(request));
+        if (!noCache && this.validityPolicy.isSuitable(entry, requestCacheControl, now)) {
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Cache hit: " + key);
+            }
+            this.stats.recordHit();
+            context.setAttribute(CACHE_RESPONSE_STATUS, CacheResponseStatus.CACHE_HIT);
+            return generateResponse(entry, head, now);
+        }
+        if (!head && (entry.getFirstHeader("ETag") != null || entry.getFirstHeader("Last-Modified") != null)) {
+            return revalidate(route, request, context, execAware, key, entry);
+        }
+        return fetch(route, request, context, execAware, key, !head);
+    }
+
+    private CloseableHttpResponse callBackend(
+            final HttpRoute route,
+            final HttpRequestWrapper request,
+            final HttpClientContext context,
+            final HttpExecutionAware execAware) throws IOException, HttpException {
+        this.stats.recordMiss();
+        context.setAttribute(CACHE_RESPONSE_STATUS, CacheResponseStatus.CACHE_MISS);
+        return this.backend.execute(route, request, context, execAware);
+    }
+
+    private CloseableHttpResponse fetch(
+            final HttpRoute route,
+            final HttpRequestWrapper request,
+            final HttpClientContext context,
+            final HttpExecutionAware execAware,
+            final String key,
+            final boolean store) throws IOException, HttpException {
+        final long requestDate = System.currentTimeMillis();
+        final CloseableHttpResponse response = callBackend(route, request, context, execAware);
+        final long responseDate = System.currentTimeMillis();
+        return store ? handleBackendResponse(key, request, request, response, requestDate, responseDate) : response;
+    }
+
+    private CloseableHttpResponse revalidate(
+            final HttpRoute route,
+            final HttpRequestWrapper request,
+            final HttpClientContext context,
+            final HttpExecutionAware execAware,
+            final String key,
+            final HttpCacheEntry entry) throws IOException, HttpException {
+        final HttpRequestWrapper conditional = HttpRequestWrapper.wrap(request, request.getTarget());
+        final Header etag = entry.getFirstHeader("ETag");
+        if (etag != null) {
+            conditional.setHeader("If-None-Match", etag.getValue());
+        }
+        final Header lastModified = entry.getFirstHeader("Last-Modified");
+        if (lastModified != null) {
+            conditional.setHeader("If-Modified-Since", lastModified.getValue());
+        }
+        final long requestDate = System.currentTimeMillis();
+        final CloseableHttpResponse response = this.backend.execute(route, conditional, context, execAware);
+        final long responseDate = System.currentTimeMillis();
+        if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+            response.close();
+            final HttpCacheEntry updated = updateEntry(entry, response, requestDate, responseDate);
+            storeEntry(key, request, updated);
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Cache entry revalidated: " + key);
+            }
+            this.stats.recordUpdate();
+            context.setAttribute(CACHE_RESPONSE_STATUS, CacheResponseStatus.VALIDATED);
+            return generateResponse(updated, false, responseDate);
+        }
+        this.stats.recordMiss();
+        context.setAttribute(CACHE_RESPONSE_STATUS, CacheResponseStatus.CACHE_MISS);
+        // The conditional request is the one authentication headers got added to
+        return handleBackendResponse(key, request, conditional, response, requestDate, responseDate);
+    }
+
+    private CloseableHttpResponse handleBackendResponse(
+            final String key,
+            final HttpRequestWrapper request,
+            final HttpRequestWrapper sent,
+            final CloseableHttpResponse response,
+            final long requestDate,
+            final long responseDate) throws IOException {
+        if (!isResponseCacheable(sent, response)) {
+            return response;
+        }
+        Resource resource = null;
+        final HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            final long maxObjectSize = this.config.getMaxObjectSize();
+            final InputStream inStream = entity.getContent();
+            final long len = entity.getContentLength();
+            final ByteArrayBuffer buffer = new ByteArrayBuffer(len >= 0 ? (int) len : 1024);
+            try {
+                final byte[] tmp = new byte[4096];
+                int l;
+                while ((l = inStream.read(tmp)) != -1) {
+                    buffer.append(tmp, 0, l);
+                    if (buffer.length() > maxObjectSize) {
+                        // pass the response through, replaying what has been read
+                        final BasicHttpEntity replay = new BasicHttpEntity();
+                        replay.setContent(new SequenceInputStream(
+                                new ByteArrayInputStream(buffer.buffer(), 0, buffer.length()), inStream));
+                        replay.setContentLength(len);
+                        replay.setContentType(entity.getContentType());
+                        replay.setContentEncoding(entity.getContentEncoding());
+                        replay.setChunked(entity.isChunked());
+                        response.setEntity(replay);
+                        return response;
+                    }
+                }
+            } catch (final IOException ex) {
+                response.close();
+                throw ex;
+            } catch (final RuntimeException ex) {
+                response.close();
+                throw ex;
+            }
+            resource = new HeapResource(buffer.buffer(), buffer.length());
+        }
+        response.close();
+        final HttpCacheEntry entry = new HttpCacheEntry(
+                requestDate, responseDate, response.getStatusLine(), getStoredHeaders(response, resource), resource);
+        storeEntry(key, request, entry);
+        return generateResponse(entry, false, -1);
+    }
+
+    private static Header[] getStoredHeaders(final HttpResponse response, final Resource resource) {
+        final List<Header> headers = new ArrayList<Header>();
+        for (final Header header : response.getAllHeaders()) {
+            if (!isHopByHop(header.getName()) && !"Content-Length".equalsIgnoreCase(header.getName())) {
+                headers.add(header);
+            }
+        }
+        if (resource != null) {
+            headers.add(new BasicHeader(
+                    "Content-Length", Long.toString(resource.length())));
+        }
+        return headers.toArray(new Header[headers.size()]);
+    }
+
+    private static boolean isHopByHop(final String name) {
+        for (final String hopByHop : HOP_BY_HOP_HEADERS) {
+            if (hopByHop.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merges the headers of a {@code 304 Not Modified} response into the entry
+     * as described by RFC 7234, section 4.3.4.
+     */
+    private static HttpCacheEntry updateEntry(
+            final HttpCacheEntry entry,
+            final HttpResponse response,
+            final long requestDate,
+            final long responseDate) {
+        final List<Header> headers = new ArrayList<Header>();
+        final Header[] updates = response.getAllHeaders();
+        for (final Header header : entry.getAllHeaders()) {
+            boolean replaced = false;
+            for (final Header update : updates) {
+                if (update.getName().equalsIgnoreCase(header.getName()) && isUpdatable(update.getName())) {
+                    replaced = true;
+                    break;
+                }
+            }
+            if (!replaced) {
+                headers.add(header);
+            }
+        }
+        for (final Header update : updates) {
+            if (isUpdatable(update.getName())) {
+                headers.add(update);
+            }
+        }
+        return new HttpCacheEntry(requestDate, responseDate, entry.getStatusLine(),
+                headers.toArray(new Header[headers.size()]), entry.getResource());
+    }
+
+    private static boolean isUpdatable(final String name) {
+        if (isHopByHop(name)) {
+            return false;
+        }
+        for (final String notUpdated : NOT_UPDATED_HEADERS) {
+            if (notUpdated.equalsIgnoreCase(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private CloseableHttpResponse generateResponse(final HttpCacheEntry entry, final boolean head, final long now) {
+        final CachedHttpResponse response = new CachedHttpResponse(entry.getStatusLine());
+        response.setHeaders(entry.getAllHeaders());
+        if (now >= 0) {
+            final long age = this.validityPolicy.getCurrentAge(entry, now);
+            response.setHeader("Age", Long.toString(Math.min(age, Integer.MAX_VALUE)));
+        }
+        final Resource resource = entry.getResource();
+        if (resource != null && !head) {
+            final BasicHttpEntity entity = new BasicHttpEntity();
+            try {
+                entity.setContent(resource.getInputStream());
+            } catch (final IOException ex) {
+                throw new IllegalStateException("Cached content is not accessible", ex);
+            }
+            entity.setContentLength(resource.length());
+            entity.setContentType(entry.getFirstHeader("Content-Type"));
+            entity.setContentEncoding(entry.getFirstHeader("Content-Encoding"));
+            response.setEntity(entity);
+        }
+        return response;
+    }
+
+    boolean isResponseCacheable(final HttpRequestWrapper request, final HttpResponse response) {
+        final int status = response.getStatusLine().getStatusCode();
+        if (status < 200 || status == HttpStatus.SC_PARTIAL_CONTENT || status == HttpStatus.SC_NOT_MODIFIED) {
+            return false;
+        }
+        final Header[] cacheControl = response.getHeaders("Cache-Control");
+        if (CacheValidityPolicy.getDirective(cacheControl, "no-store") != -1) {
+            return false;
+        }
+        final boolean shared = this.config.isSharedCache();
+        if (shared && CacheValidityPolicy.getDirective(cacheControl, "private") != -1) {
+            return false;
+        }
+        if (shared && request.containsHeader("Authorization")
+                && CacheValidityPolicy.getDirective(cacheControl, "public") == -1
+                && CacheValidityPolicy.getDirective(cacheControl, "s-maxage") == -1
+                && CacheValidityPolicy.getDirective(cacheControl, "must-revalidate") == -1) {
+            return false;
+        }
+        if (getVaryNames(response.getHeaders("Vary")) == null) {
+            return false;
+        }
+        final Header contentLength = response.getFirstHeader("Content-Length");
+        if (contentLength != null) {
+            try {
+                if (Long.parseLong(contentLength.getValue().trim()) > this.config.getMaxObjectSize()) {
+                    return false;
+                }
+            } catch (final NumberFormatException ignore) {
+                return false;
+            }
+        }
+        final boolean explicit = response.containsHeader("Expires")
+                || CacheValidityPolicy.getDirective(cacheControl, "max-age") != -1
+                || (shared && CacheValidityPolicy.getDirective(cacheControl, "s-maxage") != -1);
+        if (explicit) {
+            return status < 300 || CacheValidityPolicy.isHeuristicallyCacheable(status)
+                    || status == HttpStatus.SC_MOVED_TEMPORARILY || status == HttpStatus.SC_TEMPORARY_REDIRECT;
+        }
+        if (!CacheValidityPolicy.isHeuristicallyCacheable(status)) {
+            return false;
+        }
+        return this.config.isHeuristicCachingEnabled()
+                || response.containsHeader("ETag") || response.containsHeader("Last-Modified");
+    }
+
+    private HttpCacheEntry lookup(final String key, final HttpRequestWrapper request) {
+        try {
+            final HttpCacheEntry root = this.storage.getEntry(key);
+            if (root == null || !root.hasVariants()) {
+                return root;
+            }
+            final String variantKey = getVariantKey(key, root, request);
+            return variantKey != null ? this.storage.getEntry(variantKey) : null;
+        } catch (final IOException ex) {
+            this.log.warn("Unable to retrieve cache entry " + key, ex);
+            return null;
+        }
+    }
+
+    private void storeEntry(final String key, final HttpRequestWrapper request, final HttpCacheEntry entry) {
+        try {
+            if (entry.hasVariants()) {
+                final String variantKey = getVariantKey(key, entry, request);
+                if (variantKey == null) {
+                    return;
+                }
+                this.storage.putEntry(variantKey, entry);
+            }
+            this.storage.putEntry(key, entry);
+        } catch (final IOException ex) {
+            this.log.warn("Unable to store cache entry " + key, ex);
+        }
+    }
+
+    private void invalidate(final HttpRoute route, final HttpRequestWrapper request, final HttpResponse response) {
+        final int status = response.getStatusLine().getStatusCode();
+        if (status < 200 || status >= 400) {
+            return;
+        }
+        final String key = getKey(route.getTargetHost(), request);
+        final String prefix = key.substring(0, key.indexOf('/', key.indexOf("//") + 2));
+        removeEntry(key);
+        for (final String name : new String[] { "Location", "Content-Location" }) {
+            final Header header = response.getFirstHeader(name);
+            if (header != null) {
+                final String location = getKey(route.getTargetHost(), resolve(request, header.getValue()));
+                // only invalidate entries of the same origin
+                if (location.startsWith(prefix + "/")) {
+                    removeEntry(location);
+                }
+            }
+        }
+    }
+
+    private void removeEntry(final String key) {
+        try {
+            this.storage.removeEntry(key);
+        } catch (final IOException ex) {
+            this.log.warn("Unable to remove cache entry " + key, ex);
+        }
+    }
+
+    private static String resolve(final HttpRequestWrapper request, final String location) {
+        try {
+            final URI base = new URI(getRequestUri(request));
+            return base.resolve(location).toString();
+        } catch (final URISyntaxException ex) {
+            return location;
+        } catch (final IllegalArgumentException ex) {
+            return location;
+        }
+    }
+
+    private static String getRequestUri(final HttpRequestWrapper request) {
+        final URI uri = request.getURI();
+        return uri != null ? uri.toString() : request.getRequestLine().getUri();
+    }
+
+    static String getKey(final HttpHost target, final HttpRequestWrapper request) {
+        return getKey(target, getRequestUri(request));
+    }
+
+    /**
+     * Returns the cache key of the given request URI: the lower case scheme
+     * and host, the explicit port, the raw path and the raw query.
+     */
+    static String getKey(final HttpHost target, final String requestUri) {
+        String scheme = target.getSchemeName();
+        String host = target.getHostName();
+        int port = target.getPort();
+        String path = requestUri;
+        String query = null;
+        try {
+            final URI uri = new URI(requestUri);
+            if (uri.isAbsolute() && uri.getHost() != null) {
+                scheme = uri.getScheme();
+                host = uri.getHost();
+                port = uri.getPort();
+            }
+            path = uri.getRawPath();
+            query = uri.getRawQuery();
+        } catch (final URISyntaxException ignore) {
+            // use the request URI as is
+        }
+        if (port < 0) {
+            port = "https".equalsIgnoreCase(scheme) ? 443 : 80;
+        }
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append(scheme.toLowerCase(Locale.ROOT)).append("://");
+        buffer.append(host.toLowerCase(Locale.ROOT)).append(':').append(port);
+        buffer.append(path == null || path.isEmpty() ? "/" : path);
+        if (query != null) {
+            buffer.append('?').append(query);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Returns the sorted, lower case header names of the given {@code Vary}
+     * headers or {@code null} if the response varies on {@code *}.
+     */
+    private static List<String> getVaryNames(final Header[] varyHeaders) {
+        final List<String> names = new ArrayList<String>();
+        for (final Header header : varyHeaders) {
+            final HeaderElement[] elements;
+            try {
+                elements = header.getElements();
+            } catch (final ParseException ex) {
+                return null;
+            }
+            for (final HeaderElement element : elements) {
+                final String name = element.getName().trim().toLowerCase(Locale.ROOT);
+                if ("*".equals(name)) {
+                    return null;
+                }
+                if (!name.isEmpty() && !names.contains(name)) {
+                    names.add(name);
+                }
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Returns the key of the variant of the entry selected by the request
+     * or {@code null} if the entry cannot be selected.
+     */
+    private static String getVariantKey(
+            final String key, final HttpCacheEntry entry, final HttpRequestWrapper request) {
+        final List<String> names = getVaryNames(entry.getHeaders("Vary"));
+        if (names == null) {
+            return null;
+        }
+        final StringBuilder buffer = new StringBuilder("{");
+        for (final String name : names) {
+            final StringBuilder value = new StringBuilder();
+            for (final Header header : request.getHeaders(name)) {
+                if (value.length() > 0) {
+                    value.append(", ");
+                }
+                value.append(header.getValue().trim());
+            }
+            // length prefixed so that values cannot be confused with separators
+            buffer.append(name).append('=').append(value.length()).append(':').append(value).append(';');
+        }
+        buffer.append('}').append(key);
+        return buffer.toString();
+    }
+
+    private static boolean containsAny(final HttpRequestWrapper request, final String[] names) {
+        for (final String name : names) {
+            if (request.containsHeader(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPragmaNoCache(final HttpRequestWrapper request) {
+        for (final Header header : request.getHeaders("Pragma")) {
+            if (header.getValue() != null && header.getValue().toLowerCase(Locale.ROOT).contains("no-cache")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSafeMethod(final String method) {
+        return "OPTIONS".equalsIgnoreCase(method) || "TRACE".equalsIgnoreCase(method);
+    }
+
+}
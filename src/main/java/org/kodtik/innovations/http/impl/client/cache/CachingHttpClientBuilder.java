@@ -0,0 +1,109 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.client.cache;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.kodtik.innovations.http.client.cache.HttpCacheStorage;
+import org.kodtik.innovations.http.impl.client.HttpClientBuilder;
+import org.kodtik.innovations.http.impl.execchain.ClientExecChain;
+
+/**
+ * Builder for {@link org.kodtik.innovations.http.impl.client.CloseableHttpClient}
+ * instances capable of client-side caching.
+ * <p>
+ * The caching stage sits in front of the main request executor, so requests
+ * are looked up in the cache after protocol interceptors have been applied
+ * and cached responses still pass through response interceptors such as
+ * content decompression.
+ * </p>
+ *
+ * @since 4.5.15
+ */
+public class CachingHttpClientBuilder extends HttpClientBuilder {
+
+    private HttpCacheStorage storage;
+    private File cacheDir;
+    private CacheConfig cacheConfig;
+    private CacheStats cacheStats;
+
+    public static CachingHttpClientBuilder create() {
+        return new CachingHttpClientBuilder();
+    }
+
+    protected CachingHttpClientBuilder() {
+        super();
+    }
+
+    public final CachingHttpClientBuilder setHttpCacheStorage(final HttpCacheStorage storage) {
+        this.storage = storage;
+        return this;
+    }
+
+    /**
+     * Makes the cache keep its entries in memory-mapped files in the given
+     * directory. Ignored if a storage is set with {@link #setHttpCacheStorage(HttpCacheStorage)}.
+     */
+    public final CachingHttpClientBuilder setCacheDir(final File cacheDir) {
+        this.cacheDir = cacheDir;
+        return this;
+    }
+
+    public final CachingHttpClientBuilder setCacheConfig(final CacheConfig cacheConfig) {
+        this.cacheConfig = cacheConfig;
+        return this;
+    }
+
+    /**
+     * Assigns {@link CacheStats} instance to be updated with the outcome of
+     * requests executed by the client built.
+     */
+    public final CachingHttpClientBuilder setCacheStats(final CacheStats cacheStats) {
+        this.cacheStats = cacheStats;
+        return this;
+    }
+
+    @Override
+    protected ClientExecChain decorateMainExec(final ClientExecChain mainExec) {
+        final CacheConfig config = this.cacheConfig != null ? this.cacheConfig : CacheConfig.DEFAULT;
+        HttpCacheStorage storageCopy = this.storage;
+        if (storageCopy == null) {
+            if (this.cacheDir != null) {
+                try {
+                    storageCopy = new FileHttpCacheStorage(this.cacheDir, config);
+                } catch (final IOException ex) {
+                    throw new IllegalStateException("Unable to open cache directory " + this.cacheDir, ex);
+                }
+            } else {
+                storageCopy = new BasicHttpCacheStorage(config);
+            }
+        }
+        return new CachingExec(mainExec, storageCopy, config, this.cacheStats);
+    }
+
+}
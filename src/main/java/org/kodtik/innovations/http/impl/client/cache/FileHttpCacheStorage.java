@@ -0,0 +1,305 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.client.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.kodtik.innovations.http.Header;
+import org.kodtik.innovations.http.ProtocolVersion;
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+import org.kodtik.innovations.http.client.cache.HttpCacheEntry;
+import org.kodtik.innovations.http.client.cache.HttpCacheStorage;
+import org.kodtik.innovations.http.client.cache.Resource;
+import org.kodtik.innovations.http.message.BasicHeader;
+import org.kodtik.innovations.http.message.BasicStatusLine;
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * {@link HttpCacheStorage} that keeps every entry in a file of its own
+ * in the given directory. Entries are read back by memory-mapping their
+ * file, so cached bodies are served from the page cache without being
+ * copied into the Java heap.
+ * <p>
+ * The storage retains up to {@link CacheConfig#getMaxCacheEntries()} entries,
+ * evicting the least recently used one once the limit is exceeded. Entries
+ * found in the directory on construction are picked up again, in order of
+ * their last modification.
+ * </p>
+ * <p>
+ * Please note that on some platforms the file of an entry that is still
+ * mapped cannot be deleted until the mapping has been garbage collected.
+ * Such files are removed on a best effort basis.
+ * </p>
+ *
+ * @since 4.5.15
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public class FileHttpCacheStorage implements HttpCacheStorage {
+
+    private static final int MAGIC = 0x48434531;
+    private static final String SUFFIX = ".entry";
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final File dir;
+    private final Map<String, File> index;
+    private long fileSerial;
+
+    public FileHttpCacheStorage(final File dir, final CacheConfig config) throws IOException {
+        super();
+        this.dir = Args.notNull(dir, "Cache directory");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create cache directory " + dir);
+        }
+        final int maxEntries = (config != null ? config : CacheConfig.DEFAULT).getMaxCacheEntries();
+        this.index = new LinkedHashMap<String, File>(20, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, File> eldest) {
+                if (size() > maxEntries) {
+                    delete(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+
+        };
+        load();
+    }
+
+    private void load() {
+        final File[] files = this.dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        final List<File> entryFiles = new ArrayList<File>(files.length);
+        for (final File file : files) {
+            if (file.getName().endsWith(SUFFIX)) {
+                entryFiles.add(file);
+            }
+        }
+        final File[] sorted = entryFiles.toArray(new File[entryFiles.size()]);
+        Arrays.sort(sorted, new Comparator<File>() {
+
+            @Override
+            public int compare(final File f1, final File f2) {
+                final long m1 = f1.lastModified();
+                final long m2 = f2.lastModified();
+                return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+            }
+
+        });
+        for (final File file : sorted) {
+            try {
+                final DataInputStream in = new DataInputStream(new FileInputStream(file));
+                try {
+                    if (in.readInt() != MAGIC) {
+                        throw new IOException("Unknown cache file format");
+                    }
+                    final File previous = this.index.put(in.readUTF(), file);
+                    if (previous != null) {
+                        delete(previous);
+                    }
+                } finally {
+                    in.close();
+                }
+            } catch (final IOException ex) {
+                this.log.debug("Discarding invalid cache file " + file, ex);
+                delete(file);
+            }
+        }
+    }
+
+    private void delete(final File file) {
+        if (file.exists() && !file.delete()) {
+            this.log.debug("Unable to delete cache file " + file);
+            file.deleteOnExit();
+        }
+    }
+
+    @Override
+    public void putEntry(final String key, final HttpCacheEntry entry) throws IOException {
+        Args.notNull(key, "Key");
+        Args.notNull(entry, "Cache entry");
+        final File file;
+        synchronized (this) {
+            file = new File(this.dir,
+                    Long.toHexString(System.currentTimeMillis()) + "-" + Long.toHexString(this.fileSerial++) + SUFFIX);
+        }
+        final File tmp = new File(file.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        boolean written = false;
+        try {
+            out.writeInt(MAGIC);
+            out.writeUTF(key);
+            out.writeLong(entry.getRequestDate());
+            out.writeLong(entry.getResponseDate());
+            final ProtocolVersion version = entry.getProtocolVersion();
+            out.writeUTF(version.getProtocol());
+            out.writeInt(version.getMajor());
+            out.writeInt(version.getMinor());
+            out.writeInt(entry.getStatusCode());
+            final String reason = entry.getStatusLine().getReasonPhrase();
+            out.writeUTF(reason != null ? reason : "");
+            final Header[] headers = entry.getAllHeaders();
+            out.writeInt(headers.length);
+            for (final Header header : headers) {
+                out.writeUTF(header.getName());
+                out.writeUTF(header.getValue() != null ? header.getValue() : "");
+            }
+            final Resource resource = entry.getResource();
+            out.writeLong(resource != null ? resource.length() : -1);
+            if (resource != null) {
+                final InputStream in = resource.getInputStream();
+                try {
+                    final byte[] tmpBuf = new byte[4096];
+                    int l;
+                    while ((l = in.read(tmpBuf)) != -1) {
+                        out.write(tmpBuf, 0, l);
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+            out.close();
+            written = tmp.renameTo(file);
+            if (!written) {
+                throw new IOException("Unable to rename " + tmp + " to " + file);
+            }
+        } finally {
+            if (!written) {
+                out.close();
+                delete(tmp);
+            }
+        }
+        final File previous;
+        synchronized (this) {
+            previous = this.index.put(key, file);
+        }
+        if (previous != null) {
+            delete(previous);
+        }
+    }
+
+    @Override
+    public HttpCacheEntry getEntry(final String key) throws IOException {
+        final File file;
+        synchronized (this) {
+            file = this.index.get(key);
+        }
+        if (file == null) {
+            return null;
+        }
+        final MappedByteBuffer buffer;
+        try {
+            final RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                final FileChannel channel = raf.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                raf.close();
+            }
+        } catch (final IOException ex) {
+            // replaced or evicted concurrently
+            synchronized (this) {
+                if (this.index.get(key) == file) {
+                    this.index.remove(key);
+                }
+            }
+            return null;
+        }
+        final DataInputStream in = new DataInputStream(new MappedResource.ByteBufferInputStream(buffer));
+        if (in.readInt() != MAGIC || !key.equals(in.readUTF())) {
+            throw new IOException("Invalid cache file " + file);
+        }
+        final long requestDate = in.readLong();
+        final long responseDate = in.readLong();
+        final ProtocolVersion version = new ProtocolVersion(in.readUTF(), in.readInt(), in.readInt());
+        final int status = in.readInt();
+        final String reason = in.readUTF();
+        final int headerCount = in.readInt();
+        final Header[] headers = new Header[headerCount];
+        for (int i = 0; i < headerCount; i++) {
+            headers[i] = new BasicHeader(in.readUTF(), in.readUTF());
+        }
+        final long length = in.readLong();
+        final Resource resource;
+        if (length >= 0) {
+            if (length > buffer.remaining()) {
+                throw new IOException("Truncated cache file " + file);
+            }
+            final ByteBuffer body = buffer.slice();
+            body.limit((int) length);
+            resource = new MappedResource(body);
+        } else {
+            resource = null;
+        }
+        return new HttpCacheEntry(requestDate, responseDate,
+                new BasicStatusLine(version, status, reason.isEmpty() ? null : reason), headers, resource);
+    }
+
+    @Override
+    public void removeEntry(final String key) {
+        final File file;
+        synchronized (this) {
+            file = this.index.remove(key);
+        }
+        if (file != null) {
+            delete(file);
+        }
+    }
+
+    /**
+     * Returns the number of entries currently held.
+     */
+    public synchronized int size() {
+        return this.index.size();
+    }
+
+}
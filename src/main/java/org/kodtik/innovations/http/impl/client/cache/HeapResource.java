@@ -0,0 +1,73 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.client.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+import org.kodtik.innovations.http.client.cache.Resource;
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * Cache resource backed by a byte array on the heap.
+ *
+ * @since 4.5.15
+ */
+@Contract(threading = ThreadingBehavior.IMMUTABLE)
+public class HeapResource implements Resource {
+
+    private final byte[] b;
+    private final int len;
+
+    public HeapResource(final byte[] b, final int len) {
+        super();
+        this.b = Args.notNull(b, "Content");
+        Args.check(len >= 0 && len <= b.length, "Invalid length");
+        this.len = len;
+    }
+
+    public HeapResource(final byte[] b) {
+        this(b, b != null ? b.length : 0);
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(this.b, 0, this.len);
+    }
+
+    @Override
+    public long length() {
+        return this.len;
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+}
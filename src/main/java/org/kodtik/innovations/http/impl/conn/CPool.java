@@ -76,6 +76,16 @@ class CPool extends AbstractConnPool<HttpRoute, ManagedHttpClientConnection, CPo
         super.enumAvailable(callback);
     }
 
+    @Override
+    protected void evictExpired(final long now, final PoolEntryCallback<HttpRoute, ManagedHttpClientConnection> callback) {
+        super.evictExpired(now, callback);
+    }
+
+    @Override
+    protected void validateIdle(final PoolEntryCallback<HttpRoute, ManagedHttpClientConnection> callback) {
+        super.validateIdle(callback);
+    }
+
     @Override
     protected void enumLeased(final PoolEntryCallback<HttpRoute, ManagedHttpClientConnection> callback) {
         super.enumLeased(callback);
@@ -32,6 +32,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.kodtik.innovations.http.HttpClientConnection;
+import org.kodtik.innovations.http.HttpConnectionMetrics;
 import org.kodtik.innovations.http.annotation.Contract;
 import org.kodtik.innovations.http.annotation.ThreadingBehavior;
 import org.kodtik.innovations.http.conn.ManagedHttpClientConnection;
@@ -46,6 +47,8 @@ class CPoolEntry extends PoolEntry<HttpRoute, ManagedHttpClientConnection> {
 
     private final Log log;
     private volatile boolean routeComplete;
+    private volatile long sentBytesAtLease;
+    private volatile long receivedBytesAtLease;
 
     public CPoolEntry(
             final Log log,
@@ -65,6 +68,22 @@ class CPoolEntry extends PoolEntry<HttpRoute, ManagedHttpClientConnection> {
         return this.routeComplete;
     }
 
+    void markLeased() {
+        final HttpConnectionMetrics metrics = getConnection().getMetrics();
+        this.sentBytesAtLease = Math.max(metrics.getSentBytesCount(), 0);
+        this.receivedBytesAtLease = Math.max(metrics.getReceivedBytesCount(), 0);
+    }
+
+    long getSentBytesSinceLease() {
+        final long count = getConnection().getMetrics().getSentBytesCount();
+        return count > this.sentBytesAtLease ? count - this.sentBytesAtLease : 0;
+    }
+
+    long getReceivedBytesSinceLease() {
+        final long count = getConnection().getMetrics().getReceivedBytesCount();
+        return count > this.receivedBytesAtLease ? count - this.receivedBytesAtLease : 0;
+    }
+
     public void closeConnection() throws IOException {
         final HttpClientConnection conn = getConnection();
         conn.close();
@@ -0,0 +1,143 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.conn;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * This class maintains a background thread that keeps persistent connections
+ * in a {@link PoolingHttpClientConnectionManager} healthy. On every run
+ * it evicts expired connections, optionally evicts connections that have been
+ * idle for too long and validates connections that have been inactive longer
+ * than the {@link PoolingHttpClientConnectionManager#setValidateAfterInactivity(int)
+ * validate after inactivity} period, so that leases usually get a pre-validated
+ * connection and do not have to perform the stale check themselves. Finally,
+ * it tops up routes that fall below their
+ * {@link PoolingHttpClientConnectionManager#setMinIdle(org.kodtik.innovations.http.conn.routing.HttpRoute, int)
+ * minimum idle} setting.
+ *
+ * @since 4.5.15
+ */
+public final class ConnectionPoolMaintainer {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final ThreadFactory threadFactory;
+    private final Thread thread;
+    private final long sleepTimeMs;
+    private final long maxIdleTimeMs;
+
+    private volatile Exception exception;
+
+    public ConnectionPoolMaintainer(
+            final PoolingHttpClientConnectionManager connectionManager,
+            final ThreadFactory threadFactory,
+            final long sleepTime, final TimeUnit sleepTimeUnit,
+            final long maxIdleTime, final TimeUnit maxIdleTimeUnit) {
+        this.connectionManager = Args.notNull(connectionManager, "Connection manager");
+        this.threadFactory = threadFactory != null ? threadFactory : new DefaultThreadFactory();
+        this.sleepTimeMs = sleepTimeUnit != null ? sleepTimeUnit.toMillis(sleepTime) : sleepTime;
+        this.maxIdleTimeMs = maxIdleTimeUnit != null ? maxIdleTimeUnit.toMillis(maxIdleTime) : maxIdleTime;
+        Args.positive(this.sleepTimeMs, "Sleep time");
+        this.thread = this.threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        Thread.sleep(sleepTimeMs);
+                        runOnce();
+                    }
+                } catch (final Exception ex) {
+                    exception = ex;
+                }
+
+            }
+        });
+    }
+
+    public ConnectionPoolMaintainer(
+            final PoolingHttpClientConnectionManager connectionManager,
+            final long sleepTime, final TimeUnit sleepTimeUnit,
+            final long maxIdleTime, final TimeUnit maxIdleTimeUnit) {
+        this(connectionManager, null, sleepTime, sleepTimeUnit, maxIdleTime, maxIdleTimeUnit);
+    }
+
+    public ConnectionPoolMaintainer(
+            final PoolingHttpClientConnectionManager connectionManager,
+            final long sleepTime, final TimeUnit sleepTimeUnit) {
+        this(connectionManager, null, sleepTime, sleepTimeUnit, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Performs a single maintenance run on the calling thread.
+     */
+    public void runOnce() {
+        connectionManager.closeExpiredConnections();
+        if (maxIdleTimeMs > 0) {
+            connectionManager.closeIdleConnections(maxIdleTimeMs, TimeUnit.MILLISECONDS);
+        }
+        connectionManager.validateIdleConnections();
+        connectionManager.maintainMinIdle();
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void shutdown() {
+        thread.interrupt();
+    }
+
+    public boolean isRunning() {
+        return thread.isAlive();
+    }
+
+    public void awaitTermination(final long time, final TimeUnit timeUnit) throws InterruptedException {
+        thread.join((timeUnit != null ? timeUnit : TimeUnit.MILLISECONDS).toMillis(time));
+    }
+
+    /**
+     * Returns the exception that terminated the background thread, if any.
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    static class DefaultThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "Connection pool maintainer");
+            t.setDaemon(true);
+            return t;
+        }
+
+    }
+
+}
@@ -51,7 +51,9 @@ import org.kodtik.innovations.http.conn.SchemePortResolver;
 import org.kodtik.innovations.http.conn.UnsupportedSchemeException;
 import org.kodtik.innovations.http.conn.socket.ConnectionSocketFactory;
 import org.kodtik.innovations.http.conn.socket.LayeredConnectionSocketFactory;
+import org.kodtik.innovations.http.protocol.ExchangeTimings;
 import org.kodtik.innovations.http.protocol.HttpContext;
+import org.kodtik.innovations.http.protocol.HttpCoreContext;
 import org.kodtik.innovations.http.util.Args;
 
 /**
@@ -109,8 +111,16 @@ public class DefaultHttpClientConnectionOperator implements HttpClientConnection
             throw new UnsupportedSchemeException(host.getSchemeName() +
                     " protocol is not supported");
         }
-        final InetAddress[] addresses = host.getAddress() != null ?
-                new InetAddress[] { host.getAddress() } : this.dnsResolver.resolve(host.getHostName());
+        final InetAddress[] addresses;
+        if (host.getAddress() != null) {
+            addresses = new InetAddress[] { host.getAddress() };
+        } else {
+            ExchangeTimings.mark(context, ExchangeTimings.Phase.DNS_START);
+            addresses = this.dnsResolver.resolve(host.getHostName());
+            ExchangeTimings.mark(context, ExchangeTimings.Phase.DNS_END);
+        }
+        final Object timingsAttr = context != null ? context.getAttribute(HttpCoreContext.EXCHANGE_TIMINGS) : null;
+        final ExchangeTimings timings = timingsAttr instanceof ExchangeTimings ? (ExchangeTimings) timingsAttr : null;
         final int port = this.schemePortResolver.resolve(host);
         for (int i = 0; i < addresses.length; i++) {
             final InetAddress address = addresses[i];
@@ -139,8 +149,15 @@ public class DefaultHttpClientConnectionOperator implements HttpClientConnection
                 this.log.debug("Connecting to " + remoteAddress);
             }
             try {
+                if (timings != null) {
+                    timings.mark(ExchangeTimings.Phase.CONNECT_START, context);
+                    timings.clear(ExchangeTimings.Phase.CONNECTED);
+                }
                 sock = sf.connectSocket(
                         connectTimeout, sock, host, remoteAddress, localAddress, context);
+                if (timings != null && !timings.isMarked(ExchangeTimings.Phase.CONNECTED)) {
+                    timings.mark(ExchangeTimings.Phase.CONNECTED, context);
+                }
                 conn.bind(sock);
                 if (this.log.isDebugEnabled()) {
                     this.log.debug("Connection established " + conn);
@@ -120,8 +120,19 @@ public class DefaultManagedHttpClientConnection extends DefaultBHttpClientConnec
         super.bind(socket);
     }
 
+    /**
+     * Returns the underlying socket. If the connection performs I/O through
+     * the socket's channel, the channel is switched back to blocking mode so
+     * that the caller can use the socket streams, for instance to layer TLS
+     * on top of the socket.
+     */
     @Override
     public Socket getSocket() {
+        try {
+            releaseSocketChannel();
+        } catch (final IOException ignore) {
+            // the socket is unusable anyway
+        }
         return super.getSocket();
     }
 
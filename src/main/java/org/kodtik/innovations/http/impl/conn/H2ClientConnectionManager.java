@@ -0,0 +1,489 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.conn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.kodtik.innovations.http.HttpClientConnection;
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+import org.kodtik.innovations.http.client.ClientProtocolException;
+import org.kodtik.innovations.http.client.config.HttpVersionPolicy;
+import org.kodtik.innovations.http.client.protocol.HttpClientContext;
+import org.kodtik.innovations.http.config.H2Config;
+import org.kodtik.innovations.http.conn.ConnectionRequest;
+import org.kodtik.innovations.http.conn.HttpClientConnectionManager;
+import org.kodtik.innovations.http.conn.ManagedHttpClientConnection;
+import org.kodtik.innovations.http.conn.PrioritizedConnectionManager;
+import org.kodtik.innovations.http.conn.routing.HttpRoute;
+import org.kodtik.innovations.http.conn.ssl.SSLConnectionSocketFactory;
+import org.kodtik.innovations.http.impl.h2.H2ClientConnection;
+import org.kodtik.innovations.http.protocol.HttpContext;
+import org.kodtik.innovations.http.util.Args;
+import org.kodtik.innovations.http.util.Asserts;
+
+/**
+ * {@link HttpClientConnectionManager} that executes requests over direct routes
+ * using HTTP/2 and delegates all other routes to another connection manager,
+ * typically a {@link PoolingHttpClientConnectionManager}.
+ * <p>
+ * A single HTTP/2 connection is maintained per route and shared by all requests
+ * to that route, each of them being executed over a stream of its own. The
+ * connection is opened by the delegate and holds one of its leases for as long
+ * as it is open, so that its socket configuration, DNS resolution and socket
+ * factories apply to HTTP/2 connections as well.
+ * </p>
+ * <p>
+ * Whether a route uses HTTP/2 is determined by the {@link HttpVersionPolicy}.
+ * With {@link HttpVersionPolicy#NEGOTIATE} routes whose server does not select
+ * {@code h2} via ALPN are remembered and served by the delegate from then on.
+ * </p>
+ *
+ * @since 4.5.15
+ */
+@Contract(threading = ThreadingBehavior.SAFE_CONDITIONAL)
+public class H2ClientConnectionManager implements PrioritizedConnectionManager, Closeable {
+
+    private static final String[] H2_ONLY = new String[] { "h2" };
+    private static final String[] H2_OR_HTTP1 = new String[] { "h2", "http/1.1" };
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final HttpClientConnectionManager delegate;
+    private final HttpVersionPolicy versionPolicy;
+    private final H2Config h2Config;
+    private final ConcurrentMap<HttpRoute, RouteEntry> routeEntries;
+    private final Set<HttpRoute> http1Routes;
+    private final AtomicBoolean isShutDown;
+
+    public H2ClientConnectionManager(
+            final HttpClientConnectionManager delegate,
+            final HttpVersionPolicy versionPolicy,
+            final H2Config h2Config) {
+        super();
+        this.delegate = Args.notNull(delegate, "Connection manager");
+        this.versionPolicy = versionPolicy != null ? versionPolicy : HttpVersionPolicy.NEGOTIATE;
+        this.h2Config = h2Config != null ? h2Config : H2Config.DEFAULT;
+        this.routeEntries = new ConcurrentHashMap<HttpRoute, RouteEntry>();
+        this.http1Routes = Collections.newSetFromMap(new ConcurrentHashMap<HttpRoute, Boolean>());
+        this.isShutDown = new AtomicBoolean(false);
+    }
+
+    public H2ClientConnectionManager(
+            final HttpClientConnectionManager delegate,
+            final HttpVersionPolicy versionPolicy) {
+        this(delegate, versionPolicy, null);
+    }
+
+    public HttpClientConnectionManager getDelegate() {
+        return this.delegate;
+    }
+
+    public HttpVersionPolicy getVersionPolicy() {
+        return this.versionPolicy;
+    }
+
+    boolean isH2Route(final HttpRoute route) {
+        if (route.getProxyHost() != null || this.http1Routes.contains(route)) {
+            return false;
+        }
+        if (route.isSecure()) {
+            return this.versionPolicy != HttpVersionPolicy.FORCE_HTTP_1;
+        }
+        return this.versionPolicy == HttpVersionPolicy.FORCE_HTTP_2;
+    }
+
+    private RouteEntry getRouteEntry(final HttpRoute route) {
+        RouteEntry entry = this.routeEntries.get(route);
+        if (entry == null) {
+            final RouteEntry newEntry = new RouteEntry();
+            entry = this.routeEntries.putIfAbsent(route, newEntry);
+            if (entry == null) {
+                entry = newEntry;
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(final HttpRoute route, final Object state) {
+        return requestConnection(route, state, 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The priority is passed on to the delegate if it supports priorities.
+     * Requests to HTTP/2 routes share a connection and are not queued.
+     * </p>
+     */
+    @Override
+    public ConnectionRequest requestConnection(final HttpRoute route, final Object state, final int priority) {
+        Args.notNull(route, "HTTP route");
+        Asserts.check(!this.isShutDown.get(), "Connection manager shut down");
+        if (!isH2Route(route)) {
+            return requestDelegateConnection(route, state, priority);
+        }
+        return new ConnectionRequest() {
+
+            @Override
+            public boolean cancel() {
+                return false;
+            }
+
+            @Override
+            public HttpClientConnection get(final long timeout, final TimeUnit timeUnit) {
+                final RouteEntry entry = routeEntries.get(route);
+                final H2ClientConnection connection = entry != null ? entry.getConnection() : null;
+                return new H2ManagedConnection(route, connection != null ? connection.createStream() : null);
+            }
+
+        };
+    }
+
+    @Override
+    public void connect(
+            final HttpClientConnection conn,
+            final HttpRoute route,
+            final int connectTimeout,
+            final HttpContext context) throws IOException {
+        if (!(conn instanceof H2ManagedConnection)) {
+            this.delegate.connect(conn, route, connectTimeout, context);
+            return;
+        }
+        final H2ManagedConnection managedConn = (H2ManagedConnection) conn;
+        final RouteEntry entry = getRouteEntry(route);
+        // Requests to a route waiting for its HTTP/2 connection to be
+        // established are to share it rather than open connections of their own
+        synchronized (entry) {
+            H2ClientConnection connection = entry.getConnection();
+            if (connection == null) {
+                final HttpClientConnection leased = leaseConnection(route, context);
+                if (!this.http1Routes.contains(route)) {
+                    connection = establish(leased, route, connectTimeout, context);
+                } else if (!leased.isOpen()) {
+                    connectHttp1(leased, route, connectTimeout, context);
+                }
+                if (connection == null) {
+                    managedConn.bindHttp1(leased);
+                    return;
+                }
+                entry.setConnection(connection);
+            }
+            managedConn.bind(connection.createStream());
+        }
+    }
+
+    private ConnectionRequest requestDelegateConnection(
+            final HttpRoute route, final Object state, final int priority) {
+        if (priority != 0 && this.delegate instanceof PrioritizedConnectionManager) {
+            return ((PrioritizedConnectionManager) this.delegate).requestConnection(route, state, priority);
+        }
+        return this.delegate.requestConnection(route, state);
+    }
+
+    private HttpClientConnection leaseConnection(
+            final HttpRoute route, final HttpContext context) throws IOException {
+        final HttpClientContext clientContext = HttpClientContext.adapt(context);
+        final int timeout = clientContext.getRequestConfig().getConnectionRequestTimeout();
+        final ConnectionRequest connRequest = requestDelegateConnection(
+                route, null, clientContext.getLeasePriority());
+        try {
+            return connRequest.get(timeout > 0 ? timeout : 0, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Connection lease interrupted");
+        } catch (final ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            throw new IOException("Connection lease failed", cause != null ? cause : ex);
+        }
+    }
+
+    private void connectHttp1(
+            final HttpClientConnection leased,
+            final HttpRoute route,
+            final int connectTimeout,
+            final HttpContext context) throws IOException {
+        boolean success = false;
+        try {
+            this.delegate.connect(leased, route, connectTimeout, context);
+            this.delegate.routeComplete(leased, route, context);
+            success = true;
+        } finally {
+            if (!success) {
+                discard(leased);
+            }
+        }
+    }
+
+    /**
+     * Opens a connection to the route target and starts an HTTP/2 connection
+     * over it. Returns {@code null} if the leased connection is to be used
+     * for HTTP/1.1 instead, either because the server did not select HTTP/2
+     * or because the lease is a persistent HTTP/1.1 connection left in the
+     * pool. Only the outcome of a fresh handshake marks a route as HTTP/1.1.
+     */
+    private H2ClientConnection establish(
+            final HttpClientConnection leased,
+            final HttpRoute route,
+            final int connectTimeout,
+            final HttpContext context) throws IOException {
+        boolean success = false;
+        try {
+            if (leased.isOpen()) {
+                // A persistent HTTP/1.1 connection left in the pool says nothing
+                // about what the server would negotiate over a new one
+                if (this.versionPolicy != HttpVersionPolicy.FORCE_HTTP_2) {
+                    success = true;
+                    return null;
+                }
+                // It cannot be upgraded; open a new one under the same lease
+                leased.close();
+            }
+            final String protocol;
+            if (route.isSecure()) {
+                context.setAttribute(SSLConnectionSocketFactory.APPLICATION_PROTOCOLS,
+                        this.versionPolicy == HttpVersionPolicy.FORCE_HTTP_2 ? H2_ONLY : H2_OR_HTTP1);
+                try {
+                    this.delegate.connect(leased, route, connectTimeout, context);
+                } finally {
+                    context.removeAttribute(SSLConnectionSocketFactory.APPLICATION_PROTOCOLS);
+                }
+                protocol = (String) context.removeAttribute(SSLConnectionSocketFactory.APPLICATION_PROTOCOL);
+                this.delegate.routeComplete(leased, route, context);
+            } else {
+                this.delegate.connect(leased, route, connectTimeout, context);
+                this.delegate.routeComplete(leased, route, context);
+                protocol = "h2";
+            }
+            if (!"h2".equals(protocol) || !(leased instanceof ManagedHttpClientConnection)) {
+                if (this.versionPolicy == HttpVersionPolicy.FORCE_HTTP_2) {
+                    throw new ClientProtocolException("HTTP/2 not negotiated with " + route.getTargetHost());
+                }
+                if (this.log.isDebugEnabled()) {
+                    this.log.debug("HTTP/2 not negotiated with " + route.getTargetHost() + "; using HTTP/1.1");
+                }
+                this.http1Routes.add(route);
+                success = true;
+                return null;
+            }
+            final Socket socket = ((ManagedHttpClientConnection) leased).getSocket();
+            final H2ClientConnection connection = new H2ClientConnection(socket, this.h2Config) {
+
+                @Override
+                protected void onClosed() {
+                    connectionClosed(route, this, leased);
+                }
+
+            };
+            connection.setSocketTimeout(socket.getSoTimeout());
+            connection.start();
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("HTTP/2 connection established: " + connection);
+            }
+            success = true;
+            return connection;
+        } finally {
+            if (!success) {
+                discard(leased);
+            }
+        }
+    }
+
+    private void connectionClosed(
+            final HttpRoute route,
+            final H2ClientConnection connection,
+            final HttpClientConnection leased) {
+        if (this.log.isDebugEnabled()) {
+            this.log.debug("HTTP/2 connection closed: " + connection);
+        }
+        final RouteEntry entry = this.routeEntries.get(route);
+        if (entry != null) {
+            entry.clearConnection(connection);
+        }
+        discard(leased);
+    }
+
+    private void discard(final HttpClientConnection leased) {
+        try {
+            leased.shutdown();
+        } catch (final IOException ex) {
+            this.log.debug("I/O exception shutting down connection", ex);
+        }
+        this.delegate.releaseConnection(leased, null, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void upgrade(
+            final HttpClientConnection conn,
+            final HttpRoute route,
+            final HttpContext context) throws IOException {
+        if (conn instanceof H2ManagedConnection) {
+            final H2ManagedConnection managedConn = (H2ManagedConnection) conn;
+            Asserts.check(managedConn.isHttp1(), "Protocol layering not supported by HTTP/2 connections");
+            this.delegate.upgrade(managedConn.getConnection(), route, context);
+        } else {
+            this.delegate.upgrade(conn, route, context);
+        }
+    }
+
+    @Override
+    public void routeComplete(
+            final HttpClientConnection conn,
+            final HttpRoute route,
+            final HttpContext context) throws IOException {
+        // HTTP/2 and fall-back connections are completed by #connect
+        if (!(conn instanceof H2ManagedConnection)) {
+            this.delegate.routeComplete(conn, route, context);
+        }
+    }
+
+    @Override
+    public void releaseConnection(
+            final HttpClientConnection conn,
+            final Object newState,
+            final long validDuration,
+            final TimeUnit timeUnit) {
+        if (!(conn instanceof H2ManagedConnection)) {
+            this.delegate.releaseConnection(conn, newState, validDuration, timeUnit);
+            return;
+        }
+        final H2ManagedConnection managedConn = (H2ManagedConnection) conn;
+        final boolean http1 = managedConn.isHttp1();
+        final HttpClientConnection local = managedConn.detach();
+        if (local == null) {
+            return;
+        }
+        if (http1) {
+            this.delegate.releaseConnection(local, newState, validDuration, timeUnit);
+        } else {
+            try {
+                // Resets the stream unless the exchange has been completed
+                local.close();
+            } catch (final IOException ex) {
+                this.log.debug("I/O exception releasing stream", ex);
+            }
+        }
+    }
+
+    @Override
+    public void closeIdleConnections(final long idletime, final TimeUnit timeUnit) {
+        this.delegate.closeIdleConnections(idletime, timeUnit);
+        final long idleMillis = Math.max(timeUnit != null ? timeUnit.toMillis(idletime) : idletime, 0);
+        for (final RouteEntry entry: this.routeEntries.values()) {
+            final H2ClientConnection connection = entry.getConnection();
+            if (connection != null && connection.getStreamCount() == 0 && connection.getIdleTime() > idleMillis) {
+                if (this.log.isDebugEnabled()) {
+                    this.log.debug("Closing idle HTTP/2 connection: " + connection);
+                }
+                entry.clearConnection(connection);
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    @Override
+    public void closeExpiredConnections() {
+        this.delegate.closeExpiredConnections();
+    }
+
+    private void closeQuietly(final H2ClientConnection connection) {
+        try {
+            connection.close();
+        } catch (final IOException ex) {
+            this.log.debug("I/O exception closing connection", ex);
+        }
+    }
+
+    private void closeConnections() {
+        for (final RouteEntry entry: this.routeEntries.values()) {
+            final H2ClientConnection connection = entry.getConnection();
+            if (connection != null) {
+                entry.clearConnection(connection);
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    /**
+     * Closes all HTTP/2 connections. The delegate connection manager is not affected.
+     */
+    @Override
+    public void close() {
+        closeConnections();
+    }
+
+    @Override
+    public void shutdown() {
+        if (this.isShutDown.compareAndSet(false, true)) {
+            closeConnections();
+            this.delegate.shutdown();
+        }
+    }
+
+    static class RouteEntry {
+
+        private final AtomicReference<H2ClientConnection> connectionRef;
+
+        RouteEntry() {
+            super();
+            this.connectionRef = new AtomicReference<H2ClientConnection>();
+        }
+
+        H2ClientConnection getConnection() {
+            final H2ClientConnection connection = this.connectionRef.get();
+            if (connection != null && connection.isStale()) {
+                clearConnection(connection);
+                return null;
+            }
+            return connection;
+        }
+
+        void setConnection(final H2ClientConnection connection) {
+            this.connectionRef.set(connection);
+        }
+
+        void clearConnection(final H2ClientConnection connection) {
+            this.connectionRef.compareAndSet(connection, null);
+        }
+
+    }
+
+}
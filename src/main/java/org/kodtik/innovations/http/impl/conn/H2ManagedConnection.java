@@ -0,0 +1,278 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.conn;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLSession;
+
+import org.kodtik.innovations.http.HttpClientConnection;
+import org.kodtik.innovations.http.HttpConnectionMetrics;
+import org.kodtik.innovations.http.HttpEntityEnclosingRequest;
+import org.kodtik.innovations.http.HttpException;
+import org.kodtik.innovations.http.HttpInetConnection;
+import org.kodtik.innovations.http.HttpRequest;
+import org.kodtik.innovations.http.HttpResponse;
+import org.kodtik.innovations.http.conn.ManagedHttpClientConnection;
+import org.kodtik.innovations.http.conn.routing.HttpRoute;
+import org.kodtik.innovations.http.impl.h2.H2ClientStream;
+
+/**
+ * Connection handle leased by {@link H2ClientConnectionManager}. The handle
+ * is backed either by a stream of a shared HTTP/2 connection or, if HTTP/2
+ * could not be negotiated with the target, by a pooled HTTP/1.1 connection.
+ * An unbound handle reports itself as closed, which makes the request
+ * executor establish the route.
+ *
+ * @since 4.5.15
+ */
+class H2ManagedConnection implements ManagedHttpClientConnection {
+
+    private static final AtomicLong COUNTER = new AtomicLong();
+
+    private final String id;
+    private final HttpRoute route;
+    private volatile HttpClientConnection conn;
+    private volatile boolean http1;
+    private volatile int socketTimeout;
+
+    H2ManagedConnection(final HttpRoute route, final H2ClientStream stream) {
+        super();
+        this.id = "h2-conn-" + COUNTER.getAndIncrement();
+        this.route = route;
+        this.conn = stream;
+        this.socketTimeout = -1;
+    }
+
+    HttpRoute getRoute() {
+        return this.route;
+    }
+
+    HttpClientConnection getConnection() {
+        return this.conn;
+    }
+
+    boolean isHttp1() {
+        return this.http1;
+    }
+
+    void bind(final H2ClientStream stream) {
+        if (this.socketTimeout >= 0) {
+            stream.setSocketTimeout(this.socketTimeout);
+        }
+        this.conn = stream;
+        this.http1 = false;
+    }
+
+    void bindHttp1(final HttpClientConnection conn) {
+        this.conn = conn;
+        this.http1 = true;
+    }
+
+    HttpClientConnection detach() {
+        final HttpClientConnection local = this.conn;
+        this.conn = null;
+        return local;
+    }
+
+    private HttpClientConnection getValidConnection() {
+        final HttpClientConnection local = this.conn;
+        if (local == null) {
+            throw new ConnectionShutdownException();
+        }
+        return local;
+    }
+
+    private HttpClientConnection getStreamForRequest() throws IOException {
+        final HttpClientConnection local = getValidConnection();
+        if (local instanceof H2ClientStream) {
+            final H2ClientStream stream = (H2ClientStream) local;
+            if (stream.getStreamId() >= 0) {
+                // Subsequent exchanges over the same handle (authentication
+                // handshakes, for instance) each get a new stream
+                stream.close();
+                final H2ClientStream next = stream.getConnection().createStream();
+                next.setSocketTimeout(stream.getSocketTimeout());
+                this.conn = next;
+                return next;
+            }
+        }
+        return local;
+    }
+
+    @Override
+    public String getId() {
+        return this.id;
+    }
+
+    @Override
+    public void bind(final Socket socket) throws IOException {
+        throw new IllegalStateException("Connection is bound to a shared HTTP/2 connection "
+                + "and cannot be bound to another socket");
+    }
+
+    @Override
+    public Socket getSocket() {
+        final HttpClientConnection local = this.conn;
+        // The socket of an HTTP/2 connection is shared by all its streams
+        return local instanceof ManagedHttpClientConnection ? ((ManagedHttpClientConnection) local).getSocket() : null;
+    }
+
+    @Override
+    public SSLSession getSSLSession() {
+        final HttpClientConnection local = this.conn;
+        if (local instanceof H2ClientStream) {
+            return ((H2ClientStream) local).getConnection().getSSLSession();
+        }
+        return local instanceof ManagedHttpClientConnection ? ((ManagedHttpClientConnection) local).getSSLSession() : null;
+    }
+
+    @Override
+    public boolean isResponseAvailable(final int timeout) throws IOException {
+        return getValidConnection().isResponseAvailable(timeout);
+    }
+
+    @Override
+    public void sendRequestHeader(final HttpRequest request) throws HttpException, IOException {
+        getStreamForRequest().sendRequestHeader(request);
+    }
+
+    @Override
+    public void sendRequestEntity(final HttpEntityEnclosingRequest request) throws HttpException, IOException {
+        getValidConnection().sendRequestEntity(request);
+    }
+
+    @Override
+    public HttpResponse receiveResponseHeader() throws HttpException, IOException {
+        return getValidConnection().receiveResponseHeader();
+    }
+
+    @Override
+    public void receiveResponseEntity(final HttpResponse response) throws HttpException, IOException {
+        getValidConnection().receiveResponseEntity(response);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        getValidConnection().flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        final HttpClientConnection local = this.conn;
+        if (local != null) {
+            local.close();
+        }
+    }
+
+    @Override
+    public void shutdown() throws IOException {
+        final HttpClientConnection local = this.conn;
+        if (local != null) {
+            local.shutdown();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        final HttpClientConnection local = this.conn;
+        return local != null && local.isOpen();
+    }
+
+    @Override
+    public boolean isStale() {
+        final HttpClientConnection local = this.conn;
+        return local == null || local.isStale();
+    }
+
+    @Override
+    public void setSocketTimeout(final int timeout) {
+        this.socketTimeout = timeout;
+        final HttpClientConnection local = this.conn;
+        if (local != null) {
+            local.setSocketTimeout(timeout);
+        }
+    }
+
+    @Override
+    public int getSocketTimeout() {
+        final HttpClientConnection local = this.conn;
+        return local != null ? local.getSocketTimeout() : this.socketTimeout;
+    }
+
+    @Override
+    public HttpConnectionMetrics getMetrics() {
+        return getValidConnection().getMetrics();
+    }
+
+    private HttpInetConnection getInetConnection() {
+        final HttpClientConnection local = this.conn;
+        return local instanceof HttpInetConnection ? (HttpInetConnection) local : null;
+    }
+
+    @Override
+    public InetAddress getLocalAddress() {
+        final HttpInetConnection local = getInetConnection();
+        return local != null ? local.getLocalAddress() : null;
+    }
+
+    @Override
+    public int getLocalPort() {
+        final HttpInetConnection local = getInetConnection();
+        return local != null ? local.getLocalPort() : -1;
+    }
+
+    @Override
+    public InetAddress getRemoteAddress() {
+        final HttpInetConnection local = getInetConnection();
+        return local != null ? local.getRemoteAddress() : null;
+    }
+
+    @Override
+    public int getRemotePort() {
+        final HttpInetConnection local = getInetConnection();
+        return local != null ? local.getRemotePort() : -1;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append(this.id).append(" [");
+        final HttpClientConnection local = this.conn;
+        if (local != null) {
+            buffer.append(local);
+        } else {
+            buffer.append("unbound");
+        }
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+}
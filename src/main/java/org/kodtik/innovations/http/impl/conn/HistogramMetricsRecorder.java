@@ -0,0 +1,187 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.conn;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+import org.kodtik.innovations.http.conn.MetricsRecorder;
+import org.kodtik.innovations.http.conn.routing.HttpRoute;
+
+/**
+ * {@link MetricsRecorder} implementation that aggregates measurements
+ * across all routes into lock-free {@link LatencyHistogram}s and counters.
+ * <p>
+ * Instances of this class can be polled at any time by a metrics exporter.
+ * </p>
+ *
+ * @since 4.5.15
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public class HistogramMetricsRecorder implements MetricsRecorder {
+
+    private final LatencyHistogram leaseTime;
+    private final LatencyHistogram connectTime;
+    private final LatencyHistogram handshakeTime;
+    private final LatencyHistogram timeToFirstByte;
+    private final AtomicLong leaseCount;
+    private final AtomicLong reuseCount;
+    private final AtomicLong evictionCount;
+    private final AtomicLong sentBytes;
+    private final AtomicLong receivedBytes;
+    private final AtomicLongArray statusClasses;
+
+    public HistogramMetricsRecorder() {
+        super();
+        this.leaseTime = new LatencyHistogram();
+        this.connectTime = new LatencyHistogram();
+        this.handshakeTime = new LatencyHistogram();
+        this.timeToFirstByte = new LatencyHistogram();
+        this.leaseCount = new AtomicLong();
+        this.reuseCount = new AtomicLong();
+        this.evictionCount = new AtomicLong();
+        this.sentBytes = new AtomicLong();
+        this.receivedBytes = new AtomicLong();
+        this.statusClasses = new AtomicLongArray(6);
+    }
+
+    @Override
+    public void recordLease(final HttpRoute route, final long waitNanos, final boolean reused) {
+        this.leaseTime.record(waitNanos);
+        this.leaseCount.incrementAndGet();
+        if (reused) {
+            this.reuseCount.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void recordConnect(final HttpRoute route, final long connectNanos) {
+        this.connectTime.record(connectNanos);
+    }
+
+    @Override
+    public void recordHandshake(final HttpRoute route, final long handshakeNanos) {
+        this.handshakeTime.record(handshakeNanos);
+    }
+
+    @Override
+    public void recordResponse(final HttpRoute route, final long timeToFirstByteNanos, final int statusCode) {
+        this.timeToFirstByte.record(timeToFirstByteNanos);
+        final int statusClass = statusCode / 100;
+        this.statusClasses.incrementAndGet(statusClass >= 1 && statusClass <= 5 ? statusClass : 0);
+    }
+
+    @Override
+    public void recordTransfer(final HttpRoute route, final long sentBytes, final long receivedBytes) {
+        if (sentBytes > 0) {
+            this.sentBytes.addAndGet(sentBytes);
+        }
+        if (receivedBytes > 0) {
+            this.receivedBytes.addAndGet(receivedBytes);
+        }
+    }
+
+    @Override
+    public void recordEviction(final HttpRoute route) {
+        this.evictionCount.incrementAndGet();
+    }
+
+    public LatencyHistogram getLeaseTime() {
+        return this.leaseTime;
+    }
+
+    public LatencyHistogram getConnectTime() {
+        return this.connectTime;
+    }
+
+    public LatencyHistogram getHandshakeTime() {
+        return this.handshakeTime;
+    }
+
+    public LatencyHistogram getTimeToFirstByte() {
+        return this.timeToFirstByte;
+    }
+
+    public long getLeaseCount() {
+        return this.leaseCount.get();
+    }
+
+    public long getReuseCount() {
+        return this.reuseCount.get();
+    }
+
+    /**
+     * Returns the ratio of leases served by an already open connection
+     * to the total number of leases.
+     */
+    public double getReuseRatio() {
+        final long leases = this.leaseCount.get();
+        return leases > 0 ? (double) this.reuseCount.get() / leases : 0.0d;
+    }
+
+    public long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+
+    public long getSentBytes() {
+        return this.sentBytes.get();
+    }
+
+    public long getReceivedBytes() {
+        return this.receivedBytes.get();
+    }
+
+    /**
+     * Returns the number of responses with a status code of the given class.
+     *
+     * @param statusClass status class in the range of 1 to 5 ({@code 2} for 2xx
+     *   responses and so on). {@code 0} returns the number of responses with
+     *   a non-standard status code.
+     */
+    public long getResponseCount(final int statusClass) {
+        return statusClass >= 0 && statusClass <= 5 ? this.statusClasses.get(statusClass) : 0;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[lease: ").append(this.leaseTime);
+        buffer.append("][connect: ").append(this.connectTime);
+        buffer.append("][handshake: ").append(this.handshakeTime);
+        buffer.append("][ttfb: ").append(this.timeToFirstByte);
+        buffer.append("][reuse ratio: ").append(getReuseRatio());
+        buffer.append("][evictions: ").append(getEvictionCount());
+        buffer.append("][sent: ").append(getSentBytes());
+        buffer.append("][received: ").append(getReceivedBytes());
+        buffer.append("][status: ").append(this.statusClasses);
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+}
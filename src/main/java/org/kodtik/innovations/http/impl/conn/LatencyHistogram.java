@@ -0,0 +1,162 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.conn;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * Lock-free histogram of non-negative long values with log-linear buckets.
+ * <p>
+ * Values are grouped in power-of-two ranges, each range being split into
+ * 16 linear sub-buckets, which bounds the relative error of reported
+ * percentiles to about 6%. Recording a value is a single atomic increment
+ * and never allocates.
+ * </p>
+ *
+ * @since 4.5.15
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    public LatencyHistogram() {
+        super();
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new AtomicLong();
+        this.sum = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    static int indexOf(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return value > 0 ? (int) value : 0;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        final int sub = (int) (value >>> shift) & SUB_BUCKET_MASK;
+        return ((shift + 1) << SUB_BUCKET_BITS) + sub;
+    }
+
+    static long lowestValueAt(final int index) {
+        final int bucket = index >>> SUB_BUCKET_BITS;
+        final int sub = index & SUB_BUCKET_MASK;
+        if (bucket == 0) {
+            return sub;
+        }
+        return ((long) (SUB_BUCKET_COUNT + sub)) << (bucket - 1);
+    }
+
+    /**
+     * Records the given value. Negative values are recorded as zero.
+     */
+    public void record(final long value) {
+        final long v = value > 0 ? value : 0;
+        this.counts.incrementAndGet(indexOf(v));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(v);
+        long current = this.max.get();
+        while (v > current && !this.max.compareAndSet(current, v)) {
+            current = this.max.get();
+        }
+    }
+
+    public long getCount() {
+        return this.count.get();
+    }
+
+    public long getMax() {
+        return this.max.get();
+    }
+
+    public long getMean() {
+        final long n = this.count.get();
+        return n > 0 ? this.sum.get() / n : 0;
+    }
+
+    /**
+     * Returns the lowest value such that the given percentage of recorded
+     * values are less than or equal to it, within the precision of the
+     * bucket the value falls into.
+     *
+     * @param percentile percentile in the range of 0 to 100.
+     */
+    public long getValueAtPercentile(final double percentile) {
+        Args.check(percentile >= 0 && percentile <= 100, "Percentile must be in range [0, 100]");
+        final long n = this.count.get();
+        if (n == 0) {
+            return 0;
+        }
+        final long target = Math.max(1, (long) Math.ceil(n * percentile / 100.0d));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += this.counts.get(i);
+            if (seen >= target) {
+                return Math.min(lowestValueAt(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    /**
+     * Discards all recorded values. Values recorded concurrently with this
+     * method may be partially retained.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            this.counts.set(i, 0);
+        }
+        this.count.set(0);
+        this.sum.set(0);
+        this.max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[count: ").append(getCount());
+        buffer.append("; mean: ").append(getMean());
+        buffer.append("; p50: ").append(getValueAtPercentile(50));
+        buffer.append("; p99: ").append(getValueAtPercentile(99));
+        buffer.append("; max: ").append(getMax());
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+}
@@ -48,12 +48,14 @@ class LoggingManagedHttpClientConnection extends DefaultManagedHttpClientConnect
     private final Log log;
     private final Log headerLog;
     private final Wire wire;
+    private final WireCapture.Channel capture;
 
     public LoggingManagedHttpClientConnection(
             final String id,
             final Log log,
             final Log headerLog,
             final Log wireLog,
+            final WireCapture.Channel capture,
             final int bufferSize,
             final int fragmentSizeHint,
             final CharsetDecoder charDecoder,
@@ -69,6 +71,26 @@ class LoggingManagedHttpClientConnection extends DefaultManagedHttpClientConnect
         this.log = log;
         this.headerLog = headerLog;
         this.wire = new Wire(wireLog, id);
+        this.capture = capture;
+    }
+
+    public LoggingManagedHttpClientConnection(
+            final String id,
+            final Log log,
+            final Log headerLog,
+            final Log wireLog,
+            final int bufferSize,
+            final int fragmentSizeHint,
+            final CharsetDecoder charDecoder,
+            final CharsetEncoder charEncoder,
+            final MessageConstraints constraints,
+            final ContentLengthStrategy incomingContentStrategy,
+            final ContentLengthStrategy outgoingContentStrategy,
+            final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
+            final HttpMessageParserFactory<HttpResponse> responseParserFactory) {
+        this(id, log, headerLog, wireLog, null, bufferSize, fragmentSizeHint, charDecoder, charEncoder,
+                constraints, incomingContentStrategy, outgoingContentStrategy,
+                requestWriterFactory, responseParserFactory);
     }
 
     @Override
@@ -79,6 +101,9 @@ class LoggingManagedHttpClientConnection extends DefaultManagedHttpClientConnect
                 this.log.debug(getId() + ": Close connection");
             }
             super.close();
+            if (this.capture != null) {
+                this.capture.closed();
+            }
         }
     }
 
@@ -96,6 +121,9 @@ class LoggingManagedHttpClientConnection extends DefaultManagedHttpClientConnect
             this.log.debug(getId() + ": Shutdown connection");
         }
         super.shutdown();
+        if (this.capture != null) {
+            this.capture.closed();
+        }
     }
 
     @Override
@@ -104,6 +132,9 @@ class LoggingManagedHttpClientConnection extends DefaultManagedHttpClientConnect
         if (this.wire.enabled()) {
             in = new LoggingInputStream(in, this.wire);
         }
+        if (this.capture != null) {
+            in = new WireCaptureInputStream(in, this.capture);
+        }
         return in;
     }
 
@@ -113,6 +144,9 @@ class LoggingManagedHttpClientConnection extends DefaultManagedHttpClientConnect
         if (this.wire.enabled()) {
             out = new LoggingOutputStream(out, this.wire);
         }
+        if (this.capture != null) {
+            out = new WireCaptureOutputStream(out, this.capture);
+        }
         return out;
     }
 
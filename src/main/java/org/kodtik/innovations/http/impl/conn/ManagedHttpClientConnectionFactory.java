@@ -70,15 +70,21 @@ public class ManagedHttpClientConnectionFactory
     private final HttpMessageParserFactory<HttpResponse> responseParserFactory;
     private final ContentLengthStrategy incomingContentStrategy;
     private final ContentLengthStrategy outgoingContentStrategy;
+    private final WireCapture wireCapture;
 
     /**
-     * @since 4.4
+     * @param wireCapture the binary wire capture connections created by this
+     *   factory report their traffic to. Capture is performed only for routes
+     *   enabled by {@link WireCapture#enable(HttpRoute)}. May be {@code null}.
+     *
+     * @since 4.5.15
      */
     public ManagedHttpClientConnectionFactory(
             final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
             final HttpMessageParserFactory<HttpResponse> responseParserFactory,
             final ContentLengthStrategy incomingContentStrategy,
-            final ContentLengthStrategy outgoingContentStrategy) {
+            final ContentLengthStrategy outgoingContentStrategy,
+            final WireCapture wireCapture) {
         super();
         this.requestWriterFactory = requestWriterFactory != null ? requestWriterFactory :
                 DefaultHttpRequestWriterFactory.INSTANCE;
@@ -88,6 +94,18 @@ public class ManagedHttpClientConnectionFactory
                 LaxContentLengthStrategy.INSTANCE;
         this.outgoingContentStrategy = outgoingContentStrategy != null ? outgoingContentStrategy :
                 StrictContentLengthStrategy.INSTANCE;
+        this.wireCapture = wireCapture;
+    }
+
+    /**
+     * @since 4.4
+     */
+    public ManagedHttpClientConnectionFactory(
+            final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
+            final HttpMessageParserFactory<HttpResponse> responseParserFactory,
+            final ContentLengthStrategy incomingContentStrategy,
+            final ContentLengthStrategy outgoingContentStrategy) {
+        this(requestWriterFactory, responseParserFactory, incomingContentStrategy, outgoingContentStrategy, null);
     }
 
     public ManagedHttpClientConnectionFactory(
@@ -129,6 +147,7 @@ public class ManagedHttpClientConnectionFactory
                 log,
                 headerLog,
                 wireLog,
+                wireCapture != null ? wireCapture.open(id, route) : null,
                 cconfig.getBufferSize(),
                 cconfig.getFragmentSizeHint(),
                 charDecoder,
@@ -0,0 +1,68 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.conn;
+
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+import org.kodtik.innovations.http.conn.MetricsRecorder;
+import org.kodtik.innovations.http.conn.routing.HttpRoute;
+
+/**
+ * Noop implementation of {@link MetricsRecorder} that discards all measurements.
+ *
+ * @since 4.5.15
+ */
+@Contract(threading = ThreadingBehavior.IMMUTABLE)
+public class NoopMetricsRecorder implements MetricsRecorder {
+
+    public static final NoopMetricsRecorder INSTANCE = new NoopMetricsRecorder();
+
+    @Override
+    public void recordLease(final HttpRoute route, final long waitNanos, final boolean reused) {
+    }
+
+    @Override
+    public void recordConnect(final HttpRoute route, final long connectNanos) {
+    }
+
+    @Override
+    public void recordHandshake(final HttpRoute route, final long handshakeNanos) {
+    }
+
+    @Override
+    public void recordResponse(final HttpRoute route, final long timeToFirstByteNanos, final int statusCode) {
+    }
+
+    @Override
+    public void recordTransfer(final HttpRoute route, final long sentBytes, final long receivedBytes) {
+    }
+
+    @Override
+    public void recordEviction(final HttpRoute route) {
+    }
+
+}
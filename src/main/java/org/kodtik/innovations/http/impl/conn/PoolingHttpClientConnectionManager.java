@@ -28,12 +28,19 @@ package org.kodtik.innovations.http.impl.conn;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -52,10 +59,11 @@ import org.kodtik.innovations.http.config.SocketConfig;
 import org.kodtik.innovations.http.conn.ConnectionPoolTimeoutException;
 import org.kodtik.innovations.http.conn.ConnectionRequest;
 import org.kodtik.innovations.http.conn.DnsResolver;
-import org.kodtik.innovations.http.conn.HttpClientConnectionManager;
 import org.kodtik.innovations.http.conn.HttpClientConnectionOperator;
 import org.kodtik.innovations.http.conn.HttpConnectionFactory;
 import org.kodtik.innovations.http.conn.ManagedHttpClientConnection;
+import org.kodtik.innovations.http.conn.MetricsRecorder;
+import org.kodtik.innovations.http.conn.PrioritizedConnectionManager;
 import org.kodtik.innovations.http.conn.SchemePortResolver;
 import org.kodtik.innovations.http.conn.routing.HttpRoute;
 import org.kodtik.innovations.http.conn.socket.ConnectionSocketFactory;
@@ -66,6 +74,7 @@ import org.kodtik.innovations.http.pool.ConnPoolControl;
 import org.kodtik.innovations.http.pool.PoolEntry;
 import org.kodtik.innovations.http.pool.PoolEntryCallback;
 import org.kodtik.innovations.http.pool.PoolStats;
+import org.kodtik.innovations.http.protocol.BasicHttpContext;
 import org.kodtik.innovations.http.protocol.HttpContext;
 import org.kodtik.innovations.http.util.Args;
 import org.kodtik.innovations.http.util.Asserts;
@@ -103,7 +112,9 @@ import org.kodtik.innovations.http.util.Asserts;
  */
 @Contract(threading = ThreadingBehavior.SAFE_CONDITIONAL)
 public class PoolingHttpClientConnectionManager
-    implements HttpClientConnectionManager, ConnPoolControl<HttpRoute>, Closeable {
+    implements PrioritizedConnectionManager, ConnPoolControl<HttpRoute>, Closeable {
+
+    private static final int DEFAULT_PREWARM_TIMEOUT = 10000;
 
     private final Log log = LogFactory.getLog(getClass());
 
@@ -112,6 +123,12 @@ public class PoolingHttpClientConnectionManager
     private final HttpClientConnectionOperator connectionOperator;
     private final AtomicBoolean isShutDown;
 
+    private final Map<HttpRoute, Integer> minIdlePerRoute;
+
+    private volatile MetricsRecorder metricsRecorder;
+    private volatile int prewarmConnectTimeout;
+    private ExecutorService prewarmExecutor;
+
     private static Registry<ConnectionSocketFactory> getDefaultRegistry() {
         return RegistryBuilder.<ConnectionSocketFactory>create()
                 .register("http", PlainConnectionSocketFactory.getSocketFactory())
@@ -183,6 +200,9 @@ public class PoolingHttpClientConnectionManager
         this.pool.setValidateAfterInactivity(2000);
         this.connectionOperator = Args.notNull(httpClientConnectionOperator, "HttpClientConnectionOperator");
         this.isShutDown = new AtomicBoolean(false);
+        this.minIdlePerRoute = new ConcurrentHashMap<HttpRoute, Integer>();
+        this.metricsRecorder = NoopMetricsRecorder.INSTANCE;
+        this.prewarmConnectTimeout = DEFAULT_PREWARM_TIMEOUT;
     }
 
     /**
@@ -199,6 +219,9 @@ public class PoolingHttpClientConnectionManager
         this.connectionOperator = new DefaultHttpClientConnectionOperator(
                 socketFactoryRegistry, schemePortResolver, dnsResolver);
         this.isShutDown = new AtomicBoolean(false);
+        this.minIdlePerRoute = new ConcurrentHashMap<HttpRoute, Integer>();
+        this.metricsRecorder = NoopMetricsRecorder.INSTANCE;
+        this.prewarmConnectTimeout = DEFAULT_PREWARM_TIMEOUT;
     }
 
     @Override
@@ -262,12 +285,33 @@ public class PoolingHttpClientConnectionManager
     public ConnectionRequest requestConnection(
             final HttpRoute route,
             final Object state) {
+        return requestConnection(route, state, 0);
+    }
+
+    /**
+     * Returns a new {@link ConnectionRequest} with the given priority. When the pool
+     * is exhausted, pending requests are served in the order of their priority
+     * (highest first), then of their deadline given by the timeout passed to
+     * {@link ConnectionRequest#get(long, TimeUnit)}, then of their arrival.
+     *
+     * @param route HTTP route of the requested connection.
+     * @param state expected state of the connection or {@code null}
+     *            if the connection is not expected to carry any state.
+     * @param priority priority of the request. Default priority is {@code 0}.
+     *
+     * @since 4.5.15
+     */
+    @Override
+    public ConnectionRequest requestConnection(
+            final HttpRoute route,
+            final Object state,
+            final int priority) {
         Args.notNull(route, "HTTP route");
         if (this.log.isDebugEnabled()) {
             this.log.debug("Connection request: " + format(route, state) + formatStats(route));
         }
         Asserts.check(!this.isShutDown.get(), "Connection pool shut down");
-        final Future<CPoolEntry> future = this.pool.lease(route, state, null);
+        final Future<CPoolEntry> future = this.pool.lease(route, state, priority, null);
         return new ConnectionRequest() {
 
             @Override
@@ -303,11 +347,15 @@ public class PoolingHttpClientConnectionManager
             final TimeUnit timeUnit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
         final CPoolEntry entry;
         try {
+            final long start = System.nanoTime();
             entry = future.get(timeout, timeUnit);
             if (entry == null || future.isCancelled()) {
                 throw new ExecutionException(new CancellationException("Operation cancelled"));
             }
             Asserts.check(entry.getConnection() != null, "Pool entry with no connection");
+            this.metricsRecorder.recordLease(
+                    entry.getRoute(), System.nanoTime() - start, entry.getConnection().isOpen());
+            entry.markLeased();
             if (this.log.isDebugEnabled()) {
                 this.log.debug("Connection leased: " + format(entry) + formatStats(entry.getRoute()));
             }
@@ -346,6 +394,8 @@ public class PoolingHttpClientConnectionManager
                     conn.setSocketTimeout(0);
                 }
             } finally {
+                this.metricsRecorder.recordTransfer(
+                        entry.getRoute(), entry.getSentBytesSinceLease(), entry.getReceivedBytesSinceLease());
                 this.pool.release(entry, conn.isOpen() && entry.isRouteComplete());
                 if (this.log.isDebugEnabled()) {
                     this.log.debug("Connection released: " + format(entry) + formatStats(entry.getRoute()));
@@ -367,14 +417,31 @@ public class PoolingHttpClientConnectionManager
             final CPoolEntry entry = CPoolProxy.getPoolEntry(managedConn);
             conn = entry.getConnection();
         }
+        doConnect(conn, route, connectTimeout, context);
+    }
+
+    private void doConnect(
+            final ManagedHttpClientConnection conn,
+            final HttpRoute route,
+            final int connectTimeout,
+            final HttpContext context) throws IOException {
         final HttpHost host;
         if (route.getProxyHost() != null) {
             host = route.getProxyHost();
         } else {
             host = route.getTargetHost();
         }
+        final long start = System.nanoTime();
         this.connectionOperator.connect(
                 conn, host, route.getLocalSocketAddress(), connectTimeout, resolveSocketConfig(host), context);
+        final long elapsed = System.nanoTime() - start;
+        final long handshakeTime = removeHandshakeTime(context);
+        if (handshakeTime >= 0) {
+            this.metricsRecorder.recordConnect(route, elapsed - handshakeTime);
+            this.metricsRecorder.recordHandshake(route, handshakeTime);
+        } else {
+            this.metricsRecorder.recordConnect(route, elapsed);
+        }
     }
 
     @Override
@@ -389,7 +456,18 @@ public class PoolingHttpClientConnectionManager
             final CPoolEntry entry = CPoolProxy.getPoolEntry(managedConn);
             conn = entry.getConnection();
         }
+        final long start = System.nanoTime();
         this.connectionOperator.upgrade(conn, route.getTargetHost(), context);
+        final long elapsed = System.nanoTime() - start;
+        final long handshakeTime = removeHandshakeTime(context);
+        this.metricsRecorder.recordHandshake(route, handshakeTime >= 0 ? handshakeTime : elapsed);
+    }
+
+    private static long removeHandshakeTime(final HttpContext context) {
+        final Object handshakeTime = context != null
+                        ? context.removeAttribute(SSLConnectionSocketFactory.HANDSHAKE_TIME)
+                        : null;
+        return handshakeTime instanceof Long ? ((Long) handshakeTime).longValue() : -1;
     }
 
     @Override
@@ -405,10 +483,281 @@ public class PoolingHttpClientConnectionManager
         }
     }
 
+    /**
+     * Opens new connections to the given route ahead of traffic, so that up to
+     * {@code n} connections to the route are kept alive in the pool. Connections
+     * are opened and, if required, TLS handshaked in parallel. This method
+     * returns once all of them have been either established or failed.
+     * <p>
+     * Pre-warming is subject to the pool limits. It never waits for a connection
+     * to be released back to the pool, nor does it close idle connections of
+     * other routes to make room. Routes that require tunnelling through
+     * a proxy cannot be pre-warmed, as establishing the tunnel requires
+     * a message exchange with the proxy.
+     * </p>
+     * <p>
+     * Each lease from the pool as well as establishing the connections is
+     * bounded by the pre-warm connect timeout. Connections not established
+     * in time are shut down, so that an unresponsive host cannot hold up
+     * the caller, typically the pool maintenance thread.
+     * </p>
+     *
+     * @param route the route to open connections to.
+     * @param n the number of connections to the route to keep in the pool.
+     * @return the number of new connections successfully opened.
+     *
+     * @see #setPrewarmConnectTimeout(int)
+     *
+     * @since 4.5.15
+     */
+    public int prewarm(final HttpRoute route, final int n) throws InterruptedException {
+        Args.notNull(route, "HTTP route");
+        Args.notNegative(n, "Number of connections");
+        Asserts.check(!this.isShutDown.get(), "Connection pool shut down");
+        if (route.isTunnelled()) {
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Tunnelled route cannot be pre-warmed: " + route);
+            }
+            return 0;
+        }
+        final List<CPoolEntry> entries = new ArrayList<CPoolEntry>(n);
+        for (int i = 0; i < n; i++) {
+            if (!hasFreeCapacity(route)) {
+                break;
+            }
+            final Future<CPoolEntry> future = this.pool.lease(route, null, Integer.MIN_VALUE, null);
+            try {
+                // Capacity is free, so the lease only takes as long as validating
+                // an idle connection, unless a concurrent lease takes the slot
+                entries.add(future.get(this.prewarmConnectTimeout, TimeUnit.MILLISECONDS));
+            } catch (final TimeoutException ex) {
+                future.cancel(true);
+                break;
+            } catch (final ExecutionException ex) {
+                break;
+            }
+        }
+        final List<PrewarmTask> tasks = new ArrayList<PrewarmTask>(entries.size());
+        final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(entries.size());
+        for (final CPoolEntry entry: entries) {
+            if (entry.getConnection().isOpen()) {
+                this.pool.release(entry, true);
+                continue;
+            }
+            final PrewarmTask task = new PrewarmTask(entry);
+            try {
+                results.add(getPrewarmExecutor().submit(task));
+                tasks.add(task);
+            } catch (final RejectedExecutionException ex) {
+                this.pool.release(entry, false);
+            }
+        }
+        // Connections are established in parallel, so they share the deadline
+        final long deadline = System.currentTimeMillis() + this.prewarmConnectTimeout;
+        int opened = 0;
+        for (int i = 0; i < results.size(); i++) {
+            final Future<Boolean> result = results.get(i);
+            try {
+                final long remaining = Math.max(deadline - System.currentTimeMillis(), 1);
+                if (result.get(remaining, TimeUnit.MILLISECONDS).booleanValue()) {
+                    opened++;
+                }
+            } catch (final TimeoutException ex) {
+                result.cancel(true);
+                tasks.get(i).abort();
+            } catch (final ExecutionException ex) {
+                this.log.debug("Unexpected exception pre-warming connection", ex.getCause());
+            }
+        }
+        if (this.log.isDebugEnabled()) {
+            this.log.debug("Pre-warmed " + opened + " connection(s): " + route + formatStats(route));
+        }
+        return opened;
+    }
+
+    /**
+     * Checks whether a connection to the given route can be leased without
+     * exceeding the route or total limits, which would make the pool close
+     * idle connections to make room.
+     */
+    private boolean hasFreeCapacity(final HttpRoute route) {
+        final PoolStats routeStats = this.pool.getStats(route);
+        final PoolStats totalStats = this.pool.getTotalStats();
+        return routeStats.getLeased() + routeStats.getAvailable() < routeStats.getMax()
+                && totalStats.getLeased() + totalStats.getAvailable() < totalStats.getMax();
+    }
+
+    /**
+     * Opens the connection of a pool entry leased for pre-warming. The entry
+     * is released by whoever claims it first: the task, once it starts
+     * running, or the caller giving up on it before that.
+     */
+    class PrewarmTask implements Callable<Boolean> {
+
+        private final CPoolEntry entry;
+        private final AtomicBoolean claimed;
+
+        PrewarmTask(final CPoolEntry entry) {
+            this.entry = entry;
+            this.claimed = new AtomicBoolean(false);
+        }
+
+        @Override
+        public Boolean call() {
+            if (!this.claimed.compareAndSet(false, true)) {
+                return Boolean.FALSE;
+            }
+            return Boolean.valueOf(openConnection(this.entry));
+        }
+
+        void abort() {
+            if (this.claimed.compareAndSet(false, true)) {
+                pool.release(this.entry, false);
+            } else {
+                // Unblocks the task should it be stuck connecting or handshaking
+                try {
+                    this.entry.getConnection().shutdown();
+                } catch (final IOException ex) {
+                    log.debug("I/O exception shutting down connection", ex);
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Timeout pre-warming connection " + format(this.entry));
+                }
+            }
+        }
+
+    }
+
+    private boolean openConnection(final CPoolEntry entry) {
+        final ManagedHttpClientConnection conn = entry.getConnection();
+        boolean success = false;
+        try {
+            doConnect(conn, entry.getRoute(), this.prewarmConnectTimeout, new BasicHttpContext());
+            entry.markRouteComplete();
+            entry.updateExpiry(0, TimeUnit.MILLISECONDS);
+            conn.setSocketTimeout(0);
+            success = true;
+        } catch (final IOException ex) {
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("I/O exception pre-warming connection " + format(entry), ex);
+            }
+        } finally {
+            if (!success) {
+                entry.close();
+            }
+            this.pool.release(entry, success);
+        }
+        return success;
+    }
+
+    private synchronized ExecutorService getPrewarmExecutor() {
+        if (this.prewarmExecutor == null) {
+            this.prewarmExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread t = new Thread(r, "Connection pre-warmer");
+                    t.setDaemon(true);
+                    return t;
+                }
+
+            });
+        }
+        return this.prewarmExecutor;
+    }
+
+    private synchronized void shutdownPrewarmExecutor() {
+        if (this.prewarmExecutor != null) {
+            this.prewarmExecutor.shutdownNow();
+            this.prewarmExecutor = null;
+        }
+    }
+
+    /**
+     * Tops up idle connections of every route with a {@link #setMinIdle(HttpRoute, int)
+     * minimum idle} setting, {@link #prewarm(HttpRoute, int) pre-warming} the routes
+     * that fall below their floor.
+     * <p>
+     * This method is meant to be called periodically from a background thread
+     * such as {@link ConnectionPoolMaintainer}, so that the floor is restored
+     * as idle connections expire or get evicted.
+     * </p>
+     *
+     * @since 4.5.15
+     */
+    public void maintainMinIdle() {
+        for (final Map.Entry<HttpRoute, Integer> entry: this.minIdlePerRoute.entrySet()) {
+            if (this.isShutDown.get()) {
+                return;
+            }
+            final HttpRoute route = entry.getKey();
+            final int minIdle = entry.getValue().intValue();
+            // Skipped while the pool is full, as leasing would close idle
+            // connections of other routes, which may have a floor of their own
+            if (this.pool.getStats(route).getAvailable() < minIdle && hasFreeCapacity(route)) {
+                try {
+                    prewarm(route, minIdle);
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @since 4.5.15
+     */
+    public int getMinIdle(final HttpRoute route) {
+        Args.notNull(route, "HTTP route");
+        final Integer v = this.minIdlePerRoute.get(route);
+        return v != null ? v.intValue() : 0;
+    }
+
+    /**
+     * Defines the minimum number of idle connections to be kept alive in the pool
+     * for the given route. Non-positive value removes the setting.
+     *
+     * @see #maintainMinIdle()
+     *
+     * @since 4.5.15
+     */
+    public void setMinIdle(final HttpRoute route, final int min) {
+        Args.notNull(route, "HTTP route");
+        if (min > 0) {
+            this.minIdlePerRoute.put(route, Integer.valueOf(min));
+        } else {
+            this.minIdlePerRoute.remove(route);
+        }
+    }
+
+    /**
+     * @since 4.5.15
+     */
+    public int getPrewarmConnectTimeout() {
+        return this.prewarmConnectTimeout;
+    }
+
+    /**
+     * Defines the timeout in milliseconds for leasing and establishing
+     * connections opened by {@link #prewarm(HttpRoute, int)}, including any
+     * TLS handshake. Pre-warming runs on the pool maintenance thread, so
+     * the timeout must be finite.
+     * <p>
+     * Default: {@code 10000}
+     * </p>
+     *
+     * @since 4.5.15
+     */
+    public void setPrewarmConnectTimeout(final int ms) {
+        this.prewarmConnectTimeout = Args.positive(ms, "Pre-warm connect timeout");
+    }
+
     @Override
     public void shutdown() {
         if (this.isShutDown.compareAndSet(false, true)) {
             this.log.debug("Connection manager is shutting down");
+            shutdownPrewarmExecutor();
             try {
                 this.pool.enumLeased(new PoolEntryCallback<HttpRoute, ManagedHttpClientConnection>() {
 
@@ -440,13 +789,60 @@ public class PoolingHttpClientConnectionManager
         if (this.log.isDebugEnabled()) {
             this.log.debug("Closing connections idle longer than " + idleTimeout + " " + timeUnit);
         }
-        this.pool.closeIdle(idleTimeout, timeUnit);
+        Args.notNull(timeUnit, "Time unit");
+        final long deadline = System.currentTimeMillis() - Math.max(timeUnit.toMillis(idleTimeout), 0);
+        this.pool.enumAvailable(new PoolEntryCallback<HttpRoute, ManagedHttpClientConnection>() {
+
+            @Override
+            public void process(final PoolEntry<HttpRoute, ManagedHttpClientConnection> entry) {
+                if (entry.getUpdated() <= deadline) {
+                    entry.close();
+                    metricsRecorder.recordEviction(entry.getRoute());
+                }
+            }
+
+        });
     }
 
     @Override
     public void closeExpiredConnections() {
         this.log.debug("Closing expired connections");
-        this.pool.closeExpired();
+        this.pool.evictExpired(System.currentTimeMillis(), new PoolEntryCallback<HttpRoute, ManagedHttpClientConnection>() {
+
+            @Override
+            public void process(final PoolEntry<HttpRoute, ManagedHttpClientConnection> entry) {
+                metricsRecorder.recordEviction(entry.getRoute());
+            }
+
+        });
+    }
+
+    /**
+     * Validates persistent connections that have been inactive in the pool
+     * for longer than the {@link #setValidateAfterInactivity(int) validate after
+     * inactivity} period and evicts the stale ones. Connections that pass
+     * the check are not re-validated when leased until they become inactive
+     * for that period again.
+     * <p>
+     * This method is meant to be called periodically from a background thread
+     * such as {@link ConnectionPoolMaintainer} in order to take the cost
+     * of stale connection checks off the request execution path.
+     *
+     * @since 4.5.15
+     */
+    public void validateIdleConnections() {
+        this.log.debug("Validating idle connections");
+        this.pool.validateIdle(new PoolEntryCallback<HttpRoute, ManagedHttpClientConnection>() {
+
+            @Override
+            public void process(final PoolEntry<HttpRoute, ManagedHttpClientConnection> entry) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Connection evicted as stale: " + format((CPoolEntry) entry));
+                }
+                metricsRecorder.recordEviction(entry.getRoute());
+            }
+
+        });
     }
 
     protected void enumAvailable(final PoolEntryCallback<HttpRoute, ManagedHttpClientConnection> callback) {
@@ -560,6 +956,25 @@ public class PoolingHttpClientConnectionManager
         pool.setValidateAfterInactivity(ms);
     }
 
+    /**
+     * @since 4.5.15
+     */
+    public MetricsRecorder getMetricsRecorder() {
+        return this.metricsRecorder;
+    }
+
+    /**
+     * Assigns {@link MetricsRecorder} instance that receives lease wait,
+     * connect and TLS handshake times, connection re-use, bytes transferred
+     * and eviction events of this connection manager. Measurements are
+     * discarded by default.
+     *
+     * @since 4.5.15
+     */
+    public void setMetricsRecorder(final MetricsRecorder metricsRecorder) {
+        this.metricsRecorder = metricsRecorder != null ? metricsRecorder : NoopMetricsRecorder.INSTANCE;
+    }
+
     static class ConfigData {
 
         private final Map<HttpHost, SocketConfig> socketConfigMap;
@@ -0,0 +1,512 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.conn;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.kodtik.innovations.http.Consts;
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+import org.kodtik.innovations.http.conn.routing.HttpRoute;
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * Binary capture of the raw data exchanged over client connections.
+ * <p>
+ * Unlike wire logging, which formats data as text and passes every line
+ * through the logging framework, capture copies raw bytes tagged with
+ * a connection number and a {@link System#nanoTime()} timestamp into
+ * a fixed size ring buffer held outside of the Java heap. I/O threads never
+ * wait for the ring buffer or the capture files and take no locks shared
+ * with other connections, only the otherwise uncontended lock of their own
+ * connection: should the ring buffer be full, data is dropped and accounted
+ * for. A background thread drains the ring buffer
+ * into a series of rotating capture files, which can be turned back into
+ * a readable transcript with {@link WireCaptureDecoder}.
+ * </p>
+ * <p>
+ * Capture is enabled at runtime either for all connections or for
+ * connections of particular routes, and takes effect immediately on
+ * connections already open. Connections take part in capture if created
+ * by a {@link ManagedHttpClientConnectionFactory} configured with
+ * an instance of this class.
+ * </p>
+ * <p>
+ * Capture file format (all numbers big endian): an 8 byte signature
+ * {@code HCWIRE01}, the wall clock time in milliseconds and the
+ * {@link System#nanoTime()} value the file was created at, followed by
+ * frames each consisting of a 4 byte frame type, a 4 byte payload length,
+ * an 8 byte connection number, an 8 byte timestamp and the payload.
+ * </p>
+ *
+ * @since 4.5.15
+ */
+@Contract(threading = ThreadingBehavior.SAFE)
+public final class WireCapture implements Closeable {
+
+    static final long FILE_SIGNATURE = 0x4843574952453031L; // HCWIRE01
+
+    /** Connection opened; payload is the connection id and route */
+    static final int FRAME_OPEN = 1;
+    /** Data received */
+    static final int FRAME_INPUT = 2;
+    /** Data sent */
+    static final int FRAME_OUTPUT = 3;
+    /** Connection closed */
+    static final int FRAME_CLOSE = 4;
+    /** Frames lost; payload is the number of frames */
+    static final int FRAME_DROPPED = 5;
+
+    static final int FRAME_HEADER_SIZE = 24;
+
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024 * 1024;
+    public static final int DEFAULT_FRAME_SIZE = 4096;
+    public static final long DEFAULT_MAX_FILE_SIZE = 64L * 1024 * 1024;
+    public static final int DEFAULT_MAX_FILES = 8;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final File directory;
+    private final String prefix;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private final int slotSize;
+    private final int slotCount;
+    private final ByteBuffer ring;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed;
+    private final AtomicLong consumed;
+    private final AtomicLong dropped;
+    private final AtomicLong channelCount;
+    private final ConcurrentMap<HttpRoute, Switch> switches;
+    private final Thread thread;
+
+    private volatile boolean captureAll;
+    private volatile boolean shutdown;
+    private volatile IOException exception;
+
+    /**
+     * @param directory directory capture files are written to.
+     * @param prefix file name prefix of capture files.
+     * @param bufferSize size of the ring buffer in bytes.
+     * @param frameSize maximum size of a single frame. Larger chunks of data
+     *   are split into several frames.
+     * @param maxFileSize size a capture file may reach before another one
+     *   gets started.
+     * @param maxFiles maximum number of capture files to retain. Oldest files
+     *   get deleted once this number is exceeded.
+     * @param threadFactory factory of the thread draining the ring buffer,
+     *   or {@code null} for the default.
+     */
+    public WireCapture(
+            final File directory,
+            final String prefix,
+            final int bufferSize,
+            final int frameSize,
+            final long maxFileSize,
+            final int maxFiles,
+            final ThreadFactory threadFactory) {
+        super();
+        this.directory = Args.notNull(directory, "Directory");
+        this.prefix = Args.notBlank(prefix, "Prefix");
+        Args.check(frameSize > FRAME_HEADER_SIZE, "Frame size must be greater than " + FRAME_HEADER_SIZE);
+        Args.check(bufferSize >= frameSize, "Buffer size may not be less than frame size");
+        this.maxFileSize = Args.positive(maxFileSize, "Max file size");
+        this.maxFiles = Args.positive(maxFiles, "Max files");
+        this.slotSize = frameSize;
+        this.slotCount = bufferSize / frameSize;
+        this.ring = ByteBuffer.allocateDirect(this.slotCount * this.slotSize);
+        this.published = new AtomicLongArray(this.slotCount);
+        this.claimed = new AtomicLong();
+        this.consumed = new AtomicLong();
+        this.dropped = new AtomicLong();
+        this.channelCount = new AtomicLong();
+        this.switches = new ConcurrentHashMap<HttpRoute, Switch>();
+        this.thread = (threadFactory != null ? threadFactory : new DefaultThreadFactory()).newThread(
+                new Runnable() {
+
+                    @Override
+                    public void run() {
+                        drain();
+                    }
+
+                });
+    }
+
+    public WireCapture(final File directory, final String prefix) {
+        this(directory, prefix, DEFAULT_BUFFER_SIZE, DEFAULT_FRAME_SIZE,
+                DEFAULT_MAX_FILE_SIZE, DEFAULT_MAX_FILES, null);
+    }
+
+    /**
+     * Starts the thread that drains captured data to disk.
+     */
+    public void start() {
+        this.thread.start();
+    }
+
+    /**
+     * Stops capture, writes out data still held in the ring buffer and waits
+     * for the capture file to be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        this.shutdown = true;
+        if (this.thread.isAlive()) {
+            LockSupport.unpark(this.thread);
+            try {
+                this.thread.join();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (this.exception != null) {
+            throw this.exception;
+        }
+    }
+
+    /**
+     * Enables or disables capture of all connections regardless of route.
+     */
+    public void setCaptureAll(final boolean captureAll) {
+        this.captureAll = captureAll;
+    }
+
+    public boolean isCaptureAll() {
+        return this.captureAll;
+    }
+
+    /**
+     * Enables capture of connections of the given route.
+     */
+    public void enable(final HttpRoute route) {
+        getSwitch(route).enabled = true;
+    }
+
+    /**
+     * Disables capture of connections of the given route.
+     */
+    public void disable(final HttpRoute route) {
+        final Switch sw = this.switches.get(route);
+        if (sw != null) {
+            sw.enabled = false;
+        }
+    }
+
+    /**
+     * Tests whether data exchanged over connections of the given route is captured.
+     */
+    public boolean isEnabled(final HttpRoute route) {
+        if (this.captureAll) {
+            return true;
+        }
+        final Switch sw = route != null ? this.switches.get(route) : null;
+        return sw != null && sw.enabled;
+    }
+
+    /**
+     * Returns the number of frames lost because the ring buffer was full or
+     * capture has been shut down.
+     */
+    public long getDroppedFrames() {
+        return this.dropped.get();
+    }
+
+    private Switch getSwitch(final HttpRoute route) {
+        Args.notNull(route, "Route");
+        Switch sw = this.switches.get(route);
+        if (sw == null) {
+            final Switch newSwitch = new Switch();
+            sw = this.switches.putIfAbsent(route, newSwitch);
+            if (sw == null) {
+                sw = newSwitch;
+            }
+        }
+        return sw;
+    }
+
+    /**
+     * Creates a capture channel for a connection with the given id and route.
+     */
+    Channel open(final String id, final HttpRoute route) {
+        return new Channel(this.channelCount.incrementAndGet(), id, route,
+                route != null ? getSwitch(route) : null);
+    }
+
+    /**
+     * Copies a frame into the ring buffer. Never blocks.
+     */
+    private boolean publish(
+            final ByteBuffer view, final int type, final long channel,
+            final byte[] b, final int off, final int len) {
+        if (this.shutdown) {
+            this.dropped.incrementAndGet();
+            return false;
+        }
+        for (;;) {
+            final long seq = this.claimed.get();
+            if (seq - this.consumed.get() >= this.slotCount) {
+                this.dropped.incrementAndGet();
+                return false;
+            }
+            if (this.claimed.compareAndSet(seq, seq + 1)) {
+                final int index = (int) (seq % this.slotCount);
+                view.clear();
+                view.position(index * this.slotSize);
+                view.putInt(type);
+                view.putInt(len);
+                view.putLong(channel);
+                view.putLong(System.nanoTime());
+                if (len > 0) {
+                    view.put(b, off, len);
+                }
+                // Release store: makes the frame visible to the drain thread
+                this.published.lazySet(index, seq + 1);
+                return true;
+            }
+        }
+    }
+
+    private void drain() {
+        final ByteBuffer view = this.ring.duplicate();
+        final ByteBuffer staging = ByteBuffer.allocateDirect(Math.max(64 * 1024, this.slotSize * 2));
+        final Sink sink = new Sink();
+        long reportedDrops = 0;
+        try {
+            for (;;) {
+                final long seq = this.consumed.get();
+                final int index = (int) (seq % this.slotCount);
+                if (this.published.get(index) == seq + 1) {
+                    final int offset = index * this.slotSize;
+                    final int len = view.getInt(offset + 4);
+                    view.limit(offset + FRAME_HEADER_SIZE + len);
+                    view.position(offset);
+                    if (staging.remaining() < view.remaining()) {
+                        sink.write(staging);
+                    }
+                    staging.put(view);
+                    view.clear();
+                    this.consumed.lazySet(seq + 1);
+                    continue;
+                }
+                final long drops = this.dropped.get();
+                if (drops != reportedDrops) {
+                    if (staging.remaining() < FRAME_HEADER_SIZE + 8) {
+                        sink.write(staging);
+                    }
+                    staging.putInt(FRAME_DROPPED);
+                    staging.putInt(8);
+                    staging.putLong(0);
+                    staging.putLong(System.nanoTime());
+                    staging.putLong(drops - reportedDrops);
+                    reportedDrops = drops;
+                }
+                if (staging.position() > 0) {
+                    sink.write(staging);
+                    continue;
+                }
+                if (this.shutdown && this.claimed.get() == seq) {
+                    break;
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        } catch (final IOException ex) {
+            this.exception = ex;
+            this.shutdown = true;
+            this.log.error("Wire capture failed", ex);
+        } finally {
+            sink.close();
+        }
+    }
+
+    /**
+     * Series of capture files of limited size. Used by the drain thread only.
+     */
+    private class Sink {
+
+        private final Deque<File> files = new ArrayDeque<File>();
+        private FileChannel channel;
+        private long size;
+
+        void write(final ByteBuffer staging) throws IOException {
+            if (this.channel == null || this.size >= maxFileSize) {
+                close();
+                this.channel = newFile();
+                this.size = 0;
+            }
+            staging.flip();
+            this.size += staging.remaining();
+            while (staging.hasRemaining()) {
+                this.channel.write(staging);
+            }
+            staging.clear();
+        }
+
+        private FileChannel newFile() throws IOException {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Unable to create directory " + directory);
+            }
+            final long now = System.currentTimeMillis();
+            File file = new File(directory, prefix + "-" + now + ".wcap");
+            for (int i = 1; file.exists(); i++) {
+                file = new File(directory, prefix + "-" + now + "-" + i + ".wcap");
+            }
+            this.files.addLast(file);
+            while (this.files.size() > maxFiles) {
+                final File oldest = this.files.removeFirst();
+                if (!oldest.delete() && log.isDebugEnabled()) {
+                    log.debug("Unable to delete capture file " + oldest);
+                }
+            }
+            final FileChannel fileChannel = new FileOutputStream(file).getChannel();
+            final ByteBuffer header = ByteBuffer.allocate(24);
+            header.putLong(FILE_SIGNATURE);
+            header.putLong(now);
+            header.putLong(System.nanoTime());
+            header.flip();
+            while (header.hasRemaining()) {
+                fileChannel.write(header);
+            }
+            return fileChannel;
+        }
+
+        void close() {
+            if (this.channel != null) {
+                try {
+                    this.channel.close();
+                } catch (final IOException ex) {
+                    log.debug("I/O error closing capture file", ex);
+                }
+                this.channel = null;
+            }
+        }
+
+    }
+
+    static class Switch {
+
+        volatile boolean enabled;
+
+    }
+
+    /**
+     * Capture channel of a single connection.
+     */
+    final class Channel {
+
+        private final long number;
+        private final String id;
+        private final HttpRoute route;
+        private final Switch sw;
+        private final ByteBuffer view;
+        private boolean opened;
+
+        Channel(final long number, final String id, final HttpRoute route, final Switch sw) {
+            this.number = number;
+            this.id = id;
+            this.route = route;
+            this.sw = sw;
+            this.view = ring.duplicate();
+        }
+
+        boolean isEnabled() {
+            return captureAll || (this.sw != null && this.sw.enabled);
+        }
+
+        void input(final byte[] b, final int off, final int len) {
+            capture(FRAME_INPUT, b, off, len);
+        }
+
+        void input(final int b) {
+            capture(FRAME_INPUT, new byte[] { (byte) b }, 0, 1);
+        }
+
+        void output(final byte[] b, final int off, final int len) {
+            capture(FRAME_OUTPUT, b, off, len);
+        }
+
+        void output(final int b) {
+            capture(FRAME_OUTPUT, new byte[] { (byte) b }, 0, 1);
+        }
+
+        // Input and output are normally captured by the same thread; the lock
+        // is there for connections shut down from another thread
+        synchronized void closed() {
+            if (this.opened) {
+                this.opened = false;
+                publish(this.view, FRAME_CLOSE, this.number, null, 0, 0);
+            }
+        }
+
+        private synchronized void capture(final int type, final byte[] b, final int off, final int len) {
+            final int maxPayload = slotSize - FRAME_HEADER_SIZE;
+            if (!this.opened) {
+                final byte[] name = (this.id + " " + (this.route != null ? this.route : "")).getBytes(Consts.UTF_8);
+                if (!publish(this.view, FRAME_OPEN, this.number, name, 0, Math.min(name.length, maxPayload))) {
+                    return;
+                }
+                this.opened = true;
+            }
+            int pos = off;
+            final int end = off + len;
+            while (pos < end) {
+                final int chunk = Math.min(end - pos, maxPayload);
+                publish(this.view, type, this.number, b, pos, chunk);
+                pos += chunk;
+            }
+        }
+
+    }
+
+    static class DefaultThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "Wire capture");
+            t.setDaemon(true);
+            return t;
+        }
+
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.conn;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.kodtik.innovations.http.Consts;
+import org.kodtik.innovations.http.util.Args;
+
+/**
+ * Turns capture files written by {@link WireCapture} into a readable
+ * transcript in the same notation as wire logging, with each line prefixed
+ * by a UTC timestamp of microsecond precision.
+ * <p>
+ * This class can be run from the command line with the capture files to
+ * decode as arguments. The transcript is written to standard output.
+ * </p>
+ *
+ * @since 4.5.15
+ */
+public final class WireCaptureDecoder {
+
+    private WireCaptureDecoder() {
+    }
+
+    /**
+     * Decodes a single capture file.
+     *
+     * @param inStream the content of the capture file. The caller is
+     *   responsible for closing the stream.
+     * @param out the transcript writer.
+     */
+    public static void decode(final InputStream inStream, final Appendable out) throws IOException {
+        Args.notNull(inStream, "Input stream");
+        Args.notNull(out, "Output");
+        final DataInputStream in = new DataInputStream(inStream);
+        if (in.readLong() != WireCapture.FILE_SIGNATURE) {
+            throw new IOException("Not a wire capture file");
+        }
+        final long baseMillis = in.readLong();
+        final long baseNanos = in.readLong();
+        final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.ROOT);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        final Map<Long, String> ids = new HashMap<Long, String>();
+        final StringBuilder line = new StringBuilder();
+        for (;;) {
+            final int type;
+            try {
+                type = in.readInt();
+            } catch (final EOFException ex) {
+                break;
+            }
+            final int len = in.readInt();
+            final long channel = in.readLong();
+            final long nanos = in.readLong();
+            if (len < 0) {
+                throw new IOException("Corrupt wire capture frame");
+            }
+            final byte[] payload = new byte[len];
+            in.readFully(payload);
+
+            final long elapsedMicros = (nanos - baseNanos) / 1000;
+            final long millis = baseMillis + Math.floorDiv(elapsedMicros, 1000L);
+            final long micros = Math.floorMod(elapsedMicros, 1000L);
+            final String timestamp = dateFormat.format(new Date(millis)) + String.format(Locale.ROOT, "%03d", micros);
+            final Long key = Long.valueOf(channel);
+            String id = ids.get(key);
+            if (id == null) {
+                id = "#" + channel;
+            }
+            switch (type) {
+                case WireCapture.FRAME_OPEN: {
+                    final String s = new String(payload, Consts.UTF_8);
+                    final int i = s.indexOf(' ');
+                    id = i != -1 ? s.substring(0, i) : s;
+                    ids.put(key, id);
+                    out.append(timestamp).append(' ').append(id).append(" open");
+                    if (i != -1 && i < s.length() - 1) {
+                        out.append(' ').append(s, i + 1, s.length());
+                    }
+                    out.append('\n');
+                    break;
+                }
+                case WireCapture.FRAME_CLOSE:
+                    out.append(timestamp).append(' ').append(id).append(" close\n");
+                    ids.remove(key);
+                    break;
+                case WireCapture.FRAME_DROPPED: {
+                    final long count = payload.length >= 8 ? ByteBuffer.wrap(payload).getLong() : 0;
+                    out.append(timestamp).append(" *** ").append(Long.toString(count))
+                            .append(" frame(s) dropped\n");
+                    break;
+                }
+                case WireCapture.FRAME_INPUT:
+                case WireCapture.FRAME_OUTPUT:
+                    appendData(out, timestamp + " " + id + (type == WireCapture.FRAME_INPUT ? " << " : " >> "),
+                            payload, line);
+                    break;
+                default:
+                    out.append(timestamp).append(' ').append(id).append(" unknown frame type ")
+                            .append(Integer.toString(type)).append('\n');
+            }
+        }
+    }
+
+    private static void appendData(
+            final Appendable out, final String header, final byte[] data, final StringBuilder line) throws IOException {
+        line.setLength(0);
+        for (final byte b : data) {
+            final int ch = b & 0xff;
+            if (ch == 13) {
+                line.append("[\\r]");
+            } else if (ch == 10) {
+                line.append("[\\n]");
+                out.append(header).append('"').append(line).append("\"\n");
+                line.setLength(0);
+            } else if (ch < 32 || ch > 127) {
+                line.append("[0x").append(Integer.toHexString(ch)).append(']');
+            } else {
+                line.append((char) ch);
+            }
+        }
+        if (line.length() > 0) {
+            out.append(header).append('"').append(line).append("\"\n");
+        }
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final Writer out = new OutputStreamWriter(System.out, Consts.UTF_8);
+        try {
+            for (final String arg : args) {
+                final InputStream in = new BufferedInputStream(new FileInputStream(arg));
+                try {
+                    decode(in, out);
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+}
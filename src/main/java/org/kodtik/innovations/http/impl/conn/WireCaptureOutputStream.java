@@ -0,0 +1,78 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.conn;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that copies data written to the underlying stream into
+ * a {@link WireCapture} channel while capture is enabled.
+ */
+class WireCaptureOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final WireCapture.Channel channel;
+
+    public WireCaptureOutputStream(final OutputStream out, final WireCapture.Channel channel) {
+        super();
+        this.out = out;
+        this.channel = channel;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        out.write(b);
+        if (channel.isEnabled()) {
+            channel.output(b);
+        }
+    }
+
+    @Override
+    public void write(final byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+        if (len > 0 && channel.isEnabled()) {
+            channel.output(b, off, len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+}
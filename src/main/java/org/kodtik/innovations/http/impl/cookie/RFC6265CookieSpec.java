@@ -77,18 +77,53 @@ public class RFC6265CookieSpec implements CookieSpec {
     private static final BitSet SPECIAL_CHARS = TokenParser.INIT_BITSET(' ',
             DQUOTE_CHAR, COMMA_CHAR, PARAM_DELIMITER, ESCAPE_CHAR);
 
+    private static final int MAX_CACHED_FORMATS = 256;
+
     private final CookieAttributeHandler[] attribHandlers;
-    private final Map<String, CookieAttributeHandler> attribHandlerMap;
     private final TokenParser tokenParser;
 
+    // Distinct attribute names (lower case) and their handlers, and the indexes
+    // of those names keyed by their first character
+    private final String[] attribNames;
+    private final CookieAttributeHandler[] attribNameHandlers;
+    private final int[][] attribNameIndex;
+    private final int expiresIndex;
+    private final ConcurrentHashMap<FormatKey, FormattedCookies> formatCache;
+
     protected RFC6265CookieSpec(final CommonCookieAttributeHandler... handlers) {
         super();
         this.attribHandlers = handlers.clone();
-        this.attribHandlerMap = new ConcurrentHashMap<String, CookieAttributeHandler>(handlers.length);
+        final Map<String, CookieAttributeHandler> nameMap = new LinkedHashMap<String, CookieAttributeHandler>();
         for (final CommonCookieAttributeHandler handler: handlers) {
-            this.attribHandlerMap.put(handler.getAttributeName().toLowerCase(Locale.ROOT), handler);
+            final String name = handler.getAttributeName().toLowerCase(Locale.ROOT);
+            nameMap.put(name, handler);
+        }
+        this.attribNames = nameMap.keySet().toArray(new String[nameMap.size()]);
+        this.attribNameHandlers = nameMap.values().toArray(new CookieAttributeHandler[nameMap.size()]);
+        this.attribNameIndex = new int[128][];
+        int expires = -1;
+        for (int i = 0; i < this.attribNames.length; i++) {
+            final String name = this.attribNames[i];
+            if (name.equals(ClientCookie.EXPIRES_ATTR)) {
+                expires = i;
+            }
+            if (name.isEmpty() || name.charAt(0) >= 128) {
+                continue;
+            }
+            final int[] current = this.attribNameIndex[name.charAt(0)];
+            final int[] updated;
+            if (current == null) {
+                updated = new int[1];
+            } else {
+                updated = new int[current.length + 1];
+                System.arraycopy(current, 0, updated, 0, current.length);
+            }
+            updated[updated.length - 1] = i;
+            this.attribNameIndex[name.charAt(0)] = updated;
         }
+        this.expiresIndex = expires;
         this.tokenParser = TokenParser.INSTANCE;
+        this.formatCache = new ConcurrentHashMap<FormatKey, FormattedCookies>();
     }
 
     static String getDefaultPath(final CookieOrigin origin) {
@@ -129,60 +164,198 @@ public class RFC6265CookieSpec implements CookieSpec {
             buffer.append(s);
             cursor = new ParserCursor(0, buffer.length());
         }
-        final String name = tokenParser.parseToken(buffer, cursor, TOKEN_DELIMS);
+        final int upperBound = cursor.getUpperBound();
+        int pos = cursor.getPos();
+        int end = scan(buffer, pos, upperBound, EQUAL_CHAR, false);
+        final String name = end >= 0 ? buffer.substringTrimmed(pos, end) : slowParse(buffer, cursor, TOKEN_DELIMS, false);
+        if (end < 0) {
+            end = cursor.getPos();
+        }
         if (name.isEmpty()) {
             return Collections.emptyList();
         }
-        if (cursor.atEnd()) {
+        if (end >= upperBound) {
             return Collections.emptyList();
         }
-        final int valueDelim = buffer.charAt(cursor.getPos());
-        cursor.updatePos(cursor.getPos() + 1);
-        if (valueDelim != '=') {
+        if (buffer.charAt(end) != EQUAL_CHAR) {
             throw new MalformedCookieException("Cookie value is invalid: '" + header.toString() + "'");
         }
-        final String value = tokenParser.parseValue(buffer, cursor, VALUE_DELIMS);
-        if (!cursor.atEnd()) {
-            cursor.updatePos(cursor.getPos() + 1);
+        pos = end + 1;
+        end = scan(buffer, pos, upperBound, PARAM_DELIMITER, true);
+        final String value;
+        if (end >= 0) {
+            value = buffer.substringTrimmed(pos, end);
+        } else {
+            cursor.updatePos(pos);
+            value = slowParse(buffer, cursor, VALUE_DELIMS, true);
+            end = cursor.getPos();
         }
+        pos = end < upperBound ? end + 1 : end;
+
         final BasicClientCookie cookie = new BasicClientCookie(name, value);
         cookie.setPath(getDefaultPath(origin));
         cookie.setDomain(getDefaultDomain(origin));
         cookie.setCreationDate(new Date());
 
-        final Map<String, String> attribMap = new LinkedHashMap<String, String>();
-        while (!cursor.atEnd()) {
-            final String paramName = tokenParser.parseToken(buffer, cursor, TOKEN_DELIMS)
-                    .toLowerCase(Locale.ROOT);
+        // Last value of each known attribute; handlers are applied once all
+        // attributes have been read
+        String[] attribValues = null;
+        boolean[] attribPresent = null;
+        boolean maxAge = false;
+        while (pos < upperBound) {
+            end = scan(buffer, pos, upperBound, EQUAL_CHAR, false);
+            final int index;
+            final String paramName;
+            if (end >= 0) {
+                final int nameStart = skipWhitespace(buffer, pos, end);
+                final int nameEnd = trimWhitespace(buffer, nameStart, end);
+                index = lookupAttribute(buffer, nameStart, nameEnd);
+                paramName = index >= 0 ? this.attribNames[index]
+                        : buffer.substring(nameStart, nameEnd).toLowerCase(Locale.ROOT);
+            } else {
+                cursor.updatePos(pos);
+                paramName = slowParse(buffer, cursor, TOKEN_DELIMS, false).toLowerCase(Locale.ROOT);
+                end = cursor.getPos();
+                index = indexOfAttribute(paramName);
+            }
+            pos = end;
             String paramValue = null;
-            if (!cursor.atEnd()) {
-                final int paramDelim = buffer.charAt(cursor.getPos());
-                cursor.updatePos(cursor.getPos() + 1);
+            if (pos < upperBound) {
+                final char paramDelim = buffer.charAt(pos);
+                pos++;
                 if (paramDelim == EQUAL_CHAR) {
-                    paramValue = tokenParser.parseToken(buffer, cursor, VALUE_DELIMS);
-                    if (!cursor.atEnd()) {
-                        cursor.updatePos(cursor.getPos() + 1);
+                    end = scan(buffer, pos, upperBound, PARAM_DELIMITER, false);
+                    if (end >= 0) {
+                        paramValue = buffer.substringTrimmed(pos, end);
+                    } else {
+                        cursor.updatePos(pos);
+                        paramValue = slowParse(buffer, cursor, VALUE_DELIMS, false);
+                        end = cursor.getPos();
                     }
+                    pos = end < upperBound ? end + 1 : end;
                 }
             }
             cookie.setAttribute(paramName, paramValue);
-            attribMap.put(paramName, paramValue);
+            if (!maxAge && paramName.equals(ClientCookie.MAX_AGE_ATTR)) {
+                maxAge = true;
+            }
+            if (index >= 0) {
+                if (attribValues == null) {
+                    attribValues = new String[this.attribNames.length];
+                    attribPresent = new boolean[this.attribNames.length];
+                }
+                attribValues[index] = paramValue;
+                attribPresent[index] = true;
+            }
         }
-        // Ignore 'Expires' if 'Max-Age' is present
-        if (attribMap.containsKey(ClientCookie.MAX_AGE_ATTR)) {
-            attribMap.remove(ClientCookie.EXPIRES_ATTR);
+        if (attribPresent != null) {
+            for (int i = 0; i < attribPresent.length; i++) {
+                // Ignore 'Expires' if 'Max-Age' is present
+                if (attribPresent[i] && !(maxAge && i == this.expiresIndex)) {
+                    this.attribNameHandlers[i].parse(cookie, attribValues[i]);
+                }
+            }
         }
 
-        for (final Map.Entry<String, String> entry: attribMap.entrySet()) {
-            final String paramName = entry.getKey();
-            final String paramValue = entry.getValue();
-            final CookieAttributeHandler handler = this.attribHandlerMap.get(paramName);
-            if (handler != null) {
-                handler.parse(cookie, paramValue);
+        return Collections.<Cookie>singletonList(cookie);
+    }
+
+    /**
+     * Scans the content up to the given delimiter or the upper bound.
+     * Returns the position of the delimiter (or the upper bound) if the
+     * content can be taken as is once trimmed, or {@code -1} if it contains
+     * whitespace that needs to be folded or, for values, quoted strings.
+     */
+    static int scan(
+            final CharArrayBuffer buffer, final int from, final int to,
+            final char delim, final boolean quotes) {
+        boolean content = false;
+        int blanks = 0;
+        boolean foldable = false;
+        for (int i = from; i < to; i++) {
+            final char ch = buffer.charAt(i);
+            if (ch == delim || ch == PARAM_DELIMITER) {
+                return i;
+            }
+            if (TokenParser.isWhitespace(ch)) {
+                blanks++;
+                if (ch != ' ') {
+                    foldable = true;
+                }
+            } else {
+                if (quotes && ch == DQUOTE_CHAR) {
+                    return -1;
+                }
+                if (content && (blanks > 1 || (blanks == 1 && foldable))) {
+                    return -1;
+                }
+                content = true;
+                blanks = 0;
+                foldable = false;
             }
         }
+        return to;
+    }
 
-        return Collections.<Cookie>singletonList(cookie);
+    private String slowParse(
+            final CharArrayBuffer buffer, final ParserCursor cursor, final BitSet delims, final boolean value) {
+        return value ? this.tokenParser.parseValue(buffer, cursor, delims)
+                : this.tokenParser.parseToken(buffer, cursor, delims);
+    }
+
+    private static int skipWhitespace(final CharArrayBuffer buffer, final int from, final int to) {
+        int i = from;
+        while (i < to && TokenParser.isWhitespace(buffer.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int trimWhitespace(final CharArrayBuffer buffer, final int from, final int to) {
+        int i = to;
+        while (i > from && TokenParser.isWhitespace(buffer.charAt(i - 1))) {
+            i--;
+        }
+        return i;
+    }
+
+    private int lookupAttribute(final CharArrayBuffer buffer, final int from, final int to) {
+        if (from == to) {
+            return indexOfAttribute("");
+        }
+        final char first = toLowerCase(buffer.charAt(from));
+        final int[] candidates = first < 128 ? this.attribNameIndex[first] : null;
+        if (candidates == null) {
+            return -1;
+        }
+        final int len = to - from;
+        for (final int index : candidates) {
+            final String name = this.attribNames[index];
+            if (name.length() != len) {
+                continue;
+            }
+            int i = 1;
+            while (i < len && toLowerCase(buffer.charAt(from + i)) == name.charAt(i)) {
+                i++;
+            }
+            if (i == len) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static char toLowerCase(final char ch) {
+        return ch >= 'A' && ch <= 'Z' ? (char) (ch + ('a' - 'A')) : ch;
+    }
+
+    private int indexOfAttribute(final String name) {
+        for (int i = 0; i < this.attribNames.length; i++) {
+            if (this.attribNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     @Override
@@ -218,6 +391,11 @@ public class RFC6265CookieSpec implements CookieSpec {
         } else {
             sortedCookies = cookies;
         }
+        final FormatKey key = new FormatKey(sortedCookies);
+        final FormattedCookies cached = this.formatCache.get(key);
+        if (cached != null && cached.matches(sortedCookies)) {
+            return cached.headers;
+        }
         final CharArrayBuffer buffer = new CharArrayBuffer(20 * sortedCookies.size());
         buffer.append(SM.COOKIE);
         buffer.append(": ");
@@ -246,11 +424,94 @@ public class RFC6265CookieSpec implements CookieSpec {
                 }
             }
         }
-        final List<Header> headers = new ArrayList<Header>(1);
-        headers.add(new BufferedHeader(buffer));
+        final List<Header> headers = Collections.<Header>singletonList(new BufferedHeader(buffer));
+        if (this.formatCache.size() >= MAX_CACHED_FORMATS) {
+            this.formatCache.clear();
+        }
+        this.formatCache.put(key, new FormattedCookies(sortedCookies, headers));
         return headers;
     }
 
+    /**
+     * Identity of a list of cookies: two keys are equal if they refer
+     * to the same cookie instances in the same order.
+     */
+    static final class FormatKey {
+
+        private final Cookie[] cookies;
+        private final int hash;
+
+        FormatKey(final List<? extends Cookie> cookies) {
+            this.cookies = cookies.toArray(new Cookie[cookies.size()]);
+            int h = 1;
+            for (final Cookie cookie : this.cookies) {
+                h = 31 * h + System.identityHashCode(cookie);
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj instanceof FormatKey) {
+                final FormatKey that = (FormatKey) obj;
+                if (this.hash != that.hash || this.cookies.length != that.cookies.length) {
+                    return false;
+                }
+                for (int i = 0; i < this.cookies.length; i++) {
+                    if (this.cookies[i] != that.cookies[i]) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+    }
+
+    /**
+     * Formatted {@code Cookie} header along with the names and values
+     * the header was produced from, as cookie instances may be mutable.
+     */
+    static final class FormattedCookies {
+
+        private final String[] names;
+        private final String[] values;
+        final List<Header> headers;
+
+        FormattedCookies(final List<? extends Cookie> cookies, final List<Header> headers) {
+            this.names = new String[cookies.size()];
+            this.values = new String[cookies.size()];
+            for (int i = 0; i < this.names.length; i++) {
+                final Cookie cookie = cookies.get(i);
+                this.names[i] = cookie.getName();
+                this.values[i] = cookie.getValue();
+            }
+            this.headers = headers;
+        }
+
+        boolean matches(final List<? extends Cookie> cookies) {
+            // Reference comparison suffices as a modified name or value
+            // is a different string instance
+            for (int i = 0; i < this.names.length; i++) {
+                final Cookie cookie = cookies.get(i);
+                if (cookie.getName() != this.names[i] || cookie.getValue() != this.values[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
     boolean containsSpecialChar(final CharSequence s) {
         return containsChars(s, SPECIAL_CHARS);
     }
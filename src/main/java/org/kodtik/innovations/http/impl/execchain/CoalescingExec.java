@@ -0,0 +1,533 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.kodtik.innovations.http.impl.execchain;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.kodtik.innovations.http.Header;
+import org.kodtik.innovations.http.HttpEntity;
+import org.kodtik.innovations.http.HttpEntityEnclosingRequest;
+import org.kodtik.innovations.http.HttpException;
+import org.kodtik.innovations.http.StatusLine;
+import org.kodtik.innovations.http.annotation.Contract;
+import org.kodtik.innovations.http.annotation.ThreadingBehavior;
+import org.kodtik.innovations.http.auth.AuthProtocolState;
+import org.kodtik.innovations.http.auth.AuthState;
+import org.kodtik.innovations.http.client.config.RequestConfig;
+import org.kodtik.innovations.http.client.methods.CloseableHttpResponse;
+import org.kodtik.innovations.http.client.methods.HttpExecutionAware;
+import org.kodtik.innovations.http.client.methods.HttpRequestWrapper;
+import org.kodtik.innovations.http.client.protocol.HttpClientContext;
+import org.kodtik.innovations.http.concurrent.Cancellable;
+import org.kodtik.innovations.http.conn.routing.HttpRoute;
+import org.kodtik.innovations.http.entity.ByteArrayEntity;
+import org.kodtik.innovations.http.entity.HttpEntityWrapper;
+import org.kodtik.innovations.http.message.BasicHttpResponse;
+import org.kodtik.innovations.http.util.Args;
+import org.kodtik.innovations.http.util.ByteArrayBuffer;
+
+/**
+ * Request executor in the request execution chain that collapses identical
+ * idempotent requests executed concurrently into a single exchange with
+ * the opposite endpoint.
+ * <p>
+ * The first {@code GET} or {@code HEAD} request for a given route, request
+ * URI and set of selecting request headers becomes the leader and is passed
+ * on to the next executor in the request execution chain. Requests with
+ * the same key arriving while the leader is in flight wait for its outcome
+ * and receive a copy of the leader's response with the message body
+ * replayed from memory, or the exception the leader failed with. The
+ * leader's response body is only buffered if requests are actually waiting
+ * for it; otherwise it is streamed to the caller as usual. A waiting request
+ * gives up once the sum of its connection request and socket timeouts has
+ * elapsed without the leader completing.
+ * </p>
+ * <p>
+ * Responses whose body exceeds the maximum buffer size as well as responses
+ * to exchanges that involved authentication are not shared: waiting requests
+ * are then executed independently. Should the leader be aborted, one of
+ * the waiting requests takes over as the new leader.
+ * </p>
+ * <p>
+ * This executor is meant to be placed directly above the main executor,
+ * so that protocol interceptors are applied to each request individually
+ * and headers such as {@code Cookie} or {@code Authorization} they add
+ * become part of the request key.
+ * </p>
+ *
+ * @since 4.5.15
+ */
+@Contract(threading = ThreadingBehavior.SAFE_CONDITIONAL)
+public class CoalescingExec implements ClientExecChain {
+
+    /**
+     * Request headers response content is commonly selected on that are
+     * included in the request key by default.
+     */
+    public static final String[] DEFAULT_KEY_HEADERS = {
+            "Accept", "Accept-Charset", "Accept-Encoding", "Accept-Language",
+            "Authorization", "Cookie", "Proxy-Authorization", "Range" };
+
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 1024 * 1024;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final ClientExecChain requestExecutor;
+    private final String[] keyHeaders;
+    private final int maxBufferSize;
+    private final ConcurrentMap<String, Call> calls;
+    private final AtomicLong leaders;
+    private final AtomicLong followers;
+
+    /**
+     * @param requestExecutor the next executor in the request execution chain.
+     * @param keyHeaders names of request headers whose values are included
+     *   in the request key in addition to the request method, route and URI.
+     * @param maxBufferSize maximum size of a response body that can be shared
+     *   with waiting requests.
+     */
+    public CoalescingExec(
+            final ClientExecChain requestExecutor,
+            final String[] keyHeaders,
+            final int maxBufferSize) {
+        super();
+        Args.notNull(requestExecutor, "HTTP request executor");
+        Args.notNull(keyHeaders, "Key headers");
+        Args.notNegative(maxBufferSize, "Max buffer size");
+        this.requestExecutor = requestExecutor;
+        this.keyHeaders = keyHeaders.clone();
+        this.maxBufferSize = maxBufferSize;
+        this.calls = new ConcurrentHashMap<String, Call>();
+        this.leaders = new AtomicLong();
+        this.followers = new AtomicLong();
+    }
+
+    public CoalescingExec(final ClientExecChain requestExecutor) {
+        this(requestExecutor, DEFAULT_KEY_HEADERS, DEFAULT_MAX_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns the number of requests that were passed on to the next executor
+     * as leaders of a group of identical requests.
+     */
+    public long getLeaderCount() {
+        return this.leaders.get();
+    }
+
+    /**
+     * Returns the number of requests that were served with a response shared
+     * by a leader.
+     */
+    public long getCoalescedCount() {
+        return this.followers.get();
+    }
+
+    /**
+     * Returns the number of distinct requests currently in flight.
+     */
+    public int getInFlightCount() {
+        return this.calls.size();
+    }
+
+    static boolean isCoalescible(final HttpRequestWrapper request) {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            return false;
+        }
+        final String method = request.getRequestLine().getMethod();
+        return "GET".equals(method) || "HEAD".equals(method);
+    }
+
+    String createKey(final HttpRoute route, final HttpRequestWrapper request) {
+        final StringBuilder buffer = new StringBuilder(128);
+        buffer.append(request.getRequestLine().getMethod()).append(' ');
+        buffer.append(route).append(' ');
+        buffer.append(request.getRequestLine().getUri());
+        for (final String name : this.keyHeaders) {
+            final Header[] headers = request.getHeaders(name);
+            if (headers.length > 0) {
+                buffer.append('\n').append(name).append(':');
+                for (int i = 0; i < headers.length; i++) {
+                    if (i > 0) {
+                        buffer.append(',');
+                    }
+                    buffer.append(headers[i].getValue());
+                }
+            }
+        }
+        return buffer.toString();
+    }
+
+    @Override
+    public CloseableHttpResponse execute(
+            final HttpRoute route,
+            final HttpRequestWrapper request,
+            final HttpClientContext context,
+            final HttpExecutionAware execAware) throws IOException, HttpException {
+        Args.notNull(route, "HTTP route");
+        Args.notNull(request, "HTTP request");
+        Args.notNull(context, "HTTP context");
+        if (!isCoalescible(request)) {
+            return this.requestExecutor.execute(route, request, context, execAware);
+        }
+        final String key = createKey(route, request);
+        for (;;) {
+            final Call call = new Call();
+            final Call inFlight = this.calls.putIfAbsent(key, call);
+            if (inFlight == null) {
+                this.leaders.incrementAndGet();
+                return lead(key, call, route, request, context, execAware);
+            }
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Waiting for identical request in flight: " + request.getRequestLine());
+            }
+            if (!inFlight.join()) {
+                // The leader is no longer accepting followers
+                this.calls.remove(key, inFlight);
+                continue;
+            }
+            if (!inFlight.await(execAware, getWaitTimeout(context.getRequestConfig()))) {
+                continue;
+            }
+            final Result result = inFlight.getResult();
+            if (result == null) {
+                return this.requestExecutor.execute(route, request, context, execAware);
+            }
+            this.followers.incrementAndGet();
+            return result.createResponse();
+        }
+    }
+
+    /**
+     * Returns the maximum time a request waits for the leader to complete,
+     * or {@code 0} if the wait is not bounded.
+     */
+    static long getWaitTimeout(final RequestConfig config) {
+        final int connectionRequestTimeout = config.getConnectionRequestTimeout();
+        final int socketTimeout = config.getSocketTimeout();
+        long timeout = 0;
+        if (connectionRequestTimeout > 0) {
+            timeout += connectionRequestTimeout;
+        }
+        if (socketTimeout > 0) {
+            timeout += socketTimeout;
+        }
+        return timeout;
+    }
+
+    private CloseableHttpResponse lead(
+            final String key,
+            final Call call,
+            final HttpRoute route,
+            final HttpRequestWrapper request,
+            final HttpClientContext context,
+            final HttpExecutionAware execAware) throws IOException, HttpException {
+        Result result = null;
+        Exception failure = null;
+        try {
+            final CloseableHttpResponse response = this.requestExecutor.execute(
+                    route, request, context, execAware);
+            try {
+                if (call.detachIfUnshared()) {
+                    // Nobody is waiting: stream the response straight through
+                    this.calls.remove(key, call);
+                    return response;
+                }
+                if (isChallenged(context.getTargetAuthState()) || isChallenged(context.getProxyAuthState())) {
+                    return response;
+                }
+                result = bufferResponse(response);
+                return response;
+            } catch (final IOException ex) {
+                response.close();
+                throw ex;
+            } catch (final RuntimeException ex) {
+                response.close();
+                throw ex;
+            }
+        } catch (final IOException ex) {
+            failure = ex;
+            throw ex;
+        } catch (final HttpException ex) {
+            failure = ex;
+            throw ex;
+        } catch (final RuntimeException ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            this.calls.remove(key, call);
+            call.complete(result, failure);
+        }
+    }
+
+    private static boolean isChallenged(final AuthState authState) {
+        return authState != null && authState.getState() != AuthProtocolState.UNCHALLENGED;
+    }
+
+    /**
+     * Reads the response body into memory up to the maximum buffer size and
+     * replaces the response entity with a replayable one. Returns
+     * {@code null} if the body is too large to be shared.
+     */
+    private Result bufferResponse(final CloseableHttpResponse response) throws IOException {
+        final HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return new Result(response.getStatusLine(), response.getAllHeaders(), null, null);
+        }
+        final long len = entity.getContentLength();
+        if (len > this.maxBufferSize) {
+            return null;
+        }
+        final InputStream inStream = entity.getContent();
+        if (inStream == null) {
+            return new Result(response.getStatusLine(), response.getAllHeaders(), null, null);
+        }
+        final ByteArrayBuffer buffer = new ByteArrayBuffer(len >= 0 ? (int) len : 4096);
+        final byte[] tmp = new byte[4096];
+        int l;
+        while ((l = inStream.read(tmp)) != -1) {
+            buffer.append(tmp, 0, l);
+            if (buffer.length() > this.maxBufferSize) {
+                response.setEntity(new PrefixedEntity(entity, buffer, inStream));
+                return null;
+            }
+        }
+        inStream.close();
+        final ByteArrayEntity replay = createEntity(entity, buffer);
+        response.setEntity(replay);
+        return new Result(response.getStatusLine(), response.getAllHeaders(), replay, buffer);
+    }
+
+    static ByteArrayEntity createEntity(final HttpEntity entity, final ByteArrayBuffer buffer) {
+        final ByteArrayEntity replay = new ByteArrayEntity(buffer.buffer(), 0, buffer.length());
+        replay.setContentType(entity.getContentType());
+        replay.setContentEncoding(entity.getContentEncoding());
+        replay.setChunked(entity.isChunked());
+        return replay;
+    }
+
+    static class Result {
+
+        private final StatusLine statusLine;
+        private final Header[] headers;
+        private final HttpEntity entity;
+        private final ByteArrayBuffer content;
+
+        Result(
+                final StatusLine statusLine,
+                final Header[] headers,
+                final HttpEntity entity,
+                final ByteArrayBuffer content) {
+            super();
+            this.statusLine = statusLine;
+            this.headers = headers;
+            this.entity = entity;
+            this.content = content;
+        }
+
+        CloseableHttpResponse createResponse() {
+            final BasicHttpResponse response = new BasicHttpResponse(this.statusLine);
+            response.setHeaders(this.headers);
+            if (this.entity != null) {
+                response.setEntity(createEntity(this.entity, this.content));
+            }
+            return new HttpResponseProxy(response, null);
+        }
+
+    }
+
+    static class Call implements Cancellable {
+
+        private boolean completed;
+        private boolean detached;
+        private int waiting;
+        private Result result;
+        private Exception failure;
+
+        /**
+         * Registers a waiting request. Returns {@code false} if the leader
+         * has already decided not to share its response.
+         */
+        synchronized boolean join() {
+            if (this.completed || this.detached) {
+                return false;
+            }
+            this.waiting++;
+            return true;
+        }
+
+        /**
+         * Stops accepting waiting requests if there are none yet. Returns
+         * {@code true} if the response does not need to be shared.
+         */
+        synchronized boolean detachIfUnshared() {
+            if (this.waiting == 0) {
+                this.detached = true;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void complete(final Result result, final Exception failure) {
+            this.completed = true;
+            this.result = result;
+            this.failure = failure;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized boolean cancel() {
+            notifyAll();
+            return true;
+        }
+
+        /**
+         * Waits for the leader to complete. Returns {@code false} if the leader
+         * has been aborted and the request should be re-submitted.
+         *
+         * @param timeout the maximum time to wait in milliseconds
+         *   or {@code 0} to wait indefinitely.
+         */
+        boolean await(
+                final HttpExecutionAware execAware,
+                final long timeout) throws IOException, HttpException {
+            if (execAware != null) {
+                execAware.setCancellable(this);
+            }
+            synchronized (this) {
+                final long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+                try {
+                    while (!this.completed) {
+                        if (execAware != null && execAware.isAborted()) {
+                            throw new RequestAbortedException("Request aborted");
+                        }
+                        try {
+                            if (deadline > 0) {
+                                final long remaining = deadline - System.currentTimeMillis();
+                                if (remaining <= 0) {
+                                    throw new SocketTimeoutException(
+                                            "Timeout waiting for request in flight");
+                                }
+                                wait(remaining);
+                            } else {
+                                wait();
+                            }
+                        } catch (final InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Interrupted while waiting for request in flight");
+                        }
+                    }
+                } finally {
+                    this.waiting--;
+                }
+                if (this.failure instanceof RequestAbortedException) {
+                    return false;
+                }
+                if (this.failure instanceof IOException) {
+                    throw (IOException) this.failure;
+                }
+                if (this.failure instanceof HttpException) {
+                    throw (HttpException) this.failure;
+                }
+                if (this.failure instanceof RuntimeException) {
+                    throw (RuntimeException) this.failure;
+                }
+                return true;
+            }
+        }
+
+        synchronized Result getResult() {
+            return this.result;
+        }
+
+    }
+
+    /**
+     * Entity that replays the part of the original content already read into
+     * memory followed by the rest of the original content stream.
+     */
+    static class PrefixedEntity extends HttpEntityWrapper {
+
+        private final ByteArrayBuffer prefix;
+        private final InputStream remainder;
+        private boolean consumed;
+
+        PrefixedEntity(final HttpEntity entity, final ByteArrayBuffer prefix, final InputStream remainder) {
+            super(entity);
+            this.prefix = prefix;
+            this.remainder = remainder;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return !this.consumed;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            if (this.consumed) {
+                throw new IllegalStateException("Content has been consumed");
+            }
+            this.consumed = true;
+            return new SequenceInputStream(
+                    new ByteArrayInputStream(this.prefix.buffer(), 0, this.prefix.length()),
+                    this.remainder);
+        }
+
+        @Override
+        public void writeTo(final OutputStream outStream) throws IOException {
+            Args.notNull(outStream, "Output stream");
+            final InputStream inStream = getContent();
+            try {
+                final byte[] tmp = new byte[4096];
+                int l;
+                while ((l = inStream.read(tmp)) != -1) {
+                    outStream.write(tmp, 0, l);
+                }
+            } finally {
+                inStream.close();
+            }
+        }
+
+    }
+
+}
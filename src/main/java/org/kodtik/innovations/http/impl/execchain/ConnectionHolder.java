@@ -39,6 +39,8 @@ import org.kodtik.innovations.http.annotation.ThreadingBehavior;
 import org.kodtik.innovations.http.concurrent.Cancellable;
 import org.kodtik.innovations.http.conn.ConnectionReleaseTrigger;
 import org.kodtik.innovations.http.conn.HttpClientConnectionManager;
+import org.kodtik.innovations.http.protocol.ExchangeTimings;
+import org.kodtik.innovations.http.protocol.HttpContext;
 
 /**
  * Internal connection holder.
@@ -52,6 +54,7 @@ class ConnectionHolder implements ConnectionReleaseTrigger, Cancellable, Closeab
 
     private final HttpClientConnectionManager manager;
     private final HttpClientConnection managedConn;
+    private final HttpContext context;
     private final AtomicBoolean released;
     private volatile boolean reusable;
     private volatile Object state;
@@ -61,14 +64,23 @@ class ConnectionHolder implements ConnectionReleaseTrigger, Cancellable, Closeab
     public ConnectionHolder(
             final Log log,
             final HttpClientConnectionManager manager,
-            final HttpClientConnection managedConn) {
+            final HttpClientConnection managedConn,
+            final HttpContext context) {
         super();
         this.log = log;
         this.manager = manager;
         this.managedConn = managedConn;
+        this.context = context;
         this.released = new AtomicBoolean(false);
     }
 
+    public ConnectionHolder(
+            final Log log,
+            final HttpClientConnectionManager manager,
+            final HttpClientConnection managedConn) {
+        this(log, manager, managedConn, null);
+    }
+
     public boolean isReusable() {
         return this.reusable;
     }
@@ -112,6 +124,7 @@ class ConnectionHolder implements ConnectionReleaseTrigger, Cancellable, Closeab
                     }
                 }
             }
+            ExchangeTimings.mark(this.context, ExchangeTimings.Phase.COMPLETE);
         }
     }
 
@@ -136,6 +149,7 @@ class ConnectionHolder implements ConnectionReleaseTrigger, Cancellable, Closeab
                             this.managedConn, null, 0, TimeUnit.MILLISECONDS);
                 }
             }
+            ExchangeTimings.mark(this.context, ExchangeTimings.Phase.COMPLETE);
         }
     }
 
@@ -58,6 +58,8 @@ import org.kodtik.innovations.http.client.protocol.HttpClientContext;
 import org.kodtik.innovations.http.conn.ConnectionKeepAliveStrategy;
 import org.kodtik.innovations.http.conn.ConnectionRequest;
 import org.kodtik.innovations.http.conn.HttpClientConnectionManager;
+import org.kodtik.innovations.http.conn.MetricsRecorder;
+import org.kodtik.innovations.http.conn.PrioritizedConnectionManager;
 import org.kodtik.innovations.http.conn.routing.BasicRouteDirector;
 import org.kodtik.innovations.http.conn.routing.HttpRoute;
 import org.kodtik.innovations.http.conn.routing.HttpRouteDirector;
@@ -65,7 +67,9 @@ import org.kodtik.innovations.http.conn.routing.RouteTracker;
 import org.kodtik.innovations.http.entity.BufferedHttpEntity;
 import org.kodtik.innovations.http.impl.auth.HttpAuthenticator;
 import org.kodtik.innovations.http.impl.conn.ConnectionShutdownException;
+import org.kodtik.innovations.http.impl.conn.NoopMetricsRecorder;
 import org.kodtik.innovations.http.message.BasicHttpRequest;
+import org.kodtik.innovations.http.protocol.ExchangeTimings;
 import org.kodtik.innovations.http.protocol.HttpCoreContext;
 import org.kodtik.innovations.http.protocol.HttpProcessor;
 import org.kodtik.innovations.http.protocol.HttpRequestExecutor;
@@ -100,9 +104,10 @@ public class MainClientExec implements ClientExecChain {
     private final HttpAuthenticator authenticator;
     private final UserTokenHandler userTokenHandler;
     private final HttpRouteDirector routeDirector;
+    private final MetricsRecorder metricsRecorder;
 
     /**
-     * @since 4.4
+     * @since 4.5.15
      */
     public MainClientExec(
             final HttpRequestExecutor requestExecutor,
@@ -112,7 +117,8 @@ public class MainClientExec implements ClientExecChain {
             final HttpProcessor proxyHttpProcessor,
             final AuthenticationStrategy targetAuthStrategy,
             final AuthenticationStrategy proxyAuthStrategy,
-            final UserTokenHandler userTokenHandler) {
+            final UserTokenHandler userTokenHandler,
+            final MetricsRecorder metricsRecorder) {
         Args.notNull(requestExecutor, "HTTP request executor");
         Args.notNull(connManager, "Client connection manager");
         Args.notNull(reuseStrategy, "Connection reuse strategy");
@@ -131,6 +137,23 @@ public class MainClientExec implements ClientExecChain {
         this.targetAuthStrategy = targetAuthStrategy;
         this.proxyAuthStrategy  = proxyAuthStrategy;
         this.userTokenHandler   = userTokenHandler;
+        this.metricsRecorder    = metricsRecorder != null ? metricsRecorder : NoopMetricsRecorder.INSTANCE;
+    }
+
+    /**
+     * @since 4.4
+     */
+    public MainClientExec(
+            final HttpRequestExecutor requestExecutor,
+            final HttpClientConnectionManager connManager,
+            final ConnectionReuseStrategy reuseStrategy,
+            final ConnectionKeepAliveStrategy keepAliveStrategy,
+            final HttpProcessor proxyHttpProcessor,
+            final AuthenticationStrategy targetAuthStrategy,
+            final AuthenticationStrategy proxyAuthStrategy,
+            final UserTokenHandler userTokenHandler) {
+        this(requestExecutor, connManager, reuseStrategy, keepAliveStrategy, proxyHttpProcessor,
+                targetAuthStrategy, proxyAuthStrategy, userTokenHandler, null);
     }
 
     public MainClientExec(
@@ -171,9 +194,22 @@ public class MainClientExec implements ClientExecChain {
             RequestEntityProxy.enhance((HttpEntityEnclosingRequest) request);
         }
 
+        final ExchangeTimings timings = context.getExchangeTimings();
+        if (timings != null) {
+            timings.reset();
+            timings.mark(ExchangeTimings.Phase.START, context);
+        }
+
         Object userToken = context.getUserToken();
 
-        final ConnectionRequest connRequest = connManager.requestConnection(route, userToken);
+        final int priority = context.getLeasePriority();
+        final ConnectionRequest connRequest;
+        if (priority != 0 && connManager instanceof PrioritizedConnectionManager) {
+            connRequest = ((PrioritizedConnectionManager) connManager).requestConnection(
+                    route, userToken, priority);
+        } else {
+            connRequest = connManager.requestConnection(route, userToken);
+        }
         if (execAware != null) {
             if (execAware.isAborted()) {
                 connRequest.cancel();
@@ -200,6 +236,9 @@ public class MainClientExec implements ClientExecChain {
         }
 
         context.setAttribute(HttpCoreContext.HTTP_CONNECTION, managedConn);
+        if (timings != null) {
+            timings.mark(ExchangeTimings.Phase.CONNECTION_ACQUIRED, context);
+        }
 
         if (config.isStaleConnectionCheckEnabled()) {
             // validate connection
@@ -212,7 +251,7 @@ public class MainClientExec implements ClientExecChain {
             }
         }
 
-        final ConnectionHolder connHolder = new ConnectionHolder(this.log, this.connManager, managedConn);
+        final ConnectionHolder connHolder = new ConnectionHolder(this.log, this.connManager, managedConn, context);
         try {
             if (execAware != null) {
                 execAware.setCancellable(connHolder);
@@ -269,7 +308,10 @@ public class MainClientExec implements ClientExecChain {
                 }
 
                 context.setAttribute(HttpCoreContext.HTTP_REQUEST, request);
+                final long start = System.nanoTime();
                 response = requestExecutor.execute(request, managedConn, context);
+                this.metricsRecorder.recordResponse(
+                        route, System.nanoTime() - start, response.getStatusLine().getStatusCode());
 
                 // The connection is in or can be brought to a re-usable state.
                 if (reuseStrategy.keepAlive(response, context)) {
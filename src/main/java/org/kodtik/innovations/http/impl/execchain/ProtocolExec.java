@@ -44,6 +44,7 @@ import org.kodtik.innovations.http.auth.UsernamePasswordCredentials;
 import org.kodtik.innovations.http.client.CredentialsProvider;
 import org.kodtik.innovations.http.client.methods.CloseableHttpResponse;
 import org.kodtik.innovations.http.client.methods.HttpExecutionAware;
+import org.kodtik.innovations.http.client.methods.HttpRequestBase;
 import org.kodtik.innovations.http.client.methods.HttpRequestWrapper;
 import org.kodtik.innovations.http.client.methods.HttpUriRequest;
 import org.kodtik.innovations.http.client.params.ClientPNames;
@@ -92,8 +93,14 @@ public class ProtocolExec implements ClientExecChain {
             final boolean normalizeUri) throws ProtocolException {
         final URI uri = request.getURI();
         if (uri != null) {
+            final HttpRequest original = request.getOriginal();
             try {
-                request.setURI(URIUtils.rewriteURIForRoute(uri, route, normalizeUri));
+                if (original instanceof HttpRequestBase && ((HttpRequestBase) original).getURI() == uri) {
+                    // Re-use the request target cached by the original request
+                    request.setURI(((HttpRequestBase) original).getRequestTarget().rewriteForRoute(route, normalizeUri));
+                } else {
+                    request.setURI(URIUtils.rewriteURIForRoute(uri, route, normalizeUri));
+                }
             } catch (final URISyntaxException ex) {
                 throw new ProtocolException("Invalid URI: " + uri, ex);
             }